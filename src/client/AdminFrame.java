@@ -4,7 +4,9 @@ import model.Book;
 import model.BookCopy;
 import model.BorrowRecord;
 import model.User;
+import util.BookQuery;
 import util.Message;
+import util.Page;
 import org.bson.Document;
 
 import javax.swing.*;
@@ -52,6 +54,11 @@ public class AdminFrame extends JFrame {
     private JTable booksTable;
     private JTable usersTable;
     private JTable borrowTable;
+    private PagedTableLoader<Book> booksLoader;
+    // Pages of the current search (SEARCH_BOOKS_PAGE), shown in booksTable instead
+    private PagedTableLoader<Book> bookSearchLoader;
+    private PagedTableLoader<User> usersLoader;
+    private PagedTableLoader<BorrowRecord> borrowLoader;
     private JTable bookCopiesTable;
     
     // Table models
@@ -74,6 +81,13 @@ public class AdminFrame extends JFrame {
     // Book management components
     private JTextField searchKeywordField;
     private JComboBox<String> categoryComboBox;
+    private JTextField yearFromField;
+    private JTextField yearToField;
+    private JCheckBox availableOnlyCheckBox;
+    private JComboBox<String> sortComboBox;
+    // Labels of sortComboBox and the BookQuery sort order of each
+    private static final String[] SORT_LABELS = {"Mặc định", "Tên A-Z", "Mới nhất", "Cũ nhất"};
+    private static final String[] SORT_ORDERS = {null, BookQuery.SORT_TITLE, BookQuery.SORT_NEWEST, BookQuery.SORT_OLDEST};
     
     // User management components
     private JTextField searchUserField;
@@ -129,6 +143,10 @@ public class AdminFrame extends JFrame {
                 loadBookCopies();
             }
         });
+        booksLoader = new PagedTableLoader<>(client, booksTable, Message.GET_BOOKS_PAGE,
+            book -> true, this::addBookRow, () -> {});
+        bookSearchLoader = new PagedTableLoader<>(client, booksTable, Message.SEARCH_BOOKS_PAGE,
+            book -> true, this::addBookRow, () -> {});
         
         // Book copies table
         String[] copyColumns = {"ID", "Sách", "Trạng thái", "Vị trí", "Ghi chú"};
@@ -155,6 +173,14 @@ public class AdminFrame extends JFrame {
         usersTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         // Allow last column to auto-resize to fill remaining space
         usersTable.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+        usersLoader = new PagedTableLoader<>(client, usersTable, Message.GET_USERS_PAGE,
+            this::matchesUserFilter, this::addUserRow, () -> {
+                // Update total users label
+                if (totalUsersLabel != null) {
+                    totalUsersLabel.setText("Tổng: " + usersLoader.getTotal() + " người dùng");
+                }
+                setUsersTableColumnWidths();
+            });
         
         // Borrow records table - updated columns
         String[] borrowColumns = {"Mã mượn", "Người dùng", "Sách", "Ngày mượn", "Hạn trả", "Ngày trả", "Trạng thái", "Phạt (VND)"};
@@ -167,6 +193,13 @@ public class AdminFrame extends JFrame {
         borrowTable = new JTable(borrowModel);
         styleTable(borrowTable);
         borrowTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        borrowLoader = new PagedTableLoader<>(client, borrowTable, Message.GET_BORROW_RECORDS_PAGE,
+            this::matchesBorrowFilter, this::addBorrowRow, () -> {
+                // Update records count label
+                if (recordsCountLabel != null) {
+                    recordsCountLabel.setText("Đã tải " + borrowLoader.getLoadedCount() + "/" + borrowLoader.getTotal() + " bản ghi");
+                }
+            });
         
         // Dashboard tables
         String[] recentBorrowsColumns = {"ID", "Người mượn", "Sách", "Ngày mượn", "Hạn trả", "Trạng thái"};
@@ -762,52 +795,41 @@ public class AdminFrame extends JFrame {
     }
     
     private void performUserSearch() {
+        // The filter is applied to each page as it arrives (see matchesUserFilter)
         loadUsers();
+    }
+    
+    private boolean matchesUserFilter(User user) {
+        String keyword = searchUserField != null ? searchUserField.getText().trim().toLowerCase() : "";
+        String statusFilter = statusFilterComboBox != null ? (String) statusFilterComboBox.getSelectedItem() : "Tất cả";
+        String roleFilter = roleFilterComboBox != null ? (String) roleFilterComboBox.getSelectedItem() : "Tất cả";
         
-        String keyword = searchUserField.getText().trim().toLowerCase();
-        String statusFilter = (String) statusFilterComboBox.getSelectedItem();
-        String roleFilter = (String) roleFilterComboBox.getSelectedItem();
-        
-        if (keyword.isEmpty() && "Tất cả".equals(statusFilter) && "Tất cả".equals(roleFilter)) {
-            return; // No filter needed
+        // Filter by keyword
+        if (!keyword.isEmpty()) {
+            String email = user.getEmail() != null ? user.getEmail().toLowerCase() : "";
+            String name = user.getFullName().toLowerCase();
+            String studentId = user.getStudentId() != null ? user.getStudentId().toLowerCase() : "n/a";
+            if (!email.contains(keyword) && !name.contains(keyword) && !studentId.contains(keyword)) {
+                return false;
+            }
         }
         
-        DefaultTableModel model = (DefaultTableModel) usersTable.getModel();
-        int rowCount = model.getRowCount();
-        
-        for (int i = rowCount - 1; i >= 0; i--) {
-            boolean shouldRemove = false;
-            
-            // Filter by keyword
-            if (!keyword.isEmpty()) {
-                String email = ((String) model.getValueAt(i, 1)).toLowerCase();
-                String name = ((String) model.getValueAt(i, 2)).toLowerCase();
-                String studentId = model.getValueAt(i, 3) != null ? model.getValueAt(i, 3).toString().toLowerCase() : "";
-                if (!email.contains(keyword) && !name.contains(keyword) && !studentId.contains(keyword)) {
-                    shouldRemove = true;
-                }
-            }
-            
-            // Filter by status
-            if (!"Tất cả".equals(statusFilter)) {
-                String status = (String) model.getValueAt(i, 7);
-                if (!statusFilter.equals(status)) {
-                    shouldRemove = true;
-                }
-            }
-            
-            // Filter by role
-            if (!"Tất cả".equals(roleFilter)) {
-                String role = (String) model.getValueAt(i, 6);
-                if (!roleFilter.equals(role)) {
-                    shouldRemove = true;
-                }
+        // Filter by status
+        if (!"Tất cả".equals(statusFilter)) {
+            String status = user.getStatus() != null ? user.getStatus() : "ACTIVE";
+            if (!statusFilter.equals(status)) {
+                return false;
             }
-            
-            if (shouldRemove) {
-                model.removeRow(i);
+        }
+        
+        // Filter by role
+        if (!"Tất cả".equals(roleFilter)) {
+            String role = user.getRole() != null ? user.getRole() : "USER";
+            if (!roleFilter.equals(role)) {
+                return false;
             }
         }
+        return true;
     }
     
     private JPanel createBorrowPanel() {
@@ -880,10 +902,22 @@ public class AdminFrame extends JFrame {
         JButton forceReturnButton = createStyledButton("Bắt buộc trả", PRIMARY_PURPLE, null);
         forceReturnButton.addActionListener(e -> forceReturn());
         
+        JButton exportRecordsButton = createStyledButton("Xuất CSV mượn trả", new Color(46, 204, 113), null);
+        exportRecordsButton.addActionListener(e -> exportFullCsv(Message.EXPORT_BORROW_RECORDS, "Toàn bộ mượn trả",
+            new String[]{"Mã mượn", "Người dùng", "Sách", "Ngày mượn", "Hạn trả", "Ngày trả", "Trạng thái", "Phạt (VND)"},
+            item -> borrowRow((BorrowRecord) item)));
+        
+        JButton exportFinesButton = createStyledButton("Xuất CSV tiền phạt", new Color(46, 204, 113), null);
+        exportFinesButton.addActionListener(e -> exportFullCsv(Message.EXPORT_FINES, "Toàn bộ tiền phạt",
+            new String[]{"Mã phạt", "Mã mượn", "Người dùng", "Sách", "Lý do", "Số tiền", "Trạng thái", "Hạn nộp", "Ngày tạo"},
+            item -> fineRow((Document) item)));
+        
         buttonPanel.add(returnButton);
         buttonPanel.add(markLostButton);
         buttonPanel.add(markDamagedButton);
         buttonPanel.add(forceReturnButton);
+        buttonPanel.add(exportRecordsButton);
+        buttonPanel.add(exportFinesButton);
         
         mainPanel.add(buttonPanel, BorderLayout.SOUTH);
         
@@ -891,43 +925,31 @@ public class AdminFrame extends JFrame {
     }
     
     private void performBorrowSearch() {
+        // The filter is applied to each page as it arrives (see matchesBorrowFilter)
         loadBorrowRecords();
+    }
+    
+    private boolean matchesBorrowFilter(BorrowRecord record) {
+        String keyword = searchBorrowField != null ? searchBorrowField.getText().trim().toLowerCase() : "";
+        String statusFilter = statusBorrowFilterComboBox != null ? (String) statusBorrowFilterComboBox.getSelectedItem() : "Tất cả trạng thái";
         
-        String keyword = searchBorrowField.getText().trim().toLowerCase();
-        String statusFilter = (String) statusBorrowFilterComboBox.getSelectedItem();
-        
-        if (keyword.isEmpty() && "Tất cả trạng thái".equals(statusFilter)) {
-            return; // No filter needed
+        // Filter by keyword
+        if (!keyword.isEmpty()) {
+            String recordId = record.getRecordId() != null ? record.getRecordId().toLowerCase() : String.valueOf(record.getId());
+            String username = String.valueOf(record.getUsername()).toLowerCase();
+            String bookTitle = String.valueOf(record.getBookTitle()).toLowerCase();
+            if (!recordId.contains(keyword) && !username.contains(keyword) && !bookTitle.contains(keyword)) {
+                return false;
+            }
         }
         
-        DefaultTableModel model = (DefaultTableModel) borrowTable.getModel();
-        int rowCount = model.getRowCount();
-        
-        for (int i = rowCount - 1; i >= 0; i--) {
-            boolean shouldRemove = false;
-            
-            // Filter by keyword
-            if (!keyword.isEmpty()) {
-                String recordId = model.getValueAt(i, 0).toString().toLowerCase();
-                String username = model.getValueAt(i, 1).toString().toLowerCase();
-                String bookTitle = model.getValueAt(i, 2).toString().toLowerCase();
-                if (!recordId.contains(keyword) && !username.contains(keyword) && !bookTitle.contains(keyword)) {
-                    shouldRemove = true;
-                }
-            }
-            
-            // Filter by status
-            if (!"Tất cả trạng thái".equals(statusFilter)) {
-                String statusText = (String) model.getValueAt(i, 6);
-                if (!statusFilter.equals(statusText)) {
-                    shouldRemove = true;
-                }
-            }
-            
-            if (shouldRemove) {
-                model.removeRow(i);
+        // Filter by status
+        if (!"Tất cả trạng thái".equals(statusFilter)) {
+            if (!statusFilter.equals(getStatusText(record.getStatus()))) {
+                return false;
             }
         }
+        return true;
     }
     
     private String getStatusText(String status) {
@@ -1081,6 +1103,7 @@ public class AdminFrame extends JFrame {
         gbc.anchor = GridBagConstraints.WEST;
         
         searchKeywordField = createRoundedTextField(20);
+        new SearchSuggestions(client, searchKeywordField, this::performSearch);
         categoryComboBox = createRoundedComboBox(new String[]{"Tất cả thể loại"});
         categoryComboBox.addItem("Công nghệ thông tin");
         categoryComboBox.addItem("Kinh tế");
@@ -1089,6 +1112,11 @@ public class AdminFrame extends JFrame {
         categoryComboBox.addItem("Văn học");
         categoryComboBox.addItem("Lịch sử");
         categoryComboBox.addItem("Tâm lý học");
+        yearFromField = createRoundedTextField(4);
+        yearToField = createRoundedTextField(4);
+        availableOnlyCheckBox = new JCheckBox("Chỉ sách còn");
+        availableOnlyCheckBox.setBackground(Color.WHITE);
+        sortComboBox = createRoundedComboBox(SORT_LABELS);
         
         JButton searchButton = createStyledButton("Tìm kiếm", PRIMARY_GREEN, null);
         searchButton.addActionListener(e -> performSearch());
@@ -1097,6 +1125,10 @@ public class AdminFrame extends JFrame {
         refreshButton.addActionListener(e -> {
             searchKeywordField.setText("");
             categoryComboBox.setSelectedIndex(0);
+            yearFromField.setText("");
+            yearToField.setText("");
+            availableOnlyCheckBox.setSelected(false);
+            sortComboBox.setSelectedIndex(0);
             loadBooks();
         });
         
@@ -1121,6 +1153,27 @@ public class AdminFrame extends JFrame {
         gbc.gridx = 5;
         searchPanelRounded.add(refreshButton, gbc);
         
+        JPanel yearPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        yearPanel.setBackground(Color.WHITE);
+        yearPanel.add(yearFromField);
+        yearPanel.add(new JLabel("-"));
+        yearPanel.add(yearToField);
+        
+        gbc.gridy = 1;
+        gbc.gridx = 0;
+        searchPanelRounded.add(new JLabel("Năm XB:"), gbc);
+        gbc.gridx = 1;
+        searchPanelRounded.add(yearPanel, gbc);
+        gbc.gridx = 2;
+        searchPanelRounded.add(new JLabel("Sắp xếp:"), gbc);
+        gbc.gridx = 3;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        searchPanelRounded.add(sortComboBox, gbc);
+        gbc.gridx = 4;
+        gbc.fill = GridBagConstraints.NONE;
+        gbc.gridwidth = 2;
+        searchPanelRounded.add(availableOnlyCheckBox, gbc);
+        
         mainPanel.add(searchPanelRounded, BorderLayout.NORTH);
         
         // Two panels side by side
@@ -1190,38 +1243,26 @@ public class AdminFrame extends JFrame {
         return mainPanel;
     }
     
+    // Keyword and filters go to the server as one BookQuery; only the matching books come back
     private void performSearch() {
-        String keyword = searchKeywordField.getText().trim();
-        String category = (String) categoryComboBox.getSelectedItem();
-        
-        if (keyword.isEmpty() && "Tất cả thể loại".equals(category)) {
-            loadBooks();
+        BookQuery query = new BookQuery(searchKeywordField.getText().trim());
+        query.setCategory(selectedCategory());
+        try {
+            query.setFromYear(parseYear(yearFromField));
+            query.setToYear(parseYear(yearToField));
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Năm xuất bản không hợp lệ!", "Lỗi", JOptionPane.WARNING_MESSAGE);
             return;
         }
-        
-        if (!keyword.isEmpty()) {
-            searchBooks(keyword);
-        } else {
-            loadBooks();
-        }
-        
-        // Filter by category if needed
-        if (!"Tất cả thể loại".equals(category)) {
-            filterBooksByCategory(category);
-        }
+        query.setAvailableOnly(availableOnlyCheckBox.isSelected());
+        query.setSort(SORT_ORDERS[Math.max(0, sortComboBox.getSelectedIndex())]);
+        searchBooks(query);
     }
     
-    private void filterBooksByCategory(String category) {
-        DefaultTableModel model = (DefaultTableModel) booksTable.getModel();
-        int rowCount = model.getRowCount();
-        for (int i = 0; i < rowCount; i++) {
-            String bookCategory = (String) model.getValueAt(i, 4);
-            if (!category.equals(bookCategory)) {
-                model.removeRow(i);
-                i--;
-                rowCount--;
-            }
-        }
+    // null when the field is empty
+    private static Integer parseYear(JTextField field) {
+        String text = field.getText().trim();
+        return text.isEmpty() ? null : Integer.valueOf(text);
     }
     
     private JPanel createReportsPanel() {
@@ -1238,6 +1279,8 @@ public class AdminFrame extends JFrame {
         gbc.anchor = GridBagConstraints.WEST;
         
         timeRangeComboBox = new JComboBox<>(new String[]{"Hôm nay", "Tuần này", "Tháng này", "Năm này", "Tất cả"});
+        // Applies to the penalty report; all fines by default, as before the filter existed
+        timeRangeComboBox.setSelectedItem("Tất cả");
         reportStatusLabel = new JLabel("");
         reportStatusLabel.setForeground(new Color(0, 150, 0));
         
@@ -1362,9 +1405,9 @@ public class AdminFrame extends JFrame {
             case 2: // Borrow report
                 success = generateBorrowReport();
                 break;
-            case 3: // Penalty report
-                success = generatePenaltyReport();
-                break;
+            case 3: // Penalty report: streamed in the background, reports its own status
+                generatePenaltyReport(timeRange);
+                return;
         }
         
         if (reportStatusLabel != null) {
@@ -1559,65 +1602,112 @@ public class AdminFrame extends JFrame {
         }
     }
     
-    private boolean generatePenaltyReport() {
-        try {
-            Message request = new Message(Message.GET_PENALTY_REPORT, null);
-            Message response = client.sendRequest(request);
-            
-            if (response.isSuccess() && response.getData() instanceof List) {
-                @SuppressWarnings("unchecked")
-                List<Document> reportData = (List<Document>) response.getData();
-                penaltyReportModel.setRowCount(0);
-                
-                if (reportData.isEmpty()) {
-                    if (reportStatusLabel != null) {
-                        reportStatusLabel.setText("Không có dữ liệu báo cáo phạt");
-                        reportStatusLabel.setForeground(new Color(200, 0, 0));
+    // Rows are added as the server streams them (EXPORT_PENALTY_REPORT), so a long history
+    // shows up progressively instead of after one large response
+    private void generatePenaltyReport(String timeRange) {
+        penaltyReportModel.setRowCount(0);
+        if (reportStatusLabel != null) {
+            reportStatusLabel.setText("Đang tải báo cáo phạt...");
+            reportStatusLabel.setForeground(new Color(0, 150, 0));
+        }
+        Object[] range = {timeRangeStart(timeRange), null};
+        Thread loader = new Thread(() -> {
+            java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("dd/MM/yyyy");
+            long rows = 0;
+            boolean success;
+            String error;
+            try (ResponseStream<Document> stream = client.openStream(new Message(Message.EXPORT_PENALTY_REPORT, range))) {
+                List<Object[]> pending = new java.util.ArrayList<>();
+                while (stream.hasNext()) {
+                    pending.add(penaltyRow(stream.next(), sdf));
+                    rows++;
+                    // Hand rows to the EDT in groups, not one invokeLater per row
+                    if (pending.size() == 200) {
+                        addPenaltyRows(pending);
+                        pending = new java.util.ArrayList<>();
                     }
-                    return false;
                 }
-                
-                java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("dd/MM/yyyy");
-                
-                for (Document doc : reportData) {
-                    String username = doc.getString("username");
-                    if (username == null) username = "N/A";
-                    String bookTitle = doc.getString("bookTitle");
-                    if (bookTitle == null) bookTitle = "N/A";
-                    String reason = doc.getString("reason");
-                    if (reason == null) reason = "N/A";
-                    double amount = getDoubleValue(doc, "amount");
-                    String status = doc.getString("status");
-                    if (status == null) status = "N/A";
-                    java.util.Date createdDate = doc.getDate("createdDate");
-                    String dateStr = createdDate != null ? sdf.format(createdDate) : "N/A";
-                    
-                    penaltyReportModel.addRow(new Object[]{
-                        username,
-                        bookTitle,
-                        reason,
-                        String.format("%.0f", amount),
-                        status,
-                        dateStr
-                    });
+                addPenaltyRows(pending);
+                success = stream.isSuccess();
+                error = stream.getMessage();
+            } catch (Exception e) {
+                System.err.println("Error generating penalty report: " + e.getMessage());
+                e.printStackTrace();
+                success = false;
+                error = e.getMessage();
+            }
+            long count = rows;
+            boolean loaded = success;
+            String message = error;
+            SwingUtilities.invokeLater(() -> {
+                if (reportStatusLabel == null) {
+                    return;
                 }
-                return true;
-            } else {
-                if (reportStatusLabel != null) {
-                    reportStatusLabel.setText("Lỗi: " + (response.getMessage() != null ? response.getMessage() : "Không thể tải dữ liệu báo cáo phạt"));
+                if (!loaded) {
+                    reportStatusLabel.setText("Lỗi: " + (message != null ? message : "Không thể tải dữ liệu báo cáo phạt"));
+                    reportStatusLabel.setForeground(new Color(200, 0, 0));
+                } else if (count == 0) {
+                    reportStatusLabel.setText("Không có dữ liệu báo cáo phạt");
                     reportStatusLabel.setForeground(new Color(200, 0, 0));
+                } else {
+                    reportStatusLabel.setText("Báo cáo đã được tạo thành công (" + count + " khoản phạt)");
+                    reportStatusLabel.setForeground(new Color(0, 150, 0));
                 }
-                return false;
-            }
-        } catch (Exception e) {
-            System.err.println("Error generating penalty report: " + e.getMessage());
-            e.printStackTrace();
-            if (reportStatusLabel != null) {
-                reportStatusLabel.setText("Lỗi khi tạo báo cáo phạt: " + e.getMessage());
-                reportStatusLabel.setForeground(new Color(200, 0, 0));
-            }
-            return false;
+            });
+        }, "penalty-report");
+        loader.setDaemon(true);
+        loader.start();
+    }
+    
+    private Object[] penaltyRow(Document doc, java.text.SimpleDateFormat sdf) {
+        String username = doc.getString("username");
+        if (username == null) username = "N/A";
+        String bookTitle = doc.getString("bookTitle");
+        if (bookTitle == null) bookTitle = "N/A";
+        String reason = doc.getString("reason");
+        if (reason == null) reason = "N/A";
+        double amount = getDoubleValue(doc, "amount");
+        String status = doc.getString("status");
+        if (status == null) status = "N/A";
+        java.util.Date createdDate = doc.getDate("createdDate");
+        String dateStr = createdDate != null ? sdf.format(createdDate) : "N/A";
+        return new Object[]{
+            username,
+            bookTitle,
+            reason,
+            String.format("%.0f", amount),
+            status,
+            dateStr
+        };
+    }
+    
+    private void addPenaltyRows(List<Object[]> rows) {
+        if (!rows.isEmpty()) {
+            SwingUtilities.invokeLater(() -> {
+                for (Object[] row : rows) {
+                    penaltyReportModel.addRow(row);
+                }
+            });
+        }
+    }
+    
+    // Start of the selected period (today, this week from Monday, this month, this year);
+    // null for "Tất cả"
+    private static java.util.Date timeRangeStart(String timeRange) {
+        java.time.LocalDate today = java.time.LocalDate.now();
+        java.time.LocalDate start;
+        if ("Hôm nay".equals(timeRange)) {
+            start = today;
+        } else if ("Tuần này".equals(timeRange)) {
+            start = today.with(java.time.DayOfWeek.MONDAY);
+        } else if ("Tháng này".equals(timeRange)) {
+            start = today.withDayOfMonth(1);
+        } else if ("Năm này".equals(timeRange)) {
+            start = today.withDayOfYear(1);
+        } else {
+            return null;
         }
+        return java.util.Date.from(start.atStartOfDay(java.time.ZoneId.systemDefault()).toInstant());
     }
     
     private double getDoubleValue(Document doc, String key) {
@@ -1799,16 +1889,7 @@ public class AdminFrame extends JFrame {
             int rowCount = model.getRowCount();
             for (int i = 0; i < rowCount; i++) {
                 for (int j = 0; j < columnCount; j++) {
-                    Object value = model.getValueAt(i, j);
-                    String cellValue = "";
-                    if (value != null) {
-                        cellValue = value.toString();
-                        // Escape commas and quotes in CSV
-                        if (cellValue.contains(",") || cellValue.contains("\"") || cellValue.contains("\n")) {
-                            cellValue = "\"" + cellValue.replace("\"", "\"\"") + "\"";
-                        }
-                    }
-                    writer.write(cellValue);
+                    writer.write(csvValue(model.getValueAt(i, j)));
                     if (j < columnCount - 1) {
                         writer.write(",");
                     }
@@ -2014,12 +2095,13 @@ public class AdminFrame extends JFrame {
     }
     
     private void loadRecentBorrows() {
-        Message request = new Message(Message.GET_ALL_BORROW_RECORDS, null);
+        // Newest 10 records only, not the whole collection
+        Message request = new Message(Message.GET_BORROW_RECORDS_PAGE, new Object[]{null, 10, Boolean.TRUE});
         Message response = client.sendRequest(request);
         
-        if (response.isSuccess() && response.getData() instanceof List) {
+        if (response.isSuccess() && response.getData() instanceof Page) {
             @SuppressWarnings("unchecked")
-            List<BorrowRecord> records = (List<BorrowRecord>) response.getData();
+            List<BorrowRecord> records = ((Page<BorrowRecord>) response.getData()).getItems();
             recentBorrowsModel.setRowCount(0);
             
             java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("dd/MM/yyyy");
@@ -2073,12 +2155,13 @@ public class AdminFrame extends JFrame {
     }
     
     private void loadNewUsers() {
-        Message request = new Message(Message.GET_ALL_USERS, null);
+        // Newest 10 users only, not the whole collection
+        Message request = new Message(Message.GET_USERS_PAGE, new Object[]{null, 10, Boolean.TRUE});
         Message response = client.sendRequest(request);
         
-        if (response.isSuccess() && response.getData() instanceof List) {
+        if (response.isSuccess() && response.getData() instanceof Page) {
             @SuppressWarnings("unchecked")
-            List<User> users = (List<User>) response.getData();
+            List<User> users = ((Page<User>) response.getData()).getItems();
             newUsersModel.setRowCount(0);
             
             // Get only recent 10 users, sorted by registration date (most recent first)
@@ -2178,44 +2261,30 @@ public class AdminFrame extends JFrame {
     }
     
     private void loadUsers() {
-        Message request = new Message(Message.GET_ALL_USERS, null);
-        Message response = client.sendRequest(request);
-        
-        if (response.isSuccess() && response.getData() instanceof List) {
-            @SuppressWarnings("unchecked")
-            List<User> users = (List<User>) response.getData();
-            usersModel.setRowCount(0);
-            
-            for (User user : users) {
-                String registrationDate = "N/A";
-                if (user.getRegistrationDate() != null) {
-                    java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("dd/MM/yyyy");
-                    registrationDate = sdf.format(user.getRegistrationDate());
-                }
-                
-                usersModel.addRow(new Object[]{
-                    user.getUserId() != null ? user.getUserId() : "",
-                    user.getEmail() != null ? user.getEmail() : "",
-                    user.getFullName(),
-                    user.getStudentId() != null ? user.getStudentId() : "N/A",
-                    user.getFaculty() != null ? user.getFaculty() : "",
-                    user.getYearOfStudy() != null ? user.getYearOfStudy() : "",
-                    user.getRole() != null ? user.getRole() : "USER",
-                    user.getStatus() != null ? user.getStatus() : "ACTIVE",
-                    user.getCurrentBorrowed(),
-                    String.format("%.0f VNĐ", user.getTotalFines()),
-                    registrationDate
-                });
-            }
-            
-            // Update total users label
-            if (totalUsersLabel != null) {
-                totalUsersLabel.setText("Tổng: " + users.size() + " người dùng");
-            }
-            
-            // Set column widths for better display
-            setUsersTableColumnWidths();
-        }
+        usersModel.setRowCount(0);
+        usersLoader.reload();
+    }
+    
+    private void addUserRow(User user) {
+        String registrationDate = "N/A";
+        if (user.getRegistrationDate() != null) {
+            java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("dd/MM/yyyy");
+            registrationDate = sdf.format(user.getRegistrationDate());
+        }
+        
+        usersModel.addRow(new Object[]{
+            user.getUserId() != null ? user.getUserId() : "",
+            user.getEmail() != null ? user.getEmail() : "",
+            user.getFullName(),
+            user.getStudentId() != null ? user.getStudentId() : "N/A",
+            user.getFaculty() != null ? user.getFaculty() : "",
+            user.getYearOfStudy() != null ? user.getYearOfStudy() : "",
+            user.getRole() != null ? user.getRole() : "USER",
+            user.getStatus() != null ? user.getStatus() : "ACTIVE",
+            user.getCurrentBorrowed(),
+            String.format("%.0f VNĐ", user.getTotalFines()),
+            registrationDate
+        });
     }
     
     private void setUsersTableColumnWidths() {
@@ -2350,30 +2419,41 @@ public class AdminFrame extends JFrame {
         }
     }
     
+    // All books, or only the selected category, which the server filters (a filter applied
+    // here would hide most rows of each page and keep the loader fetching)
     private void loadBooks() {
-        Message request = new Message(Message.GET_ALL_BOOKS, null);
-        Message response = client.sendRequest(request);
-        
-        if (response.isSuccess() && response.getData() instanceof List) {
-            @SuppressWarnings("unchecked")
-            List<Book> books = (List<Book>) response.getData();
-            booksModel.setRowCount(0);
-            for (Book book : books) {
-                String status = book.getAvailableCopies() > 0 ? "Có sẵn" : "Hết sách";
-                booksModel.addRow(new Object[]{
-                    book.getBookId() != null ? book.getBookId() : String.valueOf(book.getId()),
-                    book.getTitle(),
-                    book.getAuthor(),
-                    book.getIsbn() != null ? book.getIsbn() : "",
-                    book.getCategory(),
-                    book.getPublishYear(),
-                    String.format("%.0f VNĐ", book.getPrice()),
-                    book.getTotalCopies(),
-                    book.getAvailableCopies(),
-                    status
-                });
-            }
+        String category = selectedCategory();
+        if (category != null) {
+            BookQuery query = new BookQuery();
+            query.setCategory(category);
+            showSearchResults(query);
+            return;
         }
+        bookSearchLoader.cancel();
+        booksModel.setRowCount(0);
+        booksLoader.reload();
+    }
+    
+    // null for "Tất cả thể loại"
+    private String selectedCategory() {
+        String category = categoryComboBox != null ? (String) categoryComboBox.getSelectedItem() : null;
+        return category == null || "Tất cả thể loại".equals(category) ? null : category;
+    }
+    
+    private void addBookRow(Book book) {
+        String status = book.getAvailableCopies() > 0 ? "Có sẵn" : "Hết sách";
+        booksModel.addRow(new Object[]{
+            book.getBookId() != null ? book.getBookId() : String.valueOf(book.getId()),
+            book.getTitle(),
+            book.getAuthor(),
+            book.getIsbn() != null ? book.getIsbn() : "",
+            book.getCategory(),
+            book.getPublishYear(),
+            String.format("%.0f VNĐ", book.getPrice()),
+            book.getTotalCopies(),
+            book.getAvailableCopies(),
+            status
+        });
     }
     
     private void loadBookCopies() {
@@ -2415,71 +2495,134 @@ public class AdminFrame extends JFrame {
     }
     
     private void loadBorrowRecords() {
-        Message request = new Message(Message.GET_ALL_BORROW_RECORDS, null);
-        Message response = client.sendRequest(request);
+        borrowModel.setRowCount(0);
+        borrowLoader.reload();
+    }
+    
+    private void addBorrowRow(BorrowRecord record) {
+        borrowModel.addRow(borrowRow(record));
+    }
+    
+    private Object[] borrowRow(BorrowRecord record) {
+        java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("dd/MM/yyyy");
+        String borrowDate = record.getBorrowDate() != null ? sdf.format(record.getBorrowDate()) : "";
+        String dueDate = record.getDueDate() != null ? sdf.format(record.getDueDate()) : "";
+        String returnDate = record.getReturnDate() != null ? sdf.format(record.getReturnDate()) : "";
         
-        if (response.isSuccess() && response.getData() instanceof List) {
-            @SuppressWarnings("unchecked")
-            List<BorrowRecord> records = (List<BorrowRecord>) response.getData();
-            borrowModel.setRowCount(0);
-            
-            java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("dd/MM/yyyy");
-            
-            for (BorrowRecord record : records) {
-                String borrowDate = record.getBorrowDate() != null ? sdf.format(record.getBorrowDate()) : "";
-                String dueDate = record.getDueDate() != null ? sdf.format(record.getDueDate()) : "";
-                String returnDate = record.getReturnDate() != null ? sdf.format(record.getReturnDate()) : "";
-                
-                String statusText = getStatusText(record.getStatus());
-                
-                borrowModel.addRow(new Object[]{
-                    record.getRecordId() != null ? record.getRecordId() : String.valueOf(record.getId()),
-                    record.getUsername(),
-                    record.getBookTitle(),
-                    borrowDate,
-                    dueDate,
-                    returnDate,
-                    statusText,
-                    String.format("%.0f", record.getFine())
-                });
-            }
-            
-            // Update records count label
-            if (recordsCountLabel != null) {
-                recordsCountLabel.setText("Đã tải " + records.size() + " bản ghi");
+        String statusText = getStatusText(record.getStatus());
+        
+        return new Object[]{
+            record.getRecordId() != null ? record.getRecordId() : String.valueOf(record.getId()),
+            record.getUsername(),
+            record.getBookTitle(),
+            borrowDate,
+            dueDate,
+            returnDate,
+            statusText,
+            String.format("%.0f", record.getFine())
+        };
+    }
+    
+    private Object[] fineRow(Document fine) {
+        java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("dd/MM/yyyy");
+        Object amount = fine.get("amount");
+        return new Object[]{
+            fine.getString("fineId"),
+            fine.getString("recordId"),
+            fine.getString("userId"),
+            fine.getString("bookId"),
+            fine.getString("reason"),
+            amount instanceof Number ? String.format("%.0f", ((Number) amount).doubleValue()) : "",
+            fine.getString("status"),
+            fine.getDate("dueDate") != null ? sdf.format(fine.getDate("dueDate")) : "",
+            fine.getDate("createdDate") != null ? sdf.format(fine.getDate("createdDate")) : ""
+        };
+    }
+    
+    // Exports a whole collection from a streamed response: rows are written to the file as the
+    // chunks arrive, so neither side ever holds the full collection
+    private void exportFullCsv(String requestType, String reportName, String[] columns,
+            java.util.function.Function<Object, Object[]> toRow) {
+        javax.swing.JFileChooser fileChooser = new javax.swing.JFileChooser();
+        fileChooser.setDialogTitle("Lưu file CSV");
+        fileChooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("CSV Files (*.csv)", "csv"));
+        java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyyMMdd_HHmmss");
+        fileChooser.setSelectedFile(new java.io.File(reportName + "_" + sdf.format(new java.util.Date()) + ".csv"));
+        if (fileChooser.showSaveDialog(this) != javax.swing.JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        String path = fileChooser.getSelectedFile().getAbsolutePath();
+        String filePath = path.toLowerCase().endsWith(".csv") ? path : path + ".csv";
+        
+        // Off the EDT: the stream is read at the speed the file is written
+        Thread exporter = new Thread(() -> {
+            boolean success;
+            String result;
+            try (ResponseStream<Object> stream = client.openStream(new Message(requestType, null));
+                 java.io.Writer writer = new java.io.BufferedWriter(
+                     new java.io.FileWriter(filePath, java.nio.charset.StandardCharsets.UTF_8))) {
+                // Write BOM for Excel UTF-8 support
+                writer.write('\uFEFF');
+                writeCsvRow(writer, columns);
+                while (stream.hasNext()) {
+                    writeCsvRow(writer, toRow.apply(stream.next()));
+                }
+                success = stream.isSuccess();
+                result = stream.getMessage();
+            } catch (Exception e) {
+                success = false;
+                result = e.getMessage();
+            }
+            boolean exported = success;
+            String message = result;
+            SwingUtilities.invokeLater(() -> {
+                if (exported) {
+                    JOptionPane.showMessageDialog(this, message + "\nFile: " + filePath, "Thành công", JOptionPane.INFORMATION_MESSAGE);
+                } else {
+                    JOptionPane.showMessageDialog(this, "Lỗi khi xuất file CSV: " + message, "Lỗi", JOptionPane.ERROR_MESSAGE);
+                }
+            });
+        }, "csv-export");
+        exporter.setDaemon(true);
+        exporter.start();
+    }
+    
+    private void writeCsvRow(java.io.Writer writer, Object[] values) throws java.io.IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(",");
             }
+            writer.write(csvValue(values[i]));
+        }
+        writer.write("\n");
+    }
+    
+    private static String csvValue(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String cellValue = value.toString();
+        // Escape commas and quotes in CSV
+        if (cellValue.contains(",") || cellValue.contains("\"") || cellValue.contains("\n")) {
+            cellValue = "\"" + cellValue.replace("\"", "\"\"") + "\"";
         }
+        return cellValue;
     }
     
-    private void searchBooks(String keyword) {
-        if (keyword == null || keyword.trim().isEmpty()) {
+    private void searchBooks(BookQuery query) {
+        if (query.isEmpty()) {
             loadBooks();
             return;
         }
-        
-        Message request = new Message(Message.SEARCH_BOOKS, keyword.trim());
-        Message response = client.sendRequest(request);
-        
-        if (response.isSuccess() && response.getData() instanceof List) {
-            @SuppressWarnings("unchecked")
-            List<Book> books = (List<Book>) response.getData();
-            booksModel.setRowCount(0);
-            for (Book book : books) {
-                String status = book.getAvailableCopies() > 0 ? "Có sẵn" : "Hết sách";
-                booksModel.addRow(new Object[]{
-                    book.getBookId() != null ? book.getBookId() : String.valueOf(book.getId()),
-                    book.getTitle(),
-                    book.getAuthor(),
-                    book.getIsbn() != null ? book.getIsbn() : "",
-                    book.getCategory(),
-                    book.getPublishYear(),
-                    String.format("%.0f VNĐ", book.getPrice()),
-                    book.getTotalCopies(),
-                    book.getAvailableCopies(),
-                    status
-                });
-            }
-        }
+        showSearchResults(query);
+    }
+    
+    // Search results replace the paged list until the next loadBooks(); they come a page at a
+    // time as well, however many books match
+    private void showSearchResults(BookQuery query) {
+        booksLoader.cancel();
+        booksModel.setRowCount(0);
+        bookSearchLoader.reload(query);
     }
     
     // Book dialog methods
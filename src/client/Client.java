@@ -1,29 +1,92 @@
 package client;
 
+import util.FrameCodec;
 import util.Message;
+import util.MessageOutputStream;
+import util.StreamResetPolicy;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class Client {
     private static final String SERVER_HOST = "localhost";
     private static final int SERVER_PORT = 12345;
+    // "framed" (default): length-prefixed frames with a codec negotiated at connect time.
+    // "object": the original ObjectOutputStream protocol.
+    private static final boolean FRAMED = !"object".equalsIgnoreCase(System.getProperty("client.transport", "framed"));
+    // Codec requested in the handshake: "binary" (default), "compressed" (slow links) or "serialized"
+    private static final int PREFERRED_CODEC = preferredCodec(System.getProperty("client.codec", "binary"));
+    // Object transport only: when to reset the request stream (always, never, every:N, bytes:N)
+    private static final StreamResetPolicy STREAM_RESET_POLICY = StreamResetPolicy.parse(System.getProperty("client.streamReset"));
     
     private Socket socket;
-    private ObjectOutputStream output;
+    private MessageOutputStream output;
     private ObjectInputStream input;
-    private boolean connected;
+    private DataOutputStream frameOutput;
+    private DataInputStream frameInput;
+    private boolean framed;
+    private int codec;
+    private boolean pushSupported;
+    private volatile boolean connected;
+    
+    // Framed transport: requests carry an id and a reader thread completes the matching future,
+    // so any number of requests can be in flight on the one socket
+    private final ConcurrentSkipListMap<Long, CompletableFuture<Message>> pendingRequests = new ConcurrentSkipListMap<>();
+    private final AtomicLong nextRequestId = new AtomicLong();
+    // Streamed requests (openStream) by request id; their frames go to the stream, not a future
+    private final Map<Long, ResponseStream<?>> openStreams = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    // Server-initiated messages (notifications, forced logout), called on the reader thread
+    private final List<Consumer<Message>> pushListeners = new CopyOnWriteArrayList<>();
+    // Object transport: one request at a time; sendAsync runs it on this thread
+    private final Object objectStreamLock = new Object();
+    private ExecutorService objectStreamSender;
     
     public Client() {
         connected = false;
     }
     
-    public boolean connect() {
+    private static int preferredCodec(String name) {
+        if ("serialized".equalsIgnoreCase(name)) {
+            return FrameCodec.CODEC_SERIALIZED;
+        }
+        if ("compressed".equalsIgnoreCase(name)) {
+            return FrameCodec.CODEC_COMPRESSED;
+        }
+        // A server from before CODEC_FIELDS answers with CODEC_SERIALIZED
+        return FrameCodec.CODEC_FIELDS;
+    }
+    
+    public synchronized boolean connect() {
         try {
             socket = new Socket(SERVER_HOST, SERVER_PORT);
-            output = new ObjectOutputStream(socket.getOutputStream());
+            if (FRAMED) {
+                if (connectFramed()) {
+                    connected = true;
+                    startReader(socket, frameInput, codec);
+                    return true;
+                }
+                // Server does not speak the framed protocol: reconnect with object streams
+                socket.close();
+                socket = new Socket(SERVER_HOST, SERVER_PORT);
+            }
+            framed = false;
+            output = new MessageOutputStream(socket.getOutputStream(), STREAM_RESET_POLICY);
             input = new ObjectInputStream(socket.getInputStream());
             connected = true;
             return true;
@@ -33,33 +96,238 @@ public class Client {
         }
     }
     
+    private boolean connectFramed() throws IOException {
+        frameOutput = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        frameOutput.writeInt(FrameCodec.MAGIC);
+        frameOutput.writeByte(PREFERRED_CODEC | FrameCodec.FLAG_MULTIPLEX | FrameCodec.FLAG_PUSH);
+        frameOutput.flush();
+        frameInput = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        
+        // A framed server answers with the codec it accepted; an old server starts its object stream header instead
+        int accepted = frameInput.read();
+        if (accepted < 0 || !FrameCodec.isSupported(accepted & ~FrameCodec.FLAGS)) {
+            frameOutput = null;
+            frameInput = null;
+            return false;
+        }
+        framed = true;
+        codec = accepted & ~FrameCodec.FLAGS;
+        pushSupported = (accepted & FrameCodec.FLAG_PUSH) != 0;
+        return true;
+    }
+    
     public Message sendRequest(Message request) {
-        if (!connected) {
-            if (!connect()) {
-                Message error = new Message();
-                error.setSuccess(false);
-                error.setMessage("Cannot connect to server");
-                return error;
+        if (!ensureConnected()) {
+            return errorMessage("Cannot connect to server");
+        }
+        if (framed) {
+            // Futures are always completed with a Message, never exceptionally
+            return sendAsync(request).join();
+        }
+        
+        synchronized (objectStreamLock) {
+            try {
+                output.writeMessage(request);
+                return (Message) input.readObject();
+            } catch (IOException | ClassNotFoundException e) {
+                connected = false;
+                return errorMessage("Connection error: " + e.getMessage());
             }
         }
+    }
+    
+    // Sends a request without waiting for the response. On the framed transport the request
+    // is written immediately and the server may answer requests in any order; on the object
+    // transport requests are sent one after another from a background thread.
+    // Connection failures complete the future with an error Message, like sendRequest.
+    public CompletableFuture<Message> sendAsync(Message request) {
+        if (!ensureConnected()) {
+            return CompletableFuture.completedFuture(errorMessage("Cannot connect to server"));
+        }
+        if (!framed) {
+            return CompletableFuture.supplyAsync(() -> sendRequest(request), getObjectStreamSender());
+        }
         
+        long requestId = nextRequestId.incrementAndGet();
+        request.setRequestId(requestId);
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        pendingRequests.put(requestId, future);
+        Socket current = socket;
         try {
-            output.writeObject(request);
-            output.flush();
-            return (Message) input.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            connected = false;
-            Message error = new Message();
-            error.setSuccess(false);
-            error.setMessage("Connection error: " + e.getMessage());
-            return error;
+            synchronized (writeLock) {
+                FrameCodec.writeFrame(frameOutput, request, codec);
+            }
+        } catch (IOException e) {
+            connectionLost(current, e);
+        }
+        // The connection may have dropped before the request was registered
+        if (!connected && pendingRequests.remove(requestId) != null) {
+            future.complete(errorMessage("Connection error: connection closed"));
         }
+        return future;
     }
     
-    public void disconnect() {
+    // Streamed request (Message.EXPORT_*): the items are received chunk by chunk while the caller
+    // iterates and only a few chunks are buffered, so memory stays flat however large the result.
+    // While the caller is behind, this connection reads no other responses: do not send requests
+    // from inside the loop, and close() the stream if it is not read to the end.
+    public <T> ResponseStream<T> openStream(Message request) {
+        ResponseStream<T> stream = new ResponseStream<>();
+        if (!ensureConnected()) {
+            stream.fail(errorMessage("Cannot connect to server"));
+            return stream;
+        }
+        if (!framed) {
+            getObjectStreamSender().execute(() -> receiveObjectStream(request, stream));
+            return stream;
+        }
+        
+        long requestId = nextRequestId.incrementAndGet();
+        request.setRequestId(requestId);
+        openStreams.put(requestId, stream);
+        Socket current = socket;
+        try {
+            synchronized (writeLock) {
+                FrameCodec.writeFrame(frameOutput, request, codec);
+            }
+        } catch (IOException e) {
+            connectionLost(current, e);
+        }
+        if (!connected && openStreams.remove(requestId) != null) {
+            stream.fail(errorMessage("Connection error: connection closed"));
+        }
+        return stream;
+    }
+    
+    // Object transport: read every message of the response before the next request goes out
+    private void receiveObjectStream(Message request, ResponseStream<?> stream) {
+        synchronized (objectStreamLock) {
+            try {
+                output.writeMessage(request);
+                while (true) {
+                    Message message = (Message) input.readObject();
+                    stream.deliver(message);
+                    if (!Message.STREAM_CHUNK.equals(message.getType())) {
+                        return;
+                    }
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                connected = false;
+                stream.fail(errorMessage("Connection error: " + e.getMessage()));
+            }
+        }
+    }
+    
+    // True when the server pushes notifications and account changes, so the caller need not poll
+    public boolean isPushSupported() {
+        return connected && framed && pushSupported;
+    }
+    
+    public void addPushListener(Consumer<Message> listener) {
+        pushListeners.add(listener);
+    }
+    
+    public void removePushListener(Consumer<Message> listener) {
+        pushListeners.remove(listener);
+    }
+    
+    private boolean ensureConnected() {
+        if (connected) {
+            return true;
+        }
+        synchronized (this) {
+            return connected || connect();
+        }
+    }
+    
+    private void startReader(Socket readerSocket, DataInputStream in, int readerCodec) {
+        Thread reader = new Thread(() -> {
+            try {
+                while (true) {
+                    Message response = FrameCodec.readFrame(in, readerCodec);
+                    if (response.getRequestId() == Message.PUSH_REQUEST_ID) {
+                        for (Consumer<Message> listener : pushListeners) {
+                            listener.accept(response);
+                        }
+                        continue;
+                    }
+                    ResponseStream<?> stream = openStreams.get(response.getRequestId());
+                    if (stream != null) {
+                        // Blocks while the stream's reader is behind
+                        stream.deliver(response);
+                        if (!Message.STREAM_CHUNK.equals(response.getType())) {
+                            openStreams.remove(response.getRequestId());
+                        }
+                        continue;
+                    }
+                    CompletableFuture<Message> future;
+                    if (response.getRequestId() != 0) {
+                        future = pendingRequests.remove(response.getRequestId());
+                    } else {
+                        // Server without request ids answers in order: oldest request first
+                        Map.Entry<Long, CompletableFuture<Message>> oldest = pendingRequests.pollFirstEntry();
+                        future = oldest != null ? oldest.getValue() : null;
+                    }
+                    if (future != null) {
+                        future.complete(response);
+                    }
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                connectionLost(readerSocket, e);
+            }
+        }, "client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+    
+    // Fails every request still waiting on this socket; ignored if we already reconnected
+    private synchronized void connectionLost(Socket lostSocket, Exception e) {
+        if (lostSocket != socket) {
+            return;
+        }
+        connected = false;
+        try {
+            lostSocket.close();
+        } catch (IOException ignored) {
+        }
+        for (Long requestId : pendingRequests.keySet()) {
+            CompletableFuture<Message> future = pendingRequests.remove(requestId);
+            if (future != null) {
+                future.complete(errorMessage("Connection error: " + e.getMessage()));
+            }
+        }
+        for (Long requestId : openStreams.keySet()) {
+            ResponseStream<?> stream = openStreams.remove(requestId);
+            if (stream != null) {
+                stream.fail(errorMessage("Connection error: " + e.getMessage()));
+            }
+        }
+    }
+    
+    private synchronized ExecutorService getObjectStreamSender() {
+        if (objectStreamSender == null) {
+            objectStreamSender = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "client-sender");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return objectStreamSender;
+    }
+    
+    static Message errorMessage(String text) {
+        Message error = new Message();
+        error.setSuccess(false);
+        error.setMessage(text);
+        return error;
+    }
+    
+    public synchronized void disconnect() {
         try {
             if (output != null) output.close();
             if (input != null) input.close();
+            if (frameOutput != null) frameOutput.close();
+            if (frameInput != null) frameInput.close();
             if (socket != null && !socket.isClosed()) {
                 socket.close();
             }
@@ -73,8 +341,3 @@ public class Client {
         return connected && socket != null && !socket.isClosed();
     }
 }
-
-
-
-
-
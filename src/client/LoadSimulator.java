@@ -0,0 +1,86 @@
+package client;
+
+import util.Message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Opens many concurrent sessions against a running server and measures request latency.
+// Used to compare server modes, e.g.:
+//   java -Dserver.threads=platform server.Server   vs   java -Dserver.threads=virtual server.Server
+//   java client.LoadSimulator 5000 20 200
+// Arguments: <clients> <requests per client> <sender threads> [requests in flight per client]
+public class LoadSimulator {
+    
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int requestsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int senderThreads = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        // > 1: pipeline requests with sendAsync instead of waiting for each response
+        int inFlight = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        
+        // Phase 1: open every session and keep it open (idle terminals)
+        List<Client> sessions = new ArrayList<>();
+        long connectStart = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            Client client = new Client();
+            if (!client.connect()) {
+                System.err.println("Connected " + i + " clients before failure");
+                break;
+            }
+            sessions.add(client);
+        }
+        long connectMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart);
+        System.out.println("Connected " + sessions.size() + " clients in " + connectMs + " ms");
+        
+        // Phase 2: every session sends requests while all others stay connected.
+        // CHECK_USER_STATUS without login exercises the full request path without MongoDB.
+        long[] latencies = new long[sessions.size() * requestsPerClient];
+        AtomicInteger index = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        ExecutorService senders = Executors.newFixedThreadPool(senderThreads);
+        long runStart = System.nanoTime();
+        for (Client client : sessions) {
+            senders.execute(() -> {
+                for (int r = 0; r < requestsPerClient; r += inFlight) {
+                    int batch = Math.min(inFlight, requestsPerClient - r);
+                    long start = System.nanoTime();
+                    List<CompletableFuture<Message>> responses = new ArrayList<>();
+                    for (int b = 0; b < batch; b++) {
+                        responses.add(client.sendAsync(new Message(Message.CHECK_USER_STATUS, null)));
+                    }
+                    for (CompletableFuture<Message> future : responses) {
+                        Message response = future.join();
+                        latencies[index.getAndIncrement()] = System.nanoTime() - start;
+                        if (response == null || (response.getMessage() != null && response.getMessage().startsWith("Connection error"))) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        senders.shutdown();
+        senders.awaitTermination(30, TimeUnit.MINUTES);
+        long runMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - runStart));
+        
+        int count = index.get();
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        System.out.println("Requests: " + count + ", failures: " + failures.get() + ", time: " + runMs + " ms, throughput: "
+            + (count * 1000L / runMs) + " req/s");
+        if (count > 0) {
+            System.out.printf("Latency p50=%.2f ms, p99=%.2f ms, max=%.2f ms%n",
+                sorted[count / 2] / 1e6, sorted[(int) (count * 0.99)] / 1e6, sorted[count - 1] / 1e6);
+        }
+        
+        for (Client client : sessions) {
+            client.disconnect();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package client;
+
+import util.Message;
+import util.Page;
+
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import java.awt.Rectangle;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+// Fills a table from a GET_*_PAGE request one page at a time: reload() asks for the first
+// page and the next one is requested when the user scrolls close to the last row, so only
+// the rows that are actually looked at are transferred and kept in memory.
+class PagedTableLoader<T> {
+    static final int PAGE_SIZE = 100;
+    // Start loading the next page this many rows before the end of the table
+    private static final int PREFETCH_ROWS = 20;
+    // Pages fetched on their own (to fill the viewport) after the filter hid rows, before the
+    // loader waits for the user to scroll: a filter matching few rows would otherwise never fill
+    // the table and pull in the whole collection
+    private static final int MAX_FILTERED_PAGES = 5;
+    
+    private final Client client;
+    private final JTable table;
+    private final String requestType;
+    private final Predicate<T> filter;
+    private final Consumer<T> rowAdder;
+    private final Runnable pageListener;
+    // Third element of each request: newestFirst for GET_*_PAGE, the BookQuery for SEARCH_BOOKS_PAGE
+    private Object parameter = Boolean.FALSE;
+    private String nextCursor;
+    private boolean loading;
+    private boolean active;
+    // Replies of a request made before the last reload()/cancel() are dropped
+    private int generation;
+    private int loadedCount;
+    private long total;
+    // Pages the filter hid rows of since the last scroll or reload()
+    private int filteredPages;
+    
+    // filter decides which items become rows (client-side search boxes), rowAdder adds one row
+    // to the table model, pageListener runs after each page (count labels)
+    PagedTableLoader(Client client, JTable table, String requestType, Predicate<T> filter,
+            Consumer<T> rowAdder, Runnable pageListener) {
+        this.client = client;
+        this.table = table;
+        this.requestType = requestType;
+        this.filter = filter;
+        this.rowAdder = rowAdder;
+        this.pageListener = pageListener;
+        // The table moves inside its viewport when scrolled and grows when rows are added
+        table.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentMoved(ComponentEvent e) {
+                // Scrolled by the user: fetching more was asked for
+                filteredPages = 0;
+                checkScroll();
+            }
+            
+            @Override
+            public void componentResized(ComponentEvent e) {
+                checkScroll();
+            }
+        });
+    }
+    
+    // Starts over from the first page; the caller clears the table model first
+    void reload() {
+        generation++;
+        nextCursor = null;
+        loadedCount = 0;
+        total = 0;
+        filteredPages = 0;
+        active = true;
+        requestPage();
+    }
+    
+    // Starts over with another request parameter, e.g. a new search
+    void reload(Object parameter) {
+        this.parameter = parameter;
+        reload();
+    }
+    
+    // Stops appending pages, e.g. while the table shows search results instead
+    void cancel() {
+        generation++;
+        active = false;
+        loading = false;
+    }
+    
+    int getLoadedCount() {
+        return loadedCount;
+    }
+    
+    long getTotal() {
+        return total;
+    }
+    
+    boolean hasMore() {
+        return active && nextCursor != null;
+    }
+    
+    private void checkScroll() {
+        if (loading || !hasMore() || filteredPages >= MAX_FILTERED_PAGES) {
+            return;
+        }
+        Rectangle visible = table.getVisibleRect();
+        int threshold = table.getHeight() - PREFETCH_ROWS * table.getRowHeight();
+        if (visible.y + visible.height >= threshold) {
+            requestPage();
+        }
+    }
+    
+    private void requestPage() {
+        loading = true;
+        int requestGeneration = generation;
+        Message request = new Message(requestType, new Object[]{nextCursor, PAGE_SIZE, parameter});
+        client.sendAsync(request).thenAccept(response ->
+            SwingUtilities.invokeLater(() -> handlePage(requestGeneration, response)));
+    }
+    
+    private void handlePage(int requestGeneration, Message response) {
+        if (requestGeneration != generation) {
+            return;
+        }
+        loading = false;
+        if (!response.isSuccess() || !(response.getData() instanceof Page)) {
+            active = false;
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Page<T> page = (Page<T>) response.getData();
+        boolean hidden = false;
+        for (T item : page.getItems()) {
+            if (filter.test(item)) {
+                rowAdder.accept(item);
+            } else {
+                hidden = true;
+            }
+        }
+        if (hidden) {
+            filteredPages++;
+        }
+        loadedCount += page.getItems().size();
+        total = page.getTotal();
+        nextCursor = page.getNextCursor();
+        pageListener.run();
+        // A page that does not fill the viewport gives no scroll event, so check again once the
+        // table has been laid out (up to MAX_FILTERED_PAGES while the filter hides rows)
+        SwingUtilities.invokeLater(this::checkScroll);
+    }
+}
@@ -0,0 +1,105 @@
+package client;
+
+import util.Message;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Items of a streamed response (Client.openStream), received chunk by chunk while the caller
+// iterates. At most BUFFERED_CHUNKS chunks wait here; beyond that the receiving thread blocks,
+// which stops reading the socket and slows the server down to the caller's pace.
+public class ResponseStream<T> implements Iterator<T>, AutoCloseable {
+    private static final int BUFFERED_CHUNKS = 4;
+    
+    private final BlockingQueue<Message> chunks = new ArrayBlockingQueue<>(BUFFERED_CHUNKS);
+    private volatile Message failure;
+    private volatile boolean closed;
+    private Iterator<T> current = Collections.emptyIterator();
+    private Message end;
+    
+    // Receiving thread: hands over the next message of the response. Once the caller has
+    // closed the stream the rest of it is dropped.
+    void deliver(Message message) {
+        try {
+            while (!closed && !chunks.offer(message, 100, TimeUnit.MILLISECONDS)) {
+                // caller is behind, wait for room
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    // Connection lost: the stream ends with this message after the buffered chunks
+    void fail(Message error) {
+        failure = error;
+    }
+    
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (end != null) {
+                return false;
+            }
+            Message message = take();
+            if (Message.STREAM_CHUNK.equals(message.getType()) && message.getData() instanceof List) {
+                @SuppressWarnings("unchecked")
+                List<T> items = (List<T>) message.getData();
+                current = items.iterator();
+            } else {
+                end = message;
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+    
+    // After the last item: whether the server sent the whole result
+    public boolean isSuccess() {
+        return end != null && end.isSuccess();
+    }
+    
+    // After the last item: the server's summary or the error
+    public String getMessage() {
+        return end != null ? end.getMessage() : null;
+    }
+    
+    // Abandons the rest of the response
+    @Override
+    public void close() {
+        closed = true;
+        chunks.clear();
+        current = Collections.emptyIterator();
+        if (end == null) {
+            end = Client.errorMessage("Stream closed");
+        }
+    }
+    
+    private Message take() {
+        try {
+            while (true) {
+                Message message = chunks.poll(100, TimeUnit.MILLISECONDS);
+                if (message != null) {
+                    return message;
+                }
+                if (failure != null) {
+                    return failure;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Client.errorMessage("Interrupted");
+        }
+    }
+}
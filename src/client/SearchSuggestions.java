@@ -0,0 +1,173 @@
+package client;
+
+import util.Message;
+
+import javax.swing.JMenuItem;
+import javax.swing.JPopupMenu;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+// Type-ahead under a search box: a moment after the user stops typing, SUGGEST_BOOKS is sent
+// with the text and the titles/authors it returns are shown in a popup. Up/Down move through
+// them, Enter or a click puts one in the box and runs the search, Escape closes the popup.
+// The popup never takes the focus, so typing continues in the box.
+class SearchSuggestions {
+    // Wait after the last keystroke before asking, so a word typed quickly is one request
+    private static final int DELAY_MS = 150;
+    
+    private final Client client;
+    private final JTextField field;
+    private final Runnable search;
+    private final JPopupMenu popup = new JPopupMenu();
+    private final List<JMenuItem> items = new ArrayList<>();
+    private final Timer timer;
+    // Replies to a request older than the last keystroke are dropped
+    private int generation;
+    private int selected = -1;
+    // Set while a picked suggestion is written into the box
+    private boolean adjusting;
+    
+    // search runs after a suggestion is picked
+    SearchSuggestions(Client client, JTextField field, Runnable search) {
+        this.client = client;
+        this.field = field;
+        this.search = search;
+        popup.setFocusable(false);
+        timer = new Timer(DELAY_MS, e -> requestSuggestions());
+        timer.setRepeats(false);
+        
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                textChanged();
+            }
+            
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                textChanged();
+            }
+            
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        field.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (!popup.isVisible()) {
+                    return;
+                }
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_DOWN:
+                        select(Math.min(selected + 1, items.size() - 1));
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_UP:
+                        select(Math.max(selected - 1, 0));
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_ENTER:
+                        if (selected >= 0) {
+                            pick(items.get(selected).getText());
+                            e.consume();
+                        } else {
+                            hide();
+                        }
+                        break;
+                    case KeyEvent.VK_ESCAPE:
+                        hide();
+                        e.consume();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+        field.addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusLost(FocusEvent e) {
+                hide();
+            }
+        });
+    }
+    
+    private void textChanged() {
+        if (adjusting) {
+            return;
+        }
+        generation++;
+        timer.restart();
+    }
+    
+    private void requestSuggestions() {
+        String text = field.getText();
+        if (text.trim().isEmpty() || !field.isEnabled() || !field.hasFocus()) {
+            hide();
+            return;
+        }
+        int requestGeneration = generation;
+        client.sendAsync(new Message(Message.SUGGEST_BOOKS, text)).thenAccept(response ->
+            SwingUtilities.invokeLater(() -> showSuggestions(requestGeneration, response)));
+    }
+    
+    private void showSuggestions(int requestGeneration, Message response) {
+        if (requestGeneration != generation || !field.hasFocus()) {
+            return;
+        }
+        hide();
+        if (!response.isSuccess() || !(response.getData() instanceof List)) {
+            return;
+        }
+        for (Object suggestion : (List<?>) response.getData()) {
+            JMenuItem item = new JMenuItem(String.valueOf(suggestion));
+            item.setFont(field.getFont());
+            item.addActionListener(e -> pick(item.getText()));
+            items.add(item);
+            popup.add(item);
+        }
+        if (!items.isEmpty()) {
+            popup.setPopupSize(Math.max(field.getWidth(), popup.getPreferredSize().width),
+                popup.getPreferredSize().height);
+            popup.show(field, 0, field.getHeight());
+        }
+    }
+    
+    private void select(int index) {
+        if (selected >= 0) {
+            items.get(selected).setArmed(false);
+        }
+        selected = index;
+        if (selected >= 0) {
+            items.get(selected).setArmed(true);
+        }
+    }
+    
+    private void pick(String text) {
+        hide();
+        generation++;
+        adjusting = true;
+        try {
+            field.setText(text);
+        } finally {
+            adjusting = false;
+        }
+        search.run();
+    }
+    
+    private void hide() {
+        timer.stop();
+        popup.setVisible(false);
+        popup.removeAll();
+        items.clear();
+        selected = -1;
+    }
+}
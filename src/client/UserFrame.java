@@ -3,6 +3,7 @@ package client;
 import model.Book;
 import model.BorrowRecord;
 import model.User;
+import util.BookQuery;
 import util.Message;
 
 import javax.swing.*;
@@ -49,6 +50,12 @@ public class UserFrame extends JFrame {
     
     // Tables
     private JTable searchBooksTable;
+    private PagedTableLoader<Book> searchBooksLoader;
+    // Pages of the current search (SEARCH_BOOKS_PAGE), shown in searchBooksTable instead
+    private PagedTableLoader<Object> searchResultsLoader;
+    // The query whose results are shown; null while the table lists the whole catalog
+    private BookQuery searchQuery;
+    private boolean retriedFuzzy;
     private JTable borrowBooksTable;
     private JTable myBorrowsTable;
     private JTable newBooksTable;
@@ -80,7 +87,15 @@ public class UserFrame extends JFrame {
     // Search field
     private JTextField searchField;
     private JComboBox<String> categoryComboBox;
+    private JTextField yearFromField;
+    private JTextField yearToField;
+    private JCheckBox availableOnlyCheckBox;
+    private JCheckBox fuzzyCheckBox;
+    private JComboBox<String> sortComboBox;
     private JLabel searchResultLabel;
+    // Labels of sortComboBox and the BookQuery sort order of each
+    private static final String[] SORT_LABELS = {"Mặc định", "Phù hợp nhất", "Tên A-Z", "Mới nhất", "Cũ nhất"};
+    private static final String[] SORT_ORDERS = {null, BookQuery.SORT_RELEVANCE, BookQuery.SORT_TITLE, BookQuery.SORT_NEWEST, BookQuery.SORT_OLDEST};
     
     // Personal info fields
     private JTextField emailField;
@@ -109,6 +124,9 @@ public class UserFrame extends JFrame {
     // Account locked flag
     private boolean isAccountLocked = false;
     
+    // Receives notifications and account locks pushed by the server
+    private final java.util.function.Consumer<Message> pushListener = this::handlePush;
+    
     // Dark royal blue color scheme - matching image
     private final Color DARK_ROYAL_BLUE = new Color(25, 25, 112); // Dark royal blue
     private final Color ROYAL_BLUE = new Color(30, 58, 138); // Slightly lighter royal blue
@@ -140,7 +158,7 @@ public class UserFrame extends JFrame {
         setLocationRelativeTo(null);
         
         // Search books table - updated columns
-        String[] searchColumns = {"Tên sách", "Tác giả", "Thể loại", "Năm xuất bản", "Số trang", "Giá (VND)", "Có sẵn", "Tổng số"};
+        String[] searchColumns = {"Tên sách", "Tác giả", "Thể loại", "Năm xuất bản", "Số trang", "Giá (VND)", "Có sẵn", "Tổng số", "Độ phù hợp"};
         searchBooksModel = new DefaultTableModel(searchColumns, 0) {
             @Override
             public boolean isCellEditable(int row, int column) {
@@ -150,6 +168,10 @@ public class UserFrame extends JFrame {
         searchBooksTable = new JTable(searchBooksModel);
         styleTable(searchBooksTable);
         searchBooksTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        searchBooksLoader = new PagedTableLoader<>(client, searchBooksTable, Message.GET_BOOKS_PAGE,
+            book -> true, this::addSearchBookRow, this::updateSearchResultLabel);
+        searchResultsLoader = new PagedTableLoader<>(client, searchBooksTable, Message.SEARCH_BOOKS_PAGE,
+            result -> true, this::addSearchResultRow, this::searchPageLoaded);
         
         // Borrow books table - will be used for available books to borrow
         String[] borrowColumns = {"ID", "Tên sách", "Tác giả", "Thể loại", "Còn lại", "Mô tả"};
@@ -211,8 +233,24 @@ public class UserFrame extends JFrame {
         newBooksTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         
         searchField = createRoundedTextField(20);
+        new SearchSuggestions(client, searchField, () -> {
+            if (!isAccountLocked) {
+                performSearch();
+            }
+        });
         categoryComboBox = new JComboBox<>(new String[]{"Tất cả thể loại"});
         styleComboBox(categoryComboBox);
+        yearFromField = createRoundedTextField(4);
+        yearToField = createRoundedTextField(4);
+        availableOnlyCheckBox = new JCheckBox("Chỉ sách còn");
+        availableOnlyCheckBox.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        availableOnlyCheckBox.setBackground(Color.WHITE);
+        fuzzyCheckBox = new JCheckBox("Tìm gần đúng");
+        fuzzyCheckBox.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        fuzzyCheckBox.setBackground(Color.WHITE);
+        fuzzyCheckBox.setToolTipText("Tìm cả những từ gõ sai vài ký tự");
+        sortComboBox = new JComboBox<>(SORT_LABELS);
+        styleComboBox(sortComboBox);
         searchResultLabel = new JLabel("Tìm thấy 0 quyển sách");
         searchResultLabel.setFont(new Font("Segoe UI", Font.BOLD, 13));
         searchResultLabel.setForeground(new Color(66, 133, 244));
@@ -787,6 +825,11 @@ public class UserFrame extends JFrame {
             if (!isAccountLocked) {
                 searchField.setText("");
                 categoryComboBox.setSelectedIndex(0);
+                yearFromField.setText("");
+                yearToField.setText("");
+                availableOnlyCheckBox.setSelected(false);
+                fuzzyCheckBox.setSelected(false);
+                sortComboBox.setSelectedIndex(0);
                 loadAllBooksForSearch();
             } else {
                 showStyledMessage("⚠ Tài khoản của bạn đã bị khóa. Bạn không thể thực hiện thao tác này.", "Tài khoản bị khóa", JOptionPane.WARNING_MESSAGE);
@@ -820,6 +863,33 @@ public class UserFrame extends JFrame {
         gbc.gridx = 6;
         searchPanel.add(refreshButton, gbc);
         
+        JLabel yearLabel = new JLabel("Năm XB:");
+        yearLabel.setFont(new Font("Segoe UI", Font.BOLD, 12));
+        yearLabel.setForeground(new Color(44, 62, 80));
+        JPanel yearPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        yearPanel.setBackground(Color.WHITE);
+        yearPanel.add(yearFromField);
+        yearPanel.add(new JLabel("-"));
+        yearPanel.add(yearToField);
+        
+        JLabel sortLabel = new JLabel("Sắp xếp:");
+        sortLabel.setFont(new Font("Segoe UI", Font.BOLD, 12));
+        sortLabel.setForeground(new Color(44, 62, 80));
+        
+        gbc.gridy = 1;
+        gbc.gridx = 1;
+        searchPanel.add(yearLabel, gbc);
+        gbc.gridx = 2;
+        searchPanel.add(yearPanel, gbc);
+        gbc.gridx = 3;
+        searchPanel.add(sortLabel, gbc);
+        gbc.gridx = 4;
+        searchPanel.add(sortComboBox, gbc);
+        gbc.gridx = 5;
+        searchPanel.add(availableOnlyCheckBox, gbc);
+        gbc.gridx = 6;
+        searchPanel.add(fuzzyCheckBox, gbc);
+        
         mainPanel.add(searchPanel, BorderLayout.NORTH);
         
         // Book list table - Expanded height
@@ -864,37 +934,27 @@ public class UserFrame extends JFrame {
         categoryComboBox.addItem("Tâm lý học");
     }
     
+    // Keyword and filters go to the server as one BookQuery; only the matching books come back
     private void performSearch() {
-        String keyword = searchField.getText().trim();
-        String category = (String) categoryComboBox.getSelectedItem();
-        
-        if (keyword.isEmpty() && "Tất cả thể loại".equals(category)) {
-            loadAllBooksForSearch();
+        BookQuery query = new BookQuery(searchField.getText().trim());
+        query.setCategory(selectedCategory());
+        try {
+            query.setFromYear(parseYear(yearFromField));
+            query.setToYear(parseYear(yearToField));
+        } catch (NumberFormatException e) {
+            showStyledMessage("Năm xuất bản không hợp lệ!", "Lỗi", JOptionPane.WARNING_MESSAGE);
             return;
         }
-        
-        if (!keyword.isEmpty()) {
-            searchBooks(keyword);
-        } else {
-            loadAllBooksForSearch();
-        }
-        
-        // Filter by category if needed
-        if (!"Tất cả thể loại".equals(category)) {
-            filterBooksByCategory(category);
-        }
+        query.setAvailableOnly(availableOnlyCheckBox.isSelected());
+        query.setFuzzy(fuzzyCheckBox.isSelected() && query.hasKeyword());
+        query.setSort(SORT_ORDERS[Math.max(0, sortComboBox.getSelectedIndex())]);
+        searchBooks(query);
     }
     
-    private void filterBooksByCategory(String category) {
-        DefaultTableModel model = (DefaultTableModel) searchBooksTable.getModel();
-        int rowCount = model.getRowCount();
-        for (int i = rowCount - 1; i >= 0; i--) {
-            String bookCategory = (String) model.getValueAt(i, 2);
-            if (!category.equals(bookCategory)) {
-                model.removeRow(i);
-            }
-        }
-        updateSearchResultLabel();
+    // null when the field is empty
+    private static Integer parseYear(JTextField field) {
+        String text = field.getText().trim();
+        return text.isEmpty() ? null : Integer.valueOf(text);
     }
     
     private void borrowBookFromSearch() {
@@ -919,46 +979,37 @@ public class UserFrame extends JFrame {
         }
         
         // Find book by title
-        Message request = new Message(Message.GET_ALL_BOOKS, null);
+        Message request = new Message(Message.GET_BOOK_BY_TITLE, bookTitle);
         Message response = client.sendRequest(request);
         
-        if (response.isSuccess() && response.getData() instanceof List) {
-            @SuppressWarnings("unchecked")
-            List<Book> books = (List<Book>) response.getData();
-            String bookId = null;
-            for (Book book : books) {
-                if (book.getTitle().equals(bookTitle)) {
-                    bookId = book.getBookId() != null ? book.getBookId() : String.valueOf(book.getId());
-                    break;
-                }
-            }
+        Book found = response.getData() instanceof Book ? (Book) response.getData() : null;
+        String bookId = found != null ? found.getBookId() : null;
+        
+        if (bookId != null) {
+            int confirm = JOptionPane.showConfirmDialog(this, 
+                "Bạn có chắc chắn muốn mượn sách này?", "Xác nhận", JOptionPane.YES_NO_OPTION);
             
-            if (bookId != null) {
-                int confirm = JOptionPane.showConfirmDialog(this, 
-                    "Bạn có chắc chắn muốn mượn sách này?", "Xác nhận", JOptionPane.YES_NO_OPTION);
+            if (confirm == JOptionPane.YES_OPTION) {
+                Message borrowRequest = new Message(Message.BORROW_BOOK, new Object[]{currentUser.getUserId(), bookId});
+                Message borrowResponse = client.sendRequest(borrowRequest);
                 
-                if (confirm == JOptionPane.YES_OPTION) {
-                    Message borrowRequest = new Message(Message.BORROW_BOOK, new Object[]{currentUser.getUserId(), bookId});
-                    Message borrowResponse = client.sendRequest(borrowRequest);
-                    
-                    if (borrowResponse.isSuccess()) {
-                        JOptionPane.showMessageDialog(this, borrowResponse.getMessage(), "Thành công", JOptionPane.INFORMATION_MESSAGE);
-                        // Refresh all data including current borrows
-                        loadAllBooksForSearch();
-                        loadBorrowBooks();
-                        loadCurrentBorrows(); // This updates the "Mượn sách" tab
-                        loadHomeCurrentBorrows(); // This updates the "Trang chủ" tab
-                        loadMyBorrows();
-                        loadNewBooks();
-                        refreshUserStats();
-                        updateBorrowStats(); // Update borrow statistics
-                    } else {
-                        JOptionPane.showMessageDialog(this, borrowResponse.getMessage(), "Lỗi", JOptionPane.ERROR_MESSAGE);
-                    }
+                if (borrowResponse.isSuccess()) {
+                    JOptionPane.showMessageDialog(this, borrowResponse.getMessage(), "Thành công", JOptionPane.INFORMATION_MESSAGE);
+                    // Refresh all data including current borrows
+                    loadAllBooksForSearch();
+                    loadBorrowBooks();
+                    loadCurrentBorrows(); // This updates the "Mượn sách" tab
+                    loadHomeCurrentBorrows(); // This updates the "Trang chủ" tab
+                    loadMyBorrows();
+                    loadNewBooks();
+                    refreshUserStats();
+                    updateBorrowStats(); // Update borrow statistics
+                } else {
+                    JOptionPane.showMessageDialog(this, borrowResponse.getMessage(), "Lỗi", JOptionPane.ERROR_MESSAGE);
                 }
-            } else {
-                showStyledMessage("✗ Không tìm thấy thông tin sách!", "Lỗi", JOptionPane.ERROR_MESSAGE);
             }
+        } else {
+            showStyledMessage("✗ Không tìm thấy thông tin sách!", "Lỗi", JOptionPane.ERROR_MESSAGE);
         }
     }
     
@@ -983,20 +1034,14 @@ public class UserFrame extends JFrame {
         Integer total = ((Number) searchBooksModel.getValueAt(selectedRow, 7)).intValue();
         
         // Get full book description
-        Message request = new Message(Message.GET_ALL_BOOKS, null);
+        Message request = new Message(Message.GET_BOOK_BY_TITLE, bookTitle);
         Message response = client.sendRequest(request);
         String description = "";
         String isbn = "";
-        if (response.isSuccess() && response.getData() instanceof List) {
-            @SuppressWarnings("unchecked")
-            List<Book> books = (List<Book>) response.getData();
-            for (Book book : books) {
-                if (book.getTitle().equals(bookTitle)) {
-                    description = book.getDescription() != null ? book.getDescription() : "";
-                    isbn = book.getIsbn() != null ? book.getIsbn() : "";
-                    break;
-                }
-            }
+        if (response.isSuccess() && response.getData() instanceof Book) {
+            Book book = (Book) response.getData();
+            description = book.getDescription() != null ? book.getDescription() : "";
+            isbn = book.getIsbn() != null ? book.getIsbn() : "";
         }
         
         // Create custom dialog for book details
@@ -1123,8 +1168,19 @@ public class UserFrame extends JFrame {
     }
     
     private void updateSearchResultLabel() {
+        if (searchQuery != null) {
+            String more = searchResultsLoader.hasMore() ? " (cuộn xuống để xem thêm)" : "";
+            if (retriedFuzzy) {
+                searchResultLabel.setText("Không có kết quả khớp chính xác, tìm thấy "
+                    + searchResultsLoader.getTotal() + " quyển sách gần đúng" + more);
+            } else {
+                searchResultLabel.setText("Tìm thấy " + searchResultsLoader.getTotal() + " quyển sách" + more);
+            }
+            return;
+        }
         int count = searchBooksModel.getRowCount();
-        searchResultLabel.setText("Tìm thấy " + count + " quyển sách");
+        String more = searchBooksLoader.hasMore() ? " (cuộn xuống để xem thêm)" : "";
+        searchResultLabel.setText("Tìm thấy " + count + " quyển sách" + more);
     }
     
     private String formatPrice(double price) {
@@ -2003,19 +2059,24 @@ public class UserFrame extends JFrame {
     }
     
     private void startNotificationTimer() {
-        // Check notifications every 3 seconds while user is logged in
-        notificationTimer = new javax.swing.Timer(3000, e -> {
-            checkNotifications();
-        });
-        notificationTimer.setRepeats(true);
-        notificationTimer.start();
-        
-        // Check account status every 5 seconds while user is logged in
-        accountStatusTimer = new javax.swing.Timer(5000, e -> {
-            checkAccountStatus();
-        });
-        accountStatusTimer.setRepeats(true);
-        accountStatusTimer.start();
+        if (client.isPushSupported()) {
+            // Server pushes notifications and account locks, no need to poll for them
+            client.addPushListener(pushListener);
+        } else {
+            // Check notifications every 3 seconds while user is logged in
+            notificationTimer = new javax.swing.Timer(3000, e -> {
+                checkNotifications();
+            });
+            notificationTimer.setRepeats(true);
+            notificationTimer.start();
+            
+            // Check account status every 5 seconds while user is logged in
+            accountStatusTimer = new javax.swing.Timer(5000, e -> {
+                checkAccountStatus();
+            });
+            accountStatusTimer.setRepeats(true);
+            accountStatusTimer.start();
+        }
         
         // Sync data every 10 seconds to keep in sync with admin changes
         dataSyncTimer = new javax.swing.Timer(10000, e -> {
@@ -2030,6 +2091,7 @@ public class UserFrame extends JFrame {
         addWindowListener(new java.awt.event.WindowAdapter() {
             @Override
             public void windowClosing(java.awt.event.WindowEvent windowEvent) {
+                client.removePushListener(pushListener);
                 if (notificationTimer != null) {
                     notificationTimer.stop();
                 }
@@ -2043,6 +2105,17 @@ public class UserFrame extends JFrame {
         });
     }
     
+    // Called on the client's reader thread
+    private void handlePush(Message push) {
+        if (Message.PUSH_NOTIFICATION.equals(push.getType())) {
+            Message notifications = new Message(Message.GET_USER_NOTIFICATIONS, java.util.Collections.singletonList(push.getData()));
+            notifications.setSuccess(true);
+            SwingUtilities.invokeLater(() -> handleNotifications(notifications));
+        } else if (Message.FORCE_LOGOUT.equals(push.getType())) {
+            SwingUtilities.invokeLater(() -> handleAccountStatus(push));
+        }
+    }
+    
     private void syncData() {
         // Sync data based on current tab to avoid unnecessary updates
         int currentTab = mainTabbedPane != null ? mainTabbedPane.getSelectedIndex() : 0;
@@ -2073,10 +2146,13 @@ public class UserFrame extends JFrame {
     }
     
     private void checkAccountStatus() {
+        // Sent asynchronously so the timer does not hold the UI thread while the request is in flight
+        client.sendAsync(new Message(Message.CHECK_USER_STATUS, null))
+            .thenAccept(response -> SwingUtilities.invokeLater(() -> handleAccountStatus(response)));
+    }
+    
+    private void handleAccountStatus(Message response) {
         try {
-            Message request = new Message(Message.CHECK_USER_STATUS, null);
-            Message response = client.sendRequest(request);
-            
             if (response != null && Message.FORCE_LOGOUT.equals(response.getType())) {
                 // Account is locked
                 if (!isAccountLocked) {
@@ -2144,6 +2220,11 @@ public class UserFrame extends JFrame {
         if (categoryComboBox != null) {
             categoryComboBox.setEnabled(false);
         }
+        if (yearFromField != null) yearFromField.setEnabled(false);
+        if (yearToField != null) yearToField.setEnabled(false);
+        if (availableOnlyCheckBox != null) availableOnlyCheckBox.setEnabled(false);
+        if (fuzzyCheckBox != null) fuzzyCheckBox.setEnabled(false);
+        if (sortComboBox != null) sortComboBox.setEnabled(false);
         
         // Disable profile fields
         if (emailField != null) emailField.setEnabled(false);
@@ -2193,6 +2274,11 @@ public class UserFrame extends JFrame {
         if (categoryComboBox != null) {
             categoryComboBox.setEnabled(true);
         }
+        if (yearFromField != null) yearFromField.setEnabled(true);
+        if (yearToField != null) yearToField.setEnabled(true);
+        if (availableOnlyCheckBox != null) availableOnlyCheckBox.setEnabled(true);
+        if (fuzzyCheckBox != null) fuzzyCheckBox.setEnabled(true);
+        if (sortComboBox != null) sortComboBox.setEnabled(true);
         
         // Re-enable profile fields (read-only fields remain disabled)
         if (emailField != null) emailField.setEnabled(true);
@@ -2206,10 +2292,12 @@ public class UserFrame extends JFrame {
     }
     
     private void checkNotifications() {
+        client.sendAsync(new Message(Message.GET_USER_NOTIFICATIONS, null))
+            .thenAccept(response -> SwingUtilities.invokeLater(() -> handleNotifications(response)));
+    }
+    
+    private void handleNotifications(Message response) {
         try {
-            Message request = new Message(Message.GET_USER_NOTIFICATIONS, null);
-            Message response = client.sendRequest(request);
-            
             if (response.isSuccess() && response.getData() instanceof List) {
                 @SuppressWarnings("unchecked")
                 List<Document> notifications = (List<Document>) response.getData();
@@ -2380,30 +2468,57 @@ public class UserFrame extends JFrame {
         return count;
     }
     
+    // The whole catalog, or only the selected category, which the server filters (a filter
+    // applied here would hide most rows of each page and keep the loader fetching)
     private void loadAllBooksForSearch() {
-        Message request = new Message(Message.GET_ALL_BOOKS, null);
-        Message response = client.sendRequest(request);
-        
-        if (response.isSuccess() && response.getData() instanceof List) {
-            @SuppressWarnings("unchecked")
-            List<Book> books = (List<Book>) response.getData();
-            searchBooksModel.setRowCount(0);
-            for (Book book : books) {
-                searchBooksModel.addRow(new Object[]{
-                    book.getTitle(),
-                    book.getAuthor(),
-                    book.getCategory(),
-                    book.getPublishYear(),
-                    book.getPages(),
-                    formatPrice(book.getPrice()),
-                    book.getAvailableCopies(),
-                    book.getTotalCopies()
-                });
-            }
-            updateSearchResultLabel();
+        String category = selectedCategory();
+        if (category != null) {
+            BookQuery query = new BookQuery();
+            query.setCategory(category);
+            showSearchResults(query);
+            return;
+        }
+        searchQuery = null;
+        searchResultsLoader.cancel();
+        searchBooksModel.setRowCount(0);
+        searchBooksLoader.reload();
+    }
+    
+    // null for "Tất cả thể loại"
+    private String selectedCategory() {
+        String category = categoryComboBox != null ? (String) categoryComboBox.getSelectedItem() : null;
+        return category == null || "Tất cả thể loại".equals(category) ? null : category;
+    }
+    
+    private void addSearchBookRow(Book book) {
+        addSearchBookRow(book, null);
+    }
+    
+    // A fuzzy search answers Object[]{Book, Double relevance}
+    private void addSearchResultRow(Object result) {
+        if (result instanceof Object[]) {
+            Object[] hit = (Object[]) result;
+            addSearchBookRow((Book) hit[0], (Double) hit[1]);
+        } else {
+            addSearchBookRow((Book) result);
         }
     }
     
+    // relevance: score of a fuzzy search result, shown as a percentage
+    private void addSearchBookRow(Book book, Double relevance) {
+        searchBooksModel.addRow(new Object[]{
+            book.getTitle(),
+            book.getAuthor(),
+            book.getCategory(),
+            book.getPublishYear(),
+            book.getPages(),
+            formatPrice(book.getPrice()),
+            book.getAvailableCopies(),
+            book.getTotalCopies(),
+            relevance != null ? String.format("%.0f%%", relevance * 100) : ""
+        });
+    }
+    
     private void loadBorrowBooks() {
         Message request = new Message(Message.GET_ALL_BOOKS, null);
         Message response = client.sendRequest(request);
@@ -2459,37 +2574,39 @@ public class UserFrame extends JFrame {
         }
     }
     
-    private void searchBooks(String keyword) {
+    private void searchBooks(BookQuery query) {
         if (isAccountLocked) {
             showStyledMessage("⚠ Tài khoản của bạn đã bị khóa. Bạn không thể thực hiện thao tác này.", "Tài khoản bị khóa", JOptionPane.WARNING_MESSAGE);
             return;
         }
-        if (keyword == null || keyword.trim().isEmpty()) {
+        if (query.isEmpty()) {
             loadAllBooksForSearch();
             return;
         }
-        
-        Message request = new Message(Message.SEARCH_BOOKS, keyword.trim());
-        Message response = client.sendRequest(request);
-        
-        if (response.isSuccess() && response.getData() instanceof List) {
-            @SuppressWarnings("unchecked")
-            List<Book> books = (List<Book>) response.getData();
+        showSearchResults(query);
+    }
+    
+    // Search results replace the paged catalog until the next loadAllBooksForSearch(); they come
+    // a page at a time as well, however many books match
+    private void showSearchResults(BookQuery query) {
+        searchBooksLoader.cancel();
+        searchQuery = query;
+        retriedFuzzy = false;
+        searchBooksModel.setRowCount(0);
+        searchResultsLoader.reload(query);
+    }
+    
+    private void searchPageLoaded() {
+        if (!retriedFuzzy && !searchQuery.isFuzzy() && searchQuery.hasKeyword()
+                && searchResultsLoader.getTotal() == 0) {
+            // Nothing matches as typed: look again forgiving typos
+            retriedFuzzy = true;
+            searchQuery.setFuzzy(true);
             searchBooksModel.setRowCount(0);
-            for (Book book : books) {
-                searchBooksModel.addRow(new Object[]{
-                    book.getTitle(),
-                    book.getAuthor(),
-                    book.getCategory(),
-                    book.getPublishYear(),
-                    book.getPages(),
-                    formatPrice(book.getPrice()),
-                    book.getAvailableCopies(),
-                    book.getTotalCopies()
-                });
-            }
-            updateSearchResultLabel();
+            searchResultsLoader.reload(searchQuery);
+            return;
         }
+        updateSearchResultLabel();
     }
     
     private void borrowBook() {
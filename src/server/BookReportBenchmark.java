@@ -0,0 +1,147 @@
+package server;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+
+// Compares getBookReport (two aggregations) with the previous per-category / per-book counting
+// on a scratch database (library_bench, dropped and re-seeded): round-trips and time.
+//   java server.BookReportBenchmark 100000
+// Arguments: <books> [borrow records, default 2 per book]
+public class BookReportBenchmark {
+    private static final String CONNECTION_STRING = "mongodb://localhost:27017";
+    private static final String DATABASE_NAME = "library_bench";
+    private static final int CATEGORIES = 20;
+    
+    public static void main(String[] args) {
+        int books = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int records = args.length > 1 ? Integer.parseInt(args[1]) : books * 2;
+        
+        // Counts the commands (round-trips) sent to the server
+        AtomicLong commands = new AtomicLong();
+        CommandListener counter = new CommandListener() {
+            @Override
+            public void commandStarted(CommandStartedEvent event) {
+                commands.incrementAndGet();
+            }
+        };
+        MongoClientSettings settings = MongoClientSettings.builder()
+            .applyConnectionString(new ConnectionString(CONNECTION_STRING))
+            .addCommandListener(counter)
+            .build();
+        
+        try (MongoClient seedClient = MongoClients.create(CONNECTION_STRING)) {
+            MongoDatabase database = seedClient.getDatabase(DATABASE_NAME);
+            seed(database, books, records);
+            DatabaseManager dbManager = new DatabaseManager(settings, DATABASE_NAME);
+            
+            commands.set(0);
+            long start = System.nanoTime();
+            List<Document> report = dbManager.getBookReport();
+            long aggregateMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            System.out.println(books + " books, " + records + " records, aggregation: " + report.size()
+                + " categories, " + commands.get() + " round-trips, " + aggregateMs + " ms");
+            
+            try (MongoClient countingClient = MongoClients.create(settings)) {
+                commands.set(0);
+                start = System.nanoTime();
+                List<Document> oldReport = perBookReport(countingClient.getDatabase(DATABASE_NAME));
+                long perBookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                System.out.println(books + " books, " + records + " records, per-book counts: " + oldReport.size()
+                    + " categories, " + commands.get() + " round-trips, " + perBookMs + " ms");
+                System.out.println(oldReport.equals(report) ? "OK: same report" : "MISMATCH\n" + oldReport + "\n" + report);
+            }
+            
+            dbManager.close();
+            database.drop();
+        }
+    }
+    
+    private static void seed(MongoDatabase database, int books, int records) {
+        database.drop();
+        List<Document> batch = new ArrayList<>();
+        for (int i = 0; i < CATEGORIES; i++) {
+            batch.add(new Document("categoryId", "CAT" + i).append("name", "Thể loại " + i));
+        }
+        database.getCollection("categories").insertMany(batch);
+        
+        Random random = new Random(42);
+        MongoCollection<Document> booksCollection = database.getCollection("books");
+        batch.clear();
+        for (int i = 0; i < books; i++) {
+            int total = 1 + random.nextInt(10);
+            batch.add(new Document("bookId", "BOOK" + i).append("title", "Sách số " + i)
+                .append("category", "Thể loại " + random.nextInt(CATEGORIES))
+                .append("totalCopies", total).append("availableCopies", random.nextInt(total + 1)));
+            if (batch.size() == 10000) {
+                booksCollection.insertMany(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            booksCollection.insertMany(batch);
+        }
+        
+        String[] statuses = {"BORROWING", "RETURNED", "RETURNED", "LOST", "DAMAGED"};
+        MongoCollection<Document> recordsCollection = database.getCollection("borrow_records");
+        batch.clear();
+        for (int i = 0; i < records; i++) {
+            batch.add(new Document("recordId", "record_" + i).append("bookId", "BOOK" + random.nextInt(books))
+                .append("status", statuses[random.nextInt(statuses.length)]));
+            if (batch.size() == 10000) {
+                recordsCollection.insertMany(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            recordsCollection.insertMany(batch);
+        }
+        IndexManager.ensureIndexes(database);
+        // Only the per-book counts need this one; without it each count would scan all records
+        recordsCollection.createIndex(new Document("bookId", 1).append("status", 1));
+    }
+    
+    // The previous getBookReport: a count and a scan per category, two counts per book
+    private static List<Document> perBookReport(MongoDatabase database) {
+        MongoCollection<Document> booksCollection = database.getCollection("books");
+        MongoCollection<Document> recordsCollection = database.getCollection("borrow_records");
+        List<Document> report = new ArrayList<>();
+        for (Document category : database.getCollection("categories").find()) {
+            String categoryName = category.getString("name");
+            long totalBooks = booksCollection.countDocuments(eq("category", categoryName));
+            long totalCopies = 0;
+            long availableCopies = 0;
+            long lost = 0;
+            long damaged = 0;
+            for (Document book : booksCollection.find(eq("category", categoryName))) {
+                totalCopies += book.getInteger("totalCopies", 0);
+                availableCopies += book.getInteger("availableCopies", 0);
+                String bookId = book.getString("bookId");
+                lost += recordsCollection.countDocuments(and(eq("bookId", bookId), eq("status", "LOST")));
+                damaged += recordsCollection.countDocuments(and(eq("bookId", bookId), eq("status", "DAMAGED")));
+            }
+            report.add(new Document("category", categoryName)
+                .append("totalBooks", totalBooks)
+                .append("available", availableCopies)
+                .append("borrowed", totalCopies - availableCopies)
+                .append("lost", lost)
+                .append("damaged", damaged));
+        }
+        return report;
+    }
+}
@@ -0,0 +1,308 @@
+package server;
+
+import model.Book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Type-ahead suggestions for the search box (SUGGEST_BOOKS): titles and authors starting with
+// what has been typed, most borrowed first. Answered from a table built from the catalog, so a
+// suggestion is a few binary searches with no lock and no query:
+// - keys: the folded titles and authors (SearchText tokens joined by one space), sorted. The
+//   keys starting with a prefix are one contiguous range, the subtree a trie would have.
+// - a max-tree over the popularity of the keys, so the best K of any range are found in
+//   O(K log n) however many keys the prefix matches.
+// The table is rebuilt (and swapped whole) only when the catalog changed or the borrow counts
+// were reloaded; a borrow adds to the scores of its book's title and author in place, which
+// updates O(log n) tree nodes.
+class BookSuggester {
+    static final int MAX_SUGGESTIONS = 8;
+    
+    private final CatalogCache catalog;
+    // Guards everything below; table is also read without it
+    private final Object lock = new Object();
+    // Borrows per bookId: counted from borrow_records on load, then +1 per borrow. Replaced, not
+    // cleared, on reload, and not written while a rebuild reads it (borrows are queued in
+    // borrowedDuringRebuild and added when it is done).
+    private Map<String, Long> borrowCounts = new HashMap<>();
+    private long countsVersion;
+    private List<String> borrowedDuringRebuild;
+    private volatile Table table = Table.build(new ArrayList<>(), new HashMap<>());
+    private long builtCatalogVersion = -1;
+    private long builtCountsVersion = -1;
+    // One rebuild at a time
+    private final Object rebuildLock = new Object();
+    
+    BookSuggester(CatalogCache catalog) {
+        this.catalog = catalog;
+    }
+    
+    void setBorrowCounts(Map<String, Long> counts) {
+        Map<String, Long> fresh = new HashMap<>(counts);
+        synchronized (lock) {
+            borrowCounts = fresh;
+            countsVersion++;
+        }
+    }
+    
+    void borrowed(String bookId) {
+        if (bookId == null) {
+            return;
+        }
+        synchronized (lock) {
+            if (borrowedDuringRebuild != null) {
+                borrowedDuringRebuild.add(bookId);
+            } else {
+                borrowCounts.merge(bookId, 1L, Long::sum);
+            }
+            Table current = table;
+            current.add(bookId, 1);
+            // Volatile write after the update, so a reader that then reads table sees it
+            table = current;
+        }
+    }
+    
+    // Rebuilds the table if the books changed or the borrow counts were reloaded since the last
+    // build. The build runs without the lock; borrows meanwhile still update the current table.
+    void rebuildIfChanged() {
+        synchronized (rebuildLock) {
+            long catalogVersion = catalog.getVersion();
+            Map<String, Long> counts;
+            long version;
+            synchronized (lock) {
+                if (catalogVersion == builtCatalogVersion && countsVersion == builtCountsVersion) {
+                    return;
+                }
+                counts = borrowCounts;
+                version = countsVersion;
+                borrowedDuringRebuild = new ArrayList<>();
+            }
+            Table built = null;
+            try {
+                built = build(catalog.getAll(), counts);
+            } finally {
+                synchronized (lock) {
+                    for (String bookId : borrowedDuringRebuild) {
+                        borrowCounts.merge(bookId, 1L, Long::sum);
+                        if (built != null) {
+                            built.add(bookId, 1);
+                        }
+                    }
+                    borrowedDuringRebuild = null;
+                    if (built != null) {
+                        table = built;
+                        builtCatalogVersion = catalogVersion;
+                        builtCountsVersion = version;
+                    }
+                }
+            }
+        }
+    }
+    
+    private static Table build(List<Book> books, Map<String, Long> counts) {
+        Map<String, Entry> entries = new HashMap<>();
+        Map<String, Entry[]> entriesOfBook = new HashMap<>();
+        for (Book book : books) {
+            Long count = book.getBookId() != null ? counts.get(book.getBookId()) : null;
+            long score = count != null ? count : 0;
+            Entry title = addEntry(entries, book.getTitle(), score);
+            Entry author = addEntry(entries, book.getAuthor(), score);
+            if (book.getBookId() != null) {
+                entriesOfBook.put(book.getBookId(), new Entry[]{title, author});
+            }
+        }
+        return Table.build(new ArrayList<>(entries.values()), entriesOfBook);
+    }
+    
+    // A title or author seen several times (editions, several books of an author, a title that
+    // is also an author name) is one suggestion with the borrows of all of them
+    private static Entry addEntry(Map<String, Entry> entries, String text, long score) {
+        if (text == null) {
+            return null;
+        }
+        String key = String.join(" ", SearchText.tokens(text));
+        if (key.isEmpty()) {
+            return null;
+        }
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(key, text.trim(), score);
+            entries.put(key, entry);
+        } else {
+            entry.score += score;
+        }
+        return entry;
+    }
+    
+    // Up to limit titles/authors starting with the typed text, most borrowed first
+    List<String> suggest(String typed, int limit) {
+        List<String> terms = SearchText.tokens(typed);
+        if (terms.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        String prefix = String.join(" ", terms);
+        // "lap trinh " only completes titles with a word after "trinh"
+        if (!Character.isLetterOrDigit(typed.charAt(typed.length() - 1))) {
+            prefix += " ";
+        }
+        return table.top(prefix, Math.min(limit, MAX_SUGGESTIONS));
+    }
+    
+    int size() {
+        return table.keys.length;
+    }
+    
+    private static class Entry {
+        final String key;
+        final String text;
+        long score;
+        int index;
+        
+        Entry(String key, String text, long score) {
+            this.key = key;
+            this.text = text;
+            this.score = score;
+        }
+    }
+    
+    private static final class Table {
+        final String[] keys;
+        final String[] texts;
+        final long[] scores;
+        // Max-tree over scores: tree[node] = index of the best key below it (leftmost on ties,
+        // so equal scores come out in alphabetical order)
+        final int[] tree;
+        final int leaves;
+        // Indexes of each book's title and author keys (-1 if it has none), for add
+        private final Map<String, int[]> keysOfBook;
+        
+        private Table(String[] keys, String[] texts, long[] scores, Map<String, int[]> keysOfBook) {
+            this.keys = keys;
+            this.texts = texts;
+            this.scores = scores;
+            this.keysOfBook = keysOfBook;
+            int size = 1;
+            while (size < Math.max(1, keys.length)) {
+                size <<= 1;
+            }
+            leaves = size;
+            tree = new int[2 * size];
+            Arrays.fill(tree, -1);
+            for (int i = 0; i < keys.length; i++) {
+                tree[size + i] = i;
+            }
+            for (int node = size - 1; node > 0; node--) {
+                tree[node] = better(tree[2 * node], tree[2 * node + 1]);
+            }
+        }
+        
+        static Table build(List<Entry> entries, Map<String, Entry[]> entriesOfBook) {
+            entries.sort((a, b) -> a.key.compareTo(b.key));
+            String[] keys = new String[entries.size()];
+            String[] texts = new String[entries.size()];
+            long[] scores = new long[entries.size()];
+            for (int i = 0; i < keys.length; i++) {
+                Entry entry = entries.get(i);
+                entry.index = i;
+                keys[i] = entry.key;
+                texts[i] = entry.text;
+                scores[i] = entry.score;
+            }
+            Map<String, int[]> keysOfBook = new HashMap<>(entriesOfBook.size() * 4 / 3 + 1);
+            for (Map.Entry<String, Entry[]> book : entriesOfBook.entrySet()) {
+                Entry[] bookEntries = book.getValue();
+                int[] indexes = new int[bookEntries.length];
+                for (int i = 0; i < indexes.length; i++) {
+                    indexes[i] = bookEntries[i] != null ? bookEntries[i].index : -1;
+                }
+                keysOfBook.put(book.getKey(), indexes);
+            }
+            return new Table(keys, texts, scores, keysOfBook);
+        }
+        
+        // Adds to the scores of a book's title and author keys; a book added to the catalog
+        // since the build has none and is counted at the next one. Called under the lock.
+        void add(String bookId, long delta) {
+            int[] indexes = keysOfBook.get(bookId);
+            if (indexes == null) {
+                return;
+            }
+            for (int index : indexes) {
+                if (index < 0) {
+                    continue;
+                }
+                scores[index] += delta;
+                for (int node = (leaves + index) >> 1; node > 0; node >>= 1) {
+                    tree[node] = better(tree[2 * node], tree[2 * node + 1]);
+                }
+            }
+        }
+        
+        private int better(int a, int b) {
+            if (a < 0) {
+                return b;
+            }
+            if (b < 0) {
+                return a;
+            }
+            return scores[b] > scores[a] ? b : a;
+        }
+        
+        // Best key in [from, to)
+        private int best(int from, int to) {
+            int left = -1;
+            int right = -1;
+            for (int lo = from + leaves, hi = to + leaves; lo < hi; lo >>= 1, hi >>= 1) {
+                if ((lo & 1) == 1) {
+                    left = better(left, tree[lo++]);
+                }
+                if ((hi & 1) == 1) {
+                    right = better(tree[--hi], right);
+                }
+            }
+            return better(left, right);
+        }
+        
+        List<String> top(String prefix, int limit) {
+            int from = lowerBound(prefix);
+            int to = lowerBound(prefix + Character.MAX_VALUE);
+            List<String> result = new ArrayList<>(limit);
+            // Ranges ordered by their best key; taking one splits its range in two
+            PriorityQueue<int[]> ranges = new PriorityQueue<>(
+                (a, b) -> scores[b[2]] != scores[a[2]] ? Long.compare(scores[b[2]], scores[a[2]]) : Integer.compare(a[2], b[2]));
+            if (from < to) {
+                ranges.add(new int[]{from, to, best(from, to)});
+            }
+            while (!ranges.isEmpty() && result.size() < limit) {
+                int[] range = ranges.poll();
+                int at = range[2];
+                result.add(texts[at]);
+                if (range[0] < at) {
+                    ranges.add(new int[]{range[0], at, best(range[0], at)});
+                }
+                if (at + 1 < range[1]) {
+                    ranges.add(new int[]{at + 1, range[1], best(at + 1, range[1])});
+                }
+            }
+            return result;
+        }
+        
+        private int lowerBound(String key) {
+            int lo = 0;
+            int hi = keys.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keys[mid].compareTo(key) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package server;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.mongodb.client.model.Filters.eq;
+
+// Many users borrow the same title at the same moment, against a scratch database
+// (library_bench, dropped and re-seeded). Afterwards the counters must agree with the copies:
+// successes = min(threads, copies), availableCopies = copies - successes, no copy lent twice.
+//   java server.BorrowContentionBenchmark 500 100
+//   java -Dserver.transactions=true server.BorrowContentionBenchmark 500 100   (replica set)
+// Arguments: <threads> <copies of the book>
+public class BorrowContentionBenchmark {
+    private static final String CONNECTION_STRING = "mongodb://localhost:27017";
+    private static final String DATABASE_NAME = "library_bench";
+    private static final String BOOK_ID = "BOOK_HOT";
+    
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int copies = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        
+        try (MongoClient seedClient = MongoClients.create(CONNECTION_STRING)) {
+            MongoDatabase database = seedClient.getDatabase(DATABASE_NAME);
+            seed(database, threads, copies);
+            MongoClientSettings settings = MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(CONNECTION_STRING))
+                .applyToConnectionPoolSettings(pool -> pool.maxSize(threads))
+                .build();
+            DatabaseManager dbManager = new DatabaseManager(settings, DATABASE_NAME);
+            
+            // Every thread borrows once; all are released together
+            AtomicInteger successes = new AtomicInteger();
+            CountDownLatch ready = new CountDownLatch(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> borrowers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                String userId = "USER" + i;
+                Thread t = new Thread(() -> {
+                    ready.countDown();
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (dbManager.borrowBook(userId, BOOK_ID)) {
+                        successes.incrementAndGet();
+                    }
+                });
+                t.start();
+                borrowers.add(t);
+            }
+            ready.await();
+            long startNanos = System.nanoTime();
+            start.countDown();
+            for (Thread t : borrowers) {
+                t.join();
+            }
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            
+            Document book = database.getCollection("books").find(eq("bookId", BOOK_ID)).first();
+            long lentCopies = database.getCollection("book_copies").countDocuments(eq("status", "BORROWED"));
+            Set<String> recordCopies = new HashSet<>();
+            long records = 0;
+            for (Document record : database.getCollection("borrow_records").find()) {
+                recordCopies.add(record.getString("copyId"));
+                records++;
+            }
+            long slots = 0;
+            for (Document user : database.getCollection("users").find()) {
+                slots += user.getInteger("currentBorrowed", 0);
+            }
+            
+            int expected = Math.min(threads, copies);
+            int available = book != null ? book.getInteger("availableCopies", 0) : -1;
+            System.out.println(threads + " threads, " + copies + " copies"
+                + (ServerConfig.isTransactionalBorrow() ? " (transactions)" : "") + ": "
+                + successes.get() + " borrowed in " + elapsedMs + " ms");
+            System.out.println("availableCopies=" + available + " (expected " + (copies - expected) + "), copies lent="
+                + lentCopies + ", records=" + records + ", distinct copies in records=" + recordCopies.size()
+                + ", user slots=" + slots);
+            boolean consistent = successes.get() == expected && available == copies - expected
+                && lentCopies == expected && records == expected && recordCopies.size() == expected && slots == expected;
+            System.out.println(consistent ? "OK: counters consistent" : "MISMATCH");
+            
+            dbManager.close();
+            database.drop();
+        }
+    }
+    
+    private static void seed(MongoDatabase database, int users, int copies) {
+        database.drop();
+        MongoCollection<Document> usersCollection = database.getCollection("users");
+        List<Document> batch = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            batch.add(new Document("userId", "USER" + i).append("email", "user" + i + "@dnu.edu.vn")
+                .append("status", "ACTIVE").append("role", "USER")
+                .append("currentBorrowed", 0).append("totalBorrowed", 0));
+        }
+        usersCollection.insertMany(batch);
+        
+        database.getCollection("books").insertOne(new Document("bookId", BOOK_ID).append("title", "Sách mượn nhiều")
+            .append("totalCopies", copies).append("availableCopies", copies));
+        batch.clear();
+        for (int i = 0; i < copies; i++) {
+            batch.add(new Document("copyId", BOOK_ID + "-" + i).append("bookId", BOOK_ID).append("status", "AVAILABLE"));
+        }
+        database.getCollection("book_copies").insertMany(batch);
+    }
+}
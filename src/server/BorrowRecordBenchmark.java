@@ -0,0 +1,134 @@
+package server;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import model.BorrowRecord;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.mongodb.client.model.Filters.eq;
+
+// Measures getAllBorrowRecords against a scratch database (library_bench, dropped and
+// re-seeded for every size) and compares it with the old per-record user/book lookups.
+//   java server.BorrowRecordBenchmark 10000 100000 1000000
+// Arguments: record counts; the per-record variant only runs up to 100000 records.
+public class BorrowRecordBenchmark {
+    private static final String CONNECTION_STRING = "mongodb://localhost:27017";
+    private static final String DATABASE_NAME = "library_bench";
+    private static final int USERS = 1000;
+    private static final int BOOKS = 1000;
+    private static final int NAIVE_LIMIT = 100000;
+    
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? new int[args.length] : new int[] {10000, 100000, 1000000};
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        
+        // Counts find/getMore/aggregate commands sent by the DatabaseManager under test
+        AtomicLong queries = new AtomicLong();
+        CommandListener counter = new CommandListener() {
+            @Override
+            public void commandStarted(CommandStartedEvent event) {
+                String name = event.getCommandName();
+                if ("find".equals(name) || "getMore".equals(name) || "aggregate".equals(name)) {
+                    queries.incrementAndGet();
+                }
+            }
+        };
+        MongoClientSettings settings = MongoClientSettings.builder()
+            .applyConnectionString(new ConnectionString(CONNECTION_STRING))
+            .addCommandListener(counter)
+            .build();
+        
+        try (MongoClient seedClient = MongoClients.create(CONNECTION_STRING)) {
+            MongoDatabase database = seedClient.getDatabase(DATABASE_NAME);
+            for (int size : sizes) {
+                seed(database, size);
+                DatabaseManager dbManager = new DatabaseManager(settings, DATABASE_NAME);
+                
+                queries.set(0);
+                long start = System.nanoTime();
+                List<BorrowRecord> records = dbManager.getAllBorrowRecords();
+                long batchedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                System.out.println(size + " records, batched $in: " + records.size() + " loaded, "
+                    + queries.get() + " queries, " + batchedMs + " ms");
+                
+                if (size <= NAIVE_LIMIT) {
+                    start = System.nanoTime();
+                    long naiveQueries = naiveJoin(database);
+                    long naiveMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    System.out.println(size + " records, per-record lookups: " + naiveQueries + " queries, " + naiveMs + " ms");
+                } else {
+                    System.out.println(size + " records, per-record lookups: skipped (2N+1 = " + (2L * size + 1) + " queries)");
+                }
+                dbManager.close();
+            }
+            database.drop();
+        }
+    }
+    
+    private static void seed(MongoDatabase database, int records) {
+        database.drop();
+        MongoCollection<Document> users = database.getCollection("users");
+        MongoCollection<Document> books = database.getCollection("books");
+        MongoCollection<Document> borrowRecords = database.getCollection("borrow_records");
+        
+        List<Document> batch = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            batch.add(new Document("userId", "USER" + i).append("firstName", "Người dùng").append("lastName", String.valueOf(i))
+                .append("email", "user" + i + "@dnu.edu.vn"));
+        }
+        users.insertMany(batch);
+        batch.clear();
+        for (int i = 0; i < BOOKS; i++) {
+            batch.add(new Document("bookId", "BOOK" + i).append("title", "Sách số " + i));
+        }
+        books.insertMany(batch);
+        batch.clear();
+        
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < records; i++) {
+            batch.add(new Document("recordId", "record_" + i)
+                .append("userId", "USER" + random.nextInt(USERS))
+                .append("bookId", "BOOK" + random.nextInt(BOOKS))
+                .append("copyId", "COPY" + i)
+                .append("borrowDate", new java.util.Date(now - random.nextInt(1000000000)))
+                .append("dueDate", new java.util.Date(now + random.nextInt(1000000000)))
+                .append("status", random.nextBoolean() ? "RETURNED" : "BORROWING")
+                .append("fine", 0.0));
+            if (batch.size() == 10000) {
+                borrowRecords.insertMany(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            borrowRecords.insertMany(batch);
+        }
+    }
+    
+    // The previous documentToBorrowRecord pattern: one users and one books find per record
+    private static long naiveJoin(MongoDatabase database) {
+        MongoCollection<Document> users = database.getCollection("users");
+        MongoCollection<Document> books = database.getCollection("books");
+        long queries = 1;
+        for (Document record : database.getCollection("borrow_records").find()) {
+            users.find(eq("userId", record.getString("userId"))).first();
+            books.find(eq("bookId", record.getString("bookId"))).first();
+            queries += 2;
+        }
+        return queries;
+    }
+}
@@ -0,0 +1,505 @@
+package server;
+
+import model.Book;
+import util.BookQuery;
+import util.Page;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Every book of the catalog, kept in memory so catalog reads (GET_ALL_BOOKS, book by id or
+// title, category lists) do not touch MongoDB. Write-through: after DatabaseManager changes a
+// book or its copies in MongoDB it calls refresh(bookId), which re-reads that one book, so
+// the cache always holds what was last written. reload() picks up edits made outside the
+// server (MongoDB Compass, DataImporter). The search index (SearchIndex) follows the same
+// updates, so searches see a book as soon as it is added, changed or deleted.
+// reload() builds the new maps and index aside and swaps them in at once: until then readers
+// keep answering from the previous content, never from a half-filled one.
+// Cached Book objects are shared and must not be modified; a change replaces the object.
+class CatalogCache {
+    private final Supplier<List<Book>> loadAll;
+    private final Function<String, Book> loadOne;
+    
+    // null until the first load. Readers take it once per call so they see one content.
+    private volatile Content content;
+    // Books refreshed or removed while reload() builds the next content, replayed on it before
+    // it is published; null when no reload is running. Guarded by this.
+    private Set<String> changedDuringReload;
+    // Only one reload at a time; refresh() and remove() do not wait for it
+    private final Object reloadLock = new Object();
+    // Bumped by every change, so derived structures (BookSuggester) know when to rebuild
+    private final AtomicLong version = new AtomicLong();
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    
+    CatalogCache(Supplier<List<Book>> loadAll, Function<String, Book> loadOne) {
+        this.loadAll = loadAll;
+        this.loadOne = loadOne;
+    }
+    
+    // Replaces the whole content with a fresh read of the books collection. The read and the
+    // indexing happen without holding the cache lock, so writes and reads go on meanwhile.
+    void reload() {
+        synchronized (reloadLock) {
+            synchronized (this) {
+                changedDuringReload = new HashSet<>();
+            }
+            Content next = new Content();
+            try {
+                for (Book book : loadAll.get()) {
+                    next.put(book);
+                }
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    changedDuringReload = null;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                // Written through the server while the collection was being read: the read may
+                // hold the old version, so take these again
+                for (String bookId : changedDuringReload) {
+                    Book book = loadOne.apply(bookId);
+                    if (book != null) {
+                        next.put(book);
+                    } else {
+                        next.remove(bookId);
+                    }
+                }
+                changedDuringReload = null;
+                content = next;
+                version.incrementAndGet();
+            }
+        }
+    }
+    
+    // Re-reads one book after a write; a book that no longer exists is dropped
+    synchronized void refresh(String bookId) {
+        if (bookId == null || content == null) {
+            return;
+        }
+        refreshes.increment();
+        try {
+            Book book = loadOne.apply(bookId);
+            if (book != null) {
+                put(book);
+            } else {
+                remove(bookId);
+            }
+        } catch (Exception e) {
+            // Drop it rather than keep a stale copy; the next get() reads it again
+            System.err.println("Error refreshing cached book " + bookId + ": " + e.getMessage());
+            remove(bookId);
+        }
+    }
+    
+    synchronized void remove(String bookId) {
+        if (changedDuringReload != null) {
+            changedDuringReload.add(bookId);
+        }
+        Content current = content;
+        if (current != null && current.remove(bookId)) {
+            version.incrementAndGet();
+        }
+    }
+    
+    List<Book> getAll() {
+        Content current = ensureLoaded();
+        hits.increment();
+        return new ArrayList<>(current.inOrder.values());
+    }
+    
+    Book get(String bookId) {
+        Content current = ensureLoaded();
+        Entry entry = bookId != null ? current.byId.get(bookId) : null;
+        if (entry != null) {
+            hits.increment();
+            return entry.book;
+        }
+        // Not in the catalog, or added behind the server's back: ask MongoDB once
+        misses.increment();
+        Book book = bookId != null ? loadOne.apply(bookId) : null;
+        if (book != null) {
+            synchronized (this) {
+                put(book);
+            }
+        }
+        return book;
+    }
+    
+    // Only what is cached, no MongoDB fallback: for joins over many ids, where the books of old
+    // records may be deleted and should not cost a query each
+    Book peek(String bookId) {
+        Content current = ensureLoaded();
+        Entry entry = current.byId.get(bookId);
+        if (entry != null) {
+            hits.increment();
+            return entry.book;
+        }
+        misses.increment();
+        return null;
+    }
+    
+    // First book with exactly this title, in collection order
+    Book getByTitle(String title) {
+        Content current = ensureLoaded();
+        List<Book> books = lookup(current, current.byTitle, title);
+        return books.isEmpty() ? null : books.get(0);
+    }
+    
+    List<Book> getByCategory(String category) {
+        Content current = ensureLoaded();
+        return lookup(current, current.byCategory, category);
+    }
+    
+    // Books matching a SearchIndex query, in collection order
+    List<Book> search(String query) {
+        Content current = ensureLoaded();
+        hits.increment();
+        long[] positions = current.searchIndex.search(query);
+        List<Book> books = new ArrayList<>(positions.length);
+        for (long position : positions) {
+            Book book = current.inOrder.get(position);
+            if (book != null) {
+                books.add(book);
+            }
+        }
+        return books;
+    }
+    
+    // Books matching a structured query. The keyword goes through the SearchIndex and the
+    // category through the category index; when both are given, the smaller of the two sets is
+    // walked and checked against the other, so a common category does not cost a full list.
+    List<Book> query(BookQuery query) {
+        return query(query, 0, null);
+    }
+    
+    // For a fuzzy query (BookQuery.isFuzzy) the keyword terms may be up to maxEdits edits away
+    // from the words of a book, and relevance, if not null, receives the score of each book
+    // returned (SearchIndex.fuzzySearch). Fuzzy results come out most relevant first unless
+    // another order is asked for.
+    List<Book> query(BookQuery query, int maxEdits, Map<Book, Double> relevance) {
+        return queryPage(query, maxEdits, relevance, 0, Integer.MAX_VALUE).getItems();
+    }
+    
+    // One page of query(): the books at [offset, offset + limit) of the ordered result, with the
+    // offset that follows as the next cursor and the number of matches as the total. Only the
+    // first offset + limit books are put in order (a bounded heap while that is a small part of
+    // the matches), so paging through a sorted million-book catalog does not sort all of it for
+    // every page. relevance only receives the books of the page.
+    Page<Book> queryPage(BookQuery query, int maxEdits, Map<Book, Double> relevance, int offset, int limit) {
+        Content current = ensureLoaded();
+        hits.increment();
+        Map<Book, Double> scores = new IdentityHashMap<>();
+        List<Book> books = matching(current, query, maxEdits, scores);
+        String order = query.getSort();
+        if (order == null && query.isFuzzy() && query.hasKeyword()) {
+            order = BookQuery.SORT_RELEVANCE;
+        }
+        int from = Math.min(Math.max(offset, 0), books.size());
+        int to = (int) Math.min((long) from + Math.max(limit, 0), books.size());
+        List<Book> items = new ArrayList<>(firstInOrder(current, books, order, scores, to).subList(from, to));
+        if (relevance != null) {
+            for (Book book : items) {
+                relevance.put(book, scores.getOrDefault(book, 1.0));
+            }
+        }
+        return new Page<>(items, to < books.size() ? String.valueOf(to) : null, books.size());
+    }
+    
+    // The matching books in catalog order (keyword hits in position order), with the fuzzy
+    // score of each keyword hit put in scores
+    private List<Book> matching(Content current, BookQuery query, int maxEdits, Map<Book, Double> scores) {
+        String keyword = query.getKeyword();
+        String category = query.getCategory();
+        Set<String> categoryIds = null;
+        if (category != null) {
+            categoryIds = current.byCategory.get(category);
+            if (categoryIds == null) {
+                return new ArrayList<>();
+            }
+        }
+        
+        List<Book> books;
+        if (query.hasKeyword()) {
+            long[] positions;
+            double[] positionScores = null;
+            if (query.isFuzzy()) {
+                SearchIndex.FuzzyHits hits = current.searchIndex.fuzzySearch(keyword, maxEdits);
+                positions = hits.positions;
+                positionScores = hits.scores;
+            } else {
+                positions = current.searchIndex.search(keyword);
+            }
+            if (categoryIds != null && categoryIds.size() < positions.length) {
+                List<Entry> entries = new ArrayList<>();
+                for (String id : categoryIds) {
+                    Entry entry = current.byId.get(id);
+                    int at = entry != null ? Arrays.binarySearch(positions, entry.position) : -1;
+                    if (at >= 0) {
+                        entries.add(entry);
+                        if (positionScores != null) {
+                            scores.put(entry.book, positionScores[at]);
+                        }
+                    }
+                }
+                books = inPositionOrder(entries);
+            } else {
+                books = new ArrayList<>(positions.length);
+                for (int i = 0; i < positions.length; i++) {
+                    Book book = current.inOrder.get(positions[i]);
+                    if (book != null && (category == null || category.equals(book.getCategory()))) {
+                        books.add(book);
+                        if (positionScores != null) {
+                            scores.put(book, positionScores[i]);
+                        }
+                    }
+                }
+            }
+        } else if (categoryIds != null) {
+            books = inCollectionOrder(current, categoryIds);
+        } else {
+            books = new ArrayList<>(current.inOrder.values());
+        }
+        
+        Integer fromYear = query.getFromYear();
+        Integer toYear = query.getToYear();
+        if (fromYear != null || toYear != null || query.isAvailableOnly()) {
+            books.removeIf(book -> (fromYear != null && book.getPublishYear() < fromYear)
+                || (toYear != null && book.getPublishYear() > toYear)
+                || (query.isAvailableOnly() && book.getAvailableCopies() <= 0));
+        }
+        return books;
+    }
+    
+    // A list whose first count books are those that come first in the given order. Stable, so
+    // books that compare equal stay in catalog order.
+    private static List<Book> firstInOrder(Content current, List<Book> books, String order,
+            Map<Book, Double> scores, int count) {
+        Comparator<Integer> byIndex = comparator(current, books, order, scores);
+        if (byIndex == null || count == 0) {
+            return books;
+        }
+        Integer[] first;
+        if (count > books.size() / 8) {
+            first = new Integer[books.size()];
+            for (int i = 0; i < first.length; i++) {
+                first[i] = i;
+            }
+            Arrays.sort(first, byIndex);
+        } else {
+            // Max-heap of the count best so far
+            PriorityQueue<Integer> best = new PriorityQueue<>(count + 1, byIndex.reversed());
+            for (int i = 0; i < books.size(); i++) {
+                if (best.size() < count) {
+                    best.add(i);
+                } else if (byIndex.compare(i, best.peek()) < 0) {
+                    best.poll();
+                    best.add(i);
+                }
+            }
+            first = new Integer[best.size()];
+            for (int i = first.length - 1; i >= 0; i--) {
+                first[i] = best.poll();
+            }
+        }
+        List<Book> ordered = new ArrayList<>(first.length);
+        for (Integer i : first) {
+            ordered.add(books.get(i));
+        }
+        return ordered;
+    }
+    
+    // Compares positions in books; the sort key of each book is read once, and equal keys fall
+    // back to the position. null keeps catalog order.
+    private static Comparator<Integer> comparator(Content current, List<Book> books, String order,
+            Map<Book, Double> scores) {
+        int size = books.size();
+        if (BookQuery.SORT_RELEVANCE.equals(order)) {
+            double[] keys = new double[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = scores.getOrDefault(books.get(i), 1.0);
+            }
+            return (a, b) -> keys[a] != keys[b] ? Double.compare(keys[b], keys[a]) : Integer.compare(a, b);
+        } else if (BookQuery.SORT_TITLE.equals(order)) {
+            // Folded once when the book is cached rather than in every comparison
+            String[] keys = new String[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = titleKey(current, books.get(i));
+            }
+            return (a, b) -> {
+                int c = keys[a].compareTo(keys[b]);
+                return c != 0 ? c : Integer.compare(a, b);
+            };
+        } else if (BookQuery.SORT_NEWEST.equals(order) || BookQuery.SORT_OLDEST.equals(order)) {
+            int[] keys = new int[size];
+            boolean newest = BookQuery.SORT_NEWEST.equals(order);
+            for (int i = 0; i < size; i++) {
+                keys[i] = newest ? -books.get(i).getPublishYear() : books.get(i).getPublishYear();
+            }
+            return (a, b) -> keys[a] != keys[b] ? Integer.compare(keys[a], keys[b]) : Integer.compare(a, b);
+        }
+        return null;
+    }
+    
+    private static String titleKey(Content current, Book book) {
+        Entry entry = book.getBookId() != null ? current.byId.get(book.getBookId()) : null;
+        return entry != null && entry.book == book ? entry.titleKey : SearchText.fold(book.getTitle());
+    }
+    
+    long getVersion() {
+        return version.get();
+    }
+    
+    String getStats() {
+        Content current = content;
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+        return (current != null ? current.byId.size() : 0) + " books, "
+            + (current != null ? current.searchIndex.tokenCount() : 0) + " search terms, " + hitCount + " hits, " + missCount + " misses ("
+            + (total > 0 ? String.format("%.1f", 100.0 * hitCount / total) : "-") + "% hit rate), "
+            + refreshes.sum() + " write-through refreshes";
+    }
+    
+    private List<Book> lookup(Content current, Map<String, Set<String>> index, String key) {
+        hits.increment();
+        Set<String> ids = key != null ? index.get(key) : null;
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+        return inCollectionOrder(current, ids);
+    }
+    
+    private static List<Book> inCollectionOrder(Content current, Set<String> ids) {
+        List<Entry> entries = new ArrayList<>();
+        for (String id : ids) {
+            Entry entry = current.byId.get(id);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return inPositionOrder(entries);
+    }
+    
+    private static List<Book> inPositionOrder(List<Entry> entries) {
+        entries.sort((a, b) -> Long.compare(a.position, b.position));
+        List<Book> books = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            books.add(entry.book);
+        }
+        return books;
+    }
+    
+    private Content ensureLoaded() {
+        Content current = content;
+        if (current == null) {
+            reload();
+            current = content;
+        }
+        return current;
+    }
+    
+    // Caller holds the lock
+    private void put(Book book) {
+        if (changedDuringReload != null && book.getBookId() != null) {
+            changedDuringReload.add(book.getBookId());
+        }
+        Content current = content;
+        if (current != null) {
+            current.put(book);
+            version.incrementAndGet();
+        }
+    }
+    
+    private static void index(Map<String, Set<String>> index, String key, String bookId) {
+        if (key != null) {
+            index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(bookId);
+        }
+    }
+    
+    private static void unindex(Map<String, Set<String>> index, String key, String bookId) {
+        if (key != null) {
+            index.computeIfPresent(key, (k, ids) -> {
+                ids.remove(bookId);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+    
+    // The maps and the search index of one load of the collection
+    private static class Content {
+        final ConcurrentHashMap<String, Entry> byId = new ConcurrentHashMap<>();
+        // Collection order, so lists come out as they did from MongoDB (new books last)
+        final ConcurrentSkipListMap<Long, Book> inOrder = new ConcurrentSkipListMap<>();
+        final ConcurrentHashMap<String, Set<String>> byTitle = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, Set<String>> byCategory = new ConcurrentHashMap<>();
+        final SearchIndex searchIndex = new SearchIndex();
+        final AtomicLong nextPosition = new AtomicLong();
+        
+        // A changed book keeps its position
+        void put(Book book) {
+            String bookId = book.getBookId();
+            if (bookId == null) {
+                // Listed and searchable, but cannot be looked up or refreshed (until the next reload)
+                long position = nextPosition.getAndIncrement();
+                inOrder.put(position, book);
+                searchIndex.add(position, book);
+                return;
+            }
+            Entry old = byId.get(bookId);
+            long position = old != null ? old.position : nextPosition.getAndIncrement();
+            if (old != null) {
+                unindex(byTitle, old.book.getTitle(), bookId);
+                unindex(byCategory, old.book.getCategory(), bookId);
+                searchIndex.remove(old.position, old.book);
+            }
+            byId.put(bookId, new Entry(book, position));
+            inOrder.put(position, book);
+            index(byTitle, book.getTitle(), bookId);
+            index(byCategory, book.getCategory(), bookId);
+            searchIndex.add(position, book);
+        }
+        
+        boolean remove(String bookId) {
+            Entry entry = byId.remove(bookId);
+            if (entry == null) {
+                return false;
+            }
+            inOrder.remove(entry.position);
+            unindex(byTitle, entry.book.getTitle(), bookId);
+            unindex(byCategory, entry.book.getCategory(), bookId);
+            searchIndex.remove(entry.position, entry.book);
+            return true;
+        }
+    }
+    
+    private static class Entry {
+        final Book book;
+        final long position;
+        // Folded title, the key of the title sort
+        final String titleKey;
+        
+        Entry(Book book, long position) {
+            this.book = book;
+            this.position = position;
+            this.titleKey = SearchText.fold(book.getTitle());
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package server;
+
+import model.Book;
+import model.BorrowRecord;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+// Decodes the same BSON rows (one batch array, as in a cursor reply) once through Document plus
+// the old field-by-field mapping and once through ModelCodecs, and reports bytes allocated
+// and time per row. Needs no database.
+//   java server.CodecBenchmark 100000
+public class CodecBenchmark {
+    private static final int ROUNDS = 5;
+    
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        
+        List<Document> books = new ArrayList<>();
+        List<Document> records = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < rows; i++) {
+            books.add(new Document("bookId", "BOOK" + i).append("title", "Lập trình Java tập " + i)
+                .append("author", "Nguyễn Văn A").append("isbn", "978-604-" + i).append("category", "Công nghệ thông tin")
+                .append("publishYear", 2020).append("pages", 350).append("price", 120000.0)
+                .append("totalCopies", 5).append("availableCopies", 3).append("description", "Giáo trình lập trình"));
+            records.add(new Document("recordId", "record_" + i).append("userId", "USER" + (i % 1000))
+                .append("bookId", "BOOK" + (i % 1000)).append("copyId", "COPY" + i)
+                .append("borrowDate", new java.util.Date(now)).append("dueDate", new java.util.Date(now + 86400000L))
+                .append("status", "BORROWING").append("fine", 0.0));
+        }
+        byte[] bookBytes = encode(books);
+        byte[] recordBytes = encode(records);
+        
+        Codec<Document> documentCodec = new DocumentCodec();
+        run("Book, Document + mapping", bookBytes, rows, reader -> oldBook(documentCodec.decode(reader, DecoderContext.builder().build())));
+        run("Book, BookCodec", bookBytes, rows, reader -> ModelCodecs.BOOK.decode(reader, DecoderContext.builder().build()));
+        run("BorrowRecord, Document + mapping", recordBytes, rows, reader -> oldRecord(documentCodec.decode(reader, DecoderContext.builder().build())));
+        run("BorrowRecord, BorrowRecordCodec", recordBytes, rows, reader -> ModelCodecs.BORROW_RECORD.decode(reader, DecoderContext.builder().build()));
+    }
+    
+    private static void run(String label, byte[] bytes, int rows, Function<BsonBinaryReader, Object> decoder) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long bestNanos = Long.MAX_VALUE;
+        long allocated = 0;
+        Object sink = null;
+        for (int round = 0; round < ROUNDS; round++) {
+            long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            // One reader over the whole batch, the way the driver decodes a cursor reply
+            try (BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(bytes))) {
+                reader.readStartDocument();
+                reader.readName();
+                reader.readStartArray();
+                while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                    sink = decoder.apply(reader);
+                }
+                reader.readEndArray();
+                reader.readEndDocument();
+            }
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+            allocated = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+        }
+        System.out.printf("%-34s %6d bytes/row, %6.0f ns/row%s%n", label, allocated / rows,
+            (double) bestNanos / rows, sink == null ? " (no rows)" : "");
+    }
+    
+    // {batch: [rows...]}, like the firstBatch/nextBatch array of a find reply
+    private static byte[] encode(List<Document> docs) {
+        BasicOutputBuffer out = new BasicOutputBuffer();
+        new DocumentCodec().encode(new BsonBinaryWriter(out), new Document("batch", docs),
+            EncoderContext.builder().build());
+        return out.toByteArray();
+    }
+    
+    // The previous documentToBook mapping
+    private static Book oldBook(Document doc) {
+        Book book = new Book();
+        book.setBookId(doc.getString("bookId"));
+        book.setTitle(doc.getString("title"));
+        book.setAuthor(doc.getString("author"));
+        book.setIsbn(doc.getString("isbn"));
+        book.setCategory(doc.getString("category"));
+        book.setPublishYear(doc.getInteger("publishYear", 0));
+        book.setPages(doc.getInteger("pages", 0));
+        Object priceObj = doc.get("price");
+        book.setPrice(priceObj instanceof Number ? ((Number) priceObj).doubleValue() : 0.0);
+        book.setTotalCopies(doc.getInteger("totalCopies", 0));
+        book.setAvailableCopies(doc.getInteger("availableCopies", 0));
+        book.setDescription(doc.getString("description"));
+        return book;
+    }
+    
+    // The previous documentToBorrowRecord mapping
+    private static BorrowRecord oldRecord(Document doc) {
+        BorrowRecord record = new BorrowRecord();
+        record.setRecordId(doc.getString("recordId"));
+        record.setUserId(doc.getString("userId"));
+        record.setBookId(doc.getString("bookId"));
+        record.setCopyId(doc.getString("copyId"));
+        if (doc.getDate("borrowDate") != null) {
+            record.setBorrowDate(new java.sql.Date(doc.getDate("borrowDate").getTime()));
+        }
+        if (doc.getDate("dueDate") != null) {
+            record.setDueDate(new java.sql.Date(doc.getDate("dueDate").getTime()));
+        }
+        if (doc.getDate("returnDate") != null) {
+            record.setReturnDate(new java.sql.Date(doc.getDate("returnDate").getTime()));
+        }
+        record.setStatus(doc.getString("status"));
+        Object fineObj = doc.get("fine");
+        record.setFine(fineObj instanceof Number ? ((Number) fineObj).doubleValue() : 0.0);
+        return record;
+    }
+}
@@ -0,0 +1,177 @@
+package server;
+
+import org.bson.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+// Running totals behind GET_DASHBOARD_STATS, so a dashboard refresh is answered from memory
+// instead of six counts and two collection scans. DatabaseManager adjusts them after each write
+// it makes (users, books, copies, borrow, return, renew, lost, damaged, fines). reconcile()
+// replaces them with fresh counts from MongoDB every server.statsReconcile seconds, which also
+// corrects edits made outside the server and a write that raced the previous reconcile.
+// Overdue depends on the clock: open borrows that are not yet due are kept ordered by due date
+// and move to the overdue count once their due date has passed (each borrow once).
+final class DashboardCounters {
+    private final LongAdder totalUsers = new LongAdder();
+    private final LongAdder pendingUsers = new LongAdder();
+    private final LongAdder totalBooks = new LongAdder();
+    private final LongAdder availableCopies = new LongAdder();
+    private final LongAdder totalBorrows = new LongAdder();
+    private final LongAdder activeBorrows = new LongAdder();
+    private final DoubleAdder unpaidFines = new DoubleAdder();
+    
+    // Open (BORROWING) records not yet due, by recordId and ordered by due time; guarded by this
+    private final Map<String, Long> dueTimes = new HashMap<>();
+    private final TreeSet<Due> dueOrder = new TreeSet<>();
+    private long overdueBorrows;
+    
+    void userAdded(String status) {
+        totalUsers.increment();
+        if ("LOCKED".equals(status)) {
+            pendingUsers.increment();
+        }
+    }
+    
+    void userRemoved(String status) {
+        totalUsers.decrement();
+        if ("LOCKED".equals(status)) {
+            pendingUsers.decrement();
+        }
+    }
+    
+    void userStatusChanged(String oldStatus, String newStatus) {
+        boolean wasLocked = "LOCKED".equals(oldStatus);
+        boolean isLocked = "LOCKED".equals(newStatus);
+        if (wasLocked != isLocked) {
+            pendingUsers.add(isLocked ? 1 : -1);
+        }
+    }
+    
+    void bookAdded() {
+        totalBooks.increment();
+    }
+    
+    void bookRemoved() {
+        totalBooks.decrement();
+    }
+    
+    // Change in the number of AVAILABLE copies
+    void copiesChanged(long delta) {
+        availableCopies.add(delta);
+    }
+    
+    void fineAdded(double amount) {
+        unpaidFines.add(amount);
+    }
+    
+    // A new BORROWING record; its copy is no longer available
+    synchronized void borrowed(String recordId, long dueTime) {
+        totalBorrows.increment();
+        activeBorrows.increment();
+        availableCopies.decrement();
+        track(recordId, dueTime);
+    }
+    
+    // A BORROWING record was returned, lost or damaged; dueTime 0 if it had no due date
+    synchronized void borrowClosed(String recordId, long dueTime) {
+        activeBorrows.decrement();
+        if (!untrack(recordId) && dueTime > 0 && dueTime < System.currentTimeMillis()) {
+            // Not in the due queue, so it was counted as overdue
+            overdueBorrows = Math.max(0, overdueBorrows - 1);
+        }
+    }
+    
+    synchronized void renewed(String recordId, long oldDueTime, long newDueTime) {
+        long now = System.currentTimeMillis();
+        boolean wasOverdue = !untrack(recordId) && oldDueTime > 0 && oldDueTime < now;
+        if (newDueTime >= now) {
+            track(recordId, newDueTime);
+            if (wasOverdue) {
+                overdueBorrows = Math.max(0, overdueBorrows - 1);
+            }
+        } else if (!wasOverdue) {
+            overdueBorrows++;
+        }
+    }
+    
+    // Installs fresh counts (same keys as snapshot()) and the open borrows not yet due
+    synchronized void reconcile(Document counts, Map<String, Long> notYetDue) {
+        set(totalUsers, counts.getLong("totalUsers"));
+        set(pendingUsers, counts.getLong("pendingUsers"));
+        set(totalBooks, counts.getLong("totalBooks"));
+        set(availableCopies, counts.getLong("availableCopies"));
+        set(totalBorrows, counts.getLong("totalBorrows"));
+        set(activeBorrows, counts.getLong("activeBorrows"));
+        unpaidFines.reset();
+        unpaidFines.add(counts.getDouble("totalFinesAmount"));
+        overdueBorrows = counts.getLong("overdueBorrows");
+        dueTimes.clear();
+        dueOrder.clear();
+        for (Map.Entry<String, Long> entry : notYetDue.entrySet()) {
+            track(entry.getKey(), entry.getValue());
+        }
+    }
+    
+    // The GET_DASHBOARD_STATS document
+    synchronized Document snapshot() {
+        // Borrows whose due date passed since the last call become overdue
+        long now = System.currentTimeMillis();
+        while (!dueOrder.isEmpty() && dueOrder.first().time < now) {
+            dueTimes.remove(dueOrder.pollFirst().recordId);
+            overdueBorrows++;
+        }
+        return new Document("totalUsers", Math.max(0, totalUsers.sum()))
+            .append("totalBooks", Math.max(0, totalBooks.sum()))
+            .append("totalBorrows", Math.max(0, totalBorrows.sum()))
+            .append("availableCopies", Math.max(0, availableCopies.sum()))
+            .append("activeBorrows", Math.max(0, activeBorrows.sum()))
+            .append("totalFinesAmount", Math.max(0.0, unpaidFines.sum()))
+            .append("overdueBorrows", overdueBorrows)
+            .append("pendingUsers", Math.max(0, pendingUsers.sum()));
+    }
+    
+    // Caller holds the lock
+    private void track(String recordId, long dueTime) {
+        if (recordId == null || dueTime <= 0) {
+            return;
+        }
+        untrack(recordId);
+        dueTimes.put(recordId, dueTime);
+        dueOrder.add(new Due(dueTime, recordId));
+    }
+    
+    // Caller holds the lock; false if the record was not waiting to become due
+    private boolean untrack(String recordId) {
+        Long dueTime = recordId != null ? dueTimes.remove(recordId) : null;
+        if (dueTime == null) {
+            return false;
+        }
+        dueOrder.remove(new Due(dueTime, recordId));
+        return true;
+    }
+    
+    private static void set(LongAdder adder, long value) {
+        adder.reset();
+        adder.add(value);
+    }
+    
+    private static class Due implements Comparable<Due> {
+        final long time;
+        final String recordId;
+        
+        Due(long time, String recordId) {
+            this.time = time;
+            this.recordId = recordId;
+        }
+        
+        @Override
+        public int compareTo(Due other) {
+            int byTime = Long.compare(time, other.time);
+            return byTime != 0 ? byTime : recordId.compareTo(other.recordId);
+        }
+    }
+}
@@ -5,20 +5,46 @@ import model.BookCopy;
 import model.BorrowRecord;
 import model.User;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
+import server.ModelCodecs.Keyed;
+import util.BookQuery;
+import util.Page;
 
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoException;
+import com.mongodb.client.ClientSession;
 import com.mongodb.client.MongoClient;
+import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BsonField;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
 import com.mongodb.client.model.Updates;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 
 import java.sql.Date;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import static com.mongodb.client.model.Filters.*;
 import static com.mongodb.client.model.Updates.*;
@@ -29,6 +55,18 @@ import static com.mongodb.client.model.Updates.combine;
 public class DatabaseManager {
     private static final String CONNECTION_STRING = "mongodb://localhost:27017";
     private static final String DATABASE_NAME = "library_db";
+    // Max ids per $in query when joining users/books onto borrow records
+    private static final int IN_BATCH_SIZE = 1000;
+    // Fines per chunk of the penalty report (one $in query for the users of each chunk)
+    private static final int PENALTY_BATCH_SIZE = 2000;
+    // Upper bound for one GET_*_PAGE request
+    static final int MAX_PAGE_SIZE = 500;
+    // Borrows retried after a write conflict (server.transactions=true)
+    private static final int MAX_TRANSACTION_ATTEMPTS = 3;
+    // List projections: no password hash on the wire, no long descriptions in table rows
+    private static final Document USER_LIST_FIELDS = new Document("password", 0);
+    private static final Document BOOK_LIST_FIELDS = new Document("description", 0);
+    private static final Document USER_STATUS_FIELDS = new Document("status", 1).append("isOnline", 1);
     
     private MongoClient mongoClient;
     private MongoDatabase database;
@@ -40,11 +78,39 @@ public class DatabaseManager {
     private MongoCollection<Document> finesCollection;
     private MongoCollection<Document> notificationsCollection;
     private MongoCollection<Document> settingsCollection;
+    // The same collections decoded straight into model objects (ModelCodecs)
+    private MongoCollection<User> userObjects;
+    private MongoCollection<Book> bookObjects;
+    private MongoCollection<BookCopy> bookCopyObjects;
+    private MongoCollection<BorrowRecord> borrowRecordObjects;
+    // ... and with each document's _id, for keyset pages
+    private MongoCollection<Keyed<User>> keyedUsers;
+    private MongoCollection<Keyed<Book>> keyedBooks;
+    private MongoCollection<Keyed<BorrowRecord>> keyedBorrowRecords;
+    private IdGenerator idGenerator;
+    private CatalogCache catalog;
+    private BookSuggester suggester;
+    // Current settings, swapped as a whole when they change (see SettingsSnapshot)
+    private final AtomicReference<SettingsSnapshot> settingsSnapshot = new AtomicReference<>();
+    private final AtomicLong settingsVersion = new AtomicLong();
+    // GET_DASHBOARD_STATS from memory, adjusted by each write below
+    private final DashboardCounters dashboard = new DashboardCounters();
+    // Runs the periodic catalog reload, settings poll and dashboard reconcile
+    private ScheduledExecutorService maintenance;
+    // Told about changes that logged-in clients should see immediately (may be null)
+    private volatile UserEventListener eventListener;
     
     public DatabaseManager() {
+        this(MongoClientSettings.builder().applyConnectionString(new ConnectionString(CONNECTION_STRING)).build(), DATABASE_NAME);
+    }
+    
+    // Custom client settings / database, e.g. a command listener and a scratch database for benchmarks
+    DatabaseManager(MongoClientSettings settings, String databaseName) {
         try {
-            mongoClient = MongoClients.create(CONNECTION_STRING);
-            database = mongoClient.getDatabase(DATABASE_NAME);
+            mongoClient = MongoClients.create(MongoClientSettings.builder(settings)
+                .codecRegistry(ModelCodecs.registry(settings.getCodecRegistry()))
+                .build());
+            database = mongoClient.getDatabase(databaseName);
             
             usersCollection = database.getCollection("users");
             booksCollection = database.getCollection("books");
@@ -54,38 +120,139 @@ public class DatabaseManager {
             finesCollection = database.getCollection("fines");
             notificationsCollection = database.getCollection("notifications");
             settingsCollection = database.getCollection("settings");
+            userObjects = usersCollection.withDocumentClass(User.class);
+            bookObjects = booksCollection.withDocumentClass(Book.class);
+            bookCopyObjects = bookCopiesCollection.withDocumentClass(BookCopy.class);
+            borrowRecordObjects = borrowRecordsCollection.withDocumentClass(BorrowRecord.class);
+            keyedUsers = ModelCodecs.keyed(usersCollection, ModelCodecs.USER);
+            keyedBooks = ModelCodecs.keyed(booksCollection, ModelCodecs.BOOK);
+            keyedBorrowRecords = ModelCodecs.keyed(borrowRecordsCollection, ModelCodecs.BORROW_RECORD);
+            catalog = new CatalogCache(() -> bookObjects.find().into(new ArrayList<>()),
+                bookId -> bookObjects.find(QueryFilters.bookById(bookId)).first());
+            suggester = new BookSuggester(catalog);
+            idGenerator = new IdGenerator(database.getCollection("counters"), ServerConfig.getIdBlockSize());
             
             // Initialize default settings if collection is empty
             initializeDefaultSettings();
             
             // Create indexes
             createIndexes();
+            idGenerator.syncCounter(IdGenerator.USER_COUNTER, this::highestUserNumber);
+            reconcileBorrowSlots();
+            reloadCatalog();
+            reloadSettings();
+            reconcileDashboard();
+            startMaintenance();
             
             // Data will be loaded from MongoDB Compass, not initialized here
             // initializeData();
             
             System.out.println("Connected to MongoDB successfully!");
-            System.out.println("Loading data from MongoDB Compass (library_db)...");
+            System.out.println("Loading data from MongoDB Compass (" + databaseName + ")...");
         } catch (Exception e) {
             System.err.println("Error connecting to MongoDB: " + e.getMessage());
             e.printStackTrace();
         }
     }
     
-    private void createIndexes() {
+    // Re-reads the whole catalog every server.catalogReload seconds, the settings every
+    // server.settingsPoll seconds and the dashboard counts every server.statsReconcile seconds,
+    // for edits made directly in MongoDB; changes made through the server reach them at once
+    private void startMaintenance() {
+        int catalogInterval = ServerConfig.getCatalogReloadInterval();
+        int settingsInterval = ServerConfig.getSettingsPollInterval();
+        int statsInterval = ServerConfig.getStatsReconcileInterval();
+        int suggestInterval = ServerConfig.getSuggestRebuildInterval();
+        if (catalogInterval <= 0 && settingsInterval <= 0 && statsInterval <= 0 && suggestInterval <= 0) {
+            return;
+        }
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        if (catalogInterval > 0) {
+            maintenance.scheduleAtFixedRate(() -> {
+                try {
+                    reloadCatalog();
+                } catch (Exception e) {
+                    System.err.println("Error reloading catalog: " + e.getMessage());
+                }
+            }, catalogInterval, catalogInterval, TimeUnit.SECONDS);
+        }
+        if (settingsInterval > 0) {
+            maintenance.scheduleAtFixedRate(this::reloadSettings, settingsInterval, settingsInterval, TimeUnit.SECONDS);
+        }
+        if (statsInterval > 0) {
+            maintenance.scheduleAtFixedRate(this::reconcileDashboard, statsInterval, statsInterval, TimeUnit.SECONDS);
+        }
+        if (suggestInterval > 0) {
+            maintenance.scheduleAtFixedRate(() -> {
+                try {
+                    suggester.rebuildIfChanged();
+                } catch (Exception e) {
+                    System.err.println("Error rebuilding search suggestions: " + e.getMessage());
+                }
+            }, suggestInterval, suggestInterval, TimeUnit.SECONDS);
+        }
+    }
+    
+    // The catalog and the borrow counts that rank search suggestions, re-read from MongoDB
+    private void reloadCatalog() {
+        catalog.reload();
+        Map<String, Long> borrowCounts = new HashMap<>();
+        for (Document group : borrowRecordsCollection.aggregate(Arrays.asList(
+                Aggregates.match(ne("bookId", null)),
+                Aggregates.group("$bookId", Accumulators.sum("count", 1))))) {
+            borrowCounts.put(group.getString("_id"), longValue(group, "count"));
+        }
+        suggester.setBorrowCounts(borrowCounts);
+        suggester.rebuildIfChanged();
+    }
+    
+    // borrowBook trusts users.currentBorrowed for the borrow limit, so at startup it is recounted
+    // from the open borrow records; this repairs counters left wrong by an interrupted write or
+    // an edit made directly in MongoDB. Only users whose count differs are written.
+    private void reconcileBorrowSlots() {
         try {
-            // Create unique index on email
-            com.mongodb.client.model.IndexOptions indexOptions = 
-                new com.mongodb.client.model.IndexOptions().unique(true);
-            usersCollection.createIndex(new Document("email", 1), indexOptions);
-            usersCollection.createIndex(new Document("userId", 1), indexOptions);
-            booksCollection.createIndex(new Document("bookId", 1), indexOptions);
-            booksCollection.createIndex(new Document("isbn", 1));
+            Map<String, Long> open = new HashMap<>();
+            for (Document group : borrowRecordsCollection.aggregate(Arrays.asList(
+                    Aggregates.match(QueryFilters.openBorrows()),
+                    Aggregates.group("$userId", Accumulators.sum("count", 1))))) {
+                open.put(group.getString("_id"), longValue(group, "count"));
+            }
+            int fixed = 0;
+            for (Document userDoc : usersCollection.find()
+                    .projection(new Document("userId", 1).append("currentBorrowed", 1))) {
+                String userId = userDoc.getString("userId");
+                long count = open.getOrDefault(userId, 0L);
+                Object current = userDoc.get("currentBorrowed");
+                if (userId != null && (!(current instanceof Number) || ((Number) current).longValue() != count)) {
+                    usersCollection.updateOne(QueryFilters.userById(userId), set("currentBorrowed", (int) count));
+                    fixed++;
+                }
+            }
+            if (fixed > 0) {
+                System.out.println("Corrected currentBorrowed of " + fixed + " users");
+            }
         } catch (Exception e) {
-            // Index might already exist, ignore
+            System.err.println("Error reconciling borrow counts: " + e.getMessage());
         }
     }
     
+    String getCatalogStats() {
+        return catalog.getStats() + ", " + suggester.size() + " suggestions";
+    }
+    
+    void setEventListener(UserEventListener eventListener) {
+        this.eventListener = eventListener;
+    }
+    
+    private void createIndexes() {
+        // One index per query shape, see IndexManager
+        IndexManager.ensureIndexes(database);
+    }
+    
     // Data initialization disabled - data will be loaded from MongoDB Compass
     /*
     private void initializeData() {
@@ -102,7 +269,7 @@ public class DatabaseManager {
             }
             
             // Initialize Admin User
-            if (usersCollection.countDocuments(eq("role", "ADMIN")) == 0) {
+            if (usersCollection.countDocuments(QueryFilters.usersWithRole("ADMIN")) == 0) {
                 Document admin = new Document("userId", "ADMIN001")
                     .append("email", "dainam@dnu.edu.vn")
                     .append("password", "dainam")
@@ -126,7 +293,7 @@ public class DatabaseManager {
             }
             
             // Initialize Sample Users (4 users total: 1 admin + 3 regular users as shown in MongoDB Compass)
-            if (usersCollection.countDocuments(eq("role", "USER")) == 0) {
+            if (usersCollection.countDocuments(QueryFilters.usersWithRole("USER")) == 0) {
                 List<Document> users = new ArrayList<>();
                 users.add(new Document("userId", "USER001")
                     .append("email", "nghia@dnu.edu.vn")
@@ -1052,24 +1219,20 @@ public class DatabaseManager {
     // User operations
     public User login(String email, String password) {
         try {
-            Document doc = usersCollection.find(
-                and(eq("email", email), eq("password", password))
+            User user = userObjects.find(
+                QueryFilters.login(email, password)
             ).first();
             
-            if (doc != null) {
+            if (user != null) {
                 // Check if user is locked
-                String status = doc.getString("status");
-                if (status != null && "LOCKED".equals(status)) {
+                if ("LOCKED".equals(user.getStatus())) {
                     // User is locked, return null to deny login
                     return null;
                 }
                 
-                User user = documentToUser(doc);
                 // Update last login
-                usersCollection.updateOne(eq("_id", doc.getObjectId("_id")), 
-                    set("lastLogin", new java.util.Date()));
-                usersCollection.updateOne(eq("_id", doc.getObjectId("_id")), 
-                    set("isOnline", true));
+                usersCollection.updateOne(QueryFilters.userById(user.getUserId()),
+                    combine(set("lastLogin", new java.util.Date()), set("isOnline", true)));
                 return user;
             }
         } catch (Exception e) {
@@ -1080,55 +1243,17 @@ public class DatabaseManager {
     
     public User getUserByEmail(String email) {
         try {
-            Document doc = usersCollection.find(eq("email", email)).first();
-            if (doc != null) {
-                return documentToUser(doc);
-            }
+            return userObjects.find(QueryFilters.userByEmail(email)).first();
         } catch (Exception e) {
             System.err.println("Error getting user by email: " + e.getMessage());
         }
         return null;
     }
     
-    private User documentToUser(Document doc) {
-        User user = new User();
-        user.setUserId(doc.getString("userId"));
-        user.setEmail(doc.getString("email"));
-        user.setPassword(doc.getString("password"));
-        user.setFirstName(doc.getString("firstName"));
-        user.setLastName(doc.getString("lastName"));
-        user.setPhone(doc.getString("phone"));
-        user.setAddress(doc.getString("address"));
-        user.setRole(doc.getString("role"));
-        user.setStatus(doc.getString("status"));
-        user.setStudentId(doc.getString("studentId"));
-        user.setFaculty(doc.getString("faculty"));
-        user.setYearOfStudy(doc.getString("yearOfStudy"));
-        user.setTotalBorrowed(doc.getInteger("totalBorrowed", 0));
-        user.setCurrentBorrowed(doc.getInteger("currentBorrowed", 0));
-        Object totalFinesObj = doc.get("totalFines");
-        if (totalFinesObj instanceof Number) {
-            user.setTotalFines(((Number) totalFinesObj).doubleValue());
-        } else {
-            user.setTotalFines(0.0);
-        }
-        if (doc.getDate("dateOfBirth") != null) {
-            user.setDateOfBirth(new Date(doc.getDate("dateOfBirth").getTime()));
-        }
-        if (doc.getDate("registrationDate") != null) {
-            user.setRegistrationDate(new Date(doc.getDate("registrationDate").getTime()));
-        }
-        if (doc.getDate("lastLogin") != null) {
-            user.setLastLogin(new Date(doc.getDate("lastLogin").getTime()));
-        }
-        user.setOnline(doc.getBoolean("isOnline", false));
-        return user;
-    }
-    
     public boolean register(User user) {
         try {
             // Check if email already exists
-            Document existing = usersCollection.find(eq("email", user.getEmail())).first();
+            Document existing = usersCollection.find(QueryFilters.userByEmail(user.getEmail())).first();
             if (existing != null) {
                 System.err.println("Registration failed: Email already exists: " + user.getEmail());
                 return false;
@@ -1136,7 +1261,7 @@ public class DatabaseManager {
             
             // Check if studentId already exists
             if (user.getStudentId() != null && !user.getStudentId().isEmpty()) {
-                Document existingStudentId = usersCollection.find(eq("studentId", user.getStudentId())).first();
+                Document existingStudentId = usersCollection.find(QueryFilters.userByStudentId(user.getStudentId())).first();
                 if (existingStudentId != null) {
                     System.err.println("Registration failed: Student ID already exists: " + user.getStudentId());
                     return false;
@@ -1167,6 +1292,7 @@ public class DatabaseManager {
                 .append("isOnline", false);
             
             usersCollection.insertOne(doc);
+            dashboard.userAdded(doc.getString("status"));
             System.out.println("User registered successfully: " + user.getEmail() + " (userId: " + userId + ")");
             return true;
         } catch (com.mongodb.MongoWriteException e) {
@@ -1186,220 +1312,248 @@ public class DatabaseManager {
     }
     
     private String generateUserId() {
-        // Find the highest existing userId number
-        int maxNum = 0;
+        return String.format("USER%03d", idGenerator.next(IdGenerator.USER_COUNTER));
+    }
+    
+    // Highest n of the USERnnn ids already stored; scanned once at startup to seed the counter
+    private long highestUserNumber() {
+        long maxNum = 0;
+        for (Document doc : usersCollection.find(regex("userId", "^USER[0-9]+$"))
+                .projection(new Document("userId", 1).append("_id", 0))) {
+            maxNum = Math.max(maxNum, userNumber(doc.getString("userId")));
+        }
+        return maxNum;
+    }
+    
+    private static long userNumber(String userId) {
         try {
-            for (Document doc : usersCollection.find()) {
-                String userId = doc.getString("userId");
-                if (userId != null && userId.startsWith("USER")) {
-                    try {
-                        int num = Integer.parseInt(userId.substring(4));
-                        if (num > maxNum) {
-                            maxNum = num;
-                        }
-                    } catch (NumberFormatException e) {
-                        // Ignore invalid userId format
-                    }
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Error generating userId: " + e.getMessage());
+            return Long.parseLong(userId.substring(4));
+        } catch (NumberFormatException e) {
+            return 0;
         }
-        
-        // Generate next userId
-        return String.format("USER%03d", maxNum + 1);
     }
     
     // Book operations
     public List<Book> getAllBooks() {
         try {
-            List<Book> books = new ArrayList<>();
-            for (Document doc : booksCollection.find()) {
-                books.add(documentToBook(doc));
-            }
-            return books;
+            return catalog.getAll();
         } catch (Exception e) {
             System.err.println("Error getting all books: " + e.getMessage());
             return new ArrayList<>();
         }
     }
     
-    private Book documentToBook(Document doc) {
-        Book book = new Book();
-        book.setBookId(doc.getString("bookId"));
-        book.setTitle(doc.getString("title"));
-        book.setAuthor(doc.getString("author"));
-        book.setIsbn(doc.getString("isbn"));
-        book.setCategory(doc.getString("category"));
-        book.setPublishYear(doc.getInteger("publishYear", 0));
-        book.setPages(doc.getInteger("pages", 0));
-        Object priceObj = doc.get("price");
-        if (priceObj instanceof Number) {
-            book.setPrice(((Number) priceObj).doubleValue());
-        } else {
-            book.setPrice(0.0);
+    public Page<Book> getBooksPage(String cursor, int limit, boolean newestFirst) {
+        try {
+            List<Book> books = new ArrayList<>();
+            String nextCursor = readPage(keyedBooks, BOOK_LIST_FIELDS, cursor, limit, newestFirst, books);
+            return new Page<>(books, nextCursor, booksCollection.estimatedDocumentCount());
+        } catch (Exception e) {
+            System.err.println("Error getting books page: " + e.getMessage());
+            return new Page<>();
         }
-        book.setTotalCopies(doc.getInteger("totalCopies", 0));
-        book.setAvailableCopies(doc.getInteger("availableCopies", 0));
-        book.setDescription(doc.getString("description"));
-        return book;
+    }
+    
+    // Keyset pagination on _id: the cursor is the last _id of the previous page, so every page
+    // is one index range scan however deep the user scrolls (no skip), and inserts made in the
+    // meantime do not shift later pages. Fills items and returns the next cursor, or null.
+    private <T> String readPage(MongoCollection<Keyed<T>> collection, Document projection, String cursor,
+            int limit, boolean newestFirst, List<T> items) {
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        Bson filter = new Document();
+        if (cursor != null) {
+            ObjectId after = new ObjectId(cursor);
+            filter = newestFirst ? lt("_id", after) : gt("_id", after);
+        }
+        // One extra document tells whether another page follows
+        FindIterable<Keyed<T>> find = collection.find(filter)
+            .sort(new Document("_id", newestFirst ? -1 : 1))
+            .limit(size + 1);
+        if (projection != null) {
+            find.projection(projection);
+        }
+        List<Keyed<T>> docs = find.into(new ArrayList<>());
+        boolean more = docs.size() > size;
+        if (more) {
+            docs.remove(size);
+        }
+        for (Keyed<T> doc : docs) {
+            items.add(doc.value);
+        }
+        return more ? docs.get(size - 1).id.toHexString() : null;
     }
     
     public List<BookCopy> getBookCopies(String bookId) {
         try {
-            List<BookCopy> copies = new ArrayList<>();
-            for (Document doc : bookCopiesCollection.find(eq("bookId", bookId)).sort(new Document("copyId", 1))) {
-                copies.add(documentToBookCopy(doc));
-            }
-            return copies;
+            return bookCopyObjects.find(QueryFilters.copiesOfBook(bookId)).sort(QueryFilters.COPY_ORDER).into(new ArrayList<>());
         } catch (Exception e) {
             System.err.println("Error getting book copies: " + e.getMessage());
             return new ArrayList<>();
         }
     }
     
-    private BookCopy documentToBookCopy(Document doc) {
-        BookCopy copy = new BookCopy();
-        copy.setCopyId(doc.getString("copyId"));
-        copy.setBookId(doc.getString("bookId"));
-        copy.setStatus(doc.getString("status"));
-        copy.setLocation(doc.getString("location"));
-        copy.setNotes(doc.getString("notes"));
-        return copy;
-    }
-    
     // Borrow operations
     public List<BorrowRecord> getBorrowRecords(String userId) {
         try {
-            List<BorrowRecord> records = new ArrayList<>();
-            for (Document doc : borrowRecordsCollection.find(eq("userId", userId))) {
-                records.add(documentToBorrowRecord(doc));
-            }
-            return records;
+            return withNames(borrowRecordObjects.find(QueryFilters.borrowsOfUser(userId)).into(new ArrayList<>()));
         } catch (Exception e) {
             System.err.println("Error getting borrow records: " + e.getMessage());
             return new ArrayList<>();
         }
     }
     
-    private BorrowRecord documentToBorrowRecord(Document doc) {
-        BorrowRecord record = new BorrowRecord();
-        record.setRecordId(doc.getString("recordId"));
-        record.setUserId(doc.getString("userId"));
-        record.setBookId(doc.getString("bookId"));
-        record.setCopyId(doc.getString("copyId"));
-        if (doc.getDate("borrowDate") != null) {
-            record.setBorrowDate(new Date(doc.getDate("borrowDate").getTime()));
-        }
-        if (doc.getDate("dueDate") != null) {
-            record.setDueDate(new Date(doc.getDate("dueDate").getTime()));
+    // Fills in user names and book titles with batched $in queries (a few per IN_BATCH_SIZE
+    // distinct ids) instead of two finds per record
+    private List<BorrowRecord> withNames(List<BorrowRecord> records) {
+        Set<String> userIds = new HashSet<>();
+        Set<String> bookIds = new HashSet<>();
+        for (BorrowRecord record : records) {
+            if (record.getUserId() != null) {
+                userIds.add(record.getUserId());
+            }
+            if (record.getBookId() != null) {
+                bookIds.add(record.getBookId());
+            }
         }
-        if (doc.getDate("returnDate") != null) {
-            record.setReturnDate(new Date(doc.getDate("returnDate").getTime()));
+        
+        Map<String, String> usernames = new HashMap<>();
+        for (List<String> batch : partition(userIds)) {
+            for (Document userDoc : usersCollection.find(in("userId", batch))
+                    .projection(new Document("userId", 1).append("firstName", 1).append("lastName", 1).append("email", 1))) {
+                usernames.putIfAbsent(userDoc.getString("userId"), displayName(userDoc));
+            }
         }
-        record.setStatus(doc.getString("status"));
-        Object fineObj = doc.get("fine");
-        if (fineObj instanceof Number) {
-            record.setFine(((Number) fineObj).doubleValue());
-        } else {
-            record.setFine(0.0);
+        Map<String, String> bookTitles = new HashMap<>();
+        for (List<String> batch : partition(bookIds)) {
+            for (Document bookDoc : booksCollection.find(in("bookId", batch))
+                    .projection(new Document("bookId", 1).append("title", 1))) {
+                bookTitles.putIfAbsent(bookDoc.getString("bookId"), bookDoc.getString("title"));
+            }
         }
         
-        // Get user info for display
-        String userId = record.getUserId();
-        if (userId != null) {
-            Document userDoc = usersCollection.find(eq("userId", userId)).first();
-            if (userDoc != null) {
-                String firstName = userDoc.getString("firstName");
-                String lastName = userDoc.getString("lastName");
-                String username = (firstName != null ? firstName : "") + " " + (lastName != null ? lastName : "");
-                username = username.trim();
-                if (username.isEmpty()) {
-                    username = userDoc.getString("email");
-                }
-                record.setUsername(username);
+        for (BorrowRecord record : records) {
+            record.setUsername(usernames.get(record.getUserId()));
+            record.setBookTitle(bookTitles.get(record.getBookId()));
+        }
+        return records;
+    }
+    
+    private static List<List<String>> partition(Set<String> ids) {
+        List<List<String>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>(Math.min(ids.size(), IN_BATCH_SIZE));
+        for (String id : ids) {
+            batch.add(id);
+            if (batch.size() == IN_BATCH_SIZE) {
+                batches.add(batch);
+                batch = new ArrayList<>(IN_BATCH_SIZE);
             }
         }
-        
-        // Get book title for display
-        Document bookDoc = booksCollection.find(eq("bookId", record.getBookId())).first();
-        if (bookDoc != null) {
-            record.setBookTitle(bookDoc.getString("title"));
+        if (!batch.isEmpty()) {
+            batches.add(batch);
         }
-        
-        return record;
+        return batches;
+    }
+    
+    private static String displayName(Document userDoc) {
+        String firstName = userDoc.getString("firstName");
+        String lastName = userDoc.getString("lastName");
+        String username = (firstName != null ? firstName : "") + " " + (lastName != null ? lastName : "");
+        username = username.trim();
+        if (username.isEmpty()) {
+            username = userDoc.getString("email");
+        }
+        return username;
     }
     
     public boolean borrowBook(String userId, String bookId) {
-        try {
-            // Check if user exists and is active
-            Document userDoc = usersCollection.find(eq("userId", userId)).first();
-            if (userDoc == null || !"ACTIVE".equals(userDoc.getString("status"))) {
-                return false;
-            }
-            
-            // Get user role
-            String userRole = userDoc.getString("role");
-            String userEmail = userDoc.getString("email");
-            
-            // Get settings
-            Document settings = getSettings();
-            int maxBorrowBooks = settings != null ? settings.getInteger("maxBorrowBooks", 5) : 5;
-            int maxBorrowDays = settings != null ? settings.getInteger("maxBorrowDays", 14) : 14;
-            
-            // Check if user has reached max borrow limit
-            // Calculate currentBorrowed directly from borrow records to ensure accuracy
-            // Count both BORROWING and BORROWED status (some old records might use BORROWED)
-            long currentBorrowed = borrowRecordsCollection.countDocuments(
-                and(eq("userId", userId), 
-                    or(eq("status", "BORROWING"), eq("status", "BORROWED")))
-            );
-            
-            System.out.println("[DEBUG] borrowBook: userId=" + userId + ", email=" + userEmail + ", role=" + userRole + ", currentBorrowed=" + currentBorrowed + ", maxBorrowBooks=" + maxBorrowBooks);
-            
-            // Apply borrow limit to ALL users including ADMIN
-            // Check if adding one more book would exceed the limit
-            // If currentBorrowed is already at or above maxBorrowBooks, reject
-            if (currentBorrowed >= maxBorrowBooks) {
-                System.out.println("[DEBUG] borrowBook: User has reached max borrow limit. Cannot borrow more books. (Role: " + userRole + ")");
-                return false;
-            }
-            
-            // Check if book has available copies
-            Document bookDoc = booksCollection.find(eq("bookId", bookId)).first();
-            if (bookDoc == null) {
+        // Get settings
+        SettingsSnapshot settings = currentSettings();
+        int maxBorrowBooks = settings.getMaxBorrowBooks();
+        int maxBorrowDays = settings.getMaxBorrowDays();
+        boolean transactional = ServerConfig.isTransactionalBorrow();
+        
+        for (int attempt = 1; ; attempt++) {
+            try (ClientSession session = mongoClient.startSession()) {
+                if (transactional) {
+                    session.startTransaction();
+                }
+                Document borrowDoc = claimBorrow(session, userId, bookId, maxBorrowBooks, maxBorrowDays, !transactional);
+                boolean borrowed = borrowDoc != null;
+                if (transactional) {
+                    if (borrowed) {
+                        session.commitTransaction();
+                    } else {
+                        session.abortTransaction();
+                    }
+                }
+                if (borrowed) {
+                    catalog.refresh(bookId);
+                    suggester.borrowed(bookId);
+                    dashboard.borrowed(borrowDoc.getString("recordId"), borrowDoc.getDate("dueDate").getTime());
+                }
+                return borrowed;
+            } catch (MongoException e) {
+                // Write conflict with a concurrent borrow: the transaction was aborted, try again
+                if (transactional && attempt < MAX_TRANSACTION_ATTEMPTS
+                        && e.hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL)) {
+                    continue;
+                }
+                System.err.println("Error borrowing book: " + e.getMessage());
                 return false;
-            }
-            
-            int availableCopies = bookDoc.getInteger("availableCopies", 0);
-            if (availableCopies <= 0) {
+            } catch (Exception e) {
+                System.err.println("Error borrowing book: " + e.getMessage());
+                e.printStackTrace();
                 return false;
             }
-            
-            // Find an available copy
-            Document copyDoc = bookCopiesCollection.find(
-                and(eq("bookId", bookId), eq("status", "AVAILABLE"))
-            ).first();
-            
+        }
+    }
+    
+    // A borrow is three guarded updates plus the record insert. Each update only matches while
+    // its condition still holds (user active and below the limit, copy AVAILABLE, counter > 0),
+    // so concurrent borrows of the same title can neither share a copy nor push the counters
+    // past their bounds. undoOnFailure: without a transaction, steps already applied are
+    // reverted when a later one does not match or throws. Returns the new borrow record, or null.
+    private Document claimBorrow(ClientSession session, String userId, String bookId,
+            int maxBorrowBooks, int maxBorrowDays, boolean undoOnFailure) {
+        // Per-user guard: take a borrow slot (the limit applies to ALL users including ADMIN)
+        Document userDoc = usersCollection.findOneAndUpdate(session,
+            QueryFilters.userWithFreeSlot(userId, maxBorrowBooks),
+            combine(inc("currentBorrowed", 1), inc("totalBorrowed", 1)),
+            new FindOneAndUpdateOptions().projection(new Document("userId", 1)));
+        if (userDoc == null) {
+            return null;
+        }
+        
+        // Claim one available copy; a copy can only be claimed once
+        String copyId = null;
+        boolean counted = false;
+        try {
+            Document copyDoc = bookCopiesCollection.findOneAndUpdate(session,
+                QueryFilters.copiesOfBook(bookId, "AVAILABLE"),
+                set("status", "BORROWED"),
+                new FindOneAndUpdateOptions().projection(new Document("copyId", 1)));
             if (copyDoc == null) {
-                return false;
+                if (undoOnFailure) {
+                    undoBorrow(session, userId, bookId, null, false);
+                }
+                return null;
             }
-            
-            String copyId = copyDoc.getString("copyId");
-            
-            // Double-check limit again right before inserting (to prevent race conditions)
-            long currentBorrowedRecheck = borrowRecordsCollection.countDocuments(
-                and(eq("userId", userId), 
-                    or(eq("status", "BORROWING"), eq("status", "BORROWED")))
-            );
-            
-            if (currentBorrowedRecheck >= maxBorrowBooks) {
-                System.out.println("[DEBUG] borrowBook: User has reached max borrow limit on recheck. Cannot borrow more books.");
-                return false;
+            copyId = copyDoc.getString("copyId");
+            
+            // Decrement the book counter only while it is positive
+            UpdateResult decremented = booksCollection.updateOne(session,
+                QueryFilters.bookWithAvailableCopy(bookId),
+                inc("availableCopies", -1));
+            if (decremented.getModifiedCount() == 0) {
+                if (undoOnFailure) {
+                    undoBorrow(session, userId, bookId, copyId, false);
+                }
+                return null;
             }
+            counted = true;
             
             // Create borrow record
-            String recordId = "record_" + System.currentTimeMillis();
+            String recordId = idGenerator.nextTimeId("record_");
             java.util.Date now = new java.util.Date();
             java.util.Date dueDate = new java.util.Date(now.getTime() + (long)maxBorrowDays * 24 * 60 * 60 * 1000);
             
@@ -1412,51 +1566,50 @@ public class DatabaseManager {
                 .append("returnDate", null)
                 .append("status", "BORROWING")
                 .append("fine", 0.0);
-            
-            // Update book copy status first (before inserting borrow record)
-            bookCopiesCollection.updateOne(eq("copyId", copyId), set("status", "BORROWED"));
-            
-            // Update book available copies
-            booksCollection.updateOne(eq("bookId", bookId), 
-                set("availableCopies", availableCopies - 1));
-            
-            // Insert borrow record
-            borrowRecordsCollection.insertOne(borrowDoc);
-            
-            // Final verification after insert to ensure we didn't exceed limit
-            long finalBorrowedCount = borrowRecordsCollection.countDocuments(
-                and(eq("userId", userId), 
-                    or(eq("status", "BORROWING"), eq("status", "BORROWED")))
-            );
-            
-            if (finalBorrowedCount > maxBorrowBooks) {
-                // Rollback: delete the record we just inserted and restore book copy
-                System.out.println("[DEBUG] borrowBook: ERROR - Exceeded limit after insert! Rolling back. finalBorrowedCount=" + finalBorrowedCount + ", maxBorrowBooks=" + maxBorrowBooks);
-                borrowRecordsCollection.deleteOne(eq("recordId", recordId));
-                bookCopiesCollection.updateOne(eq("copyId", copyId), set("status", "AVAILABLE"));
-                booksCollection.updateOne(eq("bookId", bookId), 
-                    set("availableCopies", availableCopies));
-                return false;
+            borrowRecordsCollection.insertOne(session, borrowDoc);
+            return borrowDoc;
+        } catch (RuntimeException e) {
+            // A step failed part way (network error, timeout): give back what was taken, so the
+            // slot, the copy and the counter are not lost. A transaction is aborted instead.
+            if (undoOnFailure) {
+                try {
+                    undoBorrow(session, userId, bookId, copyId, counted);
+                } catch (RuntimeException undoError) {
+                    System.err.println("Error undoing borrow of " + bookId + " by " + userId + ": " + undoError.getMessage());
+                }
             }
-            
-            // Update user stats
-            usersCollection.updateOne(eq("userId", userId), 
-                combine(
-                    inc("currentBorrowed", 1),
-                    inc("totalBorrowed", 1)
-                ));
-            
-            return true;
-        } catch (Exception e) {
-            System.err.println("Error borrowing book: " + e.getMessage());
-            e.printStackTrace();
-            return false;
+            throw e;
+        }
+    }
+    
+    // Reverts the steps of a borrow that were applied: the copy (if claimed), the counter (if
+    // decremented) and the user's slot
+    private void undoBorrow(ClientSession session, String userId, String bookId, String copyId, boolean counted) {
+        if (counted) {
+            booksCollection.updateOne(session, QueryFilters.bookById(bookId), inc("availableCopies", 1));
         }
+        if (copyId != null) {
+            bookCopiesCollection.updateOne(session, QueryFilters.copyById(copyId), set("status", "AVAILABLE"));
+        }
+        releaseBorrowSlot(session, userId);
+    }
+    
+    private void releaseBorrowSlot(ClientSession session, String userId) {
+        usersCollection.updateOne(session, QueryFilters.userById(userId),
+            combine(inc("currentBorrowed", -1), inc("totalBorrowed", -1)));
     }
     
     public boolean returnBook(String recordId) {
         try {
-            Document recordDoc = borrowRecordsCollection.find(eq("recordId", recordId)).first();
+            // Only one return of a record can succeed, so a repeated request cannot release the
+            // copy or the user's borrow slot twice
+            java.util.Date returnDate = new java.util.Date();
+            Document recordDoc = borrowRecordsCollection.findOneAndUpdate(
+                QueryFilters.openRecord(recordId),
+                combine(
+                    set("returnDate", returnDate),
+                    set("status", "RETURNED")
+                ));
             if (recordDoc == null) {
                 return false;
             }
@@ -1466,13 +1619,10 @@ public class DatabaseManager {
             String copyId = recordDoc.getString("copyId");
             
             // Get settings for calculating overdue fine
-            Document settings = getSettings();
-            Object overdueFineObj = settings != null ? settings.get("overdueFinePerDay") : null;
-            double overdueFinePerDay = overdueFineObj != null ? ((Number) overdueFineObj).doubleValue() : 5000.0;
+            double overdueFinePerDay = currentSettings().getOverdueFinePerDay();
             
             // Calculate fine if overdue
             java.util.Date dueDate = recordDoc.getDate("dueDate");
-            java.util.Date returnDate = new java.util.Date();
             double fineAmount = 0.0;
             
             if (dueDate != null && returnDate.after(dueDate)) {
@@ -1480,7 +1630,7 @@ public class DatabaseManager {
                 fineAmount = daysOverdue * overdueFinePerDay;
                 
                 // Create fine record
-                String fineId = "FINE_" + System.currentTimeMillis();
+                String fineId = idGenerator.nextTimeId("FINE_");
                 Document fineDoc = new Document("fineId", fineId)
                     .append("recordId", recordId)
                     .append("userId", userId)
@@ -1493,34 +1643,29 @@ public class DatabaseManager {
                     .append("createdDate", returnDate);
                 
                 finesCollection.insertOne(fineDoc);
+                dashboard.fineAdded(fineAmount);
                 
                 // Update user totalFines
-                usersCollection.updateOne(eq("userId", userId), 
+                usersCollection.updateOne(QueryFilters.userById(userId), 
                     inc("totalFines", fineAmount));
             }
             
-            // Update borrow record
-            borrowRecordsCollection.updateOne(eq("recordId", recordId),
-                combine(
-                    set("returnDate", returnDate),
-                    set("status", "RETURNED"),
-                    set("fine", fineAmount)
-                ));
+            // Update borrow record (status and return date were set above)
+            borrowRecordsCollection.updateOne(QueryFilters.recordById(recordId), set("fine", fineAmount));
             
             // Update book copy status
-            bookCopiesCollection.updateOne(eq("copyId", copyId), set("status", "AVAILABLE"));
-            
-            // Update book available copies
-            Document bookDoc = booksCollection.find(eq("bookId", bookId)).first();
-            if (bookDoc != null) {
-                int availableCopies = bookDoc.getInteger("availableCopies", 0);
-                booksCollection.updateOne(eq("bookId", bookId), 
-                    set("availableCopies", availableCopies + 1));
+            bookCopiesCollection.updateOne(QueryFilters.copyById(copyId), set("status", "AVAILABLE"));
+            
+            // Update book available copies ($inc, not read-then-write, so concurrent returns add up)
+            booksCollection.updateOne(QueryFilters.bookById(bookId), inc("availableCopies", 1));
+            catalog.refresh(bookId);
+            dashboard.copiesChanged(1);
+            if ("BORROWING".equals(recordDoc.getString("status"))) {
+                dashboard.borrowClosed(recordId, dueDate != null ? dueDate.getTime() : 0);
             }
             
             // Update user stats
-            usersCollection.updateOne(eq("userId", userId), 
-                inc("currentBorrowed", -1));
+            releaseCurrentBorrow(userId);
             
             return true;
         } catch (Exception e) {
@@ -1531,7 +1676,7 @@ public class DatabaseManager {
     
     public boolean renewBook(String recordId) {
         try {
-            Document recordDoc = borrowRecordsCollection.find(eq("recordId", recordId)).first();
+            Document recordDoc = borrowRecordsCollection.find(QueryFilters.recordById(recordId)).first();
             if (recordDoc == null) {
                 return false;
             }
@@ -1542,8 +1687,7 @@ public class DatabaseManager {
             }
             
             // Get settings
-            Document settings = getSettings();
-            int renewalDays = settings != null ? settings.getInteger("renewalDays", 7) : 7;
+            int renewalDays = currentSettings().getRenewalDays();
             
             // Extend due date by renewal days from settings
             java.util.Date currentDueDate = recordDoc.getDate("dueDate");
@@ -1552,8 +1696,11 @@ public class DatabaseManager {
             }
             
             java.util.Date newDueDate = new java.util.Date(currentDueDate.getTime() + (long)renewalDays * 24 * 60 * 60 * 1000);
-            borrowRecordsCollection.updateOne(eq("recordId", recordId),
+            borrowRecordsCollection.updateOne(QueryFilters.recordById(recordId),
                 set("dueDate", newDueDate));
+            if ("BORROWING".equals(status)) {
+                dashboard.renewed(recordId, currentDueDate.getTime(), newDueDate.getTime());
+            }
             
             return true;
         } catch (Exception e) {
@@ -1565,30 +1712,82 @@ public class DatabaseManager {
     // Admin operations
     public List<User> getAllUsers() {
         try {
-            List<User> users = new ArrayList<>();
-            for (Document doc : usersCollection.find()) {
-                users.add(documentToUser(doc));
-            }
-            return users;
+            return userObjects.find().projection(USER_LIST_FIELDS).into(new ArrayList<>());
         } catch (Exception e) {
             System.err.println("Error getting all users: " + e.getMessage());
             return new ArrayList<>();
         }
     }
     
+    public Page<User> getUsersPage(String cursor, int limit, boolean newestFirst) {
+        try {
+            List<User> users = new ArrayList<>();
+            String nextCursor = readPage(keyedUsers, USER_LIST_FIELDS, cursor, limit, newestFirst, users);
+            return new Page<>(users, nextCursor, usersCollection.estimatedDocumentCount());
+        } catch (Exception e) {
+            System.err.println("Error getting users page: " + e.getMessage());
+            return new Page<>();
+        }
+    }
+    
     public List<BorrowRecord> getAllBorrowRecords() {
         try {
-            List<BorrowRecord> records = new ArrayList<>();
-            for (Document doc : borrowRecordsCollection.find()) {
-                records.add(documentToBorrowRecord(doc));
-            }
-            return records;
+            return withNames(borrowRecordObjects.find().into(new ArrayList<>()));
         } catch (Exception e) {
             System.err.println("Error getting all borrow records: " + e.getMessage());
             return new ArrayList<>();
         }
     }
     
+    // Full export: the cursor is read chunkSize documents at a time and each chunk is handed to
+    // the consumer (which sends it) before the next one is read, so only one chunk is in memory
+    // however large the collection is
+    public boolean exportBorrowRecords(int chunkSize, Consumer<List<BorrowRecord>> consumer) {
+        try (MongoCursor<BorrowRecord> cursor = borrowRecordObjects.find().batchSize(chunkSize).iterator()) {
+            List<BorrowRecord> chunk = new ArrayList<>(chunkSize);
+            while (cursor.hasNext()) {
+                chunk.add(cursor.next());
+                if (chunk.size() == chunkSize || !cursor.hasNext()) {
+                    consumer.accept(withNames(chunk));
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            System.err.println("Error exporting borrow records: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    public boolean exportFines(int chunkSize, Consumer<List<Document>> consumer) {
+        try (MongoCursor<Document> cursor = finesCollection.find().projection(new Document("_id", 0))
+                .batchSize(chunkSize).iterator()) {
+            List<Document> chunk = new ArrayList<>(chunkSize);
+            while (cursor.hasNext()) {
+                chunk.add(cursor.next());
+                if (chunk.size() == chunkSize || !cursor.hasNext()) {
+                    consumer.accept(chunk);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            System.err.println("Error exporting fines: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    public Page<BorrowRecord> getBorrowRecordsPage(String cursor, int limit, boolean newestFirst) {
+        try {
+            List<BorrowRecord> records = new ArrayList<>();
+            String nextCursor = readPage(keyedBorrowRecords, null, cursor, limit, newestFirst, records);
+            return new Page<>(withNames(records), nextCursor, borrowRecordsCollection.estimatedDocumentCount());
+        } catch (Exception e) {
+            System.err.println("Error getting borrow records page: " + e.getMessage());
+            return new Page<>();
+        }
+    }
+    
     private void initializeDefaultSettings() {
         try {
             if (settingsCollection.countDocuments() == 0) {
@@ -1610,25 +1809,56 @@ public class DatabaseManager {
         }
     }
     
+    // A copy of the settings document, or null if it cannot be read
     public Document getSettings() {
+        SettingsSnapshot snapshot = settingsSnapshot.get();
+        if (snapshot == null) {
+            snapshot = reloadSettings();
+        }
+        return snapshot != null ? snapshot.toDocument() : null;
+    }
+    
+    // Settings for the borrow/return paths: no query once loaded, defaults if MongoDB never answered
+    SettingsSnapshot currentSettings() {
+        SettingsSnapshot snapshot = settingsSnapshot.get();
+        if (snapshot == null) {
+            snapshot = reloadSettings();
+        }
+        return snapshot != null ? snapshot : new SettingsSnapshot(0, new Document());
+    }
+    
+    // Reads the settings document and installs a new snapshot if it changed. A read that started
+    // before a newer snapshot was installed (e.g. a poll racing updateSettings) is discarded.
+    private SettingsSnapshot reloadSettings() {
+        SettingsSnapshot before = settingsSnapshot.get();
         try {
-            Document settings = settingsCollection.find(eq("settingsId", "SYSTEM_SETTINGS")).first();
-            if (settings == null) {
+            Document stored = settingsCollection.find(QueryFilters.settings()).first();
+            if (stored == null) {
                 // Return default settings if not found
                 initializeDefaultSettings();
-                settings = settingsCollection.find(eq("settingsId", "SYSTEM_SETTINGS")).first();
+                stored = settingsCollection.find(QueryFilters.settings()).first();
             }
-            return settings;
+            if (stored == null || (before != null && before.sameAs(stored))) {
+                return before;
+            }
+            SettingsSnapshot fresh = new SettingsSnapshot(settingsVersion.incrementAndGet(), stored);
+            if (!settingsSnapshot.compareAndSet(before, fresh)) {
+                return settingsSnapshot.get();
+            }
+            if (before != null) {
+                System.out.println("Settings changed, now version " + fresh.getVersion());
+            }
+            return fresh;
         } catch (Exception e) {
             System.err.println("Error getting settings: " + e.getMessage());
-            return null;
+            return before;
         }
     }
     
     public boolean updateSettings(Document settings) {
         try {
             UpdateResult result = settingsCollection.updateOne(
-                eq("settingsId", "SYSTEM_SETTINGS"),
+                QueryFilters.settings(),
                 combine(
                     set("maxBorrowDays", settings.getInteger("maxBorrowDays")),
                     set("maxBorrowBooks", settings.getInteger("maxBorrowBooks")),
@@ -1641,7 +1871,11 @@ public class DatabaseManager {
                     set("lastUpdated", new java.util.Date())
                 )
             );
-            return result.getModifiedCount() > 0 || result.getMatchedCount() > 0;
+            boolean updated = result.getModifiedCount() > 0 || result.getMatchedCount() > 0;
+            if (updated) {
+                reloadSettings();
+            }
+            return updated;
         } catch (Exception e) {
             System.err.println("Error updating settings: " + e.getMessage());
             return false;
@@ -1649,6 +1883,9 @@ public class DatabaseManager {
     }
     
     public void close() {
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+        }
         if (mongoClient != null) {
             mongoClient.close();
         }
@@ -1658,7 +1895,7 @@ public class DatabaseManager {
     public boolean addUser(User user) {
         try {
             // Check if email already exists
-            Document existing = usersCollection.find(eq("email", user.getEmail())).first();
+            Document existing = usersCollection.find(QueryFilters.userByEmail(user.getEmail())).first();
             if (existing != null) {
                 return false;
             }
@@ -1667,6 +1904,8 @@ public class DatabaseManager {
             if (userId == null || userId.isEmpty()) {
                 userId = generateUserId();
                 user.setUserId(userId);
+            } else if (userId.matches("USER[0-9]+")) {
+                idGenerator.reserve(IdGenerator.USER_COUNTER, userNumber(userId));
             }
             
             Document doc = new Document("userId", userId)
@@ -1689,6 +1928,7 @@ public class DatabaseManager {
                 .append("isOnline", false);
             
             usersCollection.insertOne(doc);
+            dashboard.userAdded(doc.getString("status"));
             return true;
         } catch (Exception e) {
             System.err.println("Error adding user: " + e.getMessage());
@@ -1702,12 +1942,12 @@ public class DatabaseManager {
     
     public boolean updateUser(User user) {
         try {
-            Document doc = usersCollection.find(eq("userId", user.getUserId())).first();
+            Document doc = usersCollection.find(QueryFilters.userById(user.getUserId())).first();
             if (doc == null) {
                 return false;
             }
             
-            usersCollection.updateOne(eq("userId", user.getUserId()),
+            usersCollection.updateOne(QueryFilters.userById(user.getUserId()),
                 combine(
                     set("email", user.getEmail()),
                     set("firstName", user.getFirstName()),
@@ -1720,6 +1960,11 @@ public class DatabaseManager {
                     set("status", user.getStatus())
                 ));
             
+            dashboard.userStatusChanged(doc.getString("status"), user.getStatus());
+            UserEventListener listener = eventListener;
+            if (listener != null && user.getStatus() != null && !user.getStatus().equals(doc.getString("status"))) {
+                listener.userStatusChanged(user.getUserId(), user.getStatus());
+            }
             return true;
         } catch (Exception e) {
             System.err.println("Error updating user: " + e.getMessage());
@@ -1732,8 +1977,16 @@ public class DatabaseManager {
             if (userId == null) {
                 return false;
             }
-            DeleteResult result = usersCollection.deleteOne(eq("userId", userId));
-            return result.getDeletedCount() > 0;
+            Document deletedDoc = usersCollection.findOneAndDelete(QueryFilters.userById(userId));
+            boolean deleted = deletedDoc != null;
+            if (deleted) {
+                dashboard.userRemoved(deletedDoc.getString("status"));
+            }
+            UserEventListener listener = eventListener;
+            if (deleted && listener != null) {
+                listener.userDeleted(userId);
+            }
+            return deleted;
         } catch (Exception e) {
             System.err.println("Error deleting user: " + e.getMessage());
             return false;
@@ -1743,14 +1996,25 @@ public class DatabaseManager {
     public boolean lockUser(String userId) {
         try {
             // Also set isOnline to false when locking
-            UpdateResult result = usersCollection.updateOne(
-                eq("userId", userId), 
+            Document before = usersCollection.findOneAndUpdate(
+                QueryFilters.userById(userId), 
                 combine(
                     set("status", "LOCKED"),
                     set("isOnline", false)
-                )
+                ),
+                new FindOneAndUpdateOptions().projection(USER_STATUS_FIELDS)
             );
-            return result.getModifiedCount() > 0;
+            // Same result as before: true if the update changed anything
+            boolean locked = before != null
+                && (!"LOCKED".equals(before.getString("status")) || !Boolean.FALSE.equals(before.get("isOnline")));
+            if (before != null) {
+                dashboard.userStatusChanged(before.getString("status"), "LOCKED");
+            }
+            UserEventListener listener = eventListener;
+            if (locked && listener != null) {
+                listener.userStatusChanged(userId, "LOCKED");
+            }
+            return locked;
         } catch (Exception e) {
             System.err.println("Error locking user: " + e.getMessage());
             return false;
@@ -1759,8 +2023,17 @@ public class DatabaseManager {
     
     public boolean unlockUser(String userId) {
         try {
-            UpdateResult result = usersCollection.updateOne(eq("userId", userId), set("status", "ACTIVE"));
-            return result.getModifiedCount() > 0;
+            Document before = usersCollection.findOneAndUpdate(QueryFilters.userById(userId), set("status", "ACTIVE"),
+                new FindOneAndUpdateOptions().projection(USER_STATUS_FIELDS));
+            boolean unlocked = before != null && !"ACTIVE".equals(before.getString("status"));
+            if (before != null) {
+                dashboard.userStatusChanged(before.getString("status"), "ACTIVE");
+            }
+            UserEventListener listener = eventListener;
+            if (unlocked && listener != null) {
+                listener.userStatusChanged(userId, "ACTIVE");
+            }
+            return unlocked;
         } catch (Exception e) {
             System.err.println("Error unlocking user: " + e.getMessage());
             return false;
@@ -1769,7 +2042,7 @@ public class DatabaseManager {
     
     public boolean resetPassword(String userId, String newPassword) {
         try {
-            UpdateResult result = usersCollection.updateOne(eq("userId", userId), set("password", newPassword));
+            UpdateResult result = usersCollection.updateOne(QueryFilters.userById(userId), set("password", newPassword));
             return result.getModifiedCount() > 0;
         } catch (Exception e) {
             System.err.println("Error resetting password: " + e.getMessage());
@@ -1778,41 +2051,66 @@ public class DatabaseManager {
     }
     
     private ObjectId findUserIdByUserId(String userId) {
-        Document doc = usersCollection.find(eq("userId", userId)).first();
+        Document doc = usersCollection.find(QueryFilters.userById(userId)).first();
         return doc != null ? doc.getObjectId("_id") : null;
     }
     
     private ObjectId findBookIdById(int id) {
-        Document doc = booksCollection.find(eq("bookId", String.valueOf(id))).first();
+        Document doc = booksCollection.find(QueryFilters.bookById(String.valueOf(id))).first();
         return doc != null ? doc.getObjectId("_id") : null;
     }
     
     private ObjectId findBorrowRecordIdById(int id) {
-        Document doc = borrowRecordsCollection.find(eq("recordId", String.valueOf(id))).first();
+        Document doc = borrowRecordsCollection.find(QueryFilters.recordById(String.valueOf(id))).first();
         return doc != null ? doc.getObjectId("_id") : null;
     }
     
     // Book operations
+    // Answered by the catalog's inverted index (SearchIndex) instead of a regex scan of the
+    // books collection
     public List<Book> searchBooks(String keyword) {
         try {
-            List<Book> books = new ArrayList<>();
             if (keyword == null || keyword.trim().isEmpty()) {
                 return getAllBooks();
             }
-            String searchPattern = ".*" + keyword + ".*";
-            for (Document doc : booksCollection.find(
-                or(
-                    regex("title", searchPattern, "i"),
-                    regex("author", searchPattern, "i"),
-                    regex("isbn", searchPattern, "i"),
-                    regex("category", searchPattern, "i")
-                )
-            )) {
-                books.add(documentToBook(doc));
+            return catalog.search(keyword);
+        } catch (Exception e) {
+            System.err.println("Error searching books: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+    
+    // Structured search, evaluated on the catalog's indexes (see CatalogCache.queryPage), one
+    // page at a time. The cursor is the offset of the page in the ordered result. A fuzzy query
+    // answers each book with its relevance, most relevant first unless it asks for another order.
+    public Page<?> searchBooksPage(BookQuery query, String cursor, int limit) {
+        try {
+            int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+            int offset = cursor != null ? Integer.parseInt(cursor) : 0;
+            // Without a keyword there is nothing to match loosely
+            if (!query.isFuzzy() || !query.hasKeyword()) {
+                query.setFuzzy(false);
+                return catalog.queryPage(query, 0, null, offset, size);
+            }
+            Map<Book, Double> relevance = new IdentityHashMap<>();
+            Page<Book> books = catalog.queryPage(query, ServerConfig.getFuzzyMaxEdits(), relevance, offset, size);
+            List<Object[]> hits = new ArrayList<>(books.getItems().size());
+            for (Book book : books.getItems()) {
+                hits.add(new Object[]{book, relevance.get(book)});
             }
-            return books;
+            return new Page<>(hits, books.getNextCursor(), books.getTotal());
         } catch (Exception e) {
             System.err.println("Error searching books: " + e.getMessage());
+            return new Page<>();
+        }
+    }
+    
+    // Type-ahead for the search box, from memory (see BookSuggester)
+    public List<String> suggestBooks(String typed, int limit) {
+        try {
+            return suggester.suggest(typed, limit);
+        } catch (Exception e) {
+            System.err.println("Error suggesting books: " + e.getMessage());
             return new ArrayList<>();
         }
     }
@@ -1837,6 +2135,8 @@ public class DatabaseManager {
                 .append("description", book.getDescription());
             
             booksCollection.insertOne(doc);
+            catalog.refresh(bookId);
+            dashboard.bookAdded();
             return true;
         } catch (Exception e) {
             System.err.println("Error adding book: " + e.getMessage());
@@ -1846,12 +2146,12 @@ public class DatabaseManager {
     
     public boolean updateBook(Book book) {
         try {
-            Document doc = booksCollection.find(eq("bookId", book.getBookId())).first();
+            Document doc = booksCollection.find(QueryFilters.bookById(book.getBookId())).first();
             if (doc == null) {
                 return false;
             }
             
-            booksCollection.updateOne(eq("bookId", book.getBookId()),
+            booksCollection.updateOne(QueryFilters.bookById(book.getBookId()),
                 combine(
                     set("title", book.getTitle()),
                     set("author", book.getAuthor()),
@@ -1864,6 +2164,7 @@ public class DatabaseManager {
                     set("availableCopies", book.getAvailableCopies()),
                     set("description", book.getDescription())
                 ));
+            catalog.refresh(book.getBookId());
             
             return true;
         } catch (Exception e) {
@@ -1874,11 +2175,17 @@ public class DatabaseManager {
     
     public boolean deleteBook(String bookId) {
         try {
-            // Delete all copies first
-            bookCopiesCollection.deleteMany(eq("bookId", bookId));
+            // Delete all copies first (the available ones separately, for the dashboard count)
+            DeleteResult available = bookCopiesCollection.deleteMany(QueryFilters.copiesOfBook(bookId, "AVAILABLE"));
+            dashboard.copiesChanged(-available.getDeletedCount());
+            bookCopiesCollection.deleteMany(QueryFilters.copiesOfBook(bookId));
             
             // Delete the book
-            DeleteResult result = booksCollection.deleteOne(eq("bookId", bookId));
+            DeleteResult result = booksCollection.deleteOne(QueryFilters.bookById(bookId));
+            catalog.remove(bookId);
+            if (result.getDeletedCount() > 0) {
+                dashboard.bookRemoved();
+            }
             return result.getDeletedCount() > 0;
         } catch (Exception e) {
             System.err.println("Error deleting book: " + e.getMessage());
@@ -1888,16 +2195,22 @@ public class DatabaseManager {
     
     public Book getBookById(String bookId) {
         try {
-            Document doc = booksCollection.find(eq("bookId", bookId)).first();
-            if (doc != null) {
-                return documentToBook(doc);
-            }
+            return catalog.get(bookId);
         } catch (Exception e) {
             System.err.println("Error getting book by ID: " + e.getMessage());
         }
         return null;
     }
     
+    public Book getBookByTitle(String title) {
+        try {
+            return catalog.getByTitle(title);
+        } catch (Exception e) {
+            System.err.println("Error getting book by title: " + e.getMessage());
+        }
+        return null;
+    }
+    
     public boolean addBookCopy(BookCopy copy) {
         try {
             Document doc = new Document("copyId", copy.getCopyId())
@@ -1907,18 +2220,16 @@ public class DatabaseManager {
                 .append("notes", copy.getNotes());
             
             bookCopiesCollection.insertOne(doc);
+            if ("AVAILABLE".equals(copy.getStatus())) {
+                dashboard.copiesChanged(1);
+            }
             
-            // Update book totalCopies and availableCopies
-            Document bookDoc = booksCollection.find(eq("bookId", copy.getBookId())).first();
-            if (bookDoc != null) {
-                int totalCopies = bookDoc.getInteger("totalCopies", 0);
-                int availableCopies = bookDoc.getInteger("availableCopies", 0);
-                
-                booksCollection.updateOne(eq("bookId", copy.getBookId()),
-                    combine(
-                        set("totalCopies", totalCopies + 1),
-                        set("availableCopies", "AVAILABLE".equals(copy.getStatus()) ? availableCopies + 1 : availableCopies)
-                    ));
+            // Update book totalCopies and availableCopies in place, so concurrent borrows are not lost
+            Bson counters = "AVAILABLE".equals(copy.getStatus())
+                ? combine(inc("totalCopies", 1), inc("availableCopies", 1))
+                : inc("totalCopies", 1);
+            if (booksCollection.updateOne(QueryFilters.bookById(copy.getBookId()), counters).getModifiedCount() > 0) {
+                catalog.refresh(copy.getBookId());
             }
             
             return true;
@@ -1930,7 +2241,7 @@ public class DatabaseManager {
     
     public boolean deleteBookCopy(String copyId) {
         try {
-            Document copyDoc = bookCopiesCollection.find(eq("copyId", copyId)).first();
+            Document copyDoc = bookCopiesCollection.find(QueryFilters.copyById(copyId)).first();
             if (copyDoc == null) {
                 return false;
             }
@@ -1939,20 +2250,17 @@ public class DatabaseManager {
             String status = copyDoc.getString("status");
             
             // Delete the copy
-            DeleteResult result = bookCopiesCollection.deleteOne(eq("copyId", copyId));
+            DeleteResult result = bookCopiesCollection.deleteOne(QueryFilters.copyById(copyId));
             if (result.getDeletedCount() > 0) {
-                // Update book totalCopies and availableCopies
-                Document bookDoc = booksCollection.find(eq("bookId", bookId)).first();
-                if (bookDoc != null) {
-                    int totalCopies = bookDoc.getInteger("totalCopies", 0);
-                    int availableCopies = bookDoc.getInteger("availableCopies", 0);
-                    
-                    booksCollection.updateOne(eq("bookId", bookId),
-                        combine(
-                            set("totalCopies", Math.max(0, totalCopies - 1)),
-                            set("availableCopies", "AVAILABLE".equals(status) ? Math.max(0, availableCopies - 1) : availableCopies)
-                        ));
+                if ("AVAILABLE".equals(status)) {
+                    dashboard.copiesChanged(-1);
                 }
+                // Decrement book totalCopies and availableCopies in place, each only while positive
+                booksCollection.updateOne(QueryFilters.bookWithCopy(bookId), inc("totalCopies", -1));
+                if ("AVAILABLE".equals(status)) {
+                    booksCollection.updateOne(QueryFilters.bookWithAvailableCopy(bookId), inc("availableCopies", -1));
+                }
+                catalog.refresh(bookId);
                 return true;
             }
             return false;
@@ -1965,7 +2273,9 @@ public class DatabaseManager {
     // Borrow operations for admin
     public boolean markAsLost(String recordId) {
         try {
-            Document recordDoc = borrowRecordsCollection.find(eq("recordId", recordId)).first();
+            // Claimed like a return: only an open record can be marked, and only once, so the
+            // copy and the user's borrow slot are not released twice
+            Document recordDoc = closeBorrowRecord(recordId, "LOST");
             if (recordDoc == null) {
                 return false;
             }
@@ -1974,25 +2284,13 @@ public class DatabaseManager {
             String bookId = recordDoc.getString("bookId");
             String userId = recordDoc.getString("userId");
             
-            // Update book available copies and get book price
-            Document bookDoc = booksCollection.find(eq("bookId", bookId)).first();
-            double bookPrice = 0.0;
-            if (bookDoc != null) {
-                int totalCopies = bookDoc.getInteger("totalCopies", 0);
-                int availableCopies = bookDoc.getInteger("availableCopies", 0);
-                
-                booksCollection.updateOne(eq("bookId", bookId),
-                    combine(
-                        set("totalCopies", Math.max(0, totalCopies - 1)),
-                        set("availableCopies", Math.max(0, availableCopies - 1))
-                    ));
-                
-                // Get book price
-                Object priceObj = bookDoc.get("price");
-                if (priceObj != null) {
-                    bookPrice = ((Number) priceObj).doubleValue();
-                }
-            }
+            // The lost copy was on loan and not counted as available, so only the total drops
+            booksCollection.updateOne(QueryFilters.bookWithCopy(bookId), inc("totalCopies", -1));
+            catalog.refresh(bookId);
+            
+            // Get book price from the catalog
+            Book book = catalog.peek(bookId);
+            double bookPrice = book != null ? book.getPrice() : 0.0;
             
             // Calculate fine: book price + 50000
             double fineAmount = bookPrice + 50000.0;
@@ -2003,7 +2301,7 @@ public class DatabaseManager {
             }
             
             // Create fine record first
-            String fineId = "FINE_" + System.currentTimeMillis();
+            String fineId = idGenerator.nextTimeId("FINE_");
             Document fineDoc = new Document("fineId", fineId)
                 .append("recordId", recordId)
                 .append("userId", userId)
@@ -2016,24 +2314,20 @@ public class DatabaseManager {
                 .append("createdDate", new java.util.Date());
             
             finesCollection.insertOne(fineDoc);
+            dashboard.fineAdded(fineAmount);
             
-            // Update borrow record (include fine field for consistency)
-            borrowRecordsCollection.updateOne(eq("recordId", recordId),
-                combine(
-                    set("status", "LOST"),
-                    set("returnDate", new java.util.Date()),
-                    set("fine", fineAmount)
-                ));
+            // Update borrow record (status and return date were set above)
+            borrowRecordsCollection.updateOne(QueryFilters.recordById(recordId), set("fine", fineAmount));
             
             // Update book copy status
-            bookCopiesCollection.updateOne(eq("copyId", copyId), set("status", "LOST"));
+            bookCopiesCollection.updateOne(QueryFilters.copyById(copyId), set("status", "LOST"));
+            closeForDashboard(recordDoc);
             
             // Update user stats
-            usersCollection.updateOne(eq("userId", userId), 
-                inc("currentBorrowed", -1));
+            releaseCurrentBorrow(userId);
             
             // Update user totalFines
-            usersCollection.updateOne(eq("userId", userId), 
+            usersCollection.updateOne(QueryFilters.userById(userId), 
                 inc("totalFines", fineAmount));
             
             // Debug log
@@ -2049,7 +2343,7 @@ public class DatabaseManager {
     
     public boolean markAsDamaged(String recordId) {
         try {
-            Document recordDoc = borrowRecordsCollection.find(eq("recordId", recordId)).first();
+            Document recordDoc = closeBorrowRecord(recordId, "DAMAGED");
             if (recordDoc == null) {
                 return false;
             }
@@ -2059,12 +2353,10 @@ public class DatabaseManager {
             String bookId = recordDoc.getString("bookId");
             
             // Get settings for damaged book fine
-            Document settings = getSettings();
-            Object damagedBookFineObj = settings != null ? settings.get("damagedBookFine") : null;
-            double damagedBookFine = damagedBookFineObj != null ? ((Number) damagedBookFineObj).doubleValue() : 50000.0;
+            double damagedBookFine = currentSettings().getDamagedBookFine();
             
             // Create fine for damaged book
-            String fineId = "FINE_" + System.currentTimeMillis();
+            String fineId = idGenerator.nextTimeId("FINE_");
             Document fineDoc = new Document("fineId", fineId)
                 .append("recordId", recordId)
                 .append("userId", userId)
@@ -2077,25 +2369,21 @@ public class DatabaseManager {
                 .append("createdDate", new java.util.Date());
             
             finesCollection.insertOne(fineDoc);
+            dashboard.fineAdded(damagedBookFine);
             
             // Update user totalFines
-            usersCollection.updateOne(eq("userId", userId), 
+            usersCollection.updateOne(QueryFilters.userById(userId), 
                 inc("totalFines", damagedBookFine));
             
-            // Update borrow record
-            borrowRecordsCollection.updateOne(eq("recordId", recordId),
-                combine(
-                    set("status", "DAMAGED"),
-                    set("returnDate", new java.util.Date()),
-                    set("fine", damagedBookFine)
-                ));
+            // Update borrow record (status and return date were set above)
+            borrowRecordsCollection.updateOne(QueryFilters.recordById(recordId), set("fine", damagedBookFine));
             
             // Update book copy status
-            bookCopiesCollection.updateOne(eq("copyId", copyId), set("status", "DAMAGED"));
+            bookCopiesCollection.updateOne(QueryFilters.copyById(copyId), set("status", "DAMAGED"));
+            closeForDashboard(recordDoc);
             
             // Update user stats
-            usersCollection.updateOne(eq("userId", userId), 
-                inc("currentBorrowed", -1));
+            releaseCurrentBorrow(userId);
             
             return true;
         } catch (Exception e) {
@@ -2104,10 +2392,35 @@ public class DatabaseManager {
         }
     }
     
+    // Moves an open (BORROWING/BORROWED) record to status and returns it as it was before, or
+    // null if the record does not exist or was already closed by a concurrent request
+    private Document closeBorrowRecord(String recordId, String status) {
+        return borrowRecordsCollection.findOneAndUpdate(
+            QueryFilters.openRecord(recordId),
+            combine(
+                set("status", status),
+                set("returnDate", new java.util.Date())
+            ));
+    }
+    
+    // Gives back the borrow slot of a closed record; never takes the counter below zero
+    private void releaseCurrentBorrow(String userId) {
+        usersCollection.updateOne(QueryFilters.userWithHeldSlot(userId),
+            inc("currentBorrowed", -1));
+    }
+    
+    // A lost/damaged record that was still open no longer counts as an active (or overdue) borrow
+    private void closeForDashboard(Document recordDoc) {
+        if ("BORROWING".equals(recordDoc.getString("status"))) {
+            java.util.Date dueDate = recordDoc.getDate("dueDate");
+            dashboard.borrowClosed(recordDoc.getString("recordId"), dueDate != null ? dueDate.getTime() : 0);
+        }
+    }
+    
     public boolean forceReturn(String recordId) {
         try {
             // Get borrow record info - DON'T return the book yet, just notify user
-            Document recordDoc = borrowRecordsCollection.find(eq("recordId", recordId)).first();
+            Document recordDoc = borrowRecordsCollection.find(QueryFilters.recordById(recordId)).first();
             if (recordDoc == null) {
                 return false;
             }
@@ -2123,7 +2436,7 @@ public class DatabaseManager {
             String bookId = recordDoc.getString("bookId");
             
             // Get book title
-            Document bookDoc = booksCollection.find(eq("bookId", bookId)).first();
+            Document bookDoc = booksCollection.find(QueryFilters.bookById(bookId)).first();
             String bookTitle = bookDoc != null ? bookDoc.getString("title") : "sách";
             
             // Only create notification - DON'T actually return the book
@@ -2143,7 +2456,7 @@ public class DatabaseManager {
     
     public boolean isRecordOwnedByUser(String recordId, String userId) {
         try {
-            Document recordDoc = borrowRecordsCollection.find(eq("recordId", recordId)).first();
+            Document recordDoc = borrowRecordsCollection.find(QueryFilters.recordById(recordId)).first();
             if (recordDoc == null) {
                 return false;
             }
@@ -2157,7 +2470,7 @@ public class DatabaseManager {
     
     public void createNotification(String userId, String type, String message) {
         try {
-            String notificationId = "NOTIF" + System.currentTimeMillis();
+            String notificationId = idGenerator.nextTimeId("NOTIF");
             Document notification = new Document("notificationId", notificationId)
                 .append("userId", userId)
                 .append("type", type)
@@ -2166,6 +2479,11 @@ public class DatabaseManager {
                 .append("createdAt", new java.util.Date());
             
             notificationsCollection.insertOne(notification);
+            
+            UserEventListener listener = eventListener;
+            if (listener != null) {
+                listener.notificationCreated(userId, notification);
+            }
         } catch (Exception e) {
             System.err.println("Error creating notification: " + e.getMessage());
         }
@@ -2175,8 +2493,8 @@ public class DatabaseManager {
         try {
             List<Document> notifications = new ArrayList<>();
             for (Document doc : notificationsCollection.find(
-                and(eq("userId", userId), eq("isRead", false))
-            ).sort(new Document("createdAt", -1))) {
+                QueryFilters.unreadNotifications(userId)
+            ).sort(QueryFilters.NOTIFICATION_ORDER)) {
                 notifications.add(doc);
             }
             return notifications;
@@ -2189,7 +2507,7 @@ public class DatabaseManager {
     public boolean markNotificationAsRead(String notificationId) {
         try {
             notificationsCollection.updateOne(
-                eq("notificationId", notificationId),
+                QueryFilters.notificationById(notificationId),
                 set("isRead", true)
             );
             return true;
@@ -2200,110 +2518,90 @@ public class DatabaseManager {
     }
     
     // Report methods
+    // Answered from DashboardCounters; no query
     public Document getDashboardStats() {
+        return dashboard.snapshot();
+    }
+    
+    // Recounts the dashboard figures from the source collections and installs them, together
+    // with the open borrows that are not yet due. Runs at startup and every server.statsReconcile
+    // seconds.
+    private void reconcileDashboard() {
         try {
-            Document stats = new Document();
-            
-            long totalUsers = usersCollection.countDocuments();
-            long totalBooks = booksCollection.countDocuments();
-            long totalBorrows = borrowRecordsCollection.countDocuments();
-            long activeBorrows = borrowRecordsCollection.countDocuments(eq("status", "BORROWING"));
-            
-            // Calculate total available copies by counting book copies with status "AVAILABLE"
-            // This is more accurate than using the availableCopies field in books collection
-            long availableCopies = bookCopiesCollection.countDocuments(eq("status", "AVAILABLE"));
-            
-            // Calculate overdue borrows (status = BORROWING and dueDate < today)
-            java.util.Date today = new java.util.Date();
-            long overdueBorrows = 0;
-            for (Document record : borrowRecordsCollection.find(eq("status", "BORROWING"))) {
-                java.util.Date dueDate = record.getDate("dueDate");
-                if (dueDate != null && dueDate.before(today)) {
-                    overdueBorrows++;
-                }
+            java.util.Date now = new java.util.Date();
+            Map<String, Long> notYetDue = new HashMap<>();
+            for (Document record : borrowRecordsCollection.find(QueryFilters.notYetDueBorrows(now))
+                    .projection(new Document("recordId", 1).append("dueDate", 1))) {
+                notYetDue.put(record.getString("recordId"), record.getDate("dueDate").getTime());
             }
             
-            // Calculate total fines amount
             double totalFinesAmount = 0.0;
-            for (Document fine : finesCollection.find(eq("status", "UNPAID"))) {
-                Object amountObj = fine.get("amount");
-                if (amountObj instanceof Number) {
-                    totalFinesAmount += ((Number) amountObj).doubleValue();
-                }
+            Document fines = finesCollection.aggregate(Arrays.asList(
+                Aggregates.match(QueryFilters.finesWithStatus("UNPAID")),
+                Aggregates.group(null, Accumulators.sum("amount", "$amount")))).first();
+            if (fines != null && fines.get("amount") instanceof Number) {
+                totalFinesAmount = ((Number) fines.get("amount")).doubleValue();
             }
             
-            // Count pending users (users with status "LOCKED" - considered as pending approval)
-            // Or you can use a different status if your system has "PENDING" status
-            long pendingUsers = usersCollection.countDocuments(eq("status", "LOCKED"));
-            
-            stats.append("totalUsers", totalUsers)
-                .append("totalBooks", totalBooks)
-                .append("totalBorrows", totalBorrows)
-                .append("availableCopies", availableCopies)
-                .append("activeBorrows", activeBorrows)
+            // pendingUsers: LOCKED users, considered as pending approval
+            Document counts = new Document("totalUsers", usersCollection.countDocuments())
+                .append("totalBooks", booksCollection.countDocuments())
+                .append("totalBorrows", borrowRecordsCollection.countDocuments())
+                .append("availableCopies", bookCopiesCollection.countDocuments(QueryFilters.copiesWithStatus("AVAILABLE")))
+                .append("activeBorrows", borrowRecordsCollection.countDocuments(QueryFilters.borrowsWithStatus("BORROWING")))
                 .append("totalFinesAmount", totalFinesAmount)
-                .append("overdueBorrows", overdueBorrows)
-                .append("pendingUsers", pendingUsers);
-            
-            return stats;
+                .append("overdueBorrows", borrowRecordsCollection.countDocuments(QueryFilters.overdueBorrows(now)))
+                .append("pendingUsers", usersCollection.countDocuments(QueryFilters.usersWithStatus("LOCKED")));
+            dashboard.reconcile(counts, notYetDue);
         } catch (Exception e) {
-            System.err.println("Error getting dashboard stats: " + e.getMessage());
-            e.printStackTrace();
-            return new Document();
+            System.err.println("Error reconciling dashboard stats: " + e.getMessage());
         }
     }
     
+    // Two aggregations evaluated in MongoDB instead of a count and a scan per category plus two
+    // counts per book: copies per category from books, and LOST/DAMAGED records per category
+    // (grouped by book first, so each book is looked up once). Categories without books are
+    // still listed with zeros, in the order of the categories collection.
     public List<Document> getBookReport() {
         try {
-            List<Document> report = new ArrayList<>();
+            Map<String, Document> copiesByCategory = new HashMap<>();
+            for (Document group : booksCollection.aggregate(Arrays.asList(
+                    Aggregates.group("$category",
+                        Accumulators.sum("totalBooks", 1),
+                        Accumulators.sum("totalCopies", "$totalCopies"),
+                        Accumulators.sum("availableCopies", "$availableCopies"))))) {
+                copiesByCategory.put(group.getString("_id"), group);
+            }
+            
+            Map<String, Long> lostByCategory = new HashMap<>();
+            Map<String, Long> damagedByCategory = new HashMap<>();
+            for (Document group : borrowRecordsCollection.aggregate(Arrays.asList(
+                    Aggregates.match(QueryFilters.borrowsWithStatus("LOST", "DAMAGED")),
+                    Aggregates.group(new Document("bookId", "$bookId").append("status", "$status"),
+                        Accumulators.sum("count", 1)),
+                    Aggregates.lookup("books", "_id.bookId", "bookId", "book"),
+                    Aggregates.unwind("$book"),
+                    Aggregates.group(new Document("category", "$book.category").append("status", "$_id.status"),
+                        Accumulators.sum("count", "$count"))))) {
+                Document key = (Document) group.get("_id");
+                Map<String, Long> target = "LOST".equals(key.getString("status")) ? lostByCategory : damagedByCategory;
+                target.merge(key.getString("category"), longValue(group, "count"), Long::sum);
+            }
             
-            // Group by category
+            List<Document> report = new ArrayList<>();
             for (Document category : categoriesCollection.find()) {
                 String categoryName = category.getString("name");
-                long totalBooks = booksCollection.countDocuments(eq("category", categoryName));
-                
-                long totalCopies = 0;
-                long availableCopies = 0;
-                List<String> bookIds = new ArrayList<>();
-                
-                for (Document book : booksCollection.find(eq("category", categoryName))) {
-                    Object totalCopiesObj = book.get("totalCopies");
-                    Object availableCopiesObj = book.get("availableCopies");
-                    
-                    if (totalCopiesObj instanceof Number) {
-                        totalCopies += ((Number) totalCopiesObj).longValue();
-                    }
-                    if (availableCopiesObj instanceof Number) {
-                        availableCopies += ((Number) availableCopiesObj).longValue();
-                    }
-                    
-                    bookIds.add(book.getString("bookId"));
-                }
-                
-                long borrowed = totalCopies - availableCopies;
-                
-                // Count lost books (status = LOST in borrow_records)
-                long lost = 0;
-                for (String bookId : bookIds) {
-                    lost += borrowRecordsCollection.countDocuments(
-                        and(eq("bookId", bookId), eq("status", "LOST"))
-                    );
-                }
-                
-                // Count damaged books (status = DAMAGED in borrow_records)
-                long damaged = 0;
-                for (String bookId : bookIds) {
-                    damaged += borrowRecordsCollection.countDocuments(
-                        and(eq("bookId", bookId), eq("status", "DAMAGED"))
-                    );
-                }
+                Document copies = copiesByCategory.get(categoryName);
+                long totalBooks = copies != null ? longValue(copies, "totalBooks") : 0;
+                long totalCopies = copies != null ? longValue(copies, "totalCopies") : 0;
+                long availableCopies = copies != null ? longValue(copies, "availableCopies") : 0;
                 
                 report.add(new Document("category", categoryName)
                     .append("totalBooks", totalBooks)
                     .append("available", availableCopies)
-                    .append("borrowed", borrowed)
-                    .append("lost", lost)
-                    .append("damaged", damaged));
+                    .append("borrowed", totalCopies - availableCopies)
+                    .append("lost", lostByCategory.getOrDefault(categoryName, 0L))
+                    .append("damaged", damagedByCategory.getOrDefault(categoryName, 0L)));
             }
             
             return report;
@@ -2314,60 +2612,48 @@ public class DatabaseManager {
         }
     }
     
+    private static long longValue(Document doc, String key) {
+        Object value = doc.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+    
+    // One aggregation per source instead of a count and a fines scan per student: users grouped
+    // by faculty, and borrow counts / fine sums grouped by user, joined to the user's faculty
+    // and grouped by faculty. Only USER accounts are counted; an empty faculty is "N/A".
     public List<Document> getUserReport() {
         try {
-            List<Document> report = new ArrayList<>();
-            
-            // Group by faculty
-            java.util.Map<String, Document> facultyData = new java.util.HashMap<>();
-            
-            for (Document user : usersCollection.find(eq("role", "USER"))) {
-                String faculty = user.getString("faculty");
-                if (faculty == null || faculty.trim().isEmpty()) {
-                    faculty = "N/A";
-                }
-                
-                Document facultyDoc = facultyData.getOrDefault(faculty, new Document("faculty", faculty)
-                    .append("totalUsers", 0L)
-                    .append("active", 0L)
-                    .append("locked", 0L)
+            Map<String, Document> facultyData = new java.util.LinkedHashMap<>();
+            for (Document group : usersCollection.aggregate(Arrays.asList(
+                    Aggregates.match(QueryFilters.usersWithRole("USER")),
+                    Aggregates.group(facultyKey("$faculty"),
+                        Accumulators.sum("totalUsers", 1),
+                        Accumulators.sum("active", countIf("$status", "ACTIVE")),
+                        Accumulators.sum("locked", countIf("$status", "LOCKED"))),
+                    Aggregates.sort(new Document("_id", 1))))) {
+                String faculty = group.getString("_id");
+                facultyData.put(faculty, new Document("faculty", faculty)
+                    .append("totalUsers", longValue(group, "totalUsers"))
+                    .append("active", longValue(group, "active"))
+                    .append("locked", longValue(group, "locked"))
                     .append("totalBorrows", 0L)
                     .append("totalFines", 0.0));
-                
-                facultyDoc.put("totalUsers", ((Number) facultyDoc.get("totalUsers")).longValue() + 1);
-                
-                String status = user.getString("status");
-                if ("ACTIVE".equals(status)) {
-                    facultyDoc.put("active", ((Number) facultyDoc.get("active")).longValue() + 1);
-                } else if ("LOCKED".equals(status)) {
-                    facultyDoc.put("locked", ((Number) facultyDoc.get("locked")).longValue() + 1);
-                }
-                
-                String userId = user.getString("userId");
-                if (userId != null) {
-                    // Count total borrows for this user
-                    long userBorrows = borrowRecordsCollection.countDocuments(eq("userId", userId));
-                    facultyDoc.put("totalBorrows", ((Number) facultyDoc.get("totalBorrows")).longValue() + userBorrows);
-                    
-                    // Sum total fines for this user
-                    double userFines = 0.0;
-                    for (Document fine : finesCollection.find(eq("userId", userId))) {
-                        Object amountObj = fine.get("amount");
-                        if (amountObj instanceof Number) {
-                            userFines += ((Number) amountObj).doubleValue();
-                        }
-                    }
-                    facultyDoc.put("totalFines", ((Number) facultyDoc.get("totalFines")).doubleValue() + userFines);
-                }
-                
-                facultyData.put(faculty, facultyDoc);
             }
             
-            for (Document doc : facultyData.values()) {
-                report.add(doc);
+            for (Document group : borrowRecordsCollection.aggregate(perFaculty(Accumulators.sum("value", 1)))) {
+                Document facultyDoc = facultyData.get(group.getString("_id"));
+                if (facultyDoc != null) {
+                    facultyDoc.put("totalBorrows", longValue(group, "value"));
+                }
+            }
+            for (Document group : finesCollection.aggregate(perFaculty(Accumulators.sum("value", "$amount")))) {
+                Document facultyDoc = facultyData.get(group.getString("_id"));
+                if (facultyDoc != null) {
+                    Object value = group.get("value");
+                    facultyDoc.put("totalFines", value instanceof Number ? ((Number) value).doubleValue() : 0.0);
+                }
             }
             
-            return report;
+            return new ArrayList<>(facultyData.values());
         } catch (Exception e) {
             System.err.println("Error getting user report: " + e.getMessage());
             e.printStackTrace();
@@ -2375,21 +2661,44 @@ public class DatabaseManager {
         }
     }
     
+    // Pipeline for borrow_records / fines: accumulate per user first (so each user is looked up
+    // once), attach the user's faculty, keep USER accounts, then add up per faculty
+    private static List<Bson> perFaculty(BsonField perUser) {
+        return Arrays.asList(
+            Aggregates.match(ne("userId", null)),
+            Aggregates.group("$userId", perUser),
+            Aggregates.lookup("users", "_id", "userId", "user"),
+            Aggregates.unwind("$user"),
+            Aggregates.match(eq("user.role", "USER")),
+            Aggregates.group(facultyKey("$user.faculty"), Accumulators.sum("value", "$value")));
+    }
+    
+    // The faculty as stored, or "N/A" when missing or blank
+    private static Document facultyKey(String field) {
+        Document trimmed = new Document("$trim", new Document("input", new Document("$ifNull", Arrays.asList(field, ""))));
+        return new Document("$cond", Arrays.asList(
+            new Document("$eq", Arrays.asList(trimmed, "")), "N/A", field));
+    }
+    
+    private static Document countIf(String field, String value) {
+        return new Document("$cond", Arrays.asList(new Document("$eq", Arrays.asList(field, value)), 1, 0));
+    }
+    
     public Document getBorrowReport() {
         try {
             Document report = new Document();
             
             long totalBorrows = borrowRecordsCollection.countDocuments();
-            long activeBorrows = borrowRecordsCollection.countDocuments(eq("status", "BORROWING"));
-            long returnedBorrows = borrowRecordsCollection.countDocuments(eq("status", "RETURNED"));
-            long lostBorrows = borrowRecordsCollection.countDocuments(eq("status", "LOST"));
-            long damagedBorrows = borrowRecordsCollection.countDocuments(eq("status", "DAMAGED"));
+            long activeBorrows = borrowRecordsCollection.countDocuments(QueryFilters.borrowsWithStatus("BORROWING"));
+            long returnedBorrows = borrowRecordsCollection.countDocuments(QueryFilters.borrowsWithStatus("RETURNED"));
+            long lostBorrows = borrowRecordsCollection.countDocuments(QueryFilters.borrowsWithStatus("LOST"));
+            long damagedBorrows = borrowRecordsCollection.countDocuments(QueryFilters.borrowsWithStatus("DAMAGED"));
             
             // Calculate overdue borrows (status = BORROWING and dueDate < today)
             java.util.Date today = new java.util.Date();
             long overdueBorrows = 0;
             for (Document record : borrowRecordsCollection.find(
-                and(eq("status", "BORROWING"))
+                QueryFilters.borrowsWithStatus("BORROWING")
             )) {
                 java.util.Date dueDate = record.getDate("dueDate");
                 if (dueDate != null && dueDate.before(today)) {
@@ -2413,52 +2722,75 @@ public class DatabaseManager {
     }
     
     public List<Document> getPenaltyReport() {
-        try {
-            List<Document> report = new ArrayList<>();
-            
-            // Sort by createdDate descending (newest first)
-            for (Document fine : finesCollection.find().sort(new Document("createdDate", -1))) {
-                Document fineReport = new Document("fineId", fine.getString("fineId"))
-                    .append("userId", fine.getString("userId"))
-                    .append("bookId", fine.getString("bookId"))
-                    .append("reason", fine.getString("reason"))
-                    .append("amount", fine.get("amount"))
-                    .append("status", fine.getString("status"))
-                    .append("dueDate", fine.getDate("dueDate"))
-                    .append("paidDate", fine.getDate("paidDate"))
-                    .append("createdDate", fine.getDate("createdDate"));
-                
-                // Get user info
-                Document userDoc = usersCollection.find(eq("userId", fine.getString("userId"))).first();
-                if (userDoc != null) {
-                    String firstName = userDoc.getString("firstName");
-                    String lastName = userDoc.getString("lastName");
-                    String username = (firstName != null ? firstName : "") + " " + (lastName != null ? lastName : "");
-                    username = username.trim();
-                    if (username.isEmpty()) {
-                        username = userDoc.getString("email");
-                    }
-                    fineReport.append("username", username);
-                } else {
-                    fineReport.append("username", "N/A");
-                }
-                
-                // Get book info
-                Document bookDoc = booksCollection.find(eq("bookId", fine.getString("bookId"))).first();
-                if (bookDoc != null) {
-                    fineReport.append("bookTitle", bookDoc.getString("title"));
-                } else {
-                    fineReport.append("bookTitle", "N/A");
+        return getPenaltyReport(null, null);
+    }
+    
+    // Fines created in [from, to) (either may be null), newest first
+    public List<Document> getPenaltyReport(java.util.Date from, java.util.Date to) {
+        List<Document> report = new ArrayList<>();
+        if (!streamPenaltyReport(from, to, PENALTY_BATCH_SIZE, report::addAll)) {
+            return new ArrayList<>();
+        }
+        return report;
+    }
+    
+    // Penalty report rows in chunks of chunkSize, read from one cursor over the fines in the
+    // date range (newest first, on the createdDate index). Each chunk gets its user names from
+    // one $in query over its distinct user ids and its book titles from the catalog cache, and
+    // is handed to the consumer before the next one is read.
+    public boolean streamPenaltyReport(java.util.Date from, java.util.Date to, int chunkSize,
+            Consumer<List<Document>> consumer) {
+        try (MongoCursor<Document> cursor = finesCollection.find(QueryFilters.finesCreated(from, to))
+                .sort(QueryFilters.FINE_ORDER)
+                .batchSize(chunkSize).iterator()) {
+            List<Document> chunk = new ArrayList<>(chunkSize);
+            while (cursor.hasNext()) {
+                chunk.add(cursor.next());
+                if (chunk.size() == chunkSize || !cursor.hasNext()) {
+                    consumer.accept(penaltyRows(chunk));
+                    chunk = new ArrayList<>(chunkSize);
                 }
-                
-                report.add(fineReport);
             }
-            
-            return report;
+            return true;
         } catch (Exception e) {
             System.err.println("Error getting penalty report: " + e.getMessage());
             e.printStackTrace();
-            return new ArrayList<>();
+            return false;
+        }
+    }
+    
+    private List<Document> penaltyRows(List<Document> fines) {
+        Set<String> userIds = new HashSet<>();
+        for (Document fine : fines) {
+            if (fine.getString("userId") != null) {
+                userIds.add(fine.getString("userId"));
+            }
+        }
+        Map<String, String> usernames = new HashMap<>();
+        for (List<String> batch : partition(userIds)) {
+            for (Document userDoc : usersCollection.find(in("userId", batch))
+                    .projection(new Document("userId", 1).append("firstName", 1).append("lastName", 1).append("email", 1))) {
+                usernames.putIfAbsent(userDoc.getString("userId"), displayName(userDoc));
+            }
+        }
+        
+        List<Document> rows = new ArrayList<>(fines.size());
+        for (Document fine : fines) {
+            String bookId = fine.getString("bookId");
+            Book book = bookId != null ? catalog.peek(bookId) : null;
+            String username = usernames.get(fine.getString("userId"));
+            rows.add(new Document("fineId", fine.getString("fineId"))
+                .append("userId", fine.getString("userId"))
+                .append("bookId", bookId)
+                .append("reason", fine.getString("reason"))
+                .append("amount", fine.get("amount"))
+                .append("status", fine.getString("status"))
+                .append("dueDate", fine.getDate("dueDate"))
+                .append("paidDate", fine.getDate("paidDate"))
+                .append("createdDate", fine.getDate("createdDate"))
+                .append("username", username != null ? username : "N/A")
+                .append("bookTitle", book != null ? book.getTitle() : "N/A"));
         }
+        return rows;
     }
 }
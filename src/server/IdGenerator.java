@@ -0,0 +1,83 @@
+package server;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOptions;
+import org.bson.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Updates.inc;
+import static com.mongodb.client.model.Updates.max;
+
+// Ids for new documents without scanning the collections they go into.
+// Sequential ids (USER001, ...) come from a counter document in the "counters" collection:
+// one $inc reserves a block of numbers that is then handed out from memory, so most ids
+// need no round-trip. Numbers of a block not used before a restart are skipped.
+// Records, fines and notifications get time-based ids that stay unique within the process
+// even when several are created in the same millisecond.
+class IdGenerator {
+    static final String USER_COUNTER = "userId";
+    
+    private final MongoCollection<Document> counters;
+    private final int blockSize;
+    private final Map<String, Block> blocks = new HashMap<>();
+    // Last issued time-based value: millis * 1000 + sequence within that millisecond
+    private final AtomicLong lastTimeValue = new AtomicLong();
+    
+    IdGenerator(MongoCollection<Document> counters, int blockSize) {
+        this.counters = counters;
+        this.blockSize = blockSize;
+    }
+    
+    // Moves the counter past the highest number already in use (created if missing), so ids
+    // inserted by other tools, e.g. DataImporter, are not handed out again. Run once at startup;
+    // $max keeps this safe when another server process does the same.
+    void syncCounter(String name, LongSupplier highestExisting) {
+        reserve(name, highestExisting.getAsLong());
+    }
+    
+    synchronized long next(String name) {
+        Block block = blocks.get(name);
+        if (block == null || block.next > block.last) {
+            Document counter = counters.findOneAndUpdate(eq("_id", name), inc("seq", (long) blockSize),
+                new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER));
+            long last = ((Number) counter.get("seq")).longValue();
+            block = new Block(last - blockSize + 1, last);
+            blocks.put(name, block);
+        }
+        return block.next++;
+    }
+    
+    // A number chosen by someone else (e.g. an admin typing USER050) is never handed out later
+    synchronized void reserve(String name, long used) {
+        counters.updateOne(eq("_id", name), max("seq", used), new UpdateOptions().upsert(true));
+        Block block = blocks.get(name);
+        if (block != null && used >= block.next) {
+            blocks.remove(name);
+        }
+    }
+    
+    // prefix + millis + 3-digit sequence; more than 1000 ids in one millisecond run ahead of
+    // the clock instead of repeating
+    String nextTimeId(String prefix) {
+        long now = System.currentTimeMillis() * 1000;
+        long value = lastTimeValue.updateAndGet(last -> Math.max(last + 1, now));
+        return prefix + value;
+    }
+    
+    private static class Block {
+        long next;
+        final long last;
+        
+        Block(long next, long last) {
+            this.next = next;
+            this.last = last;
+        }
+    }
+}
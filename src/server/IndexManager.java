@@ -0,0 +1,220 @@
+package server;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexOptions;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// The indexes the server's queries rely on, one entry per query shape in DatabaseManager.
+// ensureIndexes builds them at startup; verifyPlans explains every shape and reports the ones
+// MongoDB would still answer with a collection scan (see IndexPlanCheck). Each shape is
+// explained with the filter builder from QueryFilters that DatabaseManager runs, so the
+// checked plans are the ones the server gets. Several shapes may share an index.
+// When adding a query on a new field, add its builder there and its shape here.
+class IndexManager {
+    private static final List<QueryShape> SHAPES = new ArrayList<>();
+    
+    static {
+        java.util.Date now = new java.util.Date();
+        
+        // users: login/registration, session status, reports
+        shape("users", keys("email", 1), true, "login",
+            QueryFilters.login("a@dnu.edu.vn", "secret"), null);
+        shape("users", keys("email", 1), true, "getUserByEmail, register, addUser",
+            QueryFilters.userByEmail("a@dnu.edu.vn"), null);
+        shape("users", keys("userId", 1), true, "update/lock/unlock/delete user, counters",
+            QueryFilters.userById("USER001"), null);
+        shape("users", keys("userId", 1), true, "borrow: claim a slot",
+            QueryFilters.userWithFreeSlot("USER001", 5), null);
+        shape("users", keys("userId", 1), true, "return, lost/damaged: release a slot",
+            QueryFilters.userWithHeldSlot("USER001"), null);
+        shape("users", keys("studentId", 1), false, "register: duplicate student id",
+            QueryFilters.userByStudentId("SV001"), null);
+        shape("users", keys("role", 1), false, "default accounts, getUserReport",
+            QueryFilters.usersWithRole("USER"), null);
+        shape("users", keys("status", 1), false, "dashboard: locked accounts",
+            QueryFilters.usersWithStatus("LOCKED"), null);
+        
+        // books
+        shape("books", keys("bookId", 1), true, "getBookById, catalog refresh, edit/delete, joins",
+            QueryFilters.bookById("BOOK001"), null);
+        shape("books", keys("bookId", 1), true, "borrow, deleteBookCopy: take an available copy",
+            QueryFilters.bookWithAvailableCopy("BOOK001"), null);
+        shape("books", keys("bookId", 1), true, "deleteBookCopy, markAsLost: drop a copy",
+            QueryFilters.bookWithCopy("BOOK001"), null);
+        
+        // book_copies
+        shape("book_copies", keys("bookId", 1).append("status", 1), false, "borrow: claim an available copy, deleteBook",
+            QueryFilters.copiesOfBook("BOOK001", "AVAILABLE"), null);
+        shape("book_copies", keys("bookId", 1).append("copyId", 1), false, "getBookCopies (sorted by copyId)",
+            QueryFilters.copiesOfBook("BOOK001"), QueryFilters.COPY_ORDER);
+        shape("book_copies", keys("copyId", 1), false, "return, lost/damaged, deleteBookCopy",
+            QueryFilters.copyById("COPY001"), null);
+        shape("book_copies", keys("status", 1), false, "dashboard: available copies",
+            QueryFilters.copiesWithStatus("AVAILABLE"), null);
+        
+        // borrow_records
+        shape("borrow_records", keys("userId", 1).append("status", 1), false, "getUserBorrowRecords",
+            QueryFilters.borrowsOfUser("USER001"), null);
+        shape("borrow_records", keys("recordId", 1), false, "renew, return fine, lost/damaged fine",
+            QueryFilters.recordById("record_1"), null);
+        shape("borrow_records", keys("recordId", 1), false, "return, lost/damaged: close an open record",
+            QueryFilters.openRecord("record_1"), null);
+        shape("borrow_records", keys("status", 1).append("dueDate", 1), false, "startup: recount borrow slots",
+            QueryFilters.openBorrows(), null);
+        shape("borrow_records", keys("status", 1).append("dueDate", 1), false, "dashboard/statistics: active borrows",
+            QueryFilters.borrowsWithStatus("BORROWING"), null);
+        shape("borrow_records", keys("status", 1).append("dueDate", 1), false, "dashboard: overdue borrows",
+            QueryFilters.overdueBorrows(now), null);
+        shape("borrow_records", keys("status", 1).append("dueDate", 1), false, "dashboard: borrows not yet due",
+            QueryFilters.notYetDueBorrows(now), null);
+        shape("borrow_records", keys("status", 1).append("dueDate", 1), false, "getBookReport: lost/damaged",
+            QueryFilters.borrowsWithStatus("LOST", "DAMAGED"), null);
+        
+        // fines
+        shape("fines", keys("status", 1), false, "dashboard: unpaid fines",
+            QueryFilters.finesWithStatus("UNPAID"), null);
+        shape("fines", keys("createdDate", -1), false, "penalty report (date range, newest first)",
+            QueryFilters.finesCreated(new java.util.Date(0), now), QueryFilters.FINE_ORDER);
+        
+        // notifications
+        shape("notifications", keys("userId", 1).append("isRead", 1).append("createdAt", -1), false,
+            "getUserNotifications (unread, newest first)",
+            QueryFilters.unreadNotifications("USER001"), QueryFilters.NOTIFICATION_ORDER);
+        shape("notifications", keys("notificationId", 1), false, "markNotificationAsRead",
+            QueryFilters.notificationById("NOTIF1"), null);
+        
+        // settings
+        shape("settings", keys("settingsId", 1), true, "getSettings, updateSettings",
+            QueryFilters.settings(), null);
+    }
+    
+    private IndexManager() {
+    }
+    
+    // Creates every declared index; existing ones are left alone. One failing index (e.g. a
+    // unique index over duplicate data) is reported and does not stop the others.
+    static void ensureIndexes(MongoDatabase database) {
+        Set<String> created = new HashSet<>();
+        for (QueryShape shape : SHAPES) {
+            if (!created.add(shape.collection + " " + shape.keys.toJson())) {
+                continue;
+            }
+            try {
+                database.getCollection(shape.collection)
+                    .createIndex(shape.keys, new IndexOptions().unique(shape.unique));
+            } catch (Exception e) {
+                System.err.println("Error creating index " + shape.collection + " " + shape.keys.toJson()
+                    + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    // Explains every declared query shape; returns one line per shape whose winning plan
+    // contains a COLLSCAN (or could not be explained). Empty means all shapes use an index.
+    static List<String> verifyPlans(MongoDatabase database) {
+        List<String> problems = new ArrayList<>();
+        for (QueryShape shape : SHAPES) {
+            try {
+                MongoCollection<Document> collection = database.getCollection(shape.collection);
+                Document plan = (shape.sort != null
+                    ? collection.find(shape.filter).sort(shape.sort)
+                    : collection.find(shape.filter)).explain();
+                Object winningPlan = ((Document) plan.get("queryPlanner")).get("winningPlan");
+                if (containsStage(winningPlan, "COLLSCAN")) {
+                    problems.add(shape + ": COLLSCAN");
+                }
+            } catch (Exception e) {
+                problems.add(shape + ": " + e.getMessage());
+            }
+        }
+        return problems;
+    }
+    
+    // Declared indexes missing from the database, e.g. before IndexPlanCheck creates them
+    static List<String> missingIndexes(MongoDatabase database) {
+        List<String> missing = new ArrayList<>();
+        Set<String> reported = new HashSet<>();
+        for (QueryShape shape : SHAPES) {
+            String name = shape.collection + " " + shape.keys.toJson();
+            if (!reported.add(name)) {
+                continue;
+            }
+            boolean found = false;
+            for (Document index : database.getCollection(shape.collection).listIndexes()) {
+                if (shape.keys.equals(index.get("key", Document.class))) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                missing.add(name);
+            }
+        }
+        return missing;
+    }
+    
+    static int shapeCount() {
+        return SHAPES.size();
+    }
+    
+    // Plan stages nest through inputStage/inputStages (and queryPlan on the slot-based engine)
+    private static boolean containsStage(Object node, String stage) {
+        if (node instanceof Document) {
+            Document doc = (Document) node;
+            if (stage.equals(doc.get("stage"))) {
+                return true;
+            }
+            for (Object value : doc.values()) {
+                if (containsStage(value, stage)) {
+                    return true;
+                }
+            }
+        } else if (node instanceof List) {
+            for (Object value : (List<?>) node) {
+                if (containsStage(value, stage)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    private static Document keys(String field, int direction) {
+        return new Document(field, direction);
+    }
+    
+    private static void shape(String collection, Document keys, boolean unique, String usedBy, Bson filter, Document sort) {
+        SHAPES.add(new QueryShape(collection, keys, unique, usedBy, filter, sort));
+    }
+    
+    private static class QueryShape {
+        final String collection;
+        final Document keys;
+        final boolean unique;
+        final String usedBy;
+        // The query's filter built with sample values, only used for explain()
+        final Bson filter;
+        final Document sort;
+        
+        QueryShape(String collection, Document keys, boolean unique, String usedBy, Bson filter, Document sort) {
+            this.collection = collection;
+            this.keys = keys;
+            this.unique = unique;
+            this.usedBy = usedBy;
+            this.filter = filter;
+            this.sort = sort;
+        }
+        
+        @Override
+        public String toString() {
+            return collection + " " + keys.toJson() + " (" + usedBy + ")";
+        }
+    }
+}
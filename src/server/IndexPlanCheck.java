@@ -0,0 +1,71 @@
+package server;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+
+import java.util.List;
+
+// Explains every query shape from IndexManager and exits with 1 if any of them would still
+// scan a whole collection. Runs against a scratch database by default (library_bench, dropped
+// and seeded with one document per collection, indexes built), or against an existing one
+// given as argument. An existing database is only read unless --create-indexes is given,
+// which builds the declared indexes that are missing there first.
+//   java server.IndexPlanCheck
+//   java server.IndexPlanCheck library_db
+//   java server.IndexPlanCheck library_db --create-indexes
+public class IndexPlanCheck {
+    private static final String CONNECTION_STRING = "mongodb://localhost:27017";
+    private static final String SCRATCH_DATABASE = "library_bench";
+    private static final String CREATE_INDEXES_FLAG = "--create-indexes";
+    
+    public static void main(String[] args) {
+        String databaseName = SCRATCH_DATABASE;
+        boolean createIndexes = false;
+        for (String arg : args) {
+            if (CREATE_INDEXES_FLAG.equals(arg)) {
+                createIndexes = true;
+            } else {
+                databaseName = arg;
+            }
+        }
+        boolean scratch = SCRATCH_DATABASE.equals(databaseName);
+        List<String> problems;
+        try (MongoClient client = MongoClients.create(CONNECTION_STRING)) {
+            MongoDatabase database = client.getDatabase(databaseName);
+            if (scratch) {
+                seed(database);
+            }
+            if (scratch || createIndexes) {
+                IndexManager.ensureIndexes(database);
+            } else {
+                for (String index : IndexManager.missingIndexes(database)) {
+                    System.out.println("Missing index " + index + " (not created without " + CREATE_INDEXES_FLAG + ")");
+                }
+            }
+            problems = IndexManager.verifyPlans(database);
+            System.out.println(IndexManager.shapeCount() + " query shapes checked on " + databaseName);
+            if (scratch) {
+                database.drop();
+            }
+        }
+        if (problems.isEmpty()) {
+            System.out.println("OK: every query shape uses an index");
+        } else {
+            for (String problem : problems) {
+                System.out.println("FAIL " + problem);
+            }
+            System.exit(1);
+        }
+    }
+    
+    // The planner only considers indexes of collections that exist
+    private static void seed(MongoDatabase database) {
+        database.drop();
+        String[] collections = {"users", "books", "book_copies", "borrow_records", "fines", "notifications", "settings"};
+        for (String name : collections) {
+            database.getCollection(name).insertOne(new Document("seed", true));
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package server;
+
+import com.mongodb.client.MongoCollection;
+import model.Book;
+import model.BookCopy;
+import model.BorrowRecord;
+import model.User;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.Document;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
+
+import java.sql.Date;
+
+// Codecs that decode BSON straight into the model classes, so a cursor over books, users,
+// copies or borrow records does not build an org.bson.Document (a LinkedHashMap with boxed
+// numbers) per row first. Field names and defaults are the ones the server has always used:
+// missing numbers are 0, dates become java.sql.Date, unknown fields are skipped.
+final class ModelCodecs {
+    static final ModelCodec<User> USER = new UserCodec();
+    static final ModelCodec<Book> BOOK = new BookCodec();
+    static final ModelCodec<BookCopy> BOOK_COPY = new BookCopyCodec();
+    static final ModelCodec<BorrowRecord> BORROW_RECORD = new BorrowRecordCodec();
+    
+    private ModelCodecs() {
+    }
+    
+    // The model codecs in front of the driver's defaults
+    static CodecRegistry registry(CodecRegistry defaults) {
+        return CodecRegistries.fromRegistries(
+            CodecRegistries.fromCodecs(USER, BOOK, BOOK_COPY, BORROW_RECORD), defaults);
+    }
+    
+    // View of a collection that decodes model objects together with their _id (keyset paging)
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static <T> MongoCollection<Keyed<T>> keyed(MongoCollection<Document> collection, ModelCodec<T> codec) {
+        CodecRegistry registry = CodecRegistries.fromRegistries(
+            CodecRegistries.fromCodecs(new KeyedCodec<>(codec)), collection.getCodecRegistry());
+        return (MongoCollection) collection.withCodecRegistry(registry).withDocumentClass(Keyed.class);
+    }
+    
+    abstract static class ModelCodec<T> implements Codec<T> {
+        private final Class<T> type;
+        
+        ModelCodec(Class<T> type) {
+            this.type = type;
+        }
+        
+        abstract T newInstance();
+        
+        // Reads the current field's value into target; fields the model does not have are skipped
+        abstract void readField(BsonReader reader, String name, T target);
+        
+        abstract void writeFields(BsonWriter writer, T value);
+        
+        @Override
+        public T decode(BsonReader reader, DecoderContext decoderContext) {
+            T value = newInstance();
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                readField(reader, reader.readName(), value);
+            }
+            reader.readEndDocument();
+            return value;
+        }
+        
+        @Override
+        public void encode(BsonWriter writer, T value, EncoderContext encoderContext) {
+            writer.writeStartDocument();
+            writeFields(writer, value);
+            writer.writeEndDocument();
+        }
+        
+        @Override
+        public Class<T> getEncoderClass() {
+            return type;
+        }
+    }
+    
+    // A decoded model object and the _id of its document
+    static final class Keyed<T> {
+        final ObjectId id;
+        final T value;
+        
+        Keyed(ObjectId id, T value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+    
+    private static final class KeyedCodec<T> implements Codec<Keyed<T>> {
+        private final ModelCodec<T> codec;
+        
+        KeyedCodec(ModelCodec<T> codec) {
+            this.codec = codec;
+        }
+        
+        @Override
+        public Keyed<T> decode(BsonReader reader, DecoderContext decoderContext) {
+            ObjectId id = null;
+            T value = codec.newInstance();
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                String name = reader.readName();
+                if ("_id".equals(name) && reader.getCurrentBsonType() == BsonType.OBJECT_ID) {
+                    id = reader.readObjectId();
+                } else {
+                    codec.readField(reader, name, value);
+                }
+            }
+            reader.readEndDocument();
+            return new Keyed<>(id, value);
+        }
+        
+        // _id first, then the model's fields; without an id the server assigns one on insert
+        @Override
+        public void encode(BsonWriter writer, Keyed<T> value, EncoderContext encoderContext) {
+            writer.writeStartDocument();
+            if (value.id != null) {
+                writer.writeObjectId("_id", value.id);
+            }
+            codec.writeFields(writer, value.value);
+            writer.writeEndDocument();
+        }
+        
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public Class<Keyed<T>> getEncoderClass() {
+            return (Class) Keyed.class;
+        }
+    }
+    
+    private static final class UserCodec extends ModelCodec<User> {
+        UserCodec() {
+            super(User.class);
+        }
+        
+        @Override
+        User newInstance() {
+            return new User();
+        }
+        
+        @Override
+        void readField(BsonReader reader, String name, User user) {
+            switch (name) {
+                case "userId": user.setUserId(readString(reader)); break;
+                case "email": user.setEmail(readString(reader)); break;
+                case "password": user.setPassword(readString(reader)); break;
+                case "firstName": user.setFirstName(readString(reader)); break;
+                case "lastName": user.setLastName(readString(reader)); break;
+                case "phone": user.setPhone(readString(reader)); break;
+                case "address": user.setAddress(readString(reader)); break;
+                case "role": user.setRole(readString(reader)); break;
+                case "status": user.setStatus(readString(reader)); break;
+                case "studentId": user.setStudentId(readString(reader)); break;
+                case "faculty": user.setFaculty(readString(reader)); break;
+                case "yearOfStudy": user.setYearOfStudy(readString(reader)); break;
+                case "totalBorrowed": user.setTotalBorrowed(readInt(reader)); break;
+                case "currentBorrowed": user.setCurrentBorrowed(readInt(reader)); break;
+                case "totalFines": user.setTotalFines(readDouble(reader)); break;
+                case "dateOfBirth": user.setDateOfBirth(readDate(reader)); break;
+                case "registrationDate": user.setRegistrationDate(readDate(reader)); break;
+                case "lastLogin": user.setLastLogin(readDate(reader)); break;
+                case "isOnline": user.setOnline(readBoolean(reader)); break;
+                default: reader.skipValue();
+            }
+        }
+        
+        @Override
+        void writeFields(BsonWriter writer, User user) {
+            writeString(writer, "userId", user.getUserId());
+            writeString(writer, "email", user.getEmail());
+            writeString(writer, "password", user.getPassword());
+            writeString(writer, "firstName", user.getFirstName());
+            writeString(writer, "lastName", user.getLastName());
+            writeString(writer, "phone", user.getPhone());
+            writeString(writer, "address", user.getAddress());
+            writeString(writer, "role", user.getRole());
+            writeString(writer, "status", user.getStatus());
+            writeString(writer, "studentId", user.getStudentId());
+            writeString(writer, "faculty", user.getFaculty());
+            writeString(writer, "yearOfStudy", user.getYearOfStudy());
+            writer.writeInt32("totalBorrowed", user.getTotalBorrowed());
+            writer.writeInt32("currentBorrowed", user.getCurrentBorrowed());
+            writer.writeDouble("totalFines", user.getTotalFines());
+            writeDate(writer, "dateOfBirth", user.getDateOfBirth());
+            writeDate(writer, "registrationDate", user.getRegistrationDate());
+            writeDate(writer, "lastLogin", user.getLastLogin());
+            writer.writeBoolean("isOnline", user.isOnline());
+        }
+    }
+    
+    private static final class BookCodec extends ModelCodec<Book> {
+        BookCodec() {
+            super(Book.class);
+        }
+        
+        @Override
+        Book newInstance() {
+            return new Book();
+        }
+        
+        @Override
+        void readField(BsonReader reader, String name, Book book) {
+            switch (name) {
+                case "bookId": book.setBookId(readString(reader)); break;
+                case "title": book.setTitle(readString(reader)); break;
+                case "author": book.setAuthor(readString(reader)); break;
+                case "isbn": book.setIsbn(readString(reader)); break;
+                case "category": book.setCategory(readString(reader)); break;
+                case "publishYear": book.setPublishYear(readInt(reader)); break;
+                case "pages": book.setPages(readInt(reader)); break;
+                case "price": book.setPrice(readDouble(reader)); break;
+                case "totalCopies": book.setTotalCopies(readInt(reader)); break;
+                case "availableCopies": book.setAvailableCopies(readInt(reader)); break;
+                case "description": book.setDescription(readString(reader)); break;
+                default: reader.skipValue();
+            }
+        }
+        
+        @Override
+        void writeFields(BsonWriter writer, Book book) {
+            writeString(writer, "bookId", book.getBookId());
+            writeString(writer, "title", book.getTitle());
+            writeString(writer, "author", book.getAuthor());
+            writeString(writer, "isbn", book.getIsbn());
+            writeString(writer, "category", book.getCategory());
+            writer.writeInt32("publishYear", book.getPublishYear());
+            writer.writeInt32("pages", book.getPages());
+            writer.writeDouble("price", book.getPrice());
+            writer.writeInt32("totalCopies", book.getTotalCopies());
+            writer.writeInt32("availableCopies", book.getAvailableCopies());
+            writeString(writer, "description", book.getDescription());
+        }
+    }
+    
+    private static final class BookCopyCodec extends ModelCodec<BookCopy> {
+        BookCopyCodec() {
+            super(BookCopy.class);
+        }
+        
+        @Override
+        BookCopy newInstance() {
+            return new BookCopy();
+        }
+        
+        @Override
+        void readField(BsonReader reader, String name, BookCopy copy) {
+            switch (name) {
+                case "copyId": copy.setCopyId(readString(reader)); break;
+                case "bookId": copy.setBookId(readString(reader)); break;
+                case "status": copy.setStatus(readString(reader)); break;
+                case "location": copy.setLocation(readString(reader)); break;
+                case "notes": copy.setNotes(readString(reader)); break;
+                default: reader.skipValue();
+            }
+        }
+        
+        @Override
+        void writeFields(BsonWriter writer, BookCopy copy) {
+            writeString(writer, "copyId", copy.getCopyId());
+            writeString(writer, "bookId", copy.getBookId());
+            writeString(writer, "status", copy.getStatus());
+            writeString(writer, "location", copy.getLocation());
+            writeString(writer, "notes", copy.getNotes());
+        }
+    }
+    
+    // Record fields only; user name and book title are filled in by DatabaseManager
+    private static final class BorrowRecordCodec extends ModelCodec<BorrowRecord> {
+        BorrowRecordCodec() {
+            super(BorrowRecord.class);
+        }
+        
+        @Override
+        BorrowRecord newInstance() {
+            return new BorrowRecord();
+        }
+        
+        @Override
+        void readField(BsonReader reader, String name, BorrowRecord record) {
+            switch (name) {
+                case "recordId": record.setRecordId(readString(reader)); break;
+                case "userId": record.setUserId(readString(reader)); break;
+                case "bookId": record.setBookId(readString(reader)); break;
+                case "copyId": record.setCopyId(readString(reader)); break;
+                case "borrowDate": record.setBorrowDate(readDate(reader)); break;
+                case "dueDate": record.setDueDate(readDate(reader)); break;
+                case "returnDate": record.setReturnDate(readDate(reader)); break;
+                case "status": record.setStatus(readString(reader)); break;
+                case "fine": record.setFine(readDouble(reader)); break;
+                default: reader.skipValue();
+            }
+        }
+        
+        @Override
+        void writeFields(BsonWriter writer, BorrowRecord record) {
+            writeString(writer, "recordId", record.getRecordId());
+            writeString(writer, "userId", record.getUserId());
+            writeString(writer, "bookId", record.getBookId());
+            writeString(writer, "copyId", record.getCopyId());
+            writeDate(writer, "borrowDate", record.getBorrowDate());
+            writeDate(writer, "dueDate", record.getDueDate());
+            writeDate(writer, "returnDate", record.getReturnDate());
+            writeString(writer, "status", record.getStatus());
+            writer.writeDouble("fine", record.getFine());
+        }
+    }
+    
+    private static String readString(BsonReader reader) {
+        if (reader.getCurrentBsonType() == BsonType.STRING) {
+            return reader.readString();
+        }
+        reader.skipValue();
+        return null;
+    }
+    
+    // Numbers may have been stored as int32, int64 or double depending on who wrote them
+    private static int readInt(BsonReader reader) {
+        switch (reader.getCurrentBsonType()) {
+            case INT32: return reader.readInt32();
+            case INT64: return (int) reader.readInt64();
+            case DOUBLE: return (int) reader.readDouble();
+            default:
+                reader.skipValue();
+                return 0;
+        }
+    }
+    
+    private static double readDouble(BsonReader reader) {
+        switch (reader.getCurrentBsonType()) {
+            case DOUBLE: return reader.readDouble();
+            case INT32: return reader.readInt32();
+            case INT64: return reader.readInt64();
+            default:
+                reader.skipValue();
+                return 0.0;
+        }
+    }
+    
+    private static Date readDate(BsonReader reader) {
+        if (reader.getCurrentBsonType() == BsonType.DATE_TIME) {
+            return new Date(reader.readDateTime());
+        }
+        reader.skipValue();
+        return null;
+    }
+    
+    private static boolean readBoolean(BsonReader reader) {
+        if (reader.getCurrentBsonType() == BsonType.BOOLEAN) {
+            return reader.readBoolean();
+        }
+        reader.skipValue();
+        return false;
+    }
+    
+    private static void writeString(BsonWriter writer, String name, String value) {
+        if (value != null) {
+            writer.writeString(name, value);
+        }
+    }
+    
+    private static void writeDate(BsonWriter writer, String name, java.util.Date value) {
+        if (value != null) {
+            writer.writeDateTime(name, value.getTime());
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package server;
+
+import util.FrameCodec;
+import util.Message;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Selector-based front-end: one thread accepts and reads all connections, and only
+// complete frames are handed to a bounded worker pool. Idle sessions cost a small
+// read buffer instead of a thread, so thousands of terminals can stay connected.
+class NioServer {
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    private static final int MAX_PENDING_PER_CONNECTION = 64;
+    // An export waits while more than this is queued for the client (see queueStreamChunk)
+    private static final long MAX_QUEUED_STREAM_BYTES = 1024 * 1024;
+    
+    private final int port;
+    private final DatabaseManager dbManager;
+    private final SessionRegistry sessions;
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final List<Connection> legacyHandoffs = new ArrayList<>();
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ThreadPoolExecutor workers;
+    private volatile boolean running;
+    
+    NioServer(int port, DatabaseManager dbManager, SessionRegistry sessions) {
+        this.port = port;
+        this.dbManager = dbManager;
+        this.sessions = sessions;
+    }
+    
+    void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        
+        int threads = ServerConfig.getWorkerThreads();
+        AtomicInteger workerCount = new AtomicInteger();
+        workers = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(ServerConfig.getWorkerQueueSize()),
+            r -> {
+                Thread t = new Thread(r, "nio-worker-" + workerCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        
+        running = true;
+        System.out.println("Server started on port " + port + " (NIO mode, " + threads + " workers)");
+        System.out.println("Waiting for clients...");
+        
+        while (running) {
+            selector.select();
+            if (!running) {
+                break;
+            }
+            processPendingWrites();
+            
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                try {
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        if (key.isReadable()) {
+                            read(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(key);
+                        }
+                    }
+                } catch (IOException | CancelledKeyException e) {
+                    close(key);
+                }
+            }
+            
+            processLegacyHandoffs();
+        }
+    }
+    
+    void stop() {
+        running = false;
+        try {
+            if (selector != null && selector.isOpen()) {
+                for (SelectionKey key : selector.keys()) {
+                    key.channel().close();
+                }
+                selector.close();
+            }
+            if (serverChannel != null && serverChannel.isOpen()) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error stopping NIO server: " + e.getMessage());
+        }
+        if (workers != null) {
+            workers.shutdown();
+        }
+    }
+    
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        System.out.println("New client connected: " + channel.socket().getInetAddress());
+        
+        Connection conn = new Connection(channel, new RequestHandler(dbManager, sessions));
+        conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+    }
+    
+    private void read(SelectionKey key) throws IOException {
+        Connection conn = (Connection) key.attachment();
+        int n = conn.channel.read(conn.readBuffer);
+        if (n < 0) {
+            close(key);
+            return;
+        }
+        
+        ByteBuffer buffer = conn.readBuffer;
+        buffer.flip();
+        
+        if (!conn.framed) {
+            if (buffer.remaining() < 4) {
+                buffer.compact();
+                return;
+            }
+            int magic = buffer.getInt(buffer.position());
+            if (magic == FrameCodec.MAGIC && buffer.remaining() < 5) {
+                buffer.compact();
+                return;
+            }
+            if (magic != FrameCodec.MAGIC) {
+                // Legacy object-stream client: hand it to a blocking ClientHandler
+                conn.preread = new byte[buffer.remaining()];
+                buffer.get(conn.preread);
+                key.cancel();
+                legacyHandoffs.add(conn);
+                return;
+            }
+            buffer.position(buffer.position() + 4);
+            int handshake = buffer.get() & 0xFF;
+            int requested = handshake & ~FrameCodec.FLAGS;
+            conn.codec = FrameCodec.isSupported(requested) ? requested : FrameCodec.CODEC_SERIALIZED;
+            conn.multiplexed = (handshake & FrameCodec.FLAG_MULTIPLEX) != 0;
+            conn.framed = true;
+            int ackFlags = handshake & FrameCodec.FLAGS;
+            if ((handshake & FrameCodec.FLAG_PUSH) != 0) {
+                conn.handler.setPushSink(message -> queueResponse(conn, message));
+            }
+            ByteBuffer ack = ByteBuffer.allocate(1);
+            ack.put((byte) (conn.codec | ackFlags)).flip();
+            conn.queuedBytes.addAndGet(ack.capacity());
+            conn.writeQueue.add(ack);
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+        
+        // Dispatch every complete frame in the buffer
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt(buffer.position());
+            FrameCodec.checkLength(length);
+            if (buffer.remaining() < 4 + length) {
+                break;
+            }
+            buffer.position(buffer.position() + 4);
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            dispatch(conn, payload);
+        }
+        
+        // Keep the partial frame; grow for large frames and shrink back once drained
+        int needed = INITIAL_BUFFER_SIZE;
+        if (buffer.remaining() >= 4) {
+            needed = Math.max(needed, 4 + buffer.getInt(buffer.position()));
+        }
+        if (needed > buffer.capacity() || (!buffer.hasRemaining() && buffer.capacity() > INITIAL_BUFFER_SIZE)) {
+            ByteBuffer resized = ByteBuffer.allocate(needed);
+            resized.put(buffer);
+            conn.readBuffer = resized;
+        } else {
+            buffer.compact();
+        }
+    }
+    
+    private void dispatch(Connection conn, byte[] payload) throws IOException {
+        synchronized (conn) {
+            if (conn.multiplexed) {
+                // Client matches responses by request id: run requests in parallel, answer as they finish
+                if (conn.inFlight >= MAX_PENDING_PER_CONNECTION) {
+                    throw new IOException("Too many pending requests");
+                }
+                conn.inFlight++;
+            } else if (conn.processing) {
+                // Otherwise requests of one session run one at a time and in order
+                if (conn.pendingRequests.size() >= MAX_PENDING_PER_CONNECTION) {
+                    throw new IOException("Too many pending requests");
+                }
+                conn.pendingRequests.add(payload);
+                return;
+            } else {
+                conn.processing = true;
+            }
+        }
+        submit(conn, payload);
+    }
+    
+    private void submit(Connection conn, byte[] payload) {
+        try {
+            workers.execute(() -> process(conn, payload));
+        } catch (RejectedExecutionException e) {
+            Message busy = new Message();
+            busy.setRequestId(peekRequestId(conn, payload));
+            busy.setSuccess(false);
+            busy.setMessage("Server đang quá tải, vui lòng thử lại sau");
+            queueResponse(conn, busy);
+            finishRequest(conn);
+        }
+    }
+    
+    private void process(Connection conn, byte[] payload) {
+        Message request = null;
+        Message response;
+        try {
+            request = FrameCodec.decode(payload, 0, payload.length, conn.codec);
+            response = conn.handler.handleRequest(request, chunk -> queueStreamChunk(conn, chunk));
+        } catch (Exception e) {
+            response = new Message();
+            response.setRequestId(request != null ? request.getRequestId() : 0);
+            response.setSuccess(false);
+            response.setMessage("Error: " + e.getMessage());
+        }
+        queueResponse(conn, response);
+        finishRequest(conn);
+    }
+    
+    private void finishRequest(Connection conn) {
+        byte[] next;
+        synchronized (conn) {
+            if (conn.multiplexed) {
+                conn.inFlight--;
+                return;
+            }
+            next = conn.pendingRequests.poll();
+            if (next == null) {
+                conn.processing = false;
+                return;
+            }
+        }
+        submit(conn, next);
+    }
+    
+    // Request id of a payload that was never handed to a worker, so the "busy" reply still matches
+    private static long peekRequestId(Connection conn, byte[] payload) {
+        try {
+            return FrameCodec.decode(payload, 0, payload.length, conn.codec).getRequestId();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+    
+    // Export chunks are produced faster than a slow client reads them, so the worker waits
+    // until the queued output has drained; the export then holds about one MB per connection
+    private void queueStreamChunk(Connection conn, Message chunk) {
+        queueResponse(conn, chunk);
+        synchronized (conn.drained) {
+            while (!conn.closed && conn.queuedBytes.get() > MAX_QUEUED_STREAM_BYTES) {
+                try {
+                    conn.drained.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        if (conn.closed) {
+            throw new UncheckedIOException(new IOException("Client disconnected"));
+        }
+    }
+    
+    private void queueResponse(Connection conn, Message response) {
+        if (conn.closed) {
+            return;
+        }
+        try {
+            byte[] payload = FrameCodec.encode(response, conn.codec);
+            ByteBuffer frame = ByteBuffer.allocate(4 + payload.length);
+            frame.putInt(payload.length).put(payload).flip();
+            conn.queuedBytes.addAndGet(frame.capacity());
+            conn.writeQueue.add(frame);
+            pendingWrites.add(conn);
+            selector.wakeup();
+        } catch (IOException e) {
+            System.err.println("Error encoding response: " + e.getMessage());
+        }
+    }
+    
+    private void processPendingWrites() {
+        Connection conn;
+        while ((conn = pendingWrites.poll()) != null) {
+            if (conn.key != null && conn.key.isValid()) {
+                conn.key.interestOps(conn.key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+    
+    private void write(SelectionKey key) throws IOException {
+        Connection conn = (Connection) key.attachment();
+        ByteBuffer frame;
+        while ((frame = conn.writeQueue.peek()) != null) {
+            conn.channel.write(frame);
+            if (frame.hasRemaining()) {
+                return; // socket buffer full, wait for the next OP_WRITE
+            }
+            conn.writeQueue.poll();
+            if (conn.queuedBytes.addAndGet(-frame.capacity()) <= MAX_QUEUED_STREAM_BYTES) {
+                synchronized (conn.drained) {
+                    conn.drained.notifyAll();
+                }
+            }
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+    
+    private void processLegacyHandoffs() throws IOException {
+        if (legacyHandoffs.isEmpty()) {
+            return;
+        }
+        // Flush the cancelled keys before switching the channels back to blocking mode
+        selector.selectNow();
+        for (Connection conn : legacyHandoffs) {
+            try {
+                conn.channel.configureBlocking(true);
+                Server.startClientThread(new Server.ClientHandler(conn.channel.socket(), dbManager, sessions, conn.preread));
+            } catch (IOException e) {
+                System.err.println("Error handing off legacy client: " + e.getMessage());
+                conn.channel.close();
+            }
+        }
+        legacyHandoffs.clear();
+    }
+    
+    private void close(SelectionKey key) {
+        Connection conn = (Connection) key.attachment();
+        key.cancel();
+        if (conn != null) {
+            conn.closed = true;
+            conn.handler.close();
+            System.out.println("Client disconnected: " + conn.channel.socket().getInetAddress());
+            try {
+                conn.channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing client connection: " + e.getMessage());
+            }
+        }
+    }
+    
+    private static class Connection {
+        final SocketChannel channel;
+        final RequestHandler handler;
+        final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+        final ArrayDeque<byte[]> pendingRequests = new ArrayDeque<>();
+        // Bytes of response frames not yet written to the socket
+        final AtomicLong queuedBytes = new AtomicLong();
+        final Object drained = new Object();
+        SelectionKey key;
+        ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        boolean framed;
+        int codec;
+        boolean multiplexed;
+        boolean processing;
+        int inFlight;
+        byte[] preread;
+        volatile boolean closed;
+        
+        Connection(SocketChannel channel, RequestHandler handler) {
+            this.channel = channel;
+            this.handler = handler;
+        }
+    }
+}
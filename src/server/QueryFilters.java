@@ -0,0 +1,160 @@
+package server;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.mongodb.client.model.Filters.*;
+
+// Filters (and sorts) of the queries DatabaseManager runs on indexed fields. IndexManager
+// explains the same builders with sample values, so a plan check covers the real queries;
+// a query on an indexed field should build its filter here rather than inline.
+final class QueryFilters {
+    private static final String SETTINGS_ID = "SYSTEM_SETTINGS";
+    
+    static final Document COPY_ORDER = new Document("copyId", 1);
+    static final Document FINE_ORDER = new Document("createdDate", -1);
+    static final Document NOTIFICATION_ORDER = new Document("createdAt", -1);
+    
+    private QueryFilters() {
+    }
+    
+    // users
+    
+    static Bson userByEmail(String email) {
+        return eq("email", email);
+    }
+    
+    static Bson login(String email, String password) {
+        return and(eq("email", email), eq("password", password));
+    }
+    
+    static Bson userById(String userId) {
+        return eq("userId", userId);
+    }
+    
+    static Bson userByStudentId(String studentId) {
+        return eq("studentId", studentId);
+    }
+    
+    static Bson usersWithRole(String role) {
+        return eq("role", role);
+    }
+    
+    static Bson usersWithStatus(String status) {
+        return eq("status", status);
+    }
+    
+    // An active user below the borrow limit (no counter yet counts as zero)
+    static Bson userWithFreeSlot(String userId, int maxBorrowBooks) {
+        return and(eq("userId", userId), eq("status", "ACTIVE"),
+            or(lt("currentBorrowed", maxBorrowBooks), exists("currentBorrowed", false)));
+    }
+    
+    static Bson userWithHeldSlot(String userId) {
+        return and(eq("userId", userId), gt("currentBorrowed", 0));
+    }
+    
+    // books
+    
+    static Bson bookById(String bookId) {
+        return eq("bookId", bookId);
+    }
+    
+    static Bson bookWithAvailableCopy(String bookId) {
+        return and(eq("bookId", bookId), gt("availableCopies", 0));
+    }
+    
+    static Bson bookWithCopy(String bookId) {
+        return and(eq("bookId", bookId), gt("totalCopies", 0));
+    }
+    
+    // book_copies
+    
+    static Bson copiesOfBook(String bookId) {
+        return eq("bookId", bookId);
+    }
+    
+    static Bson copiesOfBook(String bookId, String status) {
+        return and(eq("bookId", bookId), eq("status", status));
+    }
+    
+    static Bson copyById(String copyId) {
+        return eq("copyId", copyId);
+    }
+    
+    static Bson copiesWithStatus(String status) {
+        return eq("status", status);
+    }
+    
+    // borrow_records
+    
+    static Bson borrowsOfUser(String userId) {
+        return eq("userId", userId);
+    }
+    
+    static Bson recordById(String recordId) {
+        return eq("recordId", recordId);
+    }
+    
+    // Records not yet returned, lost or damaged
+    static Bson openBorrows() {
+        return in("status", "BORROWING", "BORROWED");
+    }
+    
+    static Bson openRecord(String recordId) {
+        return and(eq("recordId", recordId), openBorrows());
+    }
+    
+    static Bson borrowsWithStatus(String status) {
+        return eq("status", status);
+    }
+    
+    static Bson borrowsWithStatus(String... statuses) {
+        return in("status", (Object[]) statuses);
+    }
+    
+    static Bson overdueBorrows(java.util.Date now) {
+        return and(eq("status", "BORROWING"), lt("dueDate", now));
+    }
+    
+    static Bson notYetDueBorrows(java.util.Date now) {
+        return and(eq("status", "BORROWING"), gte("dueDate", now));
+    }
+    
+    // fines
+    
+    static Bson finesWithStatus(String status) {
+        return eq("status", status);
+    }
+    
+    // Fines created in [from, to); either bound may be null
+    static Bson finesCreated(java.util.Date from, java.util.Date to) {
+        List<Bson> range = new ArrayList<>();
+        if (from != null) {
+            range.add(gte("createdDate", from));
+        }
+        if (to != null) {
+            range.add(lt("createdDate", to));
+        }
+        return range.isEmpty() ? new Document() : and(range);
+    }
+    
+    // notifications
+    
+    static Bson unreadNotifications(String userId) {
+        return and(eq("userId", userId), eq("isRead", false));
+    }
+    
+    static Bson notificationById(String notificationId) {
+        return eq("notificationId", notificationId);
+    }
+    
+    // settings
+    
+    static Bson settings() {
+        return eq("settingsId", SETTINGS_ID);
+    }
+}
@@ -0,0 +1,672 @@
+package server;
+
+import model.Book;
+import model.BookCopy;
+import model.BorrowRecord;
+import model.User;
+import util.BookQuery;
+import util.Message;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+// Handles the requests of one client session, independent of the transport used
+class RequestHandler {
+    private DatabaseManager dbManager;
+    private SessionRegistry sessions;
+    // volatile: requests of a multiplexed session may run on several workers at once
+    private volatile User currentUser;
+    // Writes a server-initiated frame; null when the client cannot receive pushes
+    private volatile Consumer<Message> pushSink;
+    
+    RequestHandler(DatabaseManager dbManager, SessionRegistry sessions) {
+        this.dbManager = dbManager;
+        this.sessions = sessions;
+        this.currentUser = null;
+    }
+    
+    void setPushSink(Consumer<Message> pushSink) {
+        this.pushSink = pushSink;
+    }
+    
+    void push(Message message) {
+        Consumer<Message> sink = pushSink;
+        if (sink != null) {
+            message.setRequestId(Message.PUSH_REQUEST_ID);
+            sink.accept(message);
+        }
+    }
+    
+    // Called when the account is locked while this session is logged in
+    void forceLogout(String reason) {
+        setCurrentUser(null);
+        Message message = new Message(Message.FORCE_LOGOUT, null);
+        message.setSuccess(false);
+        message.setMessage(reason);
+        push(message);
+    }
+    
+    // Session ended: stop receiving events for the user
+    void close() {
+        setCurrentUser(null);
+    }
+    
+    private String getCurrentUserStatus() {
+        User user = currentUser;
+        if (user == null) {
+            return null;
+        }
+        return sessions.getStatus(user.getUserId(), () -> {
+            User userCheck = dbManager.getUserByEmail(user.getEmail());
+            return userCheck != null ? userCheck.getStatus() : null;
+        });
+    }
+    
+    private synchronized void setCurrentUser(User user) {
+        User previous = currentUser;
+        if (previous != null) {
+            sessions.unregister(previous.getUserId(), this);
+        }
+        currentUser = user;
+        if (user != null) {
+            sessions.register(user.getUserId(), user.getStatus(), this);
+        }
+    }
+    
+    // chunkSink writes the STREAM_CHUNK messages of an export to the client as they are produced
+    Message handleRequest(Message request, Consumer<Message> chunkSink) {
+        Message response = new Message();
+        response.setType(request.getType());
+        response.setRequestId(request.getRequestId());
+        
+        // Check if user is locked (except for LOGIN, REGISTER, LOGOUT)
+        if (currentUser != null && !request.getType().equals(Message.LOGIN) && 
+            !request.getType().equals(Message.REGISTER) && !request.getType().equals(Message.LOGOUT)) {
+            // Re-check user status (cached by the session registry, kept current by lock/unlock)
+            if ("LOCKED".equals(getCurrentUserStatus())) {
+                // Force logout - send FORCE_LOGOUT message
+                response.setType(Message.FORCE_LOGOUT);
+                response.setSuccess(false);
+                response.setMessage("Tài khoản của bạn đã bị khóa. Bạn sẽ bị đăng xuất.");
+                setCurrentUser(null);
+                return response;
+            }
+        }
+        
+        try {
+            switch (request.getType()) {
+                case Message.LOGIN:
+                    handleLogin(request, response);
+                    break;
+                case Message.REGISTER:
+                    handleRegister(request, response);
+                    break;
+                case Message.LOGOUT:
+                    setCurrentUser(null);
+                    response.setSuccess(true);
+                    response.setMessage("Logged out successfully");
+                    break;
+                case Message.GET_ALL_BOOKS:
+                    if (checkAuth()) {
+                        List<Book> books = dbManager.getAllBooks();
+                        response.setData(books);
+                        response.setSuccess(true);
+                    }
+                    break;
+                case Message.GET_BOOKS_PAGE:
+                    if (checkAuth()) {
+                        Object[] params = (Object[]) request.getData();
+                        String cursor = (String) params[0];
+                        int limit = (Integer) params[1];
+                        boolean newestFirst = (Boolean) params[2];
+                        response.setData(dbManager.getBooksPage(cursor, limit, newestFirst));
+                        response.setSuccess(true);
+                    }
+                    break;
+                case Message.SEARCH_BOOKS:
+                    if (checkAuth()) {
+                        String keyword = (String) request.getData();
+                        List<Book> books = dbManager.searchBooks(keyword);
+                        response.setData(books);
+                        response.setSuccess(true);
+                    }
+                    break;
+                case Message.SEARCH_BOOKS_PAGE:
+                    if (checkAuth()) {
+                        Object[] params = (Object[]) request.getData();
+                        String cursor = (String) params[0];
+                        int limit = (Integer) params[1];
+                        BookQuery query = (BookQuery) params[2];
+                        response.setData(dbManager.searchBooksPage(query, cursor, limit));
+                        response.setSuccess(true);
+                    }
+                    break;
+                case Message.SUGGEST_BOOKS:
+                    if (checkAuth()) {
+                        String typed = (String) request.getData();
+                        response.setData(dbManager.suggestBooks(typed, BookSuggester.MAX_SUGGESTIONS));
+                        response.setSuccess(true);
+                    }
+                    break;
+                case Message.ADD_BOOK:
+                    if (checkAdminAuth()) {
+                        Book book = (Book) request.getData();
+                        boolean result = dbManager.addBook(book);
+                        response.setSuccess(result);
+                        response.setMessage(result ? "Thêm sách thành công" : "Thêm sách thất bại");
+                    }
+                    break;
+                case Message.UPDATE_BOOK:
+                    if (checkAdminAuth()) {
+                        Book book = (Book) request.getData();
+                        boolean result = dbManager.updateBook(book);
+                        response.setSuccess(result);
+                        response.setMessage(result ? "Cập nhật sách thành công" : "Cập nhật sách thất bại");
+                    }
+                    break;
+                case Message.DELETE_BOOK:
+                    if (checkAdminAuth()) {
+                        String bookId = (String) request.getData();
+                        boolean result = dbManager.deleteBook(bookId);
+                        response.setSuccess(result);
+                        response.setMessage(result ? "Xóa sách thành công" : "Xóa sách thất bại");
+                    }
+                    break;
+                case Message.GET_ALL_USERS:
+                    if (checkAdminAuth()) {
+                        List<User> users = dbManager.getAllUsers();
+                        response.setData(users);
+                        response.setSuccess(true);
+                    }
+                    break;
+                case Message.GET_USERS_PAGE:
+                    if (checkAdminAuth()) {
+                        Object[] params = (Object[]) request.getData();
+                        String cursor = (String) params[0];
+                        int limit = (Integer) params[1];
+                        boolean newestFirst = (Boolean) params[2];
+                        response.setData(dbManager.getUsersPage(cursor, limit, newestFirst));
+                        response.setSuccess(true);
+                    }
+                    break;
+                case Message.ADD_USER:
+                    if (checkAdminAuth()) {
+                        User user = (User) request.getData();
+                        boolean result = dbManager.addUser(user);
+                        response.setSuccess(result);
+                        response.setMessage(result ? "Thêm người dùng thành công" : "Thêm người dùng thất bại");
+                    }
+                    break;
+                case Message.UPDATE_USER:
+                    if (checkAuth()) {
+                        User user = (User) request.getData();
+                        // Check if user is updating their own profile or is admin
+                        if (currentUser.getRole() != null && currentUser.getRole().equals("ADMIN")) {
+                            // Admin can update any user
+                            boolean result = dbManager.updateUser(user);
+                            response.setSuccess(result);
+                            response.setMessage(result ? "Cập nhật người dùng thành công" : "Cập nhật người dùng thất bại");
+                        } else {
+                            // Regular user can only update their own profile
+                            if (user.getUserId() != null && user.getUserId().equals(currentUser.getUserId())) {
+                                // Don't allow user to change role or status
+                                user.setRole(currentUser.getRole());
+                                user.setStatus(currentUser.getStatus());
+                                boolean result = dbManager.updateUser(user);
+                                response.setSuccess(result);
+                                response.setMessage(result ? "Cập nhật thông tin thành công" : "Cập nhật thông tin thất bại");
+                            } else {
+                                response.setSuccess(false);
+                                response.setMessage("Bạn không có quyền cập nhật thông tin người dùng khác!");
+                            }
+                        }
+                    }
+                    break;
+                case Message.DELETE_USER:
+                    if (checkAdminAuth()) {
+                        String userId = (String) request.getData();
+                        boolean result = dbManager.deleteUser(userId);
+                        response.setSuccess(result);
+                        response.setMessage(result ? "Xóa người dùng thành công" : "Xóa người dùng thất bại");
+                    }
+                    break;
+                case Message.LOCK_USER:
+                    if (checkAdminAuth()) {
+                        String userId = (String) request.getData();
+                        boolean result = dbManager.lockUser(userId);
+                        response.setSuccess(result);
+                        response.setMessage(result ? "Khóa tài khoản thành công" : "Khóa tài khoản thất bại");
+                    }
+                    break;
+                case Message.UNLOCK_USER:
+                    if (checkAdminAuth()) {
+                        String userId = (String) request.getData();
+                        boolean result = dbManager.unlockUser(userId);
+                        response.setSuccess(result);
+                        response.setMessage(result ? "Mở khóa tài khoản thành công" : "Mở khóa tài khoản thất bại");
+                    }
+                    break;
+                case Message.RESET_PASSWORD:
+                    if (checkAdminAuth()) {
+                        Object[] params = (Object[]) request.getData();
+                        String userId = (String) params[0];
+                        String newPassword = (String) params[1];
+                        boolean result = dbManager.resetPassword(userId, newPassword);
+                        response.setSuccess(result);
+                        response.setMessage(result ? "Đặt lại mật khẩu thành công" : "Đặt lại mật khẩu thất bại");
+                    }
+                    break;
+                case Message.BORROW_BOOK:
+                    if (checkAuth()) {
+                        Object[] params = (Object[]) request.getData();
+                        String userId = (String) params[0];
+                        String bookId = (String) params[1];
+                        boolean result = dbManager.borrowBook(userId, bookId);
+                        if (result) {
+                            response.setSuccess(true);
+                            response.setMessage("Mượn sách thành công");
+                        } else {
+                            // Get settings to check max borrow limit
+                            int maxBorrowBooks = dbManager.currentSettings().getMaxBorrowBooks();
+                            response.setSuccess(false);
+                            response.setMessage("Mượn sách thất bại (không còn sách hoặc đã đạt giới hạn " + maxBorrowBooks + " quyển)");
+                        }
+                    }
+                    break;
+                case Message.RETURN_BOOK:
+                    if (checkAuth()) {
+                        String recordId = (String) request.getData();
+                        boolean result = dbManager.returnBook(recordId);
+                        response.setSuccess(result);
+                        response.setMessage(result ? "Trả sách thành công" : "Trả sách thất bại");
+                    }
+                    break;
+                case Message.RENEW_BOOK:
+                    if (checkAuth()) {
+                        String recordId = (String) request.getData();
+                        boolean result = dbManager.renewBook(recordId);
+                        if (result) {
+                            // Get renewal days from settings for message
+                            int renewalDays = dbManager.currentSettings().getRenewalDays();
+                            response.setSuccess(true);
+                            response.setMessage("Gia hạn sách thành công (thêm " + renewalDays + " ngày)");
+                        } else {
+                            response.setSuccess(false);
+                            response.setMessage("Gia hạn sách thất bại (sách không tồn tại hoặc không thể gia hạn)");
+                        }
+                    }
+                    break;
+                case Message.MARK_LOST:
+                    if (checkAuth()) {
+                        String recordId = (String) request.getData();
+                        // Check if user owns this record (if not admin)
+                        if (currentUser.getRole() != null && !currentUser.getRole().equals("ADMIN")) {
+                            if (!dbManager.isRecordOwnedByUser(recordId, currentUser.getUserId())) {
+                                response.setSuccess(false);
+                                response.setMessage("Bạn không có quyền thực hiện thao tác này!");
+                                break;
+                            }
+                        }
+                        boolean result = dbManager.markAsLost(recordId);
+                        response.setSuccess(result);
+                        response.setMessage(result ? "Báo mất sách thành công" : "Báo mất sách thất bại");
+                    }
+                    break;
+                case Message.MARK_DAMAGED:
+                    if (checkAuth()) {
+                        String recordId = (String) request.getData();
+                        // Check if user owns this record (if not admin)
+                        if (currentUser.getRole() != null && !currentUser.getRole().equals("ADMIN")) {
+                            if (!dbManager.isRecordOwnedByUser(recordId, currentUser.getUserId())) {
+                                response.setSuccess(false);
+                                response.setMessage("Bạn không có quyền thực hiện thao tác này!");
+                                break;
+                            }
+                        }
+                        boolean result = dbManager.markAsDamaged(recordId);
+                        response.setSuccess(result);
+                        response.setMessage(result ? "Báo hỏng sách thành công" : "Báo hỏng sách thất bại");
+                    }
+                    break;
+                case Message.FORCE_RETURN:
+                    if (checkAdminAuth()) {
+                        String recordId = (String) request.getData();
+                        boolean result = dbManager.forceReturn(recordId);
+                        response.setSuccess(result);
+                        response.setMessage(result ? "Bắt buộc trả thành công. Người dùng đã nhận được thông báo." : "Bắt buộc trả thất bại");
+                    }
+                    break;
+                case Message.GET_USER_NOTIFICATIONS:
+                    if (checkAuth()) {
+                        String userId = currentUser.getUserId();
+                        List<org.bson.Document> notifications = dbManager.getUserNotifications(userId);
+                        response.setData(notifications);
+                        response.setSuccess(true);
+                    }
+                    break;
+                case Message.MARK_NOTIFICATION_READ:
+                    if (checkAuth()) {
+                        String notificationId = (String) request.getData();
+                        boolean result = dbManager.markNotificationAsRead(notificationId);
+                        response.setSuccess(result);
+                        response.setMessage(result ? "Đã đánh dấu đã đọc" : "Lỗi đánh dấu đã đọc");
+                    }
+                    break;
+                case Message.CHECK_USER_STATUS:
+                    if (checkAuth()) {
+                        // Re-check user status
+                        String status = getCurrentUserStatus();
+                        if (status != null) {
+                            if ("LOCKED".equals(status)) {
+                                // User is locked, force logout
+                                response.setType(Message.FORCE_LOGOUT);
+                                response.setSuccess(false);
+                                response.setMessage("Tài khoản của bạn đã bị khóa. Bạn sẽ bị đăng xuất.");
+                                setCurrentUser(null);
+                            } else {
+                                response.setSuccess(true);
+                                response.setMessage("ACTIVE");
+                            }
+                        } else {
+                            response.setSuccess(false);
+                            response.setMessage("Không tìm thấy thông tin người dùng");
+                        }
+                    }
+                    break;
+                case Message.GET_SETTINGS:
+                    // Allow both admin and regular users to read settings (for display purposes)
+                    if (checkAuth()) {
+                        org.bson.Document settings = dbManager.getSettings();
+                        if (settings != null) {
+                            response.setData(settings);
+                            response.setSuccess(true);
+                        } else {
+                            response.setSuccess(false);
+                            response.setMessage("Không thể tải cài đặt hệ thống");
+                        }
+                    }
+                    break;
+                case Message.UPDATE_SETTINGS:
+                    if (checkAdminAuth()) {
+                        org.bson.Document settings = (org.bson.Document) request.getData();
+                        boolean result = dbManager.updateSettings(settings);
+                        response.setSuccess(result);
+                        response.setMessage(result ? "Cập nhật cài đặt thành công" : "Cập nhật cài đặt thất bại");
+                    }
+                    break;
+                case Message.GET_USER_BORROW_RECORDS:
+                    if (checkAuth()) {
+                        String userId = (String) request.getData();
+                        List<BorrowRecord> records = dbManager.getUserBorrowRecords(userId);
+                        response.setData(records);
+                        response.setSuccess(true);
+                    }
+                    break;
+                case Message.GET_ALL_BORROW_RECORDS:
+                    if (checkAdminAuth()) {
+                        List<BorrowRecord> records = dbManager.getAllBorrowRecords();
+                        response.setData(records);
+                        response.setSuccess(true);
+                    }
+                    break;
+                case Message.GET_BORROW_RECORDS_PAGE:
+                    if (checkAdminAuth()) {
+                        Object[] params = (Object[]) request.getData();
+                        String cursor = (String) params[0];
+                        int limit = (Integer) params[1];
+                        boolean newestFirst = (Boolean) params[2];
+                        response.setData(dbManager.getBorrowRecordsPage(cursor, limit, newestFirst));
+                        response.setSuccess(true);
+                    }
+                    break;
+                case Message.EXPORT_BORROW_RECORDS:
+                    if (checkAdminAuth()) {
+                        long[] count = new long[1];
+                        boolean result = dbManager.exportBorrowRecords(ServerConfig.getExportChunkSize(), chunk -> {
+                            count[0] += chunk.size();
+                            chunkSink.accept(streamChunk(request, chunk));
+                        });
+                        endStream(response, result, count[0]);
+                    }
+                    break;
+                case Message.EXPORT_FINES:
+                    if (checkAdminAuth()) {
+                        long[] count = new long[1];
+                        boolean result = dbManager.exportFines(ServerConfig.getExportChunkSize(), chunk -> {
+                            count[0] += chunk.size();
+                            chunkSink.accept(streamChunk(request, chunk));
+                        });
+                        endStream(response, result, count[0]);
+                    }
+                    break;
+                case Message.EXPORT_PENALTY_REPORT:
+                    if (checkAdminAuth()) {
+                        java.util.Date[] range = dateRange(request.getData());
+                        long[] count = new long[1];
+                        boolean result = dbManager.streamPenaltyReport(range[0], range[1], ServerConfig.getExportChunkSize(), chunk -> {
+                            count[0] += chunk.size();
+                            chunkSink.accept(streamChunk(request, chunk));
+                        });
+                        endStream(response, result, count[0]);
+                    }
+                    break;
+                case Message.GET_DASHBOARD_STATS:
+                    if (checkAdminAuth()) {
+                        org.bson.Document stats = dbManager.getDashboardStats();
+                        response.setData(stats);
+                        response.setSuccess(true);
+                    }
+                    break;
+                case Message.GET_BOOK_REPORT:
+                    if (checkAdminAuth()) {
+                        List<org.bson.Document> report = dbManager.getBookReport();
+                        response.setData(report);
+                        response.setSuccess(true);
+                    }
+                    break;
+                case Message.GET_USER_REPORT:
+                    if (checkAdminAuth()) {
+                        List<org.bson.Document> report = dbManager.getUserReport();
+                        response.setData(report);
+                        response.setSuccess(true);
+                    }
+                    break;
+                case Message.GET_BORROW_REPORT:
+                    if (checkAdminAuth()) {
+                        org.bson.Document report = dbManager.getBorrowReport();
+                        response.setData(report);
+                        response.setSuccess(true);
+                    }
+                    break;
+                case Message.GET_PENALTY_REPORT:
+                    if (checkAdminAuth()) {
+                        java.util.Date[] range = dateRange(request.getData());
+                        List<org.bson.Document> report = dbManager.getPenaltyReport(range[0], range[1]);
+                        response.setData(report);
+                        response.setSuccess(true);
+                    }
+                    break;
+                case Message.GET_BOOK_BY_ID:
+                    if (checkAdminAuth()) {
+                        String bookId = (String) request.getData();
+                        Book book = dbManager.getBookById(bookId);
+                        response.setData(book);
+                        response.setSuccess(book != null);
+                        response.setMessage(book != null ? "OK" : "Không tìm thấy sách");
+                    }
+                    break;
+                case Message.GET_BOOK_BY_TITLE:
+                    if (checkAuth()) {
+                        String title = (String) request.getData();
+                        Book book = dbManager.getBookByTitle(title);
+                        response.setData(book);
+                        response.setSuccess(book != null);
+                        response.setMessage(book != null ? "OK" : "Không tìm thấy sách");
+                    }
+                    break;
+                case Message.GET_BOOK_COPIES:
+                    if (checkAdminAuth()) {
+                        String bookId = (String) request.getData();
+                        List<BookCopy> copies = dbManager.getBookCopies(bookId);
+                        response.setData(copies);
+                        response.setSuccess(true);
+                    }
+                    break;
+                case Message.ADD_BOOK_COPY:
+                    if (checkAdminAuth()) {
+                        BookCopy copy = (BookCopy) request.getData();
+                        boolean result = dbManager.addBookCopy(copy);
+                        response.setSuccess(result);
+                        response.setMessage(result ? "Thêm bản sao thành công" : "Thêm bản sao thất bại");
+                    }
+                    break;
+                case Message.DELETE_BOOK_COPY:
+                    if (checkAdminAuth()) {
+                        String copyId = (String) request.getData();
+                        boolean result = dbManager.deleteBookCopy(copyId);
+                        response.setSuccess(result);
+                        response.setMessage(result ? "Xóa bản sao thành công" : "Xóa bản sao thất bại");
+                    }
+                    break;
+                default:
+                    response.setSuccess(false);
+                    response.setMessage("Unknown request type");
+            }
+        } catch (Exception e) {
+            response.setSuccess(false);
+            response.setMessage("Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+        
+        return response;
+    }
+    
+    private void handleLogin(Message request, Message response) {
+        try {
+            Object[] credentials = (Object[]) request.getData();
+            String email = (String) credentials[0];
+            String password = (String) credentials[1];
+            
+            // Check if user exists and is locked
+            User user = dbManager.login(email, password);
+            if (user != null) {
+                // Double check status in case it was changed
+                if ("LOCKED".equals(user.getStatus())) {
+                    response.setSuccess(false);
+                    response.setMessage("Tài khoản của bạn đã bị khóa. Vui lòng liên hệ quản trị viên.");
+                    return;
+                }
+                setCurrentUser(user);
+                response.setSuccess(true);
+                response.setData(user);
+                response.setMessage("Đăng nhập thành công");
+            } else {
+                // Check if email exists but password is wrong or account is locked
+                User checkUser = dbManager.getUserByEmail(email);
+                if (checkUser != null && "LOCKED".equals(checkUser.getStatus())) {
+                    response.setSuccess(false);
+                    response.setMessage("Tài khoản của bạn đã bị khóa. Vui lòng liên hệ quản trị viên.");
+                } else {
+                    response.setSuccess(false);
+                    response.setMessage("Email hoặc mật khẩu không đúng");
+                }
+            }
+        } catch (Exception e) {
+            response.setSuccess(false);
+            response.setMessage("Lỗi đăng nhập: " + e.getMessage());
+        }
+    }
+    
+    private void handleRegister(Message request, Message response) {
+        try {
+            User user = (User) request.getData();
+            if (user == null) {
+                response.setSuccess(false);
+                response.setMessage("Dữ liệu người dùng không hợp lệ");
+                return;
+            }
+            
+            // Validate required fields
+            if (user.getEmail() == null || user.getEmail().trim().isEmpty()) {
+                response.setSuccess(false);
+                response.setMessage("Email không được để trống");
+                return;
+            }
+            
+            if (user.getPassword() == null || user.getPassword().trim().isEmpty()) {
+                response.setSuccess(false);
+                response.setMessage("Mật khẩu không được để trống");
+                return;
+            }
+            
+            boolean result = dbManager.register(user);
+            if (result) {
+                response.setSuccess(true);
+                response.setMessage("Đăng ký thành công! Vui lòng đăng nhập.");
+            } else {
+                response.setSuccess(false);
+                // Check if email exists
+                User existingUser = dbManager.getUserByEmail(user.getEmail());
+                if (existingUser != null) {
+                    response.setMessage("Email đã tồn tại trong hệ thống");
+                } else {
+                    response.setMessage("Đăng ký thất bại. Vui lòng kiểm tra lại thông tin hoặc thử lại sau.");
+                }
+            }
+        } catch (ClassCastException e) {
+            response.setSuccess(false);
+            response.setMessage("Lỗi: Dữ liệu không đúng định dạng");
+            System.err.println("Registration error - ClassCastException: " + e.getMessage());
+        } catch (Exception e) {
+            response.setSuccess(false);
+            response.setMessage("Lỗi đăng ký: " + e.getMessage());
+            System.err.println("Registration error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    private static Message streamChunk(Message request, List<?> items) {
+        Message chunk = new Message(Message.STREAM_CHUNK, items);
+        chunk.setRequestId(request.getRequestId());
+        chunk.setSuccess(true);
+        return chunk;
+    }
+    
+    // {from, to} from an optional Object[]{from, to} request parameter; null = unbounded
+    private static java.util.Date[] dateRange(Object data) {
+        java.util.Date[] range = new java.util.Date[2];
+        if (data instanceof Object[]) {
+            Object[] params = (Object[]) data;
+            for (int i = 0; i < Math.min(2, params.length); i++) {
+                if (params[i] instanceof java.util.Date) {
+                    range[i] = (java.util.Date) params[i];
+                }
+            }
+        }
+        return range;
+    }
+    
+    private static void endStream(Message response, boolean result, long count) {
+        response.setType(Message.STREAM_END);
+        response.setSuccess(result);
+        response.setMessage(result ? "Đã xuất " + count + " bản ghi" : "Xuất dữ liệu thất bại sau " + count + " bản ghi");
+    }
+    
+    private boolean checkAuth() {
+        if (currentUser == null) {
+            return false;
+        }
+        // Check if user is locked - if so, they should be logged out
+        if ("LOCKED".equals(currentUser.getStatus())) {
+            return false;
+        }
+        return true;
+    }
+    
+    private boolean checkAdminAuth() {
+        if (currentUser == null || !currentUser.isAdmin()) {
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,168 @@
+package server;
+
+import model.Book;
+import util.BookQuery;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+// Searches a synthetic catalog through the catalog's inverted index (CatalogCache.search) and,
+// for comparison, with the previous ".*keyword.*" case-insensitive regex over the same books
+// in memory (the work MongoDB did per document in its collection scan), then times structured
+// queries (CatalogCache.query) against the old way of fetching the keyword hits and dropping the
+// other categories on the client, fuzzy queries with typos (edit distance 2), and the search
+// box suggestions (BookSuggester) with random borrow counts. Needs no database.
+//   java server.SearchBenchmark 1000000
+public class SearchBenchmark {
+    private static final String[] WORDS = {"Lập", "trình", "Java", "Python", "cơ", "bản", "nâng", "cao", "Cấu",
+        "trúc", "dữ", "liệu", "giải", "thuật", "Kinh", "tế", "học", "vi", "mô", "vĩ", "Lịch", "sử", "Việt", "Nam",
+        "Văn", "hóa", "Tiếng", "Anh", "giao", "tiếp", "Toán", "cao", "cấp", "Mạng", "máy", "tính", "Hệ", "điều", "hành"};
+    private static final String[] AUTHORS = {"Nguyễn Văn An", "Trần Thị Bình", "Lê Hoàng", "Phạm Minh Châu", "Hoàng Đức"};
+    private static final String[] CATEGORIES = {"Công nghệ thông tin", "Kinh tế", "Lịch sử", "Ngoại ngữ", "Toán học"};
+    private static final String[] QUERIES = {"java", "lập trình java", "lap trinh java", "python OR java", "nguyễn", "978-604-12345", "giải thuật nâng"};
+    private static final String[] FUZZY_QUERIES = {"lap trinh jvaa", "giai thuat nag cao", "ngyuen", "Kinh te hoc vi mo", "pythn OR javva"};
+    private static final String[] PREFIXES = {"l", "lap tr", "lập trình java ", "nguy", "97", "xyz"};
+    private static final int ROUNDS = 20;
+    
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Random random = new Random(42);
+        List<Book> books = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Book book = new Book();
+            book.setBookId("BOOK" + i);
+            StringBuilder title = new StringBuilder();
+            for (int w = 2 + random.nextInt(4); w > 0; w--) {
+                title.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            book.setTitle(title.append("tập ").append(i).toString());
+            book.setAuthor(AUTHORS[random.nextInt(AUTHORS.length)]);
+            book.setIsbn("978-604-" + i);
+            book.setCategory(CATEGORIES[random.nextInt(CATEGORIES.length)]);
+            book.setPublishYear(1990 + random.nextInt(35));
+            book.setAvailableCopies(random.nextInt(3));
+            books.add(book);
+        }
+        
+        long start = System.nanoTime();
+        CatalogCache catalog = new CatalogCache(() -> books, bookId -> null);
+        catalog.reload();
+        System.out.printf("%d books indexed in %d ms: %s%n", size, (System.nanoTime() - start) / 1000000, catalog.getStats());
+        
+        for (String query : QUERIES) {
+            long best = Long.MAX_VALUE;
+            int found = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                start = System.nanoTime();
+                found = catalog.search(query).size();
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            // The old search took the whole keyword as one regex
+            Pattern pattern = Pattern.compile(".*" + query + ".*", Pattern.CASE_INSENSITIVE);
+            start = System.nanoTime();
+            int scanned = 0;
+            for (Book book : books) {
+                if (matches(pattern, book.getTitle()) || matches(pattern, book.getAuthor())
+                        || matches(pattern, book.getIsbn()) || matches(pattern, book.getCategory())) {
+                    scanned++;
+                }
+            }
+            long scanNanos = System.nanoTime() - start;
+            System.out.printf("%-22s index: %8d hits %10.1f us | regex scan: %8d hits %8d ms%n",
+                "\"" + query + "\"", found, best / 1000.0, scanned, scanNanos / 1000000);
+        }
+        
+        for (BookQuery query : structuredQueries()) {
+            long best = Long.MAX_VALUE;
+            long bestPage = Long.MAX_VALUE;
+            int found = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                start = System.nanoTime();
+                found = catalog.query(query).size();
+                best = Math.min(best, System.nanoTime() - start);
+                // What one SEARCH_BOOKS_PAGE request costs: the first 100 in order
+                start = System.nanoTime();
+                catalog.queryPage(query, 0, null, 0, 100);
+                bestPage = Math.min(bestPage, System.nanoTime() - start);
+            }
+            int sent = query.getKeyword() != null ? catalog.search(query.getKeyword()).size() : size;
+            System.out.printf("%-40s query: %8d hits %10.1f us, first page %10.1f us | before: %8d books sent%n",
+                describe(query), found, best / 1000.0, bestPage / 1000.0, sent);
+        }
+        
+        for (String keyword : FUZZY_QUERIES) {
+            BookQuery query = new BookQuery(keyword);
+            query.setFuzzy(true);
+            long best = Long.MAX_VALUE;
+            List<Book> found = null;
+            Map<Book, Double> relevance = new IdentityHashMap<>();
+            for (int round = 0; round < ROUNDS; round++) {
+                relevance.clear();
+                start = System.nanoTime();
+                found = catalog.query(query, 2, relevance);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("%-22s fuzzy: %8d hits %10.1f us, exact: %8d hits%s%n", "\"" + keyword + "\"",
+                found.size(), best / 1000.0, catalog.search(keyword).size(),
+                found.isEmpty() ? "" : String.format(" [%s %.2f, ...]", found.get(0).getTitle(), relevance.get(found.get(0))));
+        }
+        
+        BookSuggester suggester = new BookSuggester(catalog);
+        Map<String, Long> borrowCounts = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            borrowCounts.put("BOOK" + i, (long) random.nextInt(1000));
+        }
+        suggester.setBorrowCounts(borrowCounts);
+        start = System.nanoTime();
+        suggester.rebuildIfChanged();
+        System.out.printf("%d suggestions built in %d ms%n", suggester.size(), (System.nanoTime() - start) / 1000000);
+        for (String prefix : PREFIXES) {
+            long best = Long.MAX_VALUE;
+            List<String> suggestions = null;
+            for (int round = 0; round < ROUNDS * 10; round++) {
+                start = System.nanoTime();
+                suggestions = suggester.suggest(prefix, BookSuggester.MAX_SUGGESTIONS);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("%-22s suggest: %8.1f us %s%n", "\"" + prefix + "\"", best / 1000.0,
+                suggestions.isEmpty() ? "[]" : "[" + suggestions.get(0) + ", ...]");
+        }
+    }
+    
+    private static List<BookQuery> structuredQueries() {
+        List<BookQuery> queries = new ArrayList<>();
+        BookQuery query = new BookQuery("java");
+        query.setCategory("Lịch sử");
+        queries.add(query);
+        query = new BookQuery("lap trinh java");
+        query.setCategory("Kinh tế");
+        query.setAvailableOnly(true);
+        queries.add(query);
+        query = new BookQuery("nguyen");
+        query.setFromYear(2020);
+        query.setSort(BookQuery.SORT_NEWEST);
+        queries.add(query);
+        query = new BookQuery();
+        query.setCategory("Toán học");
+        query.setFromYear(2000);
+        query.setToYear(2004);
+        query.setSort(BookQuery.SORT_TITLE);
+        queries.add(query);
+        return queries;
+    }
+    
+    private static String describe(BookQuery query) {
+        return "\"" + (query.getKeyword() != null ? query.getKeyword() : "") + "\" " + (query.getCategory() != null ? query.getCategory() : "")
+            + (query.getFromYear() != null ? " " + query.getFromYear() + "-" + (query.getToYear() != null ? query.getToYear() : "") : "")
+            + (query.isAvailableOnly() ? " available" : "") + (query.getSort() != null ? " " + query.getSort() : "");
+    }
+    
+    private static boolean matches(Pattern pattern, String value) {
+        return value != null && pattern.matcher(value).matches();
+    }
+}
@@ -0,0 +1,557 @@
+package server;
+
+import model.Book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Inverted index over the searchable fields of the catalog (title, author, isbn, category):
+// folded token (see SearchText: no diacritics, lower case) -> positions of the books holding
+// it. Books are identified by their CatalogCache position, which follows collection order, so
+// posting lists stay sorted and results come out in catalog order without sorting.
+// CatalogCache keeps the index in step with its own content, so every add, update and delete
+// of a book reaches it with the write-through refresh.
+// Query: whitespace-separated terms must all match (AND); "OR" (or "|") between terms starts
+// an alternative, e.g. "lap trinh java OR python". A term matches every token it is a prefix
+// of, so a search typed word by word finds results before the last word is complete.
+// fuzzySearch also forgives typos, within a bounded edit distance per term.
+class SearchIndex {
+    private static final long[] NONE = new long[0];
+    // closest[] value of a token prefix shorter than the fuzzy term
+    private static final int NO_PREFIX = Integer.MAX_VALUE;
+    
+    // Sorted, so the tokens starting with a term are one contiguous range
+    private final TreeMap<String, Postings> postings = new TreeMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    void add(long position, Book book) {
+        Set<String> tokens = bookTokens(book);
+        lock.writeLock().lock();
+        try {
+            for (String token : tokens) {
+                postings.computeIfAbsent(token, t -> new Postings()).add(position);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // book: the version that was indexed at this position
+    void remove(long position, Book book) {
+        Set<String> tokens = bookTokens(book);
+        lock.writeLock().lock();
+        try {
+            for (String token : tokens) {
+                Postings list = postings.get(token);
+                if (list != null && list.remove(position) && list.size == 0) {
+                    postings.remove(token);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    int tokenCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Positions of the matching books, ascending; empty for a query without terms
+    long[] search(String query) {
+        List<List<String>> alternatives = parse(query);
+        lock.readLock().lock();
+        try {
+            long[] result = NONE;
+            for (List<String> terms : alternatives) {
+                long[] matches = matchAll(terms);
+                result = result.length == 0 ? matches : union(Arrays.asList(result, matches));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Like search(), but a term also matches the tokens (and token prefixes) within a few edits
+    // of it, e.g. "programing" -> "programming", "jvaa" -> "java". Each book gets a relevance
+    // in (0, 1]: the average over the terms of 1 - edits / term length for its closest token,
+    // 10% less when only the start of the token matched; the best alternative counts for OR
+    // queries. As in search(), the term with the fewest books is walked and the others probed.
+    FuzzyHits fuzzySearch(String query, int maxEdits) {
+        List<List<String>> alternatives = parse(query);
+        lock.readLock().lock();
+        try {
+            FuzzyHits result = new FuzzyHits(NONE, new double[0]);
+            for (List<String> terms : alternatives) {
+                result = best(result, fuzzyMatchAll(terms, maxEdits));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private FuzzyHits fuzzyMatchAll(List<String> terms, int maxEdits) {
+        List<FuzzyTerm> matches = new ArrayList<>(terms.size());
+        FuzzyTerm driver = null;
+        for (String term : terms) {
+            FuzzyTerm match = fuzzyTerm(term, editsFor(term, maxEdits));
+            if (match.size == 0) {
+                return new FuzzyHits(NONE, new double[0]);
+            }
+            if (driver == null || match.size < driver.size) {
+                driver = match;
+            }
+            matches.add(match);
+        }
+        List<long[]> driverLists = new ArrayList<>(driver.lists.size());
+        for (Postings list : driver.lists) {
+            driverLists.add(Arrays.copyOf(list.positions, list.size));
+        }
+        long[] candidates = driverLists.size() == 1 ? driverLists.get(0) : union(driverLists);
+        long[] positions = new long[candidates.length];
+        double[] scores = new double[candidates.length];
+        int count = 0;
+        for (long position : candidates) {
+            double total = 0;
+            for (int j = 0; j < matches.size() && total >= 0; j++) {
+                double score = matches.get(j).score(position);
+                total = score > 0 ? total + score : -1;
+            }
+            if (total > 0) {
+                positions[count] = position;
+                scores[count++] = total / terms.size();
+            }
+        }
+        return new FuzzyHits(Arrays.copyOf(positions, count), Arrays.copyOf(scores, count));
+    }
+    
+    // One edit already turns a short word into another one: up to 2 letters only exact
+    // matches, up to 5 letters at most one edit
+    private static int editsFor(String term, int maxEdits) {
+        if (term.length() <= 2) {
+            return 0;
+        }
+        return term.length() <= 5 ? Math.min(1, maxEdits) : maxEdits;
+    }
+    
+    // The tokens close to the term, their posting lists merged per score (at most 2 per
+    // distance), so probing a position costs a few gallops however many tokens matched
+    private FuzzyTerm fuzzyTerm(String term, int maxEdits) {
+        Map<Integer, List<Postings>> byMatch = new TreeMap<>();
+        for (Map.Entry<String, Integer> match : similarTokens(term, maxEdits).entrySet()) {
+            byMatch.computeIfAbsent(match.getValue(), m -> new ArrayList<>()).add(postings.get(match.getKey()));
+        }
+        FuzzyTerm fuzzy = new FuzzyTerm(byMatch.size());
+        int i = 0;
+        for (Map.Entry<Integer, List<Postings>> group : byMatch.entrySet()) {
+            List<Postings> lists = group.getValue();
+            Postings list = lists.size() == 1 ? lists.get(0) : merge(lists);
+            fuzzy.lists.add(list);
+            fuzzy.scores[i++] = score(group.getKey(), term.length());
+            fuzzy.size += list.size;
+        }
+        return fuzzy;
+    }
+    
+    // Score of a similarTokens match: edits << 1 | (1 if only a prefix matched)
+    private static double score(int match, int termLength) {
+        double edits = match >> 1;
+        boolean prefixOnly = (match & 1) == 1;
+        return (1.0 - edits / termLength) * (prefixOnly ? 0.9 : 1.0);
+    }
+    
+    // Every position of either, with the higher score where both have it
+    private static FuzzyHits best(FuzzyHits a, FuzzyHits b) {
+        if (a.positions.length == 0) {
+            return b;
+        }
+        long[] positions = new long[a.positions.length + b.positions.length];
+        double[] scores = new double[positions.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.positions.length || j < b.positions.length) {
+            if (j == b.positions.length || (i < a.positions.length && a.positions[i] < b.positions[j])) {
+                positions[count] = a.positions[i];
+                scores[count++] = a.scores[i++];
+            } else if (i == a.positions.length || b.positions[j] < a.positions[i]) {
+                positions[count] = b.positions[j];
+                scores[count++] = b.scores[j++];
+            } else {
+                positions[count] = a.positions[i];
+                scores[count++] = Math.max(a.scores[i++], b.scores[j++]);
+            }
+        }
+        return new FuzzyHits(Arrays.copyOf(positions, count), Arrays.copyOf(scores, count));
+    }
+    
+    // Tokens within maxEdits of the term, or starting with at least as many characters as the
+    // term that are within maxEdits of it, mapped to edits << 1 | (1 if only a prefix matched),
+    // whichever of the two scores higher. The sorted dictionary is walked with one Levenshtein
+    // row per character of the current token, shared with the previous token as far as they
+    // have the same prefix. Once every value of a row exceeds maxEdits no token with that
+    // prefix can match, and the walk jumps past all of them with one seek: only the prefixes
+    // still within reach are visited, not the whole dictionary.
+    // Caller holds the read lock.
+    private Map<String, Integer> similarTokens(String term, int maxEdits) {
+        Map<String, Integer> matches = new HashMap<>();
+        int length = term.length();
+        // rows[i]: distances between the first i characters of the token and each prefix of
+        // the term; closest[i]: the best distance of the whole term to a token prefix of
+        // length term.length() to i
+        int[][] rows = new int[32][];
+        int[] closest = new int[32];
+        rows[0] = new int[length + 1];
+        for (int j = 0; j <= length; j++) {
+            rows[0][j] = j;
+        }
+        closest[0] = NO_PREFIX;
+        String previous = "";
+        int valid = 0;
+        String token = postings.isEmpty() ? null : postings.firstKey();
+        while (token != null) {
+            int i = 0;
+            int shared = Math.min(valid, Math.min(previous.length(), token.length()));
+            while (i < shared && previous.charAt(i) == token.charAt(i)) {
+                i++;
+            }
+            int dead = -1;
+            for (; i < token.length(); i++) {
+                if (i + 1 == rows.length) {
+                    rows = Arrays.copyOf(rows, rows.length * 2);
+                    closest = Arrays.copyOf(closest, closest.length * 2);
+                }
+                if (rows[i + 1] == null) {
+                    rows[i + 1] = new int[length + 1];
+                }
+                if (nextRow(token, i, rows, term) > maxEdits) {
+                    dead = i + 1;
+                    break;
+                }
+                closest[i + 1] = i + 1 >= length ? Math.min(closest[i], rows[i + 1][length]) : NO_PREFIX;
+            }
+            previous = token;
+            if (dead > 0) {
+                String prefix = token.substring(0, dead);
+                if (closest[dead - 1] <= maxEdits) {
+                    // A shorter prefix already matched: so does every token below this one
+                    for (String below : postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false).keySet()) {
+                        matches.put(below, closest[dead - 1] << 1 | 1);
+                    }
+                }
+                valid = dead - 1;
+                token = postings.higherKey(prefix + Character.MAX_VALUE);
+                continue;
+            }
+            valid = token.length();
+            // "jav" is one edit from "java" but an exact prefix of it, which scores higher
+            int whole = rows[token.length()][length];
+            int match = whole <= maxEdits ? whole << 1 : -1;
+            if (closest[token.length()] <= maxEdits) {
+                int prefixMatch = closest[token.length()] << 1 | 1;
+                if (match < 0 || score(prefixMatch, length) > score(match, length)) {
+                    match = prefixMatch;
+                }
+            }
+            if (match >= 0) {
+                matches.put(token, match);
+            }
+            token = postings.higherKey(token);
+        }
+        return matches;
+    }
+    
+    // One step of the edit distance table: rows[i + 1] from the rows before it, for character i
+    // of the token; returns its minimum. Swapping two neighbouring letters ("jvaa") counts as
+    // one edit, like a substitution.
+    private static int nextRow(String token, int i, int[][] rows, String term) {
+        int[] row = rows[i];
+        int[] next = rows[i + 1];
+        char c = token.charAt(i);
+        next[0] = row[0] + 1;
+        int min = next[0];
+        for (int j = 1; j < next.length; j++) {
+            int cost = term.charAt(j - 1) == c ? 0 : 1;
+            next[j] = Math.min(Math.min(next[j - 1], row[j]) + 1, row[j - 1] + cost);
+            if (i > 0 && j > 1 && c == term.charAt(j - 2) && token.charAt(i - 1) == term.charAt(j - 1)) {
+                next[j] = Math.min(next[j], rows[i - 1][j - 2] + 1);
+            }
+            min = Math.min(min, next[j]);
+        }
+        return min;
+    }
+    
+    // Books matching every term. Only the most selective term is walked; the other terms are
+    // probed with its candidates in ascending order, each list keeping a cursor that gallops
+    // forward, so the cost follows the smallest list rather than the largest.
+    private long[] matchAll(List<String> terms) {
+        List<TermMatch> matches = new ArrayList<>(terms.size());
+        TermMatch driver = null;
+        for (String term : terms) {
+            TermMatch match = new TermMatch(postings.subMap(term, true, term + Character.MAX_VALUE, false).values());
+            if (match.size == 0) {
+                return NONE;
+            }
+            if (driver == null || match.size < driver.size) {
+                driver = match;
+            }
+            matches.add(match);
+        }
+        matches.remove(driver);
+        for (TermMatch match : matches) {
+            // A short prefix can match thousands of tokens: merge them when that is cheaper
+            // than probing every one of them for each candidate
+            if ((long) match.lists.size() * driver.size > match.size) {
+                match.mergeLists();
+            }
+        }
+        
+        if (driver.lists.size() > 1) {
+            driver.mergeLists();
+        }
+        Postings candidates = driver.lists.get(0);
+        long[] result = new long[candidates.size];
+        int count = 0;
+        for (int i = 0; i < candidates.size; i++) {
+            long position = candidates.positions[i];
+            boolean all = true;
+            for (int j = 0; j < matches.size() && all; j++) {
+                all = matches.get(j).contains(position);
+            }
+            if (all) {
+                result[count++] = position;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+    
+    private static Postings merge(List<Postings> range) {
+        List<long[]> lists = new ArrayList<>(range.size());
+        for (Postings list : range) {
+            lists.add(Arrays.copyOf(list.positions, list.size));
+        }
+        Postings merged = new Postings();
+        merged.positions = union(lists);
+        merged.size = merged.positions.length;
+        return merged;
+    }
+    
+    private static long[] union(List<long[]> lists) {
+        int total = 0;
+        for (long[] list : lists) {
+            total += list.length;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (long[] list : lists) {
+            System.arraycopy(list, 0, all, offset, list.length);
+            offset += list.length;
+        }
+        Arrays.sort(all);
+        int count = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (count == 0 || all[count - 1] != all[i]) {
+                all[count++] = all[i];
+            }
+        }
+        return Arrays.copyOf(all, count);
+    }
+    
+    // Alternatives separated by the word OR or by |, each a list of folded terms. Scanned by
+    // hand: the query is never turned into a regex.
+    static List<List<String>> parse(String query) {
+        List<List<String>> alternatives = new ArrayList<>();
+        if (query == null) {
+            return alternatives;
+        }
+        List<String> terms = new ArrayList<>();
+        int length = query.length();
+        int i = 0;
+        while (i < length) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            if (c == '|') {
+                terms = nextAlternative(alternatives, terms);
+                i++;
+                continue;
+            }
+            int end = i;
+            while (end < length && !Character.isWhitespace(query.charAt(end)) && query.charAt(end) != '|') {
+                end++;
+            }
+            if (end - i == 2 && query.startsWith("OR", i)) {
+                terms = nextAlternative(alternatives, terms);
+            } else {
+                terms.addAll(SearchText.tokens(query.substring(i, end)));
+            }
+            i = end;
+        }
+        nextAlternative(alternatives, terms);
+        return alternatives;
+    }
+    
+    private static List<String> nextAlternative(List<List<String>> alternatives, List<String> terms) {
+        if (terms.isEmpty()) {
+            return terms;
+        }
+        alternatives.add(terms);
+        return new ArrayList<>();
+    }
+    
+    private static Set<String> bookTokens(Book book) {
+        Set<String> tokens = new HashSet<>();
+        tokens.addAll(SearchText.tokens(book.getTitle()));
+        tokens.addAll(SearchText.tokens(book.getAuthor()));
+        tokens.addAll(SearchText.tokens(book.getIsbn()));
+        tokens.addAll(SearchText.tokens(book.getCategory()));
+        return tokens;
+    }
+    
+    // Result of fuzzySearch: positions ascending and the relevance of each
+    static final class FuzzyHits {
+        final long[] positions;
+        final double[] scores;
+        
+        FuzzyHits(long[] positions, double[] scores) {
+            this.positions = positions;
+            this.scores = scores;
+        }
+    }
+    
+    // The posting lists one fuzzy term matches, each with the score of its tokens
+    private static class FuzzyTerm {
+        final List<Postings> lists = new ArrayList<>();
+        final double[] scores;
+        final int[] cursors;
+        long size;
+        
+        FuzzyTerm(int groups) {
+            scores = new double[groups];
+            cursors = new int[groups];
+        }
+        
+        // Best score of a list holding the position, 0 if none; positions must be asked in
+        // ascending order
+        double score(long position) {
+            double best = 0;
+            for (int i = 0; i < lists.size(); i++) {
+                Postings list = lists.get(i);
+                int at = TermMatch.gallop(list, cursors[i], position);
+                cursors[i] = at;
+                if (at < list.size && list.positions[at] == position) {
+                    best = Math.max(best, scores[i]);
+                }
+            }
+            return best;
+        }
+    }
+    
+    // The posting lists of the tokens one query term matches
+    private static class TermMatch {
+        List<Postings> lists;
+        long size;
+        int[] cursors;
+        
+        TermMatch(Collection<Postings> range) {
+            lists = new ArrayList<>(range);
+            for (Postings list : lists) {
+                size += list.size;
+            }
+            cursors = new int[lists.size()];
+        }
+        
+        void mergeLists() {
+            lists = Collections.singletonList(merge(lists));
+            cursors = new int[1];
+        }
+        
+        // Positions must be asked in ascending order
+        boolean contains(long position) {
+            for (int i = 0; i < lists.size(); i++) {
+                Postings list = lists.get(i);
+                int at = gallop(list, cursors[i], position);
+                cursors[i] = at;
+                if (at < list.size && list.positions[at] == position) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        // First index >= from whose position is >= target: doubling steps, then a binary search
+        private static int gallop(Postings list, int from, long target) {
+            int step = 1;
+            int low = from;
+            int high = from;
+            while (high < list.size && list.positions[high] < target) {
+                low = high + 1;
+                high = from + step;
+                step <<= 1;
+            }
+            high = Math.min(high, list.size);
+            int at = Arrays.binarySearch(list.positions, low, high, target);
+            return at >= 0 ? at : -at - 1;
+        }
+    }
+    
+    // Sorted positions of one token. New books get the highest position so adds append;
+    // a changed book keeps its position and is inserted in place.
+    private static class Postings {
+        long[] positions = new long[2];
+        int size;
+        
+        void add(long position) {
+            int at = size == 0 || positions[size - 1] < position ? size
+                : Arrays.binarySearch(positions, 0, size, position);
+            if (at < 0) {
+                at = -at - 1;
+            } else if (at < size) {
+                return;
+            }
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            System.arraycopy(positions, at, positions, at + 1, size - at);
+            positions[at] = position;
+            size++;
+        }
+        
+        boolean remove(long position) {
+            int at = Arrays.binarySearch(positions, 0, size, position);
+            if (at < 0) {
+                return false;
+            }
+            System.arraycopy(positions, at + 1, positions, at, size - at - 1);
+            size--;
+            return true;
+        }
+    }
+}
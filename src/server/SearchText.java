@@ -0,0 +1,100 @@
+package server;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+// Search normalization: Unicode NFD, combining marks dropped, đ/Đ -> d, lower case, so
+// "Lập trình" and "lap trinh" give the same tokens. SearchIndex applies it to the books when
+// they are indexed and to the query, and only stores folded tokens.
+// The fold of every character up to U+1FFF (Latin, Latin Extended, the Vietnamese block
+// U+1E00-U+1EFF, and the combining marks themselves) is computed once here, so folding is a
+// table lookup per character with no Normalizer call and no regex at query time.
+final class SearchText {
+    private static final int TABLE_SIZE = 0x2000;
+    // Character dropped by folding (a combining mark)
+    private static final char DROP = '\0';
+    private static final char[] FOLD = new char[TABLE_SIZE];
+    
+    static {
+        for (int c = 0; c < TABLE_SIZE; c++) {
+            FOLD[c] = computeFold((char) c);
+        }
+    }
+    
+    private SearchText() {
+    }
+    
+    private static char computeFold(char c) {
+        if (c == 'đ' || c == 'Đ') {
+            return 'd';
+        }
+        if (isMark(c)) {
+            return DROP;
+        }
+        String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+        char base = decomposed.charAt(0);
+        for (int i = 1; i < decomposed.length(); i++) {
+            if (!isMark(decomposed.charAt(i))) {
+                // Not a letter plus accents (e.g. a compatibility form): keep it, lower-cased
+                return Character.toLowerCase(c);
+            }
+        }
+        return Character.toLowerCase(base);
+    }
+    
+    private static boolean isMark(char c) {
+        int type = Character.getType(c);
+        return type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK
+            || type == Character.ENCLOSING_MARK;
+    }
+    
+    static char fold(char c) {
+        if (c < TABLE_SIZE) {
+            return FOLD[c];
+        }
+        return isMark(c) ? DROP : Character.toLowerCase(c);
+    }
+    
+    // The whole text folded (marks removed), e.g. for prefix matching on a title
+    static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder folded = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = fold(text.charAt(i));
+            if (c != DROP) {
+                folded.append(c);
+            }
+        }
+        return folded.toString();
+    }
+    
+    // Folded runs of letters and digits. A combining mark (text already in NFD) belongs to the
+    // letter before it and does not split the word.
+    static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            char folded = fold(c);
+            if (folded == DROP) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                token.append(folded);
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+}
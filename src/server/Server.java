@@ -1,42 +1,71 @@
 package server;
 
-import model.Book;
-import model.BookCopy;
-import model.BorrowRecord;
-import model.User;
+import util.FrameCodec;
 import util.Message;
+import util.MessageOutputStream;
+import util.StreamResetPolicy;
 
+import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class Server {
     private static final int PORT = 12345;
+    // Thread.startVirtualThread (Java 21+), looked up reflectively so the default build still targets Java 11
+    private static final Method START_VIRTUAL_THREAD = findStartVirtualThread();
+    private static final StreamResetPolicy STREAM_RESET_POLICY = ServerConfig.getStreamResetPolicy();
+    // Object-stream sessions currently open, for the retention report
+    private static final Set<ClientHandler> OBJECT_STREAM_SESSIONS = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService statsReporter;
     private ServerSocket serverSocket;
+    private NioServer nioServer;
     private DatabaseManager dbManager;
+    private SessionRegistry sessionRegistry;
     private boolean running;
     
     public Server() {
         dbManager = new DatabaseManager();
+        sessionRegistry = new SessionRegistry();
+        dbManager.setEventListener(sessionRegistry);
         running = false;
     }
     
     public void start() {
+        startStatsReporter();
+        if (ServerConfig.isNioMode()) {
+            startNio();
+            return;
+        }
+        
         try {
             serverSocket = new ServerSocket(PORT);
             running = true;
-            System.out.println("Server started on port " + PORT);
+            System.out.println("Server started on port " + PORT + " (blocking mode, "
+                + (useVirtualThreads() ? "virtual" : "platform") + " threads)");
             System.out.println("Waiting for clients...");
             
             while (running) {
                 Socket clientSocket = serverSocket.accept();
                 System.out.println("New client connected: " + clientSocket.getInetAddress());
                 
-                ClientHandler handler = new ClientHandler(clientSocket, dbManager);
-                new Thread(handler).start();
+                ClientHandler handler = new ClientHandler(clientSocket, dbManager, sessionRegistry);
+                startClientThread(handler);
             }
         } catch (IOException e) {
             System.err.println("Server error: " + e.getMessage());
@@ -45,12 +74,30 @@ public class Server {
         }
     }
     
+    private void startNio() {
+        try {
+            nioServer = new NioServer(PORT, dbManager, sessionRegistry);
+            running = true;
+            nioServer.start();
+        } catch (IOException e) {
+            System.err.println("Server error: " + e.getMessage());
+        } finally {
+            stop();
+        }
+    }
+    
     public void stop() {
         running = false;
         try {
             if (serverSocket != null && !serverSocket.isClosed()) {
                 serverSocket.close();
             }
+            if (nioServer != null) {
+                nioServer.stop();
+            }
+            if (statsReporter != null) {
+                statsReporter.shutdownNow();
+            }
             if (dbManager != null) {
                 dbManager.close();
             }
@@ -60,35 +107,105 @@ public class Server {
         }
     }
     
+    // Periodically prints how much each object-stream session keeps referenced and the catalog
+    // cache hit rate (-Dserver.statsInterval=seconds)
+    private void startStatsReporter() {
+        int interval = ServerConfig.getStatsInterval();
+        if (interval <= 0) {
+            return;
+        }
+        statsReporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "stream-stats");
+            t.setDaemon(true);
+            return t;
+        });
+        statsReporter.scheduleAtFixedRate(() -> {
+            long total = 0;
+            for (ClientHandler session : OBJECT_STREAM_SESSIONS) {
+                MessageOutputStream out = session.output;
+                if (out != null) {
+                    total += out.getRetainedBytes();
+                    System.out.println("Session " + session.socket.getRemoteSocketAddress() + ": " + out.getStats());
+                }
+            }
+            System.out.println("Object-stream sessions: " + OBJECT_STREAM_SESSIONS.size() + ", retained " + (total / 1024) + " KB");
+            System.out.println("Catalog cache: " + dbManager.getCatalogStats());
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+    
+    // Runs a blocking ClientHandler on a virtual thread when -Dserver.threads=virtual and the
+    // JVM supports it, so a handler waiting on the socket or MongoDB does not hold an OS thread
+    static void startClientThread(Runnable handler) {
+        if (useVirtualThreads()) {
+            try {
+                START_VIRTUAL_THREAD.invoke(null, handler);
+                return;
+            } catch (ReflectiveOperationException e) {
+                System.err.println("Cannot start virtual thread, using platform thread: " + e.getMessage());
+            }
+        }
+        new Thread(handler).start();
+    }
+    
+    private static boolean useVirtualThreads() {
+        return ServerConfig.isVirtualThreads() && START_VIRTUAL_THREAD != null;
+    }
+    
+    private static Method findStartVirtualThread() {
+        if (!ServerConfig.isVirtualThreads()) {
+            return null;
+        }
+        try {
+            return Thread.class.getMethod("startVirtualThread", Runnable.class);
+        } catch (NoSuchMethodException e) {
+            System.err.println("server.threads=virtual requires Java 21+, using platform threads");
+            return null;
+        }
+    }
+    
     public static void main(String[] args) {
         Server server = new Server();
         server.start();
     }
     
-    private static class ClientHandler implements Runnable {
+    // Blocking transport: one thread per client. Accepts both legacy object-stream
+    // clients and framed clients (detected by FrameCodec.MAGIC at connect time).
+    static class ClientHandler implements Runnable {
         private Socket socket;
-        private DatabaseManager dbManager;
-        private ObjectInputStream input;
-        private ObjectOutputStream output;
-        private User currentUser;
+        private RequestHandler requestHandler;
+        private byte[] preread;
+        private InputStream input;
+        private volatile MessageOutputStream output;
         
-        public ClientHandler(Socket socket, DatabaseManager dbManager) {
+        public ClientHandler(Socket socket, DatabaseManager dbManager, SessionRegistry sessions) {
+            this(socket, dbManager, sessions, null);
+        }
+        
+        // preread: bytes already consumed from the socket (e.g. by the NIO front-end)
+        ClientHandler(Socket socket, DatabaseManager dbManager, SessionRegistry sessions, byte[] preread) {
             this.socket = socket;
-            this.dbManager = dbManager;
-            this.currentUser = null;
+            this.requestHandler = new RequestHandler(dbManager, sessions);
+            this.preread = preread;
         }
         
         @Override
         public void run() {
             try {
-                output = new ObjectOutputStream(socket.getOutputStream());
-                input = new ObjectInputStream(socket.getInputStream());
+                InputStream rawInput = socket.getInputStream();
+                if (preread != null && preread.length > 0) {
+                    rawInput = new SequenceInputStream(new ByteArrayInputStream(preread), rawInput);
+                }
+                PushbackInputStream pushback = new PushbackInputStream(rawInput, 4);
+                input = pushback;
                 
-                while (!socket.isClosed()) {
-                    Message request = (Message) input.readObject();
-                    Message response = handleRequest(request);
-                    output.writeObject(response);
-                    output.flush();
+                byte[] head = new byte[4];
+                new DataInputStream(pushback).readFully(head);
+                int magic = ((head[0] & 0xFF) << 24) | ((head[1] & 0xFF) << 16) | ((head[2] & 0xFF) << 8) | (head[3] & 0xFF);
+                if (magic == FrameCodec.MAGIC) {
+                    runFramed(pushback);
+                } else {
+                    pushback.unread(head);
+                    runObjectStream(pushback);
                 }
             } catch (IOException | ClassNotFoundException e) {
                 System.out.println("Client disconnected: " + socket.getInetAddress());
@@ -97,490 +214,74 @@ public class Server {
             }
         }
         
-        private Message handleRequest(Message request) {
-            Message response = new Message();
-            response.setType(request.getType());
-            
-            // Check if user is locked (except for LOGIN, REGISTER, LOGOUT)
-            if (currentUser != null && !request.getType().equals(Message.LOGIN) && 
-                !request.getType().equals(Message.REGISTER) && !request.getType().equals(Message.LOGOUT)) {
-                // Re-check user status from database
-                User userCheck = dbManager.getUserByEmail(currentUser.getEmail());
-                if (userCheck != null && "LOCKED".equals(userCheck.getStatus())) {
-                    // Force logout - send FORCE_LOGOUT message
-                    response.setType(Message.FORCE_LOGOUT);
-                    response.setSuccess(false);
-                    response.setMessage("Tài khoản của bạn đã bị khóa. Bạn sẽ bị đăng xuất.");
-                    currentUser = null;
-                    return response;
-                }
-            }
+        private void runObjectStream(InputStream in) throws IOException, ClassNotFoundException {
+            output = new MessageOutputStream(socket.getOutputStream(), STREAM_RESET_POLICY);
+            ObjectInputStream objectInput = new ObjectInputStream(in);
+            OBJECT_STREAM_SESSIONS.add(this);
             
-            try {
-                switch (request.getType()) {
-                    case Message.LOGIN:
-                        handleLogin(request, response);
-                        break;
-                    case Message.REGISTER:
-                        handleRegister(request, response);
-                        break;
-                    case Message.LOGOUT:
-                        currentUser = null;
-                        response.setSuccess(true);
-                        response.setMessage("Logged out successfully");
-                        break;
-                    case Message.GET_ALL_BOOKS:
-                        if (checkAuth()) {
-                            List<Book> books = dbManager.getAllBooks();
-                            response.setData(books);
-                            response.setSuccess(true);
-                        }
-                        break;
-                    case Message.SEARCH_BOOKS:
-                        if (checkAuth()) {
-                            String keyword = (String) request.getData();
-                            List<Book> books = dbManager.searchBooks(keyword);
-                            response.setData(books);
-                            response.setSuccess(true);
-                        }
-                        break;
-                    case Message.ADD_BOOK:
-                        if (checkAdminAuth()) {
-                            Book book = (Book) request.getData();
-                            boolean result = dbManager.addBook(book);
-                            response.setSuccess(result);
-                            response.setMessage(result ? "Thêm sách thành công" : "Thêm sách thất bại");
-                        }
-                        break;
-                    case Message.UPDATE_BOOK:
-                        if (checkAdminAuth()) {
-                            Book book = (Book) request.getData();
-                            boolean result = dbManager.updateBook(book);
-                            response.setSuccess(result);
-                            response.setMessage(result ? "Cập nhật sách thành công" : "Cập nhật sách thất bại");
-                        }
-                        break;
-                    case Message.DELETE_BOOK:
-                        if (checkAdminAuth()) {
-                            String bookId = (String) request.getData();
-                            boolean result = dbManager.deleteBook(bookId);
-                            response.setSuccess(result);
-                            response.setMessage(result ? "Xóa sách thành công" : "Xóa sách thất bại");
-                        }
-                        break;
-                    case Message.GET_ALL_USERS:
-                        if (checkAdminAuth()) {
-                            List<User> users = dbManager.getAllUsers();
-                            response.setData(users);
-                            response.setSuccess(true);
-                        }
-                        break;
-                    case Message.ADD_USER:
-                        if (checkAdminAuth()) {
-                            User user = (User) request.getData();
-                            boolean result = dbManager.addUser(user);
-                            response.setSuccess(result);
-                            response.setMessage(result ? "Thêm người dùng thành công" : "Thêm người dùng thất bại");
-                        }
-                        break;
-                    case Message.UPDATE_USER:
-                        if (checkAuth()) {
-                            User user = (User) request.getData();
-                            // Check if user is updating their own profile or is admin
-                            if (currentUser.getRole() != null && currentUser.getRole().equals("ADMIN")) {
-                                // Admin can update any user
-                                boolean result = dbManager.updateUser(user);
-                                response.setSuccess(result);
-                                response.setMessage(result ? "Cập nhật người dùng thành công" : "Cập nhật người dùng thất bại");
-                            } else {
-                                // Regular user can only update their own profile
-                                if (user.getUserId() != null && user.getUserId().equals(currentUser.getUserId())) {
-                                    // Don't allow user to change role or status
-                                    user.setRole(currentUser.getRole());
-                                    user.setStatus(currentUser.getStatus());
-                                    boolean result = dbManager.updateUser(user);
-                                    response.setSuccess(result);
-                                    response.setMessage(result ? "Cập nhật thông tin thành công" : "Cập nhật thông tin thất bại");
-                                } else {
-                                    response.setSuccess(false);
-                                    response.setMessage("Bạn không có quyền cập nhật thông tin người dùng khác!");
-                                }
-                            }
-                        }
-                        break;
-                    case Message.DELETE_USER:
-                        if (checkAdminAuth()) {
-                            String userId = (String) request.getData();
-                            boolean result = dbManager.deleteUser(userId);
-                            response.setSuccess(result);
-                            response.setMessage(result ? "Xóa người dùng thành công" : "Xóa người dùng thất bại");
-                        }
-                        break;
-                    case Message.LOCK_USER:
-                        if (checkAdminAuth()) {
-                            String userId = (String) request.getData();
-                            boolean result = dbManager.lockUser(userId);
-                            response.setSuccess(result);
-                            response.setMessage(result ? "Khóa tài khoản thành công" : "Khóa tài khoản thất bại");
-                        }
-                        break;
-                    case Message.UNLOCK_USER:
-                        if (checkAdminAuth()) {
-                            String userId = (String) request.getData();
-                            boolean result = dbManager.unlockUser(userId);
-                            response.setSuccess(result);
-                            response.setMessage(result ? "Mở khóa tài khoản thành công" : "Mở khóa tài khoản thất bại");
-                        }
-                        break;
-                    case Message.RESET_PASSWORD:
-                        if (checkAdminAuth()) {
-                            Object[] params = (Object[]) request.getData();
-                            String userId = (String) params[0];
-                            String newPassword = (String) params[1];
-                            boolean result = dbManager.resetPassword(userId, newPassword);
-                            response.setSuccess(result);
-                            response.setMessage(result ? "Đặt lại mật khẩu thành công" : "Đặt lại mật khẩu thất bại");
-                        }
-                        break;
-                    case Message.BORROW_BOOK:
-                        if (checkAuth()) {
-                            Object[] params = (Object[]) request.getData();
-                            String userId = (String) params[0];
-                            String bookId = (String) params[1];
-                            boolean result = dbManager.borrowBook(userId, bookId);
-                            if (result) {
-                                response.setSuccess(true);
-                                response.setMessage("Mượn sách thành công");
-                            } else {
-                                // Get settings to check max borrow limit
-                                org.bson.Document settings = dbManager.getSettings();
-                                int maxBorrowBooks = settings != null ? settings.getInteger("maxBorrowBooks", 5) : 5;
-                                response.setSuccess(false);
-                                response.setMessage("Mượn sách thất bại (không còn sách hoặc đã đạt giới hạn " + maxBorrowBooks + " quyển)");
-                            }
-                        }
-                        break;
-                    case Message.RETURN_BOOK:
-                        if (checkAuth()) {
-                            String recordId = (String) request.getData();
-                            boolean result = dbManager.returnBook(recordId);
-                            response.setSuccess(result);
-                            response.setMessage(result ? "Trả sách thành công" : "Trả sách thất bại");
-                        }
-                        break;
-                    case Message.RENEW_BOOK:
-                        if (checkAuth()) {
-                            String recordId = (String) request.getData();
-                            boolean result = dbManager.renewBook(recordId);
-                            if (result) {
-                                // Get renewal days from settings for message
-                                org.bson.Document settings = dbManager.getSettings();
-                                int renewalDays = settings != null ? settings.getInteger("renewalDays", 7) : 7;
-                                response.setSuccess(true);
-                                response.setMessage("Gia hạn sách thành công (thêm " + renewalDays + " ngày)");
-                            } else {
-                                response.setSuccess(false);
-                                response.setMessage("Gia hạn sách thất bại (sách không tồn tại hoặc không thể gia hạn)");
-                            }
-                        }
-                        break;
-                    case Message.MARK_LOST:
-                        if (checkAuth()) {
-                            String recordId = (String) request.getData();
-                            // Check if user owns this record (if not admin)
-                            if (currentUser.getRole() != null && !currentUser.getRole().equals("ADMIN")) {
-                                if (!dbManager.isRecordOwnedByUser(recordId, currentUser.getUserId())) {
-                                    response.setSuccess(false);
-                                    response.setMessage("Bạn không có quyền thực hiện thao tác này!");
-                                    break;
-                                }
-                            }
-                            boolean result = dbManager.markAsLost(recordId);
-                            response.setSuccess(result);
-                            response.setMessage(result ? "Báo mất sách thành công" : "Báo mất sách thất bại");
-                        }
-                        break;
-                    case Message.MARK_DAMAGED:
-                        if (checkAuth()) {
-                            String recordId = (String) request.getData();
-                            // Check if user owns this record (if not admin)
-                            if (currentUser.getRole() != null && !currentUser.getRole().equals("ADMIN")) {
-                                if (!dbManager.isRecordOwnedByUser(recordId, currentUser.getUserId())) {
-                                    response.setSuccess(false);
-                                    response.setMessage("Bạn không có quyền thực hiện thao tác này!");
-                                    break;
-                                }
-                            }
-                            boolean result = dbManager.markAsDamaged(recordId);
-                            response.setSuccess(result);
-                            response.setMessage(result ? "Báo hỏng sách thành công" : "Báo hỏng sách thất bại");
-                        }
-                        break;
-                    case Message.FORCE_RETURN:
-                        if (checkAdminAuth()) {
-                            String recordId = (String) request.getData();
-                            boolean result = dbManager.forceReturn(recordId);
-                            response.setSuccess(result);
-                            response.setMessage(result ? "Bắt buộc trả thành công. Người dùng đã nhận được thông báo." : "Bắt buộc trả thất bại");
-                        }
-                        break;
-                    case Message.GET_USER_NOTIFICATIONS:
-                        if (checkAuth()) {
-                            String userId = currentUser.getUserId();
-                            List<org.bson.Document> notifications = dbManager.getUserNotifications(userId);
-                            response.setData(notifications);
-                            response.setSuccess(true);
-                        }
-                        break;
-                    case Message.MARK_NOTIFICATION_READ:
-                        if (checkAuth()) {
-                            String notificationId = (String) request.getData();
-                            boolean result = dbManager.markNotificationAsRead(notificationId);
-                            response.setSuccess(result);
-                            response.setMessage(result ? "Đã đánh dấu đã đọc" : "Lỗi đánh dấu đã đọc");
-                        }
-                        break;
-                    case Message.CHECK_USER_STATUS:
-                        if (checkAuth()) {
-                            // Re-check user status from database
-                            User userCheck = dbManager.getUserByEmail(currentUser.getEmail());
-                            if (userCheck != null) {
-                                if ("LOCKED".equals(userCheck.getStatus())) {
-                                    // User is locked, force logout
-                                    response.setType(Message.FORCE_LOGOUT);
-                                    response.setSuccess(false);
-                                    response.setMessage("Tài khoản của bạn đã bị khóa. Bạn sẽ bị đăng xuất.");
-                                    currentUser = null;
-                                } else {
-                                    response.setSuccess(true);
-                                    response.setMessage("ACTIVE");
-                                }
-                            } else {
-                                response.setSuccess(false);
-                                response.setMessage("Không tìm thấy thông tin người dùng");
-                            }
-                        }
-                        break;
-                    case Message.GET_SETTINGS:
-                        // Allow both admin and regular users to read settings (for display purposes)
-                        if (checkAuth()) {
-                            org.bson.Document settings = dbManager.getSettings();
-                            if (settings != null) {
-                                response.setData(settings);
-                                response.setSuccess(true);
-                            } else {
-                                response.setSuccess(false);
-                                response.setMessage("Không thể tải cài đặt hệ thống");
-                            }
-                        }
-                        break;
-                    case Message.UPDATE_SETTINGS:
-                        if (checkAdminAuth()) {
-                            org.bson.Document settings = (org.bson.Document) request.getData();
-                            boolean result = dbManager.updateSettings(settings);
-                            response.setSuccess(result);
-                            response.setMessage(result ? "Cập nhật cài đặt thành công" : "Cập nhật cài đặt thất bại");
-                        }
-                        break;
-                    case Message.GET_USER_BORROW_RECORDS:
-                        if (checkAuth()) {
-                            String userId = (String) request.getData();
-                            List<BorrowRecord> records = dbManager.getUserBorrowRecords(userId);
-                            response.setData(records);
-                            response.setSuccess(true);
-                        }
-                        break;
-                    case Message.GET_ALL_BORROW_RECORDS:
-                        if (checkAdminAuth()) {
-                            List<BorrowRecord> records = dbManager.getAllBorrowRecords();
-                            response.setData(records);
-                            response.setSuccess(true);
-                        }
-                        break;
-                    case Message.GET_DASHBOARD_STATS:
-                        if (checkAdminAuth()) {
-                            org.bson.Document stats = dbManager.getDashboardStats();
-                            response.setData(stats);
-                            response.setSuccess(true);
-                        }
-                        break;
-                    case Message.GET_BOOK_REPORT:
-                        if (checkAdminAuth()) {
-                            List<org.bson.Document> report = dbManager.getBookReport();
-                            response.setData(report);
-                            response.setSuccess(true);
-                        }
-                        break;
-                    case Message.GET_USER_REPORT:
-                        if (checkAdminAuth()) {
-                            List<org.bson.Document> report = dbManager.getUserReport();
-                            response.setData(report);
-                            response.setSuccess(true);
-                        }
-                        break;
-                    case Message.GET_BORROW_REPORT:
-                        if (checkAdminAuth()) {
-                            org.bson.Document report = dbManager.getBorrowReport();
-                            response.setData(report);
-                            response.setSuccess(true);
-                        }
-                        break;
-                    case Message.GET_PENALTY_REPORT:
-                        if (checkAdminAuth()) {
-                            List<org.bson.Document> report = dbManager.getPenaltyReport();
-                            response.setData(report);
-                            response.setSuccess(true);
-                        }
-                        break;
-                    case Message.GET_BOOK_BY_ID:
-                        if (checkAdminAuth()) {
-                            String bookId = (String) request.getData();
-                            Book book = dbManager.getBookById(bookId);
-                            response.setData(book);
-                            response.setSuccess(book != null);
-                            response.setMessage(book != null ? "OK" : "Không tìm thấy sách");
-                        }
-                        break;
-                    case Message.GET_BOOK_COPIES:
-                        if (checkAdminAuth()) {
-                            String bookId = (String) request.getData();
-                            List<BookCopy> copies = dbManager.getBookCopies(bookId);
-                            response.setData(copies);
-                            response.setSuccess(true);
-                        }
-                        break;
-                    case Message.ADD_BOOK_COPY:
-                        if (checkAdminAuth()) {
-                            BookCopy copy = (BookCopy) request.getData();
-                            boolean result = dbManager.addBookCopy(copy);
-                            response.setSuccess(result);
-                            response.setMessage(result ? "Thêm bản sao thành công" : "Thêm bản sao thất bại");
-                        }
-                        break;
-                    case Message.DELETE_BOOK_COPY:
-                        if (checkAdminAuth()) {
-                            String copyId = (String) request.getData();
-                            boolean result = dbManager.deleteBookCopy(copyId);
-                            response.setSuccess(result);
-                            response.setMessage(result ? "Xóa bản sao thành công" : "Xóa bản sao thất bại");
-                        }
-                        break;
-                    default:
-                        response.setSuccess(false);
-                        response.setMessage("Unknown request type");
-                }
-            } catch (Exception e) {
-                response.setSuccess(false);
-                response.setMessage("Error: " + e.getMessage());
-                e.printStackTrace();
+            while (!socket.isClosed()) {
+                Message request = (Message) objectInput.readObject();
+                // Export chunks reset the stream so the sent items are not kept alive by it
+                Message response = requestHandler.handleRequest(request, chunk -> {
+                    try {
+                        output.writeMessage(chunk, true);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                output.writeMessage(response);
             }
-            
-            return response;
         }
         
-        private void handleLogin(Message request, Message response) {
-            try {
-                Object[] credentials = (Object[]) request.getData();
-                String email = (String) credentials[0];
-                String password = (String) credentials[1];
-                
-                // Check if user exists and is locked
-                User user = dbManager.login(email, password);
-                if (user != null) {
-                    // Double check status in case it was changed
-                    if ("LOCKED".equals(user.getStatus())) {
-                        response.setSuccess(false);
-                        response.setMessage("Tài khoản của bạn đã bị khóa. Vui lòng liên hệ quản trị viên.");
-                        return;
-                    }
-                    currentUser = user;
-                    response.setSuccess(true);
-                    response.setData(user);
-                    response.setMessage("Đăng nhập thành công");
-                } else {
-                    // Check if email exists but password is wrong or account is locked
-                    User checkUser = dbManager.getUserByEmail(email);
-                    if (checkUser != null && "LOCKED".equals(checkUser.getStatus())) {
-                        response.setSuccess(false);
-                        response.setMessage("Tài khoản của bạn đã bị khóa. Vui lòng liên hệ quản trị viên.");
-                    } else {
-                        response.setSuccess(false);
-                        response.setMessage("Email hoặc mật khẩu không đúng");
+        private void runFramed(InputStream in) throws IOException, ClassNotFoundException {
+            DataInputStream frameInput = new DataInputStream(new BufferedInputStream(in));
+            DataOutputStream frameOutput = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            
+            // Handshake: accept the requested codec if we know it, otherwise fall back to serialization.
+            // This handler answers in order, so FLAG_MULTIPLEX is not echoed.
+            int handshake = frameInput.readUnsignedByte();
+            int requested = handshake & ~FrameCodec.FLAGS;
+            int codec = FrameCodec.isSupported(requested) ? requested : FrameCodec.CODEC_SERIALIZED;
+            boolean push = (handshake & FrameCodec.FLAG_PUSH) != 0;
+            frameOutput.writeByte(push ? codec | FrameCodec.FLAG_PUSH : codec);
+            frameOutput.flush();
+            
+            if (push) {
+                // Pushes come from other sessions' threads, so frame writes are serialized on the stream
+                requestHandler.setPushSink(message -> {
+                    try {
+                        synchronized (frameOutput) {
+                            FrameCodec.writeFrame(frameOutput, message, codec);
+                        }
+                    } catch (IOException e) {
+                        System.err.println("Error pushing to client: " + e.getMessage());
                     }
-                }
-            } catch (Exception e) {
-                response.setSuccess(false);
-                response.setMessage("Lỗi đăng nhập: " + e.getMessage());
+                });
             }
-        }
-        
-        private void handleRegister(Message request, Message response) {
-            try {
-                User user = (User) request.getData();
-                if (user == null) {
-                    response.setSuccess(false);
-                    response.setMessage("Dữ liệu người dùng không hợp lệ");
-                    return;
-                }
-                
-                // Validate required fields
-                if (user.getEmail() == null || user.getEmail().trim().isEmpty()) {
-                    response.setSuccess(false);
-                    response.setMessage("Email không được để trống");
-                    return;
-                }
-                
-                if (user.getPassword() == null || user.getPassword().trim().isEmpty()) {
-                    response.setSuccess(false);
-                    response.setMessage("Mật khẩu không được để trống");
-                    return;
-                }
-                
-                boolean result = dbManager.register(user);
-                if (result) {
-                    response.setSuccess(true);
-                    response.setMessage("Đăng ký thành công! Vui lòng đăng nhập.");
-                } else {
-                    response.setSuccess(false);
-                    // Check if email exists
-                    User existingUser = dbManager.getUserByEmail(user.getEmail());
-                    if (existingUser != null) {
-                        response.setMessage("Email đã tồn tại trong hệ thống");
-                    } else {
-                        response.setMessage("Đăng ký thất bại. Vui lòng kiểm tra lại thông tin hoặc thử lại sau.");
+            
+            while (!socket.isClosed()) {
+                Message request = FrameCodec.readFrame(frameInput, codec);
+                // Export chunks go out as they are read; a slow reader blocks the write and so the export
+                Message response = requestHandler.handleRequest(request, chunk -> {
+                    try {
+                        synchronized (frameOutput) {
+                            FrameCodec.writeFrame(frameOutput, chunk, codec);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
                     }
+                });
+                synchronized (frameOutput) {
+                    FrameCodec.writeFrame(frameOutput, response, codec);
                 }
-            } catch (ClassCastException e) {
-                response.setSuccess(false);
-                response.setMessage("Lỗi: Dữ liệu không đúng định dạng");
-                System.err.println("Registration error - ClassCastException: " + e.getMessage());
-            } catch (Exception e) {
-                response.setSuccess(false);
-                response.setMessage("Lỗi đăng ký: " + e.getMessage());
-                System.err.println("Registration error: " + e.getMessage());
-                e.printStackTrace();
-            }
-        }
-        
-        private boolean checkAuth() {
-            if (currentUser == null) {
-                return false;
             }
-            // Check if user is locked - if so, they should be logged out
-            if ("LOCKED".equals(currentUser.getStatus())) {
-                return false;
-            }
-            return true;
-        }
-        
-        private boolean checkAdminAuth() {
-            if (currentUser == null || !currentUser.isAdmin()) {
-                return false;
-            }
-            return true;
         }
         
         private void close() {
+            requestHandler.close();
+            if (OBJECT_STREAM_SESSIONS.remove(this)) {
+                System.out.println("Session " + socket.getInetAddress() + " stream stats: " + output.getStats());
+            }
             try {
                 if (input != null) input.close();
                 if (output != null) output.close();
@@ -593,4 +294,3 @@ public class Server {
         }
     }
 }
-
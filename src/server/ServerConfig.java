@@ -0,0 +1,132 @@
+package server;
+
+import util.StreamResetPolicy;
+
+// Server options, read from system properties (e.g. java -Dserver.mode=nio server.Server)
+public class ServerConfig {
+    public static final String MODE_BLOCKING = "blocking";
+    public static final String MODE_NIO = "nio";
+    public static final String THREADS_PLATFORM = "platform";
+    public static final String THREADS_VIRTUAL = "virtual";
+    
+    private ServerConfig() {
+    }
+    
+    // "blocking": one thread per client (default), "nio": selector + bounded worker pool
+    public static String getMode() {
+        return getString("server.mode", MODE_BLOCKING);
+    }
+    
+    public static boolean isNioMode() {
+        return MODE_NIO.equals(getMode());
+    }
+    
+    // "platform": new Thread per client (default), "virtual": virtual thread per client (Java 21+)
+    public static String getThreadMode() {
+        return getString("server.threads", THREADS_PLATFORM);
+    }
+    
+    public static boolean isVirtualThreads() {
+        return THREADS_VIRTUAL.equals(getThreadMode());
+    }
+    
+    // Number of worker threads that execute framed requests in NIO mode
+    public static int getWorkerThreads() {
+        return getInt("server.workers", Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+    }
+    
+    // Requests waiting for a worker; beyond this the server answers "busy"
+    public static int getWorkerQueueSize() {
+        return getInt("server.workerQueue", 1000);
+    }
+    
+    // When object-stream sessions reset their ObjectOutputStream: always, never, every:N, bytes:N
+    public static StreamResetPolicy getStreamResetPolicy() {
+        return StreamResetPolicy.parse(System.getProperty("server.streamReset"));
+    }
+    
+    // Seconds between per-session stream statistics reports, 0 = only when a session ends
+    public static int getStatsInterval() {
+        return getInt("server.statsInterval", 0);
+    }
+    
+    // Seconds a session trusts its cached account status before re-reading it, so edits made
+    // directly in the database are still noticed. Changes made through the server apply at once.
+    public static int getStatusCacheTtl() {
+        return getInt("server.statusCacheTtl", 60);
+    }
+    
+    // true: run the steps of a borrow in one multi-document transaction (needs a replica set).
+    // Otherwise each step is an atomic conditional update and earlier steps are undone on failure.
+    public static boolean isTransactionalBorrow() {
+        return "true".equals(getString("server.transactions", "false"));
+    }
+    
+    // Items per STREAM_CHUNK frame of an export; bounds the memory an export needs on both ends
+    public static int getExportChunkSize() {
+        return getInt("server.exportChunkSize", 500);
+    }
+    
+    // User ids reserved per round-trip to the counters collection
+    public static int getIdBlockSize() {
+        return getInt("server.idBlockSize", 10);
+    }
+    
+    // Seconds between full re-reads of the in-memory book catalog, for edits made directly in
+    // MongoDB (Compass, DataImporter); 0 = never. Changes made through the server apply at once.
+    public static int getCatalogReloadInterval() {
+        return getSeconds("server.catalogReload", 300);
+    }
+    
+    // Seconds between checks of the settings document for edits made directly in MongoDB;
+    // 0 = never. Changes saved through the server apply at once.
+    public static int getSettingsPollInterval() {
+        return getSeconds("server.settingsPoll", 60);
+    }
+    
+    // Seconds between recounts of the admin dashboard figures, which are otherwise kept up to
+    // date in memory by the server's own writes; 0 = only at startup.
+    public static int getStatsReconcileInterval() {
+        return getSeconds("server.statsReconcile", 300);
+    }
+    
+    // Seconds between rebuilds of the search suggestions, when books or borrow counts changed;
+    // 0 = only when the catalog is reloaded.
+    public static int getSuggestRebuildInterval() {
+        return getSeconds("server.suggestRebuild", 30);
+    }
+    
+    // Most typos (Levenshtein edits) a fuzzy search forgives per word, 0-3; words of up to 5
+    // letters get at most one. 0 = fuzzy search finds exact words only.
+    public static int getFuzzyMaxEdits() {
+        String key = "server.fuzzyMaxEdits";
+        return Math.min(3, "0".equals(getString(key, "")) ? 0 : getInt(key, 2));
+    }
+    
+    static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return value.trim().toLowerCase();
+    }
+    
+    // Like getInt, but 0 is accepted (switches the periodic task off)
+    static int getSeconds(String key, int defaultValue) {
+        return "0".equals(getString(key, "")) ? 0 : getInt(key, defaultValue);
+    }
+    
+    static int getInt(String key, int defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            return parsed > 0 ? parsed : defaultValue;
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
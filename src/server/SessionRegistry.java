@@ -0,0 +1,114 @@
+package server;
+
+import org.bson.Document;
+import util.Message;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Logged-in sessions by userId, so database events can be pushed to the affected clients
+// instead of every client polling for them. Also caches the account status of those users:
+// the lock check before every request reads it here instead of from MongoDB, and lock,
+// unlock, update and delete keep it current.
+class SessionRegistry implements UserEventListener {
+    private final ConcurrentHashMap<String, Set<RequestHandler>> sessionsByUser = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CachedStatus> statusByUser = new ConcurrentHashMap<>();
+    private final long statusTtlNanos;
+    
+    SessionRegistry() {
+        this(TimeUnit.SECONDS.toNanos(ServerConfig.getStatusCacheTtl()));
+    }
+    
+    SessionRegistry(long statusTtlNanos) {
+        this.statusTtlNanos = statusTtlNanos;
+    }
+    
+    // status: as read at login; an event that arrived meanwhile is newer and is kept
+    void register(String userId, String status, RequestHandler session) {
+        if (userId == null) {
+            return;
+        }
+        sessionsByUser.computeIfAbsent(userId, k -> ConcurrentHashMap.newKeySet()).add(session);
+        if (status != null) {
+            statusByUser.putIfAbsent(userId, new CachedStatus(status, System.nanoTime() + statusTtlNanos));
+        }
+    }
+    
+    void unregister(String userId, RequestHandler session) {
+        if (userId == null) {
+            return;
+        }
+        sessionsByUser.computeIfPresent(userId, (k, sessions) -> {
+            sessions.remove(session);
+            if (sessions.isEmpty()) {
+                statusByUser.remove(userId);
+                return null;
+            }
+            return sessions;
+        });
+    }
+    
+    // Account status of a logged-in user; loader reads it from the database on a miss or
+    // after the TTL and may return null (user not found, not cached)
+    String getStatus(String userId, Supplier<String> loader) {
+        CachedStatus cached = statusByUser.get(userId);
+        long now = System.nanoTime();
+        if (cached != null && now - cached.expiresAt < 0) {
+            return cached.status;
+        }
+        String status = loader.get();
+        if (status != null) {
+            CachedStatus loaded = new CachedStatus(status, now + statusTtlNanos);
+            // Keep an entry written by an event while we were loading
+            if (cached == null) {
+                statusByUser.putIfAbsent(userId, loaded);
+            } else {
+                statusByUser.replace(userId, cached, loaded);
+            }
+        }
+        return status;
+    }
+    
+    @Override
+    public void notificationCreated(String userId, Document notification) {
+        Set<RequestHandler> sessions = sessionsByUser.get(userId);
+        if (sessions == null) {
+            return;
+        }
+        for (RequestHandler session : sessions) {
+            Message push = new Message(Message.PUSH_NOTIFICATION, notification);
+            push.setSuccess(true);
+            session.push(push);
+        }
+    }
+    
+    @Override
+    public void userStatusChanged(String userId, String status) {
+        // Stored even without a session: a login racing with this event must not cache the old status
+        statusByUser.put(userId, new CachedStatus(status, System.nanoTime() + statusTtlNanos));
+        Set<RequestHandler> sessions = sessionsByUser.get(userId);
+        if (sessions != null && "LOCKED".equals(status)) {
+            for (RequestHandler session : sessions) {
+                session.forceLogout("Tài khoản của bạn đã bị khóa. Bạn sẽ bị đăng xuất.");
+            }
+        }
+    }
+    
+    @Override
+    public void userDeleted(String userId) {
+        // Next check reads the database again and finds no user
+        statusByUser.remove(userId);
+    }
+    
+    private static class CachedStatus {
+        final String status;
+        final long expiresAt;
+        
+        CachedStatus(String status, long expiresAt) {
+            this.status = status;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
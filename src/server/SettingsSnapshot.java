@@ -0,0 +1,78 @@
+package server;
+
+import org.bson.Document;
+
+// Immutable copy of the SYSTEM_SETTINGS document. DatabaseManager holds the current one in an
+// AtomicReference and swaps in a new snapshot when the settings change, so borrow, return and
+// renew read their limits without a query. Missing or malformed values get the defaults the
+// server has always used.
+final class SettingsSnapshot {
+    // Counts the snapshots installed by this process; a newer one is never replaced by an older read
+    private final long version;
+    private final Document document;
+    private final int maxBorrowDays;
+    private final int maxBorrowBooks;
+    private final int renewalDays;
+    private final double overdueFinePerDay;
+    private final double lostBookFine;
+    private final double damagedBookFine;
+    
+    SettingsSnapshot(long version, Document document) {
+        this.version = version;
+        this.document = new Document(document);
+        this.maxBorrowDays = intValue(document, "maxBorrowDays", 14);
+        this.maxBorrowBooks = intValue(document, "maxBorrowBooks", 5);
+        this.renewalDays = intValue(document, "renewalDays", 7);
+        this.overdueFinePerDay = doubleValue(document, "overdueFinePerDay", 5000.0);
+        this.lostBookFine = doubleValue(document, "lostBookFine", 100000.0);
+        this.damagedBookFine = doubleValue(document, "damagedBookFine", 50000.0);
+    }
+    
+    long getVersion() {
+        return version;
+    }
+    
+    int getMaxBorrowDays() {
+        return maxBorrowDays;
+    }
+    
+    int getMaxBorrowBooks() {
+        return maxBorrowBooks;
+    }
+    
+    int getRenewalDays() {
+        return renewalDays;
+    }
+    
+    double getOverdueFinePerDay() {
+        return overdueFinePerDay;
+    }
+    
+    double getLostBookFine() {
+        return lostBookFine;
+    }
+    
+    double getDamagedBookFine() {
+        return damagedBookFine;
+    }
+    
+    // Whether the stored document is still the one this snapshot was made from
+    boolean sameAs(Document stored) {
+        return document.equals(stored);
+    }
+    
+    // A copy the caller may change (GET_SETTINGS sends it to the client)
+    Document toDocument() {
+        return new Document(document);
+    }
+    
+    private static int intValue(Document document, String key, int defaultValue) {
+        Object value = document.get(key);
+        return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+    }
+    
+    private static double doubleValue(Document document, String key, double defaultValue) {
+        Object value = document.get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : defaultValue;
+    }
+}
@@ -0,0 +1,12 @@
+package server;
+
+import org.bson.Document;
+
+// Changes that a logged-in user's session should hear about without polling
+interface UserEventListener {
+    void notificationCreated(String userId, Document notification);
+    
+    void userStatusChanged(String userId, String status);
+    
+    void userDeleted(String userId);
+}
@@ -0,0 +1,151 @@
+package server;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.mongodb.client.model.Filters.eq;
+
+// Compares getUserReport (faculty-grouped aggregations) with the previous per-student counting
+// on a scratch database (library_bench, dropped and re-seeded): round-trips and time.
+//   java server.UserReportBenchmark 50000
+// Arguments: <students>; each has 3 borrow records on average and every fourth one a fine
+public class UserReportBenchmark {
+    private static final String CONNECTION_STRING = "mongodb://localhost:27017";
+    private static final String DATABASE_NAME = "library_bench";
+    private static final String[] FACULTIES = {"Công nghệ thông tin", "Kinh tế", "Ngoại ngữ", "Y dược", "Luật", ""};
+    
+    public static void main(String[] args) {
+        int students = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        
+        // Counts the commands (round-trips) sent to the server
+        AtomicLong commands = new AtomicLong();
+        CommandListener counter = new CommandListener() {
+            @Override
+            public void commandStarted(CommandStartedEvent event) {
+                commands.incrementAndGet();
+            }
+        };
+        MongoClientSettings settings = MongoClientSettings.builder()
+            .applyConnectionString(new ConnectionString(CONNECTION_STRING))
+            .addCommandListener(counter)
+            .build();
+        
+        try (MongoClient seedClient = MongoClients.create(CONNECTION_STRING)) {
+            MongoDatabase database = seedClient.getDatabase(DATABASE_NAME);
+            seed(database, students);
+            DatabaseManager dbManager = new DatabaseManager(settings, DATABASE_NAME);
+            
+            commands.set(0);
+            long start = System.nanoTime();
+            List<Document> report = dbManager.getUserReport();
+            long aggregateMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            System.out.println(students + " students, aggregation: " + report.size() + " faculties, "
+                + commands.get() + " round-trips, " + aggregateMs + " ms");
+            
+            try (MongoClient countingClient = MongoClients.create(settings)) {
+                commands.set(0);
+                start = System.nanoTime();
+                List<Document> oldReport = perStudentReport(countingClient.getDatabase(DATABASE_NAME));
+                long perStudentMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                System.out.println(students + " students, per-student queries: " + oldReport.size() + " faculties, "
+                    + commands.get() + " round-trips, " + perStudentMs + " ms");
+                // The old report came out in HashMap order
+                oldReport.sort(Comparator.comparing(doc -> doc.getString("faculty")));
+                System.out.println(oldReport.equals(report) ? "OK: same report" : "MISMATCH\n" + oldReport + "\n" + report);
+            }
+            
+            dbManager.close();
+            database.drop();
+        }
+    }
+    
+    private static void seed(MongoDatabase database, int students) {
+        database.drop();
+        Random random = new Random(42);
+        MongoCollection<Document> users = database.getCollection("users");
+        MongoCollection<Document> records = database.getCollection("borrow_records");
+        MongoCollection<Document> fines = database.getCollection("fines");
+        List<Document> userBatch = new ArrayList<>();
+        List<Document> recordBatch = new ArrayList<>();
+        List<Document> fineBatch = new ArrayList<>();
+        for (int i = 0; i < students; i++) {
+            String userId = "USER" + i;
+            userBatch.add(new Document("userId", userId).append("email", "user" + i + "@dnu.edu.vn")
+                .append("role", "USER").append("status", random.nextInt(10) == 0 ? "LOCKED" : "ACTIVE")
+                .append("faculty", FACULTIES[random.nextInt(FACULTIES.length)]));
+            int borrows = random.nextInt(7);
+            for (int j = 0; j < borrows; j++) {
+                recordBatch.add(new Document("recordId", "record_" + i + "_" + j).append("userId", userId)
+                    .append("status", "RETURNED"));
+            }
+            if (i % 4 == 0) {
+                // Whole amounts, so both reports add up to exactly the same doubles
+                fineBatch.add(new Document("fineId", "FINE_" + i).append("userId", userId)
+                    .append("amount", 5000.0 * (1 + random.nextInt(10))).append("status", "UNPAID"));
+            }
+            if (userBatch.size() == 10000) {
+                flush(users, userBatch);
+                flush(records, recordBatch);
+                flush(fines, fineBatch);
+            }
+        }
+        flush(users, userBatch);
+        flush(records, recordBatch);
+        flush(fines, fineBatch);
+        IndexManager.ensureIndexes(database);
+    }
+    
+    private static void flush(MongoCollection<Document> collection, List<Document> batch) {
+        if (!batch.isEmpty()) {
+            collection.insertMany(batch);
+            batch.clear();
+        }
+    }
+    
+    // The previous getUserReport: per student, one borrow count and one fines scan
+    private static List<Document> perStudentReport(MongoDatabase database) {
+        MongoCollection<Document> records = database.getCollection("borrow_records");
+        MongoCollection<Document> fines = database.getCollection("fines");
+        Map<String, Document> facultyData = new HashMap<>();
+        for (Document user : database.getCollection("users").find(eq("role", "USER"))) {
+            String faculty = user.getString("faculty");
+            if (faculty == null || faculty.trim().isEmpty()) {
+                faculty = "N/A";
+            }
+            Document facultyDoc = facultyData.computeIfAbsent(faculty, f -> new Document("faculty", f)
+                .append("totalUsers", 0L).append("active", 0L).append("locked", 0L)
+                .append("totalBorrows", 0L).append("totalFines", 0.0));
+            facultyDoc.put("totalUsers", facultyDoc.getLong("totalUsers") + 1);
+            String status = user.getString("status");
+            if ("ACTIVE".equals(status)) {
+                facultyDoc.put("active", facultyDoc.getLong("active") + 1);
+            } else if ("LOCKED".equals(status)) {
+                facultyDoc.put("locked", facultyDoc.getLong("locked") + 1);
+            }
+            String userId = user.getString("userId");
+            facultyDoc.put("totalBorrows", facultyDoc.getLong("totalBorrows") + records.countDocuments(eq("userId", userId)));
+            double userFines = 0.0;
+            for (Document fine : fines.find(eq("userId", userId))) {
+                userFines += ((Number) fine.get("amount")).doubleValue();
+            }
+            facultyDoc.put("totalFines", facultyDoc.getDouble("totalFines") + userFines);
+        }
+        return new ArrayList<>(facultyData.values());
+    }
+}
@@ -0,0 +1,445 @@
+package server;
+
+import model.Book;
+import model.BookCopy;
+import model.BorrowRecord;
+import model.User;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import util.BookQuery;
+import util.FrameCodec;
+import util.Message;
+import util.Page;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Encodes the messages the server actually sends, built from mixed made-up data (ids as the
+// server generates them next to hand-entered codes, random ISBNs and phone numbers, titles,
+// names and descriptions drawn from word lists), with every frame codec. Each payload is
+// decoded again and compared field by field with what was sent; the sizes and best encode /
+// decode times are reported relative to Java serialization. Needs no database; exits with 1
+// if any payload does not survive the round trip.
+//   java server.WireCodecBenchmark [seed]
+public class WireCodecBenchmark {
+    private static final int ROUNDS = 7;
+    private static final int[] CODECS = {
+        FrameCodec.CODEC_SERIALIZED, FrameCodec.CODEC_BINARY, FrameCodec.CODEC_COMPRESSED, FrameCodec.CODEC_FIELDS};
+    private static final String[] CODEC_NAMES = {"serialized", "binary v2", "compressed", "binary v3"};
+    
+    private static final String[] TITLE_WORDS = {"Lập trình", "Java", "Python", "cơ bản", "nâng cao", "Cấu trúc",
+        "dữ liệu", "giải thuật", "Mạng máy tính", "Hệ điều hành", "Cơ sở dữ liệu", "Kinh tế học", "vĩ mô", "vi mô",
+        "Lịch sử", "Việt Nam", "thế giới", "Văn học", "hiện đại", "Truyện ngắn", "Thơ", "tuyển tập", "Toán",
+        "cao cấp", "Giải tích", "Đại số", "tuyến tính", "Xác suất", "thống kê", "Vật lý", "đại cương", "Hóa học",
+        "hữu cơ", "Sinh học", "phân tử", "Kỹ thuật", "điện tử", "Quản trị", "kinh doanh", "Marketing", "căn bản",
+        "Nguyên lý", "kế toán", "Tâm lý học", "Triết học", "phương Đông", "Nghệ thuật", "nhiếp ảnh", "Thiết kế",
+        "đồ họa", "Trí tuệ", "nhân tạo", "Học máy", "ứng dụng", "thực hành", "Giáo trình", "Bài tập", "Hướng dẫn",
+        "Clean Code", "Design Patterns", "Algorithms", "Networking", "in Action", "for Beginners"};
+    private static final String[] SURNAMES = {"Nguyễn", "Trần", "Lê", "Phạm", "Hoàng", "Huỳnh", "Phan", "Vũ", "Võ",
+        "Đặng", "Bùi", "Đỗ", "Hồ", "Ngô", "Dương", "Lý"};
+    private static final String[] MIDDLE_NAMES = {"Văn", "Thị", "Đức", "Minh", "Ngọc", "Thanh", "Hữu", "Quốc", "Thu",
+        "Hoài", "Gia", ""};
+    private static final String[] GIVEN_NAMES = {"An", "Bình", "Châu", "Dũng", "Giang", "Hà", "Hải", "Hạnh", "Hiếu",
+        "Hòa", "Hùng", "Hương", "Khánh", "Lan", "Linh", "Long", "Mai", "Minh", "Nam", "Nga", "Ngọc", "Nhung",
+        "Phong", "Phúc", "Quân", "Quang", "Sơn", "Tâm", "Thảo", "Thắng", "Trang", "Trung", "Tú", "Tuấn", "Vân",
+        "Việt", "Vy", "Yến"};
+    private static final String[] CATEGORIES = {"Công nghệ thông tin", "Văn học", "Lịch sử", "Kinh tế", "Khoa học",
+        "Toán học", "Ngoại ngữ", "Tâm lý", "Nghệ thuật", "Y học", "Kỹ thuật", "Triết học"};
+    private static final String[] FACULTIES = {"Công nghệ thông tin", "Kinh tế", "Ngoại ngữ", "Điện - Điện tử",
+        "Cơ khí", "Xây dựng", "Y dược", "Luật", "Du lịch", "Kiến trúc"};
+    private static final String[] STREETS = {"Nguyễn Trãi", "Lê Lợi", "Trần Hưng Đạo", "Hai Bà Trưng", "Phạm Văn Đồng",
+        "Cầu Giấy", "Xuân Thủy", "Giải Phóng", "Láng Hạ", "Kim Mã"};
+    private static final String[] CITIES = {"Hà Nội", "TP. Hồ Chí Minh", "Đà Nẵng", "Hải Phòng", "Cần Thơ"};
+    private static final String[] SENTENCES = {"Giáo trình dành cho sinh viên năm nhất.",
+        "Trình bày các khái niệm nền tảng kèm ví dụ minh họa.", "Có bài tập cuối mỗi chương.",
+        "Phiên bản cập nhật theo chương trình đào tạo mới.", "Tài liệu tham khảo cho học viên cao học.",
+        "Nhiều tình huống thực tế từ doanh nghiệp Việt Nam.", "Sách được nhiều thế hệ độc giả yêu thích.",
+        "A practical introduction with worked examples.", "Bao gồm đĩa CD bài giảng."};
+    private static final String[] REASONS = {"Trả sách muộn", "Làm mất sách", "Sách bị hư hỏng", "Trả muộn 3 ngày"};
+    
+    private final Random random;
+    private final long now = System.currentTimeMillis();
+    private long timeIdValue = now * 1000;
+    
+    private WireCodecBenchmark(long seed) {
+        random = new Random(seed);
+    }
+    
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 42;
+        boolean ok = new WireCodecBenchmark(seed).run();
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+    
+    private boolean run() throws Exception {
+        List<Book> books = books(1000);
+        List<User> users = users(500);
+        List<BookCopy> copies = copies(books.subList(0, 40));
+        List<BorrowRecord> records = borrowRecords(5000, users, books);
+        
+        Map<String, Message> payloads = new LinkedHashMap<>();
+        payloads.put("LOGIN request", new Message(Message.LOGIN, new Object[]{users.get(7).getEmail(), "matkhau123"}));
+        payloads.put("LOGIN response (User)", response(users.get(7)));
+        BookQuery query = new BookQuery("lap trinh");
+        query.setCategory(CATEGORIES[0]);
+        query.setFuzzy(true);
+        payloads.put("SEARCH_BOOKS_PAGE request", new Message(Message.SEARCH_BOOKS_PAGE, new Object[]{null, 100, query}));
+        payloads.put("SUGGEST_BOOKS response", response(suggestions(books)));
+        payloads.put("GET_ALL_BOOKS (1000)", response(books));
+        payloads.put("GET_BOOKS_PAGE (100)", response(new Page<>(new ArrayList<>(books.subList(0, 100)), "5f1d7a", 1000)));
+        payloads.put("SEARCH_BOOKS_PAGE fuzzy (100)", response(fuzzyPage(books)));
+        payloads.put("GET_BOOK_COPIES (" + copies.size() + ")", response(copies));
+        payloads.put("GET_ALL_USERS (500)", response(users));
+        payloads.put("GET_ALL_BORROW_RECORDS (5000)", response(records));
+        payloads.put("GET_DASHBOARD_STATS", response(dashboard()));
+        payloads.put("GET_USER_REPORT", response(userReport()));
+        payloads.put("GET_PENALTY_REPORT (2000)", response(penaltyReport(2000, users, books)));
+        payloads.put("GET_USER_NOTIFICATIONS (50)", response(notifications(50)));
+        
+        boolean ok = true;
+        System.out.printf("%-32s %-11s %9s %6s %10s %6s %10s %6s%n",
+            "payload", "codec", "bytes", "x", "encode us", "x", "decode us", "x");
+        for (Map.Entry<String, Message> payload : payloads.entrySet()) {
+            Message message = payload.getValue();
+            message.setRequestId(17);
+            long[] sizes = new long[CODECS.length];
+            double[] encodes = new double[CODECS.length];
+            double[] decodes = new double[CODECS.length];
+            for (int c = 0; c < CODECS.length; c++) {
+                int codec = CODECS[c];
+                byte[] encoded = FrameCodec.encode(message, codec);
+                Message decoded = FrameCodec.decode(encoded, 0, encoded.length, codec);
+                String difference = difference("message", message, decoded);
+                if (difference != null) {
+                    System.out.println("FAIL round trip of " + payload.getKey() + " with " + CODEC_NAMES[c] + ": " + difference);
+                    ok = false;
+                }
+                sizes[c] = encoded.length;
+                int iterations = Math.max(5, 2000000 / Math.max(1, encoded.length));
+                encodes[c] = bestMicros(iterations, () -> FrameCodec.encode(message, codec));
+                decodes[c] = bestMicros(iterations, () -> FrameCodec.decode(encoded, 0, encoded.length, codec));
+            }
+            for (int c = 0; c < CODECS.length; c++) {
+                System.out.printf("%-32s %-11s %9d %5.1fx %10.1f %5.1fx %10.1f %5.1fx%n",
+                    c == 0 ? payload.getKey() : "", CODEC_NAMES[c], sizes[c], (double) sizes[0] / sizes[c],
+                    encodes[c], encodes[0] / encodes[c], decodes[c], decodes[0] / decodes[c]);
+            }
+        }
+        System.out.println(ok ? "OK: every payload decoded equal with every codec" : "FAILED");
+        return ok;
+    }
+    
+    private interface Step {
+        Object run() throws Exception;
+    }
+    
+    // Best average time per call over ROUNDS rounds, after one warm-up round
+    private static double bestMicros(int iterations, Step step) throws Exception {
+        double best = Double.MAX_VALUE;
+        Object sink = null;
+        for (int round = 0; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink = step.run();
+            }
+            if (round > 0) {
+                best = Math.min(best, (System.nanoTime() - start) / 1000.0 / iterations);
+            }
+        }
+        return sink != null ? best : Double.NaN;
+    }
+    
+    private static Message response(Object data) {
+        Message message = new Message("RESPONSE", data);
+        message.setSuccess(true);
+        message.setMessage("OK");
+        return message;
+    }
+    
+    // Field-by-field comparison; null if equal, else the path of the first difference
+    private static String difference(String path, Object sent, Object received) throws IllegalAccessException {
+        if (sent == received) {
+            return null;
+        }
+        if (sent == null || received == null) {
+            return path + ": " + sent + " / " + received;
+        }
+        if (sent instanceof List && received instanceof List) {
+            List<?> a = (List<?>) sent;
+            List<?> b = (List<?>) received;
+            if (a.size() != b.size()) {
+                return path + ": size " + a.size() + " / " + b.size();
+            }
+            for (int i = 0; i < a.size(); i++) {
+                String difference = difference(path + "[" + i + "]", a.get(i), b.get(i));
+                if (difference != null) {
+                    return difference;
+                }
+            }
+            return null;
+        }
+        if (sent instanceof Map && received instanceof Map) {
+            Map<?, ?> a = (Map<?, ?>) sent;
+            Map<?, ?> b = (Map<?, ?>) received;
+            if (!new ArrayList<>(a.keySet()).equals(new ArrayList<>(b.keySet()))) {
+                return path + ": keys " + a.keySet() + " / " + b.keySet();
+            }
+            for (Object key : a.keySet()) {
+                String difference = difference(path + "." + key, a.get(key), b.get(key));
+                if (difference != null) {
+                    return difference;
+                }
+            }
+            return null;
+        }
+        if (sent.getClass() != received.getClass()) {
+            return path + ": " + sent.getClass().getName() + " / " + received.getClass().getName();
+        }
+        if (sent instanceof Object[]) {
+            return difference(path, Arrays.asList((Object[]) sent), Arrays.asList((Object[]) received));
+        }
+        if (sent instanceof java.util.Date) {
+            return ((java.util.Date) sent).getTime() == ((java.util.Date) received).getTime() ? null
+                : path + ": " + sent + " / " + received;
+        }
+        if (sent instanceof String || sent instanceof Number || sent instanceof Boolean || sent instanceof ObjectId) {
+            return sent.equals(received) ? null : path + ": " + sent + " / " + received;
+        }
+        for (Class<?> type = sent.getClass(); type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                String difference = difference(path + "." + field.getName(), field.get(sent), field.get(received));
+                if (difference != null) {
+                    return difference;
+                }
+            }
+        }
+        return null;
+    }
+    
+    // Data
+    
+    private <T> T pick(T[] values) {
+        return values[random.nextInt(values.length)];
+    }
+    
+    private String digits(int count) {
+        StringBuilder text = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            text.append((char) ('0' + random.nextInt(10)));
+        }
+        return text.toString();
+    }
+    
+    // As IdGenerator.nextTimeId: prefix + microseconds, increasing
+    private String timeId(String prefix) {
+        timeIdValue += 1 + random.nextInt(50000000);
+        return prefix + timeIdValue;
+    }
+    
+    private String personName() {
+        String middle = pick(MIDDLE_NAMES);
+        return pick(SURNAMES) + (middle.isEmpty() ? "" : " " + middle) + " " + pick(GIVEN_NAMES);
+    }
+    
+    private java.util.Date daysAgo(int maxDays) {
+        return new java.util.Date(now - (long) (random.nextDouble() * maxDays * 86400000L));
+    }
+    
+    private List<Book> books(int count) {
+        String[] authors = new String[300];
+        for (int i = 0; i < authors.length; i++) {
+            authors[i] = personName();
+        }
+        List<Book> books = new ArrayList<>();
+        int number = 0;
+        for (int i = 0; i < count; i++) {
+            Book book = new Book();
+            // Seeded/generated ids with gaps where books were deleted, and codes typed by librarians
+            if (random.nextInt(10) < 7) {
+                number += 1 + random.nextInt(4);
+                book.setBookId(String.format("BOOK%03d", number));
+            } else {
+                book.setBookId(pick(new String[]{"CNTT", "KT", "VH", "LS", "NN"}) + "-" + digits(4));
+            }
+            StringBuilder title = new StringBuilder(pick(TITLE_WORDS));
+            for (int words = 1 + random.nextInt(5); words > 0; words--) {
+                title.append(' ').append(pick(TITLE_WORDS));
+            }
+            if (random.nextInt(5) == 0) {
+                title.append(" - Tập ").append(1 + random.nextInt(4));
+            }
+            book.setTitle(title.toString());
+            book.setAuthor(random.nextInt(8) == 0 ? pick(authors) + ", " + pick(authors) : pick(authors));
+            book.setIsbn("978-604-" + random.nextInt(10) + "-" + digits(5) + "-" + random.nextInt(10));
+            book.setCategory(pick(CATEGORIES));
+            book.setPublishYear(1990 + random.nextInt(36));
+            book.setPages(80 + random.nextInt(1100));
+            book.setPrice(1000.0 * (40 + random.nextInt(460)));
+            book.setTotalCopies(1 + random.nextInt(20));
+            book.setAvailableCopies(random.nextInt(book.getTotalCopies() + 1));
+            if (random.nextInt(10) > 0) {
+                StringBuilder description = new StringBuilder(pick(SENTENCES));
+                for (int sentences = random.nextInt(3); sentences > 0; sentences--) {
+                    description.append(' ').append(pick(SENTENCES));
+                }
+                book.setDescription(description.toString());
+            }
+            books.add(book);
+        }
+        return books;
+    }
+    
+    private List<User> users(int count) {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            User user = new User();
+            user.setUserId(String.format("USER%03d", i + 1));
+            user.setLastName(pick(SURNAMES));
+            String middle = pick(MIDDLE_NAMES);
+            user.setFirstName((middle.isEmpty() ? "" : middle + " ") + pick(GIVEN_NAMES));
+            user.setEmail(SearchText.fold(user.getFirstName()).replace(" ", "") + "." + SearchText.fold(user.getLastName())
+                + digits(2) + (random.nextBoolean() ? "@dnu.edu.vn" : "@gmail.com"));
+            user.setPassword(Long.toString(random.nextLong() & Long.MAX_VALUE, 36));
+            user.setPhone("0" + pick(new String[]{"9", "8", "3", "7"}) + digits(8));
+            user.setAddress(1 + random.nextInt(300) + " " + pick(STREETS) + ", " + pick(CITIES));
+            user.setRole(i < 3 ? "ADMIN" : "USER");
+            user.setStatus(random.nextInt(20) == 0 ? "LOCKED" : "ACTIVE");
+            user.setStudentId("SV" + (2019 + random.nextInt(6)) + digits(4));
+            user.setFaculty(pick(FACULTIES));
+            user.setYearOfStudy(String.valueOf(1 + random.nextInt(4)));
+            user.setTotalBorrowed(random.nextInt(60));
+            user.setCurrentBorrowed(random.nextInt(5));
+            user.setTotalFines(5000.0 * random.nextInt(10));
+            user.setDateOfBirth(new java.util.Date(now - (18 + random.nextInt(8)) * 365L * 86400000L - random.nextInt(365) * 86400000L));
+            user.setRegistrationDate(daysAgo(1500));
+            user.setLastLogin(random.nextInt(4) == 0 ? null : daysAgo(30));
+            user.setOnline(random.nextInt(10) == 0);
+            users.add(user);
+        }
+        return users;
+    }
+    
+    private List<BookCopy> copies(List<Book> books) {
+        List<BookCopy> copies = new ArrayList<>();
+        for (Book book : books) {
+            for (int i = 1; i <= book.getTotalCopies(); i++) {
+                BookCopy copy = new BookCopy();
+                copy.setCopyId("COPY" + book.getBookId().replace("BOOK", "") + "-" + i);
+                copy.setBookId(book.getBookId());
+                copy.setStatus(pick(new String[]{"AVAILABLE", "AVAILABLE", "AVAILABLE", "BORROWED", "DAMAGED"}));
+                copy.setLocation("Tầng " + (1 + random.nextInt(5)) + " - Kệ " + (1 + random.nextInt(20))
+                    + " - Ngăn " + (1 + random.nextInt(8)));
+                copy.setNotes(random.nextInt(6) == 0 ? pick(new String[]{"Bìa hơi cũ", "Thiếu trang 12", "Sách tặng"}) : null);
+                copies.add(copy);
+            }
+        }
+        return copies;
+    }
+    
+    private List<BorrowRecord> borrowRecords(int count, List<User> users, List<Book> books) {
+        List<BorrowRecord> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            User user = users.get(random.nextInt(users.size()));
+            Book book = books.get(random.nextInt(books.size()));
+            BorrowRecord record = new BorrowRecord();
+            record.setRecordId(timeId("record_"));
+            record.setUserId(user.getUserId());
+            record.setBookId(book.getBookId());
+            record.setCopyId("COPY" + book.getBookId().replace("BOOK", "") + "-" + (1 + random.nextInt(book.getTotalCopies())));
+            long borrowed = daysAgo(700).getTime();
+            record.setBorrowDate(new java.sql.Date(borrowed));
+            record.setDueDate(new java.sql.Date(borrowed + 14 * 86400000L));
+            String status = pick(new String[]{"RETURNED", "RETURNED", "RETURNED", "BORROWING", "LOST", "DAMAGED"});
+            record.setStatus(status);
+            if (!"BORROWING".equals(status)) {
+                record.setReturnDate(new java.sql.Date(borrowed + random.nextInt(20) * 86400000L + random.nextInt(86400000)));
+            }
+            record.setFine(random.nextInt(4) == 0 ? 5000.0 * (1 + random.nextInt(20)) : 0.0);
+            record.setUsername(user.getLastName() + " " + user.getFirstName());
+            record.setBookTitle(book.getTitle());
+            records.add(record);
+        }
+        return records;
+    }
+    
+    private static List<String> suggestions(List<Book> books) {
+        List<String> suggestions = new ArrayList<>();
+        for (int i = 0; i < BookSuggester.MAX_SUGGESTIONS; i++) {
+            suggestions.add(books.get(i * 3).getTitle());
+        }
+        return suggestions;
+    }
+    
+    private Page<Object[]> fuzzyPage(List<Book> books) {
+        List<Object[]> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            items.add(new Object[]{books.get(random.nextInt(books.size())), random.nextInt(1000) / 1000.0});
+        }
+        return new Page<>(items, "100", 742);
+    }
+    
+    private Document dashboard() {
+        return new Document("totalUsers", 500L).append("totalBooks", 1000L).append("totalBorrows", 5000L)
+            .append("availableCopies", 8123L).append("activeBorrows", 812L).append("totalFinesAmount", 4215000.0)
+            .append("overdueBorrows", 97L).append("pendingUsers", 24L);
+    }
+    
+    private List<Document> userReport() {
+        List<Document> report = new ArrayList<>();
+        for (String faculty : FACULTIES) {
+            report.add(new Document("faculty", faculty).append("totalUsers", (long) random.nextInt(80))
+                .append("active", (long) random.nextInt(70)).append("locked", (long) random.nextInt(5))
+                .append("totalBorrows", (long) random.nextInt(900)).append("totalFines", 5000.0 * random.nextInt(200)));
+        }
+        return report;
+    }
+    
+    private List<Document> penaltyReport(int count, List<User> users, List<Book> books) {
+        List<Document> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            User user = users.get(random.nextInt(users.size()));
+            Book book = books.get(random.nextInt(books.size()));
+            boolean paid = random.nextBoolean();
+            rows.add(new Document("fineId", timeId("FINE_"))
+                .append("userId", user.getUserId())
+                .append("bookId", book.getBookId())
+                .append("reason", pick(REASONS))
+                .append("amount", 5000.0 * (1 + random.nextInt(40)))
+                .append("status", paid ? "PAID" : "UNPAID")
+                .append("dueDate", daysAgo(300))
+                .append("paidDate", paid ? daysAgo(200) : null)
+                .append("createdDate", daysAgo(400))
+                .append("username", user.getLastName() + " " + user.getFirstName())
+                .append("bookTitle", book.getTitle()));
+        }
+        return rows;
+    }
+    
+    private List<Document> notifications(int count) {
+        List<Document> notifications = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            notifications.add(new Document("_id", new ObjectId())
+                .append("notificationId", timeId("NOTIF"))
+                .append("userId", "USER007")
+                .append("title", pick(new String[]{"Sắp đến hạn trả sách", "Sách đã quá hạn", "Phiếu phạt mới"}))
+                .append("message", "Sách \"" + pick(TITLE_WORDS) + " " + pick(TITLE_WORDS) + "\" cần được trả trước "
+                    + (1 + random.nextInt(28)) + "/" + (1 + random.nextInt(12)) + ".")
+                .append("type", pick(new String[]{"DUE_SOON", "OVERDUE", "FINE"}))
+                .append("isRead", false)
+                .append("createdAt", daysAgo(60)));
+        }
+        return notifications;
+    }
+}
@@ -0,0 +1,773 @@
+package util;
+
+import model.Book;
+import model.BookCopy;
+import model.BorrowRecord;
+import model.User;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Hand-written binary encoding of Message and the model classes.
+// No class descriptors, varint integers, and a per-message string table so repeated
+// values (categories, statuses, user names, book titles) are written only once.
+// Since version 3 each kind of field (book ids, titles, ...) has its own table, so references
+// stay one or two bytes, and a new string only writes what follows the prefix it shares with
+// the previous new string of that field: ids, ISBNs and numbered titles differ in a few chars.
+public class BinaryCodec {
+    // 2: adds the request id after the version
+    // 3: string tables per field, new strings share a prefix with the previous one
+    public static final int FORMAT_VERSION = 3;
+    // Written for FrameCodec.CODEC_BINARY / CODEC_COMPRESSED peers, which may not read version 3
+    public static final int LEGACY_FORMAT_VERSION = 2;
+    
+    // Value tags
+    private static final int T_NULL = 0;
+    private static final int T_STRING = 1;
+    private static final int T_INT = 2;
+    private static final int T_LONG = 3;
+    private static final int T_DOUBLE = 4;
+    private static final int T_TRUE = 5;
+    private static final int T_FALSE = 6;
+    private static final int T_DATE = 7;
+    private static final int T_LIST = 8;
+    private static final int T_ARRAY = 9;
+    private static final int T_DOCUMENT = 10;
+    private static final int T_OBJECT_ID = 11;
+    private static final int T_BOOK = 12;
+    private static final int T_USER = 13;
+    private static final int T_BOOK_COPY = 14;
+    private static final int T_BORROW_RECORD = 15;
+    private static final int T_SERIALIZED = 16;
+    private static final int T_PAGE = 17;
+    
+    // Date kinds
+    private static final int DATE_NULL = 0;
+    private static final int DATE_UTIL = 1;
+    private static final int DATE_SQL = 2;
+    
+    // String encodings: null, inline (not remembered), new table entry, or reference into the table
+    private static final int S_NULL = 0;
+    private static final int S_INLINE = 1;
+    private static final int S_NEW = 2;
+    private static final int S_REF_BASE = 3;
+    private static final int MAX_TABLE_STRING_LENGTH = 64;
+    private static final int MAX_EXPECTED_TABLE_SIZE = 1 << 16;
+    
+    // String fields, each with its own table from version 3 (version 2 uses F_ANY for all)
+    private static final int F_ANY = 0;
+    private static final int F_KEY = 1;
+    private static final int F_BOOK_ID = 2;
+    private static final int F_TITLE = 3;
+    private static final int F_AUTHOR = 4;
+    private static final int F_ISBN = 5;
+    private static final int F_CATEGORY = 6;
+    private static final int F_DESCRIPTION = 7;
+    private static final int F_USER_ID = 8;
+    private static final int F_EMAIL = 9;
+    private static final int F_PASSWORD = 10;
+    private static final int F_NAME = 11;
+    private static final int F_PHONE = 12;
+    private static final int F_ADDRESS = 13;
+    private static final int F_CODE = 14;
+    private static final int F_STUDENT_ID = 15;
+    private static final int F_FACULTY = 16;
+    private static final int F_COPY_ID = 17;
+    private static final int F_LOCATION = 18;
+    private static final int F_RECORD_ID = 19;
+    private static final int FIELD_COUNT = 20;
+    
+    // Never repeated within a message: only prefix coded, without a table entry to look up
+    private static boolean isUniqueField(int field) {
+        return field == F_RECORD_ID;
+    }
+    
+    private BinaryCodec() {
+    }
+    
+    public static byte[] encode(Message message) throws IOException {
+        return encode(message, FORMAT_VERSION);
+    }
+    
+    public static byte[] encode(Message message, int version) throws IOException {
+        Writer w = new Writer(version);
+        w.writeVarInt(version);
+        w.writeVarLong(message.getRequestId());
+        w.writeString(message.getType());
+        w.writeBoolean(message.isSuccess());
+        w.writeString(message.getMessage());
+        w.writeValue(message.getData());
+        return w.toByteArray();
+    }
+    
+    public static Message decode(byte[] data, int offset, int length) throws IOException {
+        Reader r = new Reader(data, offset, length);
+        int version = r.readVarInt();
+        if (version < 1 || version > FORMAT_VERSION) {
+            throw new IOException("Unsupported binary format version: " + version);
+        }
+        r.version = version;
+        Message message = new Message();
+        if (version >= 2) {
+            message.setRequestId(r.readVarLong());
+        }
+        message.setType(r.readString());
+        message.setSuccess(r.readBoolean());
+        message.setMessage(r.readString());
+        message.setData(r.readValue());
+        return message;
+    }
+    
+    // Characters s has in common with the start of previous, without splitting a surrogate pair
+    private static int sharedPrefix(String previous, String s) {
+        int max = Math.min(previous.length(), s.length());
+        int n = 0;
+        while (n < max && previous.charAt(n) == s.charAt(n)) {
+            n++;
+        }
+        if (n > 0 && Character.isHighSurrogate(s.charAt(n - 1))) {
+            n--;
+        }
+        return n;
+    }
+    
+    private static class WriterTable {
+        final Map<String, Integer> index;
+        String previous = "";
+        
+        WriterTable(int expectedSize) {
+            index = new HashMap<>(Math.max(16, expectedSize * 4 / 3 + 1));
+        }
+    }
+    
+    private static class ReaderTable {
+        final List<String> values = new ArrayList<>();
+        String previous = "";
+    }
+    
+    private static class Writer {
+        private final int version;
+        private byte[] buf = new byte[256];
+        private int pos;
+        // Created on first use, so small messages do not pay for every field
+        private final WriterTable[] tables = new WriterTable[FIELD_COUNT];
+        // Longest list written so far: a table first used inside it may get an entry per item,
+        // so it is sized for that many instead of growing a step at a time
+        private int expectedTableSize;
+        
+        Writer(int version) {
+            this.version = version;
+        }
+        
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+        
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+            }
+        }
+        
+        void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+        
+        void writeBoolean(boolean b) {
+            writeByte(b ? 1 : 0);
+        }
+        
+        void writeVarInt(int v) {
+            writeVarLong(v & 0xFFFFFFFFL);
+        }
+        
+        void writeVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+        
+        void writeSignedInt(int v) {
+            writeVarInt((v << 1) ^ (v >> 31));
+        }
+        
+        void writeSignedLong(long v) {
+            writeVarLong((v << 1) ^ (v >> 63));
+        }
+        
+        // Whole numbers (prices, fines) take a few bytes instead of eight
+        void writeDouble(double d) {
+            long whole = (long) d;
+            if (whole == d && Math.abs(whole) < (1L << 52) && !(d == 0.0 && 1 / d < 0)) {
+                writeVarLong(((whole << 1) ^ (whole >> 63)) << 1);
+            } else {
+                writeByte(1);
+                long bits = Double.doubleToRawLongBits(d);
+                ensure(8);
+                for (int i = 56; i >= 0; i -= 8) {
+                    buf[pos++] = (byte) (bits >>> i);
+                }
+            }
+        }
+        
+        void writeString(String s) {
+            writeString(s, F_ANY);
+        }
+        
+        void writeString(String s, int field) {
+            if (s == null) {
+                writeVarInt(S_NULL);
+                return;
+            }
+            if (s.length() > MAX_TABLE_STRING_LENGTH) {
+                writeVarInt(S_INLINE);
+                writeUtf8(s, 0);
+                return;
+            }
+            WriterTable table = table(field);
+            if (version < 3 || !isUniqueField(field)) {
+                Integer index = table.index.get(s);
+                if (index != null) {
+                    writeVarInt(S_REF_BASE + index);
+                    return;
+                }
+                table.index.put(s, table.index.size());
+            }
+            writeVarInt(S_NEW);
+            int shared = 0;
+            if (version >= 3) {
+                shared = sharedPrefix(table.previous, s);
+                table.previous = s;
+                writeVarInt(shared);
+            }
+            writeUtf8(s, shared);
+        }
+        
+        private WriterTable table(int field) {
+            int slot = version >= 3 ? field : F_ANY;
+            WriterTable table = tables[slot];
+            if (table == null) {
+                table = new WriterTable(expectedTableSize);
+                tables[slot] = table;
+            }
+            return table;
+        }
+        
+        // [byte length][UTF-8 of s from char from on], straight into the buffer. A lone
+        // surrogate becomes '?', as String.getBytes does.
+        private void writeUtf8(String s, int from) {
+            int n = s.length();
+            // At most 3 bytes per char, so the length fits the two varint bytes reserved
+            // in front; it is moved down a byte when one is enough (the usual case)
+            int max = (n - from) * 3;
+            if (max >= 1 << 14) {
+                byte[] bytes = s.substring(from).getBytes(StandardCharsets.UTF_8);
+                writeVarInt(bytes.length);
+                ensure(bytes.length);
+                System.arraycopy(bytes, 0, buf, pos, bytes.length);
+                pos += bytes.length;
+                return;
+            }
+            ensure(2 + max);
+            int start = pos + 2;
+            int p = start;
+            for (int i = from; i < n; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    buf[p++] = (byte) c;
+                } else if (c < 0x800) {
+                    buf[p++] = (byte) (0xC0 | (c >> 6));
+                    buf[p++] = (byte) (0x80 | (c & 0x3F));
+                } else if (!Character.isSurrogate(c)) {
+                    buf[p++] = (byte) (0xE0 | (c >> 12));
+                    buf[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buf[p++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buf[p++] = (byte) (0xF0 | (cp >> 18));
+                    buf[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buf[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buf[p++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    buf[p++] = '?';
+                }
+            }
+            int length = p - start;
+            if (length < 0x80) {
+                buf[pos++] = (byte) length;
+                System.arraycopy(buf, start, buf, pos, length);
+                pos += length;
+            } else {
+                buf[pos++] = (byte) ((length & 0x7F) | 0x80);
+                buf[pos++] = (byte) (length >>> 7);
+                pos = p;
+            }
+        }
+        
+        void writeDate(java.util.Date date) {
+            if (date == null) {
+                writeByte(DATE_NULL);
+                return;
+            }
+            writeByte(date instanceof java.sql.Date ? DATE_SQL : DATE_UTIL);
+            writeSignedLong(date.getTime());
+        }
+        
+        void writeValue(Object value) throws IOException {
+            if (value == null) {
+                writeByte(T_NULL);
+            } else if (value instanceof String) {
+                writeByte(T_STRING);
+                writeString((String) value);
+            } else if (value instanceof Integer) {
+                writeByte(T_INT);
+                writeSignedInt((Integer) value);
+            } else if (value instanceof Long) {
+                writeByte(T_LONG);
+                writeSignedLong((Long) value);
+            } else if (value instanceof Double) {
+                writeByte(T_DOUBLE);
+                writeDouble((Double) value);
+            } else if (value instanceof Boolean) {
+                writeByte((Boolean) value ? T_TRUE : T_FALSE);
+            } else if (value instanceof java.util.Date) {
+                writeByte(T_DATE);
+                writeDate((java.util.Date) value);
+            } else if (value instanceof Book) {
+                writeByte(T_BOOK);
+                writeBook((Book) value);
+            } else if (value instanceof User) {
+                writeByte(T_USER);
+                writeUser((User) value);
+            } else if (value instanceof BookCopy) {
+                writeByte(T_BOOK_COPY);
+                writeBookCopy((BookCopy) value);
+            } else if (value instanceof BorrowRecord) {
+                writeByte(T_BORROW_RECORD);
+                writeBorrowRecord((BorrowRecord) value);
+            } else if (value instanceof Document) {
+                Document doc = (Document) value;
+                writeByte(T_DOCUMENT);
+                writeVarInt(doc.size());
+                for (Map.Entry<String, Object> entry : doc.entrySet()) {
+                    writeString(entry.getKey(), F_KEY);
+                    writeValue(entry.getValue());
+                }
+            } else if (value instanceof List) {
+                List<?> list = (List<?>) value;
+                writeByte(T_LIST);
+                writeVarInt(list.size());
+                expectedTableSize = Math.min(Math.max(expectedTableSize, list.size()), MAX_EXPECTED_TABLE_SIZE);
+                for (Object item : list) {
+                    writeValue(item);
+                }
+            } else if (value instanceof Object[]) {
+                Object[] array = (Object[]) value;
+                writeByte(T_ARRAY);
+                writeVarInt(array.length);
+                for (Object item : array) {
+                    writeValue(item);
+                }
+            } else if (value instanceof Page) {
+                Page<?> page = (Page<?>) value;
+                writeByte(T_PAGE);
+                writeValue(page.getItems());
+                writeString(page.getNextCursor());
+                writeVarLong(page.getTotal());
+            } else if (value instanceof ObjectId) {
+                writeByte(T_OBJECT_ID);
+                byte[] bytes = ((ObjectId) value).toByteArray();
+                ensure(bytes.length);
+                System.arraycopy(bytes, 0, buf, pos, bytes.length);
+                pos += bytes.length;
+            } else if (value instanceof Serializable) {
+                // Anything without a hand-written encoder still goes through Java serialization
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                    out.writeObject(value);
+                }
+                byte[] data = bytes.toByteArray();
+                writeByte(T_SERIALIZED);
+                writeVarInt(data.length);
+                ensure(data.length);
+                System.arraycopy(data, 0, buf, pos, data.length);
+                pos += data.length;
+            } else {
+                throw new IOException("Cannot encode " + value.getClass().getName());
+            }
+        }
+        
+        void writeBook(Book book) {
+            writeString(book.getBookId(), F_BOOK_ID);
+            writeString(book.getTitle(), F_TITLE);
+            writeString(book.getAuthor(), F_AUTHOR);
+            writeString(book.getIsbn(), F_ISBN);
+            writeString(book.getCategory(), F_CATEGORY);
+            writeSignedInt(book.getPublishYear());
+            writeSignedInt(book.getPages());
+            writeDouble(book.getPrice());
+            writeSignedInt(book.getTotalCopies());
+            writeSignedInt(book.getAvailableCopies());
+            writeString(book.getDescription(), F_DESCRIPTION);
+        }
+        
+        void writeUser(User user) {
+            writeString(user.getUserId(), F_USER_ID);
+            writeString(user.getEmail(), F_EMAIL);
+            writeString(user.getPassword(), F_PASSWORD);
+            writeString(user.getFirstName(), F_NAME);
+            writeString(user.getLastName(), F_NAME);
+            writeString(user.getPhone(), F_PHONE);
+            writeString(user.getAddress(), F_ADDRESS);
+            writeString(user.getRole(), F_CODE);
+            writeString(user.getStatus(), F_CODE);
+            writeString(user.getStudentId(), F_STUDENT_ID);
+            writeString(user.getFaculty(), F_FACULTY);
+            writeString(user.getYearOfStudy(), F_CODE);
+            writeSignedInt(user.getTotalBorrowed());
+            writeSignedInt(user.getCurrentBorrowed());
+            writeDouble(user.getTotalFines());
+            writeDate(user.getDateOfBirth());
+            writeDate(user.getRegistrationDate());
+            writeDate(user.getLastLogin());
+            writeBoolean(user.isOnline());
+        }
+        
+        void writeBookCopy(BookCopy copy) {
+            writeString(copy.getCopyId(), F_COPY_ID);
+            writeString(copy.getBookId(), F_BOOK_ID);
+            writeString(copy.getStatus(), F_CODE);
+            writeString(copy.getLocation(), F_LOCATION);
+            writeString(copy.getNotes(), F_DESCRIPTION);
+        }
+        
+        void writeBorrowRecord(BorrowRecord record) {
+            writeString(record.getRecordId(), F_RECORD_ID);
+            writeString(record.getUserId(), F_USER_ID);
+            writeString(record.getBookId(), F_BOOK_ID);
+            writeString(record.getCopyId(), F_COPY_ID);
+            writeDate(record.getBorrowDate());
+            writeDate(record.getDueDate());
+            writeDate(record.getReturnDate());
+            writeString(record.getStatus(), F_CODE);
+            writeDouble(record.getFine());
+            writeString(record.getUsername(), F_NAME);
+            writeString(record.getBookTitle(), F_TITLE);
+        }
+    }
+    
+    private static class Reader {
+        private final byte[] buf;
+        private final int end;
+        private int pos;
+        // Format version of the message, read first
+        private int version;
+        private final ReaderTable[] tables = new ReaderTable[FIELD_COUNT];
+        
+        Reader(byte[] buf, int offset, int length) {
+            this.buf = buf;
+            this.pos = offset;
+            this.end = offset + length;
+        }
+        
+        int readByte() throws IOException {
+            if (pos >= end) {
+                throw new IOException("Unexpected end of message");
+            }
+            return buf[pos++] & 0xFF;
+        }
+        
+        boolean readBoolean() throws IOException {
+            return readByte() != 0;
+        }
+        
+        int readVarInt() throws IOException {
+            return (int) readVarLong();
+        }
+        
+        long readVarLong() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+        
+        int readSignedInt() throws IOException {
+            int v = readVarInt();
+            return (v >>> 1) ^ -(v & 1);
+        }
+        
+        long readSignedLong() throws IOException {
+            long v = readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+        
+        double readDouble() throws IOException {
+            long v = readVarLong();
+            if ((v & 1) == 0) {
+                long zigzag = v >>> 1;
+                return (double) ((zigzag >>> 1) ^ -(zigzag & 1));
+            }
+            if (end - pos < 8) {
+                throw new IOException("Unexpected end of message");
+            }
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | (buf[pos++] & 0xFF);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+        
+        String readString() throws IOException {
+            return readString(F_ANY);
+        }
+        
+        String readString(int field) throws IOException {
+            int code = readVarInt();
+            if (code == S_NULL) {
+                return null;
+            }
+            if (code == S_INLINE) {
+                return readUtf8("");
+            }
+            ReaderTable table = table(field);
+            if (code >= S_REF_BASE) {
+                int index = code - S_REF_BASE;
+                if (index >= table.values.size()) {
+                    throw new IOException("Invalid string reference: " + index);
+                }
+                return table.values.get(index);
+            }
+            if (code != S_NEW) {
+                throw new IOException("Invalid string code: " + code);
+            }
+            String s;
+            if (version >= 3) {
+                int shared = readVarInt();
+                if (shared < 0 || shared > table.previous.length()) {
+                    throw new IOException("Invalid shared prefix: " + shared);
+                }
+                s = readUtf8(table.previous.substring(0, shared));
+                table.previous = s;
+            } else {
+                s = readUtf8("");
+            }
+            if (version < 3 || !isUniqueField(field)) {
+                table.values.add(s);
+            }
+            return s;
+        }
+        
+        private ReaderTable table(int field) {
+            int slot = version >= 3 ? field : F_ANY;
+            ReaderTable table = tables[slot];
+            if (table == null) {
+                table = new ReaderTable();
+                tables[slot] = table;
+            }
+            return table;
+        }
+        
+        private String readUtf8(String prefix) throws IOException {
+            int length = readVarInt();
+            if (length < 0 || length > end - pos) {
+                throw new IOException("Invalid string length: " + length);
+            }
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return prefix.isEmpty() ? s : prefix.concat(s);
+        }
+        
+        java.util.Date readDate() throws IOException {
+            int kind = readByte();
+            if (kind == DATE_NULL) {
+                return null;
+            }
+            long time = readSignedLong();
+            return kind == DATE_SQL ? new java.sql.Date(time) : new java.util.Date(time);
+        }
+        
+        java.sql.Date readSqlDate() throws IOException {
+            java.util.Date date = readDate();
+            if (date == null || date instanceof java.sql.Date) {
+                return (java.sql.Date) date;
+            }
+            return new java.sql.Date(date.getTime());
+        }
+        
+        int readCount() throws IOException {
+            int count = readVarInt();
+            if (count < 0 || count > end - pos) {
+                throw new IOException("Invalid element count: " + count);
+            }
+            return count;
+        }
+        
+        Object readValue() throws IOException {
+            int tag = readByte();
+            switch (tag) {
+                case T_NULL:
+                    return null;
+                case T_STRING:
+                    return readString();
+                case T_INT:
+                    return readSignedInt();
+                case T_LONG:
+                    return readSignedLong();
+                case T_DOUBLE:
+                    return readDouble();
+                case T_TRUE:
+                    return Boolean.TRUE;
+                case T_FALSE:
+                    return Boolean.FALSE;
+                case T_DATE:
+                    return readDate();
+                case T_BOOK:
+                    return readBook();
+                case T_USER:
+                    return readUser();
+                case T_BOOK_COPY:
+                    return readBookCopy();
+                case T_BORROW_RECORD:
+                    return readBorrowRecord();
+                case T_DOCUMENT: {
+                    int count = readCount();
+                    Document doc = new Document();
+                    for (int i = 0; i < count; i++) {
+                        String key = readString(F_KEY);
+                        doc.append(key, readValue());
+                    }
+                    return doc;
+                }
+                case T_LIST: {
+                    int count = readCount();
+                    List<Object> list = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        list.add(readValue());
+                    }
+                    return list;
+                }
+                case T_ARRAY: {
+                    int count = readCount();
+                    Object[] array = new Object[count];
+                    for (int i = 0; i < count; i++) {
+                        array[i] = readValue();
+                    }
+                    return array;
+                }
+                case T_PAGE: {
+                    @SuppressWarnings("unchecked")
+                    List<Object> items = (List<Object>) readValue();
+                    String nextCursor = readString();
+                    return new Page<>(items, nextCursor, readVarLong());
+                }
+                case T_OBJECT_ID: {
+                    if (end - pos < 12) {
+                        throw new IOException("Unexpected end of message");
+                    }
+                    ObjectId id = new ObjectId(Arrays.copyOfRange(buf, pos, pos + 12));
+                    pos += 12;
+                    return id;
+                }
+                case T_SERIALIZED: {
+                    int length = readCount();
+                    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buf, pos, length))) {
+                        pos += length;
+                        return in.readObject();
+                    } catch (ClassNotFoundException e) {
+                        throw new IOException("Unknown serialized class: " + e.getMessage());
+                    }
+                }
+                default:
+                    throw new IOException("Unknown value tag: " + tag);
+            }
+        }
+        
+        Book readBook() throws IOException {
+            Book book = new Book();
+            book.setBookId(readString(F_BOOK_ID));
+            book.setTitle(readString(F_TITLE));
+            book.setAuthor(readString(F_AUTHOR));
+            book.setIsbn(readString(F_ISBN));
+            book.setCategory(readString(F_CATEGORY));
+            book.setPublishYear(readSignedInt());
+            book.setPages(readSignedInt());
+            book.setPrice(readDouble());
+            book.setTotalCopies(readSignedInt());
+            book.setAvailableCopies(readSignedInt());
+            book.setDescription(readString(F_DESCRIPTION));
+            return book;
+        }
+        
+        User readUser() throws IOException {
+            User user = new User();
+            user.setUserId(readString(F_USER_ID));
+            user.setEmail(readString(F_EMAIL));
+            user.setPassword(readString(F_PASSWORD));
+            user.setFirstName(readString(F_NAME));
+            user.setLastName(readString(F_NAME));
+            user.setPhone(readString(F_PHONE));
+            user.setAddress(readString(F_ADDRESS));
+            user.setRole(readString(F_CODE));
+            user.setStatus(readString(F_CODE));
+            user.setStudentId(readString(F_STUDENT_ID));
+            user.setFaculty(readString(F_FACULTY));
+            user.setYearOfStudy(readString(F_CODE));
+            user.setTotalBorrowed(readSignedInt());
+            user.setCurrentBorrowed(readSignedInt());
+            user.setTotalFines(readDouble());
+            user.setDateOfBirth(readDate());
+            user.setRegistrationDate(readDate());
+            user.setLastLogin(readDate());
+            user.setOnline(readBoolean());
+            return user;
+        }
+        
+        BookCopy readBookCopy() throws IOException {
+            BookCopy copy = new BookCopy();
+            copy.setCopyId(readString(F_COPY_ID));
+            copy.setBookId(readString(F_BOOK_ID));
+            copy.setStatus(readString(F_CODE));
+            copy.setLocation(readString(F_LOCATION));
+            copy.setNotes(readString(F_DESCRIPTION));
+            return copy;
+        }
+        
+        BorrowRecord readBorrowRecord() throws IOException {
+            BorrowRecord record = new BorrowRecord();
+            record.setRecordId(readString(F_RECORD_ID));
+            record.setUserId(readString(F_USER_ID));
+            record.setBookId(readString(F_BOOK_ID));
+            record.setCopyId(readString(F_COPY_ID));
+            record.setBorrowDate(readSqlDate());
+            record.setDueDate(readSqlDate());
+            record.setReturnDate(readSqlDate());
+            record.setStatus(readString(F_CODE));
+            record.setFine(readDouble());
+            record.setUsername(readString(F_NAME));
+            record.setBookTitle(readString(F_TITLE));
+            return record;
+        }
+    }
+}
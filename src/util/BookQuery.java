@@ -0,0 +1,101 @@
+package util;
+
+import java.io.Serializable;
+
+// Structured SEARCH_BOOKS_PAGE request, evaluated by the server so only the matching books are
+// sent. Every criterion is optional: keyword (same syntax as a plain keyword search), exact
+// category, publish year range (inclusive) and books with an available copy only.
+// A fuzzy query also finds the keyword words misspelled within a few letters; its books are
+// answered with their relevance (see Message.SEARCH_BOOKS_PAGE).
+public class BookQuery implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    // Sort orders; null keeps catalog order (oldest added first)
+    public static final String SORT_TITLE = "TITLE";
+    public static final String SORT_NEWEST = "NEWEST";
+    public static final String SORT_OLDEST = "OLDEST";
+    // Best fuzzy matches first; the default order of a fuzzy query
+    public static final String SORT_RELEVANCE = "RELEVANCE";
+    
+    private String keyword;
+    private String category;
+    private Integer fromYear;
+    private Integer toYear;
+    private boolean availableOnly;
+    private boolean fuzzy;
+    private String sort;
+    
+    public BookQuery() {
+    }
+    
+    public BookQuery(String keyword) {
+        this.keyword = keyword;
+    }
+    
+    public String getKeyword() {
+        return keyword;
+    }
+    
+    public void setKeyword(String keyword) {
+        this.keyword = keyword;
+    }
+    
+    public String getCategory() {
+        return category;
+    }
+    
+    public void setCategory(String category) {
+        this.category = category;
+    }
+    
+    public Integer getFromYear() {
+        return fromYear;
+    }
+    
+    public void setFromYear(Integer fromYear) {
+        this.fromYear = fromYear;
+    }
+    
+    public Integer getToYear() {
+        return toYear;
+    }
+    
+    public void setToYear(Integer toYear) {
+        this.toYear = toYear;
+    }
+    
+    public boolean isAvailableOnly() {
+        return availableOnly;
+    }
+    
+    public void setAvailableOnly(boolean availableOnly) {
+        this.availableOnly = availableOnly;
+    }
+    
+    public boolean isFuzzy() {
+        return fuzzy;
+    }
+    
+    public void setFuzzy(boolean fuzzy) {
+        this.fuzzy = fuzzy;
+    }
+    
+    public String getSort() {
+        return sort;
+    }
+    
+    public void setSort(String sort) {
+        this.sort = sort;
+    }
+    
+    // True if the query selects the whole catalog in its usual order. Fuzzy only changes how
+    // the keyword matches, so without a keyword it does not count.
+    public boolean isEmpty() {
+        return !hasKeyword() && category == null && fromYear == null && toYear == null && !availableOnly
+            && sort == null;
+    }
+    
+    public boolean hasKeyword() {
+        return keyword != null && !keyword.trim().isEmpty();
+    }
+}
@@ -0,0 +1,174 @@
+package util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Length-prefixed framing for Message objects.
+// A framed connection starts with a handshake: the client sends MAGIC and the codec it
+// wants, the server answers with the codec it will use. Every message is then sent as
+// [int length][encoded Message] so the receiver always knows where a request ends.
+public class FrameCodec {
+    public static final int MAGIC = 0x4C494246; // "LIBF"
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    
+    // Payload encodings negotiated at connect time
+    public static final int CODEC_SERIALIZED = 1; // Java serialization, one stream per frame
+    public static final int CODEC_BINARY = 2;     // BinaryCodec format 2 (peers without CODEC_FIELDS)
+    public static final int CODEC_COMPRESSED = 3; // BinaryCodec format 2, large frames deflated (slow links)
+    public static final int CODEC_FIELDS = 4;     // BinaryCodec format 3, string tables per field
+    // Handshake flag on the codec byte: the client matches responses by request id, so the
+    // server may answer out of order. The server echoes it only if it actually does so.
+    public static final int FLAG_MULTIPLEX = 0x80;
+    // Handshake flag: the client accepts server-initiated frames (Message.PUSH_REQUEST_ID)
+    public static final int FLAG_PUSH = 0x40;
+    public static final int FLAGS = FLAG_MULTIPLEX | FLAG_PUSH;
+    
+    // Compressed codec: first payload byte says whether the rest is deflated
+    private static final int COMPRESS_THRESHOLD = 8 * 1024;
+    private static final int BLOCK_RAW = 0;
+    private static final int BLOCK_DEFLATED = 1;
+    
+    private FrameCodec() {
+    }
+    
+    public static byte[] toBytes(Message message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(message);
+        }
+        return bytes.toByteArray();
+    }
+    
+    public static Message fromBytes(byte[] data, int offset, int length) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data, offset, length))) {
+            return (Message) in.readObject();
+        }
+    }
+    
+    public static boolean isSupported(int codec) {
+        return codec == CODEC_SERIALIZED || codec == CODEC_BINARY || codec == CODEC_COMPRESSED
+            || codec == CODEC_FIELDS;
+    }
+    
+    public static byte[] encode(Message message, int codec) throws IOException {
+        switch (codec) {
+            case CODEC_BINARY:
+                return BinaryCodec.encode(message, BinaryCodec.LEGACY_FORMAT_VERSION);
+            case CODEC_COMPRESSED:
+                return compress(BinaryCodec.encode(message, BinaryCodec.LEGACY_FORMAT_VERSION));
+            case CODEC_FIELDS:
+                return BinaryCodec.encode(message);
+            default:
+                return toBytes(message);
+        }
+    }
+    
+    public static Message decode(byte[] data, int offset, int length, int codec) throws IOException, ClassNotFoundException {
+        switch (codec) {
+            case CODEC_BINARY:
+            case CODEC_FIELDS:
+                return BinaryCodec.decode(data, offset, length);
+            case CODEC_COMPRESSED:
+                byte[] plain = decompress(data, offset, length);
+                return BinaryCodec.decode(plain, 0, plain.length);
+            default:
+                return fromBytes(data, offset, length);
+        }
+    }
+    
+    // [0][raw bytes] for small payloads, [1][int original length][deflate stream] otherwise
+    private static byte[] compress(byte[] raw) {
+        if (raw.length < COMPRESS_THRESHOLD) {
+            byte[] out = new byte[raw.length + 1];
+            out[0] = BLOCK_RAW;
+            System.arraycopy(raw, 0, out, 1, raw.length);
+            return out;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(raw.length / 2 + 5);
+            bytes.write(BLOCK_DEFLATED);
+            bytes.write(raw.length >>> 24);
+            bytes.write(raw.length >>> 16);
+            bytes.write(raw.length >>> 8);
+            bytes.write(raw.length);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+    
+    private static byte[] decompress(byte[] data, int offset, int length) throws IOException {
+        if (length < 1) {
+            throw new IOException("Empty compressed frame");
+        }
+        int kind = data[offset];
+        if (kind == BLOCK_RAW) {
+            return Arrays.copyOfRange(data, offset + 1, offset + length);
+        }
+        if (kind != BLOCK_DEFLATED || length < 5) {
+            throw new IOException("Invalid compressed frame");
+        }
+        int size = ((data[offset + 1] & 0xFF) << 24) | ((data[offset + 2] & 0xFF) << 16)
+            | ((data[offset + 3] & 0xFF) << 8) | (data[offset + 4] & 0xFF);
+        checkLength(size);
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data, offset + 5, length - 5);
+            byte[] plain = new byte[size];
+            int n = 0;
+            while (n < size) {
+                int read = inflater.inflate(plain, n, size - n);
+                if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != size) {
+                throw new IOException("Truncated compressed frame");
+            }
+            return plain;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed frame", e);
+        } finally {
+            inflater.end();
+        }
+    }
+    
+    public static void writeFrame(DataOutputStream out, Message message, int codec) throws IOException {
+        byte[] payload = encode(message, codec);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.flush();
+    }
+    
+    public static Message readFrame(DataInputStream in, int codec) throws IOException, ClassNotFoundException {
+        int length = in.readInt();
+        checkLength(length);
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return decode(payload, 0, length, codec);
+    }
+    
+    public static void checkLength(int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+    }
+}
@@ -11,10 +11,22 @@ public class Message implements Serializable {
     public static final String REGISTER = "REGISTER";
     public static final String FORCE_LOGOUT = "FORCE_LOGOUT";
     
+    // Paged lists (GET_*_PAGE): data = Object[]{String cursor, Integer limit, Boolean newestFirst},
+    // the response data is a util.Page whose nextCursor is sent back for the following page
+    
     // Books
     public static final String GET_ALL_BOOKS = "GET_ALL_BOOKS";
+    public static final String GET_BOOKS_PAGE = "GET_BOOKS_PAGE";
     public static final String SEARCH_BOOKS = "SEARCH_BOOKS";
+    // data: Object[]{cursor, limit, util.BookQuery (keyword, category, years, available only,
+    // sort)}; answered with a Page<Book>, or for a fuzzy BookQuery a
+    // Page<Object[]{Book, Double relevance}>, whose total is the number of matches
+    public static final String SEARCH_BOOKS_PAGE = "SEARCH_BOOKS_PAGE";
+    // Type-ahead: data = the text typed so far; answered with a List<String> of titles/authors
+    public static final String SUGGEST_BOOKS = "SUGGEST_BOOKS";
     public static final String GET_BOOK_BY_ID = "GET_BOOK_BY_ID";
+    // data: exact title; response data: the first book with that title
+    public static final String GET_BOOK_BY_TITLE = "GET_BOOK_BY_TITLE";
     public static final String ADD_BOOK = "ADD_BOOK";
     public static final String UPDATE_BOOK = "UPDATE_BOOK";
     public static final String DELETE_BOOK = "DELETE_BOOK";
@@ -26,6 +38,7 @@ public class Message implements Serializable {
     
     // Users
     public static final String GET_ALL_USERS = "GET_ALL_USERS";
+    public static final String GET_USERS_PAGE = "GET_USERS_PAGE";
     public static final String SEARCH_USERS = "SEARCH_USERS";
     public static final String GET_USER_BY_ID = "GET_USER_BY_ID";
     public static final String ADD_USER = "ADD_USER";
@@ -40,16 +53,27 @@ public class Message implements Serializable {
     public static final String RETURN_BOOK = "RETURN_BOOK";
     public static final String GET_USER_BORROW_RECORDS = "GET_USER_BORROW_RECORDS";
     public static final String GET_ALL_BORROW_RECORDS = "GET_ALL_BORROW_RECORDS";
+    public static final String GET_BORROW_RECORDS_PAGE = "GET_BORROW_RECORDS_PAGE";
     public static final String MARK_LOST = "MARK_LOST";
     public static final String MARK_DAMAGED = "MARK_DAMAGED";
     public static final String FORCE_RETURN = "FORCE_RETURN";
     public static final String RENEW_BOOK = "RENEW_BOOK";
     
+    // Full exports: answered with any number of STREAM_CHUNK messages (data = List of items)
+    // carrying the request id, then one STREAM_END (success, message = summary)
+    public static final String EXPORT_BORROW_RECORDS = "EXPORT_BORROW_RECORDS";
+    public static final String EXPORT_FINES = "EXPORT_FINES";
+    // Penalty report rows; data = Object[]{from, to} (java.util.Date, either may be null)
+    public static final String EXPORT_PENALTY_REPORT = "EXPORT_PENALTY_REPORT";
+    public static final String STREAM_CHUNK = "STREAM_CHUNK";
+    public static final String STREAM_END = "STREAM_END";
+    
     // Statistics/Dashboard
     public static final String GET_DASHBOARD_STATS = "GET_DASHBOARD_STATS";
     public static final String GET_BOOK_REPORT = "GET_BOOK_REPORT";
     public static final String GET_USER_REPORT = "GET_USER_REPORT";
     public static final String GET_BORROW_REPORT = "GET_BORROW_REPORT";
+    // data = null (all fines) or Object[]{from, to} as for EXPORT_PENALTY_REPORT
     public static final String GET_PENALTY_REPORT = "GET_PENALTY_REPORT";
     
     // Notifications
@@ -59,6 +83,10 @@ public class Message implements Serializable {
     // Account status check
     public static final String CHECK_USER_STATUS = "CHECK_USER_STATUS";
     
+    // Server push (sent without a request, requestId = PUSH_REQUEST_ID)
+    public static final String PUSH_NOTIFICATION = "PUSH_NOTIFICATION";
+    public static final long PUSH_REQUEST_ID = -1;
+    
     // Settings
     public static final String GET_SETTINGS = "GET_SETTINGS";
     public static final String UPDATE_SETTINGS = "UPDATE_SETTINGS";
@@ -67,6 +95,8 @@ public class Message implements Serializable {
     private Object data;
     private boolean success;
     private String message;
+    // Set by the client to match responses to requests on a multiplexed connection; 0 = not set
+    private long requestId;
     
     public Message() {
     }
@@ -108,4 +138,12 @@ public class Message implements Serializable {
     public void setMessage(String message) {
         this.message = message;
     }
+    
+    public long getRequestId() {
+        return requestId;
+    }
+    
+    public void setRequestId(long requestId) {
+        this.requestId = requestId;
+    }
 }
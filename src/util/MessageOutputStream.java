@@ -0,0 +1,97 @@
+package util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+// ObjectOutputStream for Message objects that resets its handle table according to a
+// StreamResetPolicy and tracks how much is still retained by it.
+// Retained bytes = serialized size of everything written since the last reset: those
+// objects are pinned on this side and in the peer's ObjectInputStream, so the value is a
+// per-session proxy for the heap the stream keeps alive.
+public class MessageOutputStream {
+    private final CountingOutputStream counter;
+    private final ObjectOutputStream output;
+    private final StreamResetPolicy policy;
+    private long messages;
+    private long resets;
+    private long messagesSinceReset;
+    private long resetMark; // bytes written when the handle table was last cleared
+    private long peakRetainedBytes;
+    
+    public MessageOutputStream(OutputStream out, StreamResetPolicy policy) throws IOException {
+        this.counter = new CountingOutputStream(out);
+        this.output = new ObjectOutputStream(counter);
+        this.policy = policy;
+    }
+    
+    public void writeMessage(Message message) throws IOException {
+        writeMessage(message, false);
+    }
+    
+    // forceReset: reset regardless of the policy, for stream chunks that must not stay pinned
+    public synchronized void writeMessage(Message message, boolean forceReset) throws IOException {
+        output.writeObject(message);
+        messages++;
+        messagesSinceReset++;
+        
+        // reset() travels with this message, so the peer drops its references too
+        boolean reset = forceReset || policy.shouldReset(messagesSinceReset, counter.count - resetMark);
+        if (reset) {
+            output.reset();
+        }
+        output.flush();
+        peakRetainedBytes = Math.max(peakRetainedBytes, counter.count - resetMark);
+        if (reset) {
+            resets++;
+            messagesSinceReset = 0;
+            resetMark = counter.count;
+        }
+    }
+    
+    public void close() throws IOException {
+        output.close();
+    }
+    
+    public synchronized long getMessageCount() {
+        return messages;
+    }
+    
+    public synchronized long getResetCount() {
+        return resets;
+    }
+    
+    public synchronized long getRetainedBytes() {
+        return counter.count - resetMark;
+    }
+    
+    public synchronized long getPeakRetainedBytes() {
+        return peakRetainedBytes;
+    }
+    
+    public synchronized String getStats() {
+        return messages + " messages, " + resets + " resets, retained " + (getRetainedBytes() / 1024) + " KB (peak "
+            + (peakRetainedBytes / 1024) + " KB), policy " + policy;
+    }
+    
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+        
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+// One page of a list request (GET_BOOKS_PAGE, GET_USERS_PAGE, GET_BORROW_RECORDS_PAGE,
+// SEARCH_BOOKS_PAGE).
+// nextCursor is passed back to get the following page; it is null on the last page.
+public class Page<T> implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    private List<T> items;
+    private String nextCursor;
+    private long total;
+    
+    public Page() {
+        this.items = new ArrayList<>();
+    }
+    
+    public Page(List<T> items, String nextCursor, long total) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+        this.total = total;
+    }
+    
+    public List<T> getItems() {
+        return items;
+    }
+    
+    public void setItems(List<T> items) {
+        this.items = items;
+    }
+    
+    public String getNextCursor() {
+        return nextCursor;
+    }
+    
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+    
+    // Approximate size of the whole collection (estimatedDocumentCount), for "N of M" labels;
+    // for SEARCH_BOOKS_PAGE the number of matching books
+    public long getTotal() {
+        return total;
+    }
+    
+    public void setTotal(long total) {
+        this.total = total;
+    }
+    
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
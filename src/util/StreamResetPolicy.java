@@ -0,0 +1,70 @@
+package util;
+
+// When an ObjectOutputStream should be reset. Until reset() is called the stream keeps a
+// strong reference to every object it has written (its handle table), and so does the
+// peer's ObjectInputStream, so a session that never resets grows for as long as it lives.
+//   "always"    reset after every message (default)
+//   "never"     never reset (previous behaviour)
+//   "every:N"   reset after every N messages
+//   "bytes:N"   reset once N bytes were written since the last reset
+public class StreamResetPolicy {
+    public static final StreamResetPolicy ALWAYS = new StreamResetPolicy(1, 0);
+    public static final StreamResetPolicy NEVER = new StreamResetPolicy(0, 0);
+    
+    private final int everyMessages; // 0 = no message limit
+    private final long afterBytes;   // 0 = no byte limit
+    
+    private StreamResetPolicy(int everyMessages, long afterBytes) {
+        this.everyMessages = everyMessages;
+        this.afterBytes = afterBytes;
+    }
+    
+    public static StreamResetPolicy parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return ALWAYS;
+        }
+        String policy = value.trim().toLowerCase();
+        try {
+            if ("always".equals(policy)) {
+                return ALWAYS;
+            }
+            if ("never".equals(policy)) {
+                return NEVER;
+            }
+            if (policy.startsWith("every:")) {
+                int messages = Integer.parseInt(policy.substring("every:".length()).trim());
+                if (messages > 0) {
+                    return new StreamResetPolicy(messages, 0);
+                }
+            }
+            if (policy.startsWith("bytes:")) {
+                long bytes = Long.parseLong(policy.substring("bytes:".length()).trim());
+                if (bytes > 0) {
+                    return new StreamResetPolicy(0, bytes);
+                }
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the warning below
+        }
+        System.err.println("Invalid stream reset policy: " + value + ", using always");
+        return ALWAYS;
+    }
+    
+    public boolean shouldReset(long messagesSinceReset, long bytesSinceReset) {
+        if (everyMessages > 0 && messagesSinceReset >= everyMessages) {
+            return true;
+        }
+        return afterBytes > 0 && bytesSinceReset >= afterBytes;
+    }
+    
+    @Override
+    public String toString() {
+        if (everyMessages == 1) {
+            return "always";
+        }
+        if (everyMessages > 1) {
+            return "every:" + everyMessages;
+        }
+        return afterBytes > 0 ? "bytes:" + afterBytes : "never";
+    }
+}